@@ -0,0 +1,217 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+/**
+ * Molecule pairs of the benchmarks. The pairs are read from the
+ * <code>Data</code> and <code>test/data/mdl</code> directories of the project
+ * (set the <code>smsd.data.dir</code> system property to the project root if
+ * the benchmarks are not run from it) or generated: the ladder pairs grow from
+ * 10 to 150 heavy atoms.
+ *
+ * Every molecule is prepared like the command line tool does: atom types
+ * perceived, hydrogens removed and aromaticity detected.
+ *
+ * @cdk.module benchmark-smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+public final class BenchmarkMolecules {
+
+    /**
+     * Heavy atom counts of the generated ladder.
+     */
+    public static final int[] LADDER = {10, 25, 50, 75, 100, 150};
+    private static final String PHENOL = "Oc1ccc(cc1)";
+    private static final String AMIDE_UNIT = "C(=O)Nc1ccc(cc1)";
+    private static final String ESTER_UNIT = "C(=O)Oc1ccc(cc1)";
+
+    private BenchmarkMolecules() {
+    }
+
+    /**
+     * Returns an MCS pair:
+     * <ul>
+     * <li>ADP_ATP: Data/ADP.mol and Data/ATP.mol</li>
+     * <li>QUERY_TARGET: Data/query.smi and Data/target.smi</li>
+     * <li>NMCS: the first two molecules of Data/mol4NMCS.sdf</li>
+     * <li>MDL: the first two molecules of test/data/mdl/mols.sdf</li>
+     * <li>LADDER_n: two generated aryl amide/ester chains of n heavy atoms</li>
+     * </ul>
+     *
+     * @param name pair name
+     * @return query and target
+     * @throws CDKException
+     * @throws IOException
+     */
+    public static IAtomContainer[] mcsPair(String name) throws CDKException, IOException {
+        if (name.equals("ADP_ATP")) {
+            return pair(readMol("Data/ADP.mol"), readMol("Data/ATP.mol"));
+        } else if (name.equals("QUERY_TARGET")) {
+            return pair(readSmiles("Data/query.smi"), readSmiles("Data/target.smi"));
+        } else if (name.equals("NMCS")) {
+            List<IAtomContainer> molecules = readSDF("Data/mol4NMCS.sdf", 2);
+            return pair(molecules.get(0), molecules.get(1));
+        } else if (name.equals("MDL")) {
+            List<IAtomContainer> molecules = readSDF("test/data/mdl/mols.sdf", 2);
+            return pair(molecules.get(0), molecules.get(1));
+        } else if (name.startsWith("LADDER_")) {
+            int size = ladderSize(name);
+            return pair(parse(ladder(size, false)), parse(ladder(size, true)));
+        }
+        throw new IllegalArgumentException("Unknown MCS pair: " + name);
+    }
+
+    /**
+     * Returns a substructure pair:
+     * <ul>
+     * <li>ADENINE_ATP: adenine in Data/ATP.mol</li>
+     * <li>INDOLE_TARGET: indole in Data/target.smi</li>
+     * <li>LADDER_n: an aryl amide in the generated amide chain of n heavy
+     * atoms</li>
+     * </ul>
+     *
+     * @param name pair name
+     * @return query and target
+     * @throws CDKException
+     * @throws IOException
+     */
+    public static IAtomContainer[] substructurePair(String name) throws CDKException, IOException {
+        if (name.equals("ADENINE_ATP")) {
+            return pair(parse("Nc1ncnc2nc[nH]c12"), readMol("Data/ATP.mol"));
+        } else if (name.equals("INDOLE_TARGET")) {
+            return pair(parse("c1ccc2[nH]ccc2c1"), readSmiles("Data/target.smi"));
+        } else if (name.startsWith("LADDER_")) {
+            return pair(parse("O=CNc1ccccc1"), parse(ladder(ladderSize(name), false)));
+        }
+        throw new IllegalArgumentException("Unknown substructure pair: " + name);
+    }
+
+    /**
+     * Generates a chain of para linked aryl amides (every other link an ester
+     * if mixed) of exactly <code>size</code> heavy atoms, padded with a
+     * methylene tail.
+     *
+     * @param size heavy atom count, at least 7
+     * @param mixed alternate amide and ester links
+     * @return SMILES of the chain
+     */
+    public static String ladder(int size, boolean mixed) {
+        if (size < 7) {
+            throw new IllegalArgumentException("Ladder molecules have at least 7 atoms: " + size);
+        }
+        StringBuilder smiles = new StringBuilder(PHENOL);
+        int atoms = 7;
+        int unit = 0;
+        while (atoms + 9 <= size) {
+            smiles.append(mixed && unit % 2 == 1 ? ESTER_UNIT : AMIDE_UNIT);
+            atoms += 9;
+            unit++;
+        }
+        while (atoms < size) {
+            smiles.append('C');
+            atoms++;
+        }
+        return smiles.toString();
+    }
+
+    private static int ladderSize(String name) {
+        return Integer.parseInt(name.substring("LADDER_".length()));
+    }
+
+    private static IAtomContainer[] pair(IAtomContainer query, IAtomContainer target) throws CDKException {
+        return new IAtomContainer[]{prepare(query), prepare(target)};
+    }
+
+    private static IAtomContainer prepare(IAtomContainer molecule) throws CDKException {
+        AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(molecule);
+        IAtomContainer heavy = AtomContainerManipulator.removeHydrogens(molecule);
+        CDKHueckelAromaticityDetector.detectAromaticity(heavy);
+        return heavy;
+    }
+
+    private static IAtomContainer parse(String smiles) throws CDKException {
+        return new SmilesParser(DefaultChemObjectBuilder.getInstance()).parseSmiles(smiles);
+    }
+
+    private static IAtomContainer readSmiles(String path) throws CDKException, IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file(path)));
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new CDKException("No SMILES in " + path);
+            }
+            return parse(line.trim().split("\\s+")[0]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static IAtomContainer readMol(String path) throws CDKException, IOException {
+        InputStream in = new FileInputStream(file(path));
+        try {
+            MDLV2000Reader reader = new MDLV2000Reader(in);
+            return reader.read(DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainer.class));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<IAtomContainer> readSDF(String path, int count) throws CDKException, IOException {
+        IteratingSDFReader reader = new IteratingSDFReader(new FileReader(file(path)),
+                DefaultChemObjectBuilder.getInstance());
+        try {
+            List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+            while (reader.hasNext() && molecules.size() < count) {
+                molecules.add(reader.next());
+            }
+            if (molecules.size() < count) {
+                throw new CDKException("Less than " + count + " molecules in " + path);
+            }
+            return molecules;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static File file(String path) {
+        return new File(System.getProperty("smsd.data.dir", "."), path);
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * MCS of one molecule pair with each {@link Algorithm}. Throughput and the
+ * sampled latency distribution (percentiles) are reported, run with the GC
+ * profiler for the allocation rate (see {@link BenchmarkRunner}).
+ *
+ * The molecules are prepared once per trial; with <code>matchRings</code> on
+ * (the library default) their ring perception runs in the first invocation
+ * and is restored from the cache afterwards, as in a screen repeating the
+ * same molecules. Run with <code>-p matchRings=false</code> to leave the
+ * perception out.
+ * A non zero <code>budgetMillis</code> bounds every search, which keeps the
+ * slow algorithm and ladder size combinations from stalling a full run.
+ *
+ * @cdk.module benchmark-smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IsomorphismBenchmark {
+
+    @Param({"DEFAULT", "MCSPlus", "VFLibMCS", "CDKMCS"})
+    public Algorithm algorithm;
+    @Param({"ADP_ATP", "QUERY_TARGET", "NMCS", "MDL",
+        "LADDER_10", "LADDER_25", "LADDER_50", "LADDER_75", "LADDER_100", "LADDER_150"})
+    public String pair;
+    @Param({"true"})
+    public boolean matchBonds;
+    @Param({"true"})
+    public boolean matchRings;
+    @Param({"0"})
+    public long budgetMillis;
+    private IAtomContainer query;
+    private IAtomContainer target;
+
+    @Setup
+    public void setUp() throws Exception {
+        IAtomContainer[] molecules = BenchmarkMolecules.mcsPair(pair);
+        query = molecules[0];
+        target = molecules[1];
+    }
+
+    @Benchmark
+    public AtomAtomMapping mcs() {
+        SearchBudget budget = budgetMillis > 0
+                ? new SearchBudget(TimeUnit.MILLISECONDS.toNanos(budgetMillis), 0) : null;
+        Isomorphism comparison = new Isomorphism(query, target, algorithm, matchBonds, matchRings, true, budget);
+        return comparison.getFirstAtomMapping();
+    }
+}
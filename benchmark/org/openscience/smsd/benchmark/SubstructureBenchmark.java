@@ -0,0 +1,80 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.Substructure;
+
+/**
+ * {@link Substructure} search reporting the first hit and all the hits.
+ *
+ * @cdk.module benchmark-smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SubstructureBenchmark {
+
+    @Param({"ADENINE_ATP", "INDOLE_TARGET",
+        "LADDER_10", "LADDER_25", "LADDER_50", "LADDER_75", "LADDER_100", "LADDER_150"})
+    public String pair;
+    private IAtomContainer query;
+    private IAtomContainer target;
+
+    @Setup
+    public void setUp() throws Exception {
+        IAtomContainer[] molecules = BenchmarkMolecules.substructurePair(pair);
+        query = molecules[0];
+        target = molecules[1];
+    }
+
+    @Benchmark
+    public boolean firstHit() throws CDKException {
+        return new Substructure(query, target, true, false, true, false).isSubgraph();
+    }
+
+    @Benchmark
+    public List<AtomAtomMapping> allHits() throws CDKException {
+        return new Substructure(query, target, true, false, true, true).getAllAtomMapping();
+    }
+}
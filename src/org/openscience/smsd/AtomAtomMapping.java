@@ -37,17 +37,34 @@ import org.openscience.cdk.interfaces.IAtomContainerSet;
 /**
  * Holds atom-atom mappings information between source and target molecules
  *
+ * The mapping is stored as two index arrays (query to target and target to
+ * query, -1 when unmapped), so index lookups are O(1) and a mapping costs two
+ * ints per atom. {@link #getMappingsByAtoms()} and
+ * {@link #getMappingsByIndex()} return read-only copies as before;
+ * {@link #getMappingsByAtomsView()} and {@link #getMappingsByIndexView()} are
+ * read-only views over the arrays which follow later changes of the mapping
+ * and do not copy it.
+ *
+ * Only atoms of the query and the target can be mapped, see
+ * {@link #put(IAtom, IAtom)}.
+ *
+ * A mapping is filled by a single search thread and is not thread safe. Use
+ * {@link #snapshot()} to obtain an immutable copy that can be shared between
+ * threads.
+ *
  * @cdk.module smsd @cdk.githash
  *
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
  */
 public final class AtomAtomMapping implements Serializable {
 
-    private static final long serialVersionUID = 1223637237262778L;
+    private static final long serialVersionUID = 1223637237262779L;
     private final IAtomContainer query;
     private final IAtomContainer target;
-    private final Map<IAtom, IAtom> mapping;
-    private final Map<Integer, Integer> mappingIndex;
+    private final int[] queryToTarget;
+    private final int[] targetToQuery;
+    private int count;
+    private final boolean snapshot;
 
     @Override
     public boolean equals(Object obj) {
@@ -64,13 +81,7 @@ public final class AtomAtomMapping implements Serializable {
         if (this.getTarget() != other.getTarget() && (this.getTarget() == null || !this.target.equals(other.target))) {
             return false;
         }
-        if (this.getMapping() != other.getMapping() && (this.getMapping() == null || !this.mapping.equals(other.mapping))) {
-            return false;
-        }
-        if (this.getMappingByIndex() != other.getMappingByIndex() && (this.getMappingByIndex() == null || !this.mappingIndex.equals(other.mappingIndex))) {
-            return false;
-        }
-        return true;
+        return this.count == other.count && Arrays.equals(this.queryToTarget, other.queryToTarget);
     }
 
     @Override
@@ -78,8 +89,7 @@ public final class AtomAtomMapping implements Serializable {
         int hash = 7;
         hash = 67 * hash + (this.getQuery() != null ? this.getQuery().hashCode() : 0);
         hash = 67 * hash + (this.getTarget() != null ? this.getTarget().hashCode() : 0);
-        hash = 67 * hash + (this.getMapping() != null ? this.getMapping().hashCode() : 0);
-        hash = 67 * hash + (this.getMappingByIndex() != null ? this.getMappingByIndex().hashCode() : 0);
+        hash = 67 * hash + Arrays.hashCode(this.queryToTarget);
         return hash;
     }
 
@@ -91,18 +101,90 @@ public final class AtomAtomMapping implements Serializable {
     public AtomAtomMapping(IAtomContainer query, IAtomContainer target) {
         this.query = query;
         this.target = target;
-        this.mapping = Collections.synchronizedMap(new HashMap<IAtom, IAtom>());
-        this.mappingIndex = Collections.synchronizedSortedMap(new TreeMap<Integer, Integer>());
+        this.queryToTarget = new int[query.getAtomCount()];
+        this.targetToQuery = new int[target.getAtomCount()];
+        Arrays.fill(queryToTarget, -1);
+        Arrays.fill(targetToQuery, -1);
+        this.count = 0;
+        this.snapshot = false;
+    }
+
+    private AtomAtomMapping(AtomAtomMapping mapping) {
+        this.query = mapping.query;
+        this.target = mapping.target;
+        this.queryToTarget = mapping.queryToTarget.clone();
+        this.targetToQuery = mapping.targetToQuery.clone();
+        this.count = mapping.count;
+        this.snapshot = true;
+    }
+
+    /**
+     * Returns an immutable copy of this mapping. {@link #put(IAtom, IAtom)}
+     * and {@link #clear()} throw {@link UnsupportedOperationException} on the
+     * copy, which may be shared freely between threads.
+     *
+     * @return immutable copy of this mapping
+     */
+    public AtomAtomMapping snapshot() {
+        if (snapshot) {
+            return this;
+        }
+        return new AtomAtomMapping(this);
+    }
+
+    /**
+     * @return true if this mapping is an immutable {@link #snapshot()}
+     */
+    public boolean isSnapshot() {
+        return snapshot;
     }
 
     /**
+     * Maps atom1 of the query on atom2 of the target. Any previous partner of
+     * either atom is unmapped.
      *
-     * @param atom1
-     * @param atom2
+     * @param atom1 atom of the query
+     * @param atom2 atom of the target
+     * @throws IllegalArgumentException if atom1 is not in the query or atom2 is
+     * not in the target
      */
-    public synchronized void put(IAtom atom1, IAtom atom2) {
-        getMapping().put(atom1, atom2);
-        getMappingByIndex().put(getQuery().getAtomNumber(atom1), getTarget().getAtomNumber(atom2));
+    public void put(IAtom atom1, IAtom atom2) {
+        put(getQuery().getAtomNumber(atom1), getTarget().getAtomNumber(atom2));
+    }
+
+    /**
+     * Maps the query atom at queryIndex on the target atom at targetIndex.
+     * Any previous partner of either atom is unmapped.
+     *
+     * @param queryIndex index of the atom in the query
+     * @param targetIndex index of the atom in the target
+     * @throws IllegalArgumentException if an index is out of range
+     */
+    public void put(int queryIndex, int targetIndex) {
+        if (snapshot) {
+            throw new UnsupportedOperationException("Atom-atom mapping snapshots can not be modified");
+        }
+        if (queryIndex < 0 || queryIndex >= queryToTarget.length
+                || targetIndex < 0 || targetIndex >= targetToQuery.length) {
+            throw new IllegalArgumentException("Atom not found in the query or target: "
+                    + queryIndex + ":" + targetIndex);
+        }
+        int oldTarget = queryToTarget[queryIndex];
+        if (oldTarget == targetIndex) {
+            return;
+        }
+        if (oldTarget != -1) {
+            targetToQuery[oldTarget] = -1;
+            count--;
+        }
+        int oldQuery = targetToQuery[targetIndex];
+        if (oldQuery != -1) {
+            queryToTarget[oldQuery] = -1;
+            count--;
+        }
+        queryToTarget[queryIndex] = targetIndex;
+        targetToQuery[targetIndex] = queryIndex;
+        count++;
     }
 
     /**
@@ -111,14 +193,14 @@ public final class AtomAtomMapping implements Serializable {
      * @return string
      */
     @Override
-    public synchronized String toString() {
-        String s = "[";
-        for (IAtom key : getMapping().keySet()) {
-            int keyIndex = getQuery().getAtomNumber(key);
-            int valueIndex = getTarget().getAtomNumber(getMapping().get(key));
-            s += keyIndex + ":" + valueIndex + "|";
-        }
-        return s + "]";
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < queryToTarget.length; i++) {
+            if (queryToTarget[i] != -1) {
+                s.append(i).append(':').append(queryToTarget[i]).append('|');
+            }
+        }
+        return s.append(']').toString();
     }
 
     /**
@@ -126,17 +208,21 @@ public final class AtomAtomMapping implements Serializable {
      *
      * @return true if 'query' is not isomorphic of 'target'
      */
-    public synchronized boolean isEmpty() {
-        return getMapping().isEmpty();
+    public boolean isEmpty() {
+        return count == 0;
     }
 
     /**
      *
      * Clear mappings
      */
-    public synchronized void clear() {
-        getMapping().clear();
-        getMappingByIndex().clear();
+    public void clear() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("Atom-atom mapping snapshots can not be modified");
+        }
+        Arrays.fill(queryToTarget, -1);
+        Arrays.fill(targetToQuery, -1);
+        count = 0;
     }
 
     /**
@@ -145,26 +231,70 @@ public final class AtomAtomMapping implements Serializable {
      *
      * @return mapping size
      */
-    public synchronized int getCount() {
-        return getMapping().isEmpty() ? 0 : getMapping().size();
+    public int getCount() {
+        return count;
     }
 
     /**
-     * Returns atom-atom mappings
+     * Returns the index of the target atom mapped on the query atom, in O(1).
+     *
+     * @param queryIndex index of the atom in the query
+     * @return index of the mapped target atom or -1
+     */
+    public int getMappedTargetIndex(int queryIndex) {
+        return queryIndex < 0 || queryIndex >= queryToTarget.length ? -1 : queryToTarget[queryIndex];
+    }
+
+    /**
+     * Returns the index of the query atom mapped on the target atom, in O(1).
+     *
+     * @param targetIndex index of the atom in the target
+     * @return index of the mapped query atom or -1
+     */
+    public int getMappedQueryIndex(int targetIndex) {
+        return targetIndex < 0 || targetIndex >= targetToQuery.length ? -1 : targetToQuery[targetIndex];
+    }
+
+    /**
+     * Returns a read-only copy of the atom-atom mappings, iterated in query
+     * atom order.
      *
      * @return atom-atom mappings
      */
-    public synchronized Map<IAtom, IAtom> getMappingsByAtoms() {
-        return Collections.unmodifiableMap(new HashMap<IAtom, IAtom>(getMapping()));
+    public Map<IAtom, IAtom> getMappingsByAtoms() {
+        return Collections.unmodifiableMap(new LinkedHashMap<IAtom, IAtom>(getMappingsByAtomsView()));
     }
 
     /**
-     * Returns atom-atom index mappings
+     * Returns a read-only copy of the atom-atom index mappings, sorted by
+     * query index.
      *
      * @return atom-atom index mappings
      */
-    public synchronized Map<Integer, Integer> getMappingsByIndex() {
-        return Collections.unmodifiableSortedMap(new TreeMap<Integer, Integer>(getMappingByIndex()));
+    public Map<Integer, Integer> getMappingsByIndex() {
+        return Collections.unmodifiableSortedMap(new TreeMap<Integer, Integer>(getMappingsByIndexView()));
+    }
+
+    /**
+     * Returns the atom-atom mappings as a read-only view, iterated in query
+     * atom order. The view is not copied and reflects later changes of this
+     * mapping. Lookups by atom resolve the atom index in the query first.
+     *
+     * @return live view of the atom-atom mappings
+     */
+    public Map<IAtom, IAtom> getMappingsByAtomsView() {
+        return new AtomView();
+    }
+
+    /**
+     * Returns the atom-atom index mappings as a read-only view, iterated in
+     * ascending query index order. The view is not copied and reflects later
+     * changes of this mapping.
+     *
+     * @return live view of the atom-atom index mappings
+     */
+    public Map<Integer, Integer> getMappingsByIndexView() {
+        return new IndexView();
     }
 
     /**
@@ -173,7 +303,7 @@ public final class AtomAtomMapping implements Serializable {
      * @param atom
      * @return
      */
-    public synchronized int getQueryIndex(IAtom atom) {
+    public int getQueryIndex(IAtom atom) {
         return getQuery().getAtomNumber(atom);
     }
 
@@ -183,7 +313,7 @@ public final class AtomAtomMapping implements Serializable {
      * @param atom
      * @return
      */
-    public synchronized int getTargetIndex(IAtom atom) {
+    public int getTargetIndex(IAtom atom) {
         return getTarget().getAtomNumber(atom);
     }
 
@@ -192,7 +322,7 @@ public final class AtomAtomMapping implements Serializable {
      *
      * @return the query
      */
-    public synchronized IAtomContainer getQuery() {
+    public IAtomContainer getQuery() {
         return query;
     }
 
@@ -201,7 +331,7 @@ public final class AtomAtomMapping implements Serializable {
      *
      * @return the target
      */
-    public synchronized IAtomContainer getTarget() {
+    public IAtomContainer getTarget() {
         return target;
     }
 
@@ -211,12 +341,12 @@ public final class AtomAtomMapping implements Serializable {
      * @return common mapped fragment in the query molecule
      * @throws CloneNotSupportedException
      */
-    public synchronized IAtomContainer getCommonFragmentInQuery() throws CloneNotSupportedException {
+    public IAtomContainer getCommonFragmentInQuery() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
-        List<IAtom> uniqueAtoms = Collections.synchronizedList(new ArrayList<IAtom>());
-        for (IAtom atom : getQuery().atoms()) {
-            if (!mapping.containsKey(atom)) {
-                uniqueAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        List<IAtom> uniqueAtoms = new ArrayList<IAtom>();
+        for (int i = 0; i < queryToTarget.length; i++) {
+            if (queryToTarget[i] == -1) {
+                uniqueAtoms.add(ac.getAtom(i));
             }
         }
         for (IAtom atom : uniqueAtoms) {
@@ -231,12 +361,12 @@ public final class AtomAtomMapping implements Serializable {
      * @return common mapped fragment in the target molecule
      * @throws CloneNotSupportedException
      */
-    public synchronized IAtomContainer getCommonFragmentInTarget() throws CloneNotSupportedException {
+    public IAtomContainer getCommonFragmentInTarget() throws CloneNotSupportedException {
         IAtomContainer ac = getTarget().clone();
-        List<IAtom> uniqueAtoms = Collections.synchronizedList(new ArrayList<IAtom>());
-        for (IAtom atom : getTarget().atoms()) {
-            if (!mapping.containsValue(atom)) {
-                uniqueAtoms.add(ac.getAtom(getTargetIndex(atom)));
+        List<IAtom> uniqueAtoms = new ArrayList<IAtom>();
+        for (int i = 0; i < targetToQuery.length; i++) {
+            if (targetToQuery[i] == -1) {
+                uniqueAtoms.add(ac.getAtom(i));
             }
         }
         for (IAtom atom : uniqueAtoms) {
@@ -251,11 +381,13 @@ public final class AtomAtomMapping implements Serializable {
      * @return unique fragments in the query molecule
      * @throws CloneNotSupportedException
      */
-    public synchronized IAtomContainerSet getUniqueFragmentsInQuery() throws CloneNotSupportedException {
+    public IAtomContainerSet getUniqueFragmentsInQuery() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
-        List<IAtom> commonAtoms = Collections.synchronizedList(new ArrayList<IAtom>());
-        for (IAtom atom : getMapping().keySet()) {
-            commonAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        List<IAtom> commonAtoms = new ArrayList<IAtom>();
+        for (int i = 0; i < queryToTarget.length; i++) {
+            if (queryToTarget[i] != -1) {
+                commonAtoms.add(ac.getAtom(i));
+            }
         }
         for (IAtom atom : commonAtoms) {
             ac.removeAtomAndConnectedElectronContainers(atom);
@@ -272,11 +404,13 @@ public final class AtomAtomMapping implements Serializable {
      * @return unique fragments in the target molecule
      * @throws CloneNotSupportedException
      */
-    public synchronized IAtomContainerSet getUniqueFragmentsInTarget() throws CloneNotSupportedException {
+    public IAtomContainerSet getUniqueFragmentsInTarget() throws CloneNotSupportedException {
         IAtomContainer ac = getTarget().clone();
-        List<IAtom> commonAtoms = Collections.synchronizedList(new ArrayList<IAtom>());
-        for (IAtom atom : getMapping().values()) {
-            commonAtoms.add(ac.getAtom(getTargetIndex(atom)));
+        List<IAtom> commonAtoms = new ArrayList<IAtom>();
+        for (int i = 0; i < targetToQuery.length; i++) {
+            if (targetToQuery[i] != -1) {
+                commonAtoms.add(ac.getAtom(i));
+            }
         }
         for (IAtom atom : commonAtoms) {
             ac.removeAtomAndConnectedElectronContainers(atom);
@@ -287,17 +421,139 @@ public final class AtomAtomMapping implements Serializable {
         return ConnectivityChecker.partitionIntoMolecules(ac);
     }
 
-    /**
-     * @return the mapping
+    /*
+     * Walks the mapped query indices in ascending order.
      */
-    private Map<IAtom, IAtom> getMapping() {
-        return mapping;
+    private abstract class MappedIterator<T> implements Iterator<T> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < queryToTarget.length && queryToTarget[i] == -1) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < queryToTarget.length;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int current = next;
+            next = advance(next + 1);
+            return entry(current, queryToTarget[current]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        abstract T entry(int queryIndex, int targetIndex);
     }
 
-    /**
-     * @return the mappingIndex
+    /*
+     * Read-only index view over queryToTarget.
+     */
+    private final class IndexView extends AbstractMap<Integer, Integer> {
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof Integer)) {
+                return null;
+            }
+            int value = getMappedTargetIndex((Integer) key);
+            return value == -1 ? null : value;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, Integer>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, Integer>> iterator() {
+                    return new MappedIterator<Map.Entry<Integer, Integer>>() {
+                        @Override
+                        Map.Entry<Integer, Integer> entry(int queryIndex, int targetIndex) {
+                            return new AbstractMap.SimpleImmutableEntry<Integer, Integer>(queryIndex, targetIndex);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+    }
+
+    /*
+     * Read-only atom view over queryToTarget. Lookups by atom resolve the
+     * atom index in the query first.
      */
-    private Map<Integer, Integer> getMappingByIndex() {
-        return mappingIndex;
+    private final class AtomView extends AbstractMap<IAtom, IAtom> {
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public IAtom get(Object key) {
+            if (!(key instanceof IAtom)) {
+                return null;
+            }
+            int value = getMappedTargetIndex(getQuery().getAtomNumber((IAtom) key));
+            return value == -1 ? null : getTarget().getAtom(value);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return value instanceof IAtom
+                    && getMappedQueryIndex(getTarget().getAtomNumber((IAtom) value)) != -1;
+        }
+
+        @Override
+        public Set<Map.Entry<IAtom, IAtom>> entrySet() {
+            return new AbstractSet<Map.Entry<IAtom, IAtom>>() {
+                @Override
+                public Iterator<Map.Entry<IAtom, IAtom>> iterator() {
+                    return new MappedIterator<Map.Entry<IAtom, IAtom>>() {
+                        @Override
+                        Map.Entry<IAtom, IAtom> entry(int queryIndex, int targetIndex) {
+                            return new AbstractMap.SimpleImmutableEntry<IAtom, IAtom>(
+                                    getQuery().getAtom(queryIndex), getTarget().getAtom(targetIndex));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
     }
 }
@@ -27,13 +27,16 @@ import java.util.*;
 import java.util.logging.Level;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.filters.ChemicalFilters;
+import org.openscience.smsd.filters.SymmetryFilter;
+import org.openscience.smsd.helper.CompiledGraph;
 import org.openscience.smsd.interfaces.IAtomMapping;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  *
@@ -51,9 +54,11 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
     private final boolean matchRings;
     private final boolean matchAtomType;
     private boolean subgraph;
+    private boolean exhaustive = true;
     private List<Double> stereoScoreList;
     private List<Integer> fragmentSizeList;
     private List<Double> bondEnergiesList;
+    private transient SymmetryFilter symmetryFilter;
     private final static ILoggingTool Logger
             = LoggingToolFactory.createLoggingTool(BaseMapping.class);
 
@@ -74,48 +79,112 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
     }
 
     @Override
-    public synchronized void setChemFilters(boolean stereoFilter, boolean fragmentFilter, boolean energyFilter) {
+    public void setChemFilters(boolean stereoFilter, boolean fragmentFilter, boolean energyFilter) {
 
         if (getMappingCount() > 0) {
-
-            if (energyFilter) {
-                try {
-                    sortResultsByEnergies();
-                    this.bondEnergiesList = getSortedEnergy();
-                } catch (CDKException ex) {
-                    Logger.error(Level.SEVERE, null, ex);
+            SearchStats stats = SearchStats.begin("ChemicalFilters", getQueryContainer(), getTargetContainer());
+            int before = getMappingCount();
+            try {
+                if (energyFilter) {
+                    long start = System.nanoTime();
+                    try {
+                        sortResultsByEnergies();
+                        this.bondEnergiesList = getSortedEnergy();
+                    } catch (CDKException ex) {
+                        Logger.error(Level.SEVERE, null, ex);
+                    }
+                    SearchStats.record(stats, Stage.ENERGY_FILTER, start);
                 }
-            }
 
-            if (fragmentFilter) {
-                sortResultsByFragments();
-                this.fragmentSizeList = getSortedFragment();
-            }
+                if (fragmentFilter) {
+                    long start = System.nanoTime();
+                    sortResultsByFragments();
+                    this.fragmentSizeList = getSortedFragment();
+                    SearchStats.record(stats, Stage.FRAGMENT_FILTER, start);
+                }
 
-            if (stereoFilter) {
-                try {
-                    sortResultsByStereoAndBondMatch();
-                    this.stereoScoreList = getStereoMatches();
-                } catch (CDKException ex) {
-                    Logger.error(Level.SEVERE, null, ex);
+                if (stereoFilter) {
+                    long start = System.nanoTime();
+                    try {
+                        sortResultsByStereoAndBondMatch();
+                        this.stereoScoreList = getStereoMatches();
+                    } catch (CDKException ex) {
+                        Logger.error(Level.SEVERE, null, ex);
+                    }
+                    SearchStats.record(stats, Stage.STEREO_FILTER, start);
                 }
+                SearchStats.solutions(before, getMappingCount());
+            } finally {
+                SearchStats.finish(stats, false);
             }
         }
     }
 
+    /**
+     * Keeps one mapping per symmetry class: mappings which only differ by an
+     * automorphism of the query or the target (e.g. the rotations of a
+     * benzene ring) are dropped, so that the chemical filters only score the
+     * representatives. The automorphisms keep the stereo atoms in place, so a
+     * representative has the same stereo score as the mappings it stands for.
+     * Aromatic bonds are equivalent whatever their Kekule order, so the
+     * energy score may differ within a class when a mapping cuts an aromatic
+     * ring.
+     * Call it before
+     * {@link #setChemFilters(boolean, boolean, boolean)}; the dropped mappings
+     * can be generated again with {@link #getEquivalentMappings(AtomAtomMapping)}.
+     *
+     * @return number of mappings dropped
+     */
+    @TestMethod("testReduceSymmetricMappings")
+    public synchronized int reduceSymmetricMappings() {
+        if (getMappingCount() < 2) {
+            return 0;
+        }
+        List<AtomAtomMapping> representatives = getSymmetryFilter().filter(getMCSList());
+        int dropped = getMappingCount() - representatives.size();
+        if (dropped > 0) {
+            getMCSList().clear();
+            getMCSList().addAll(representatives);
+            this.stereoScoreList = null;
+            this.fragmentSizeList = null;
+            this.bondEnergiesList = null;
+        }
+        return dropped;
+    }
+
+    /**
+     * Lazily generates the distinct mappings which differ from the given one
+     * by an automorphism of the query or the target, starting with the
+     * mapping itself.
+     *
+     * @param mapping mapping between the query and target
+     * @return equivalent mappings
+     */
+    @TestMethod("testReduceSymmetricMappings")
+    public synchronized Iterable<AtomAtomMapping> getEquivalentMappings(AtomAtomMapping mapping) {
+        return getSymmetryFilter().expand(mapping);
+    }
+
+    private SymmetryFilter getSymmetryFilter() {
+        if (symmetryFilter == null) {
+            symmetryFilter = new SymmetryFilter(getQuery(), getTarget(), isMatchRings(), isMatchAtomType());
+        }
+        return symmetryFilter;
+    }
+
     @Override
-    public synchronized Integer getFragmentSize(int Key) {
+    public Integer getFragmentSize(int Key) {
         return (fragmentSizeList != null && !fragmentSizeList.isEmpty())
                 ? fragmentSizeList.get(Key) : null;
     }
 
     @Override
-    public synchronized Integer getStereoScore(int Key) {
+    public Integer getStereoScore(int Key) {
         return (stereoScoreList != null && !stereoScoreList.isEmpty()) ? stereoScoreList.get(Key).intValue() : null;
     }
 
     @Override
-    public synchronized Double getEnergyScore(int Key) {
+    public Double getEnergyScore(int Key) {
         return (bondEnergiesList != null && !bondEnergiesList.isEmpty()) ? bondEnergiesList.get(Key) : null;
     }
 
@@ -124,7 +193,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      */
     @Override
     @TestMethod("testGetTanimotoSimilarity")
-    public synchronized double getTanimotoSimilarity() {
+    public double getTanimotoSimilarity() {
         int decimalPlaces = 4;
         double rAtomCount;
         double pAtomCount;
@@ -154,32 +223,18 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      */
     @Override
     @TestMethod("testIsStereoMisMatch")
-    public synchronized boolean isStereoMisMatch() {
+    public boolean isStereoMisMatch() {
         boolean flag = false;
         IAtomContainer reactant = getQuery();
         IAtomContainer product = getTarget();
         int stereoMisMatchScore = 0;
         if (getMappingCount() > 0) {
             AtomAtomMapping firstAtomMCS = getMCSList().iterator().next();
-            for (IAtom indexI : firstAtomMCS.getMappingsByAtoms().keySet()) {
-                IAtom indexJ = firstAtomMCS.getMappingsByAtoms().get(indexI);
-                for (IAtom indexIPlus : firstAtomMCS.getMappingsByAtoms().keySet()) {
-                    IAtom indexJPlus = firstAtomMCS.getMappingsByAtoms().get(indexIPlus);
-                    if (!indexI.equals(indexIPlus) && !indexJ.equals(indexJPlus)) {
-
-                        IAtom sourceAtom1 = indexI;
-                        IAtom sourceAtom2 = indexIPlus;
-
-                        IBond rBond = reactant.getBond(sourceAtom1, sourceAtom2);
-
-                        IAtom targetAtom1 = indexJ;
-                        IAtom targetAtom2 = indexJPlus;
-                        IBond pBond = product.getBond(targetAtom1, targetAtom2);
-
-                        if ((rBond != null && pBond != null) && (rBond.getStereo() != pBond.getStereo())) {
-                            stereoMisMatchScore++;
-                        }
-                    }
+            Map<IBond, IBond> bondMap = makeBondMapOfAtomMap(
+                    new CompiledGraph(reactant), new CompiledGraph(product), firstAtomMCS);
+            for (Map.Entry<IBond, IBond> bonds : bondMap.entrySet()) {
+                if (bonds.getKey().getStereo() != bonds.getValue().getStereo()) {
+                    stereoMisMatchScore++;
                 }
             }
         }
@@ -190,7 +245,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
     }
 
     @Override
-    public synchronized int getMappingCount() {
+    public int getMappingCount() {
         return this.getMCSList().isEmpty() ? 0 : this.getMCSList().size();
     }
 
@@ -199,7 +254,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      */
     @TestMethod("testGetEuclideanDistance")
     @Override
-    public synchronized double getEuclideanDistance() {
+    public double getEuclideanDistance() {
         int decimalPlaces = 4;
         double sourceAtomCount;
         double targetAtomCount;
@@ -229,7 +284,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      * @return
      */
     @Override
-    public synchronized List<AtomAtomMapping> getAllAtomMapping() {
+    public List<AtomAtomMapping> getAllAtomMapping() {
         return Collections.unmodifiableList(new ArrayList<AtomAtomMapping>(getMCSList()));
     }
 
@@ -239,18 +294,18 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      * @return
      */
     @Override
-    public synchronized AtomAtomMapping getFirstAtomMapping() {
+    public AtomAtomMapping getFirstAtomMapping() {
         return getMCSList().isEmpty() ? new AtomAtomMapping(getQuery(), getTarget())
                 : getMCSList().iterator().next();
     }
 
     @Override
-    public synchronized IAtomContainer getQueryContainer() {
+    public IAtomContainer getQueryContainer() {
         return this.getQuery();
     }
 
     @Override
-    public synchronized IAtomContainer getTargetContainer() {
+    public IAtomContainer getTargetContainer() {
         return this.getTarget();
     }
 
@@ -259,7 +314,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      *
      * @return true if bond are to be matched
      */
-    protected synchronized boolean isMatchBonds() {
+    protected boolean isMatchBonds() {
         return matchBonds;
     }
 
@@ -268,7 +323,7 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      *
      * @return true if rings are to be matched
      */
-    protected synchronized boolean isMatchRings() {
+    protected boolean isMatchRings() {
         return matchRings;
     }
 
@@ -277,18 +332,18 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      *
      * @return true if Query is a subgraph of the Target
      */
-    public synchronized boolean isSubgraph() {
+    public boolean isSubgraph() {
         return this.subgraph;
     }
 
-    public synchronized void clearMaps() {
+    public void clearMaps() {
         this.getMCSList().clear();
     }
 
     /**
      * @return the allBondMCS
      */
-    public synchronized List<Map<IBond, IBond>> getAllBondMaps() {
+    public List<Map<IBond, IBond>> getAllBondMaps() {
         if (!getMCSList().isEmpty()) {
             return makeBondMapsOfAtomMaps(getQuery(), getTarget(), getMCSList());
         }
@@ -298,10 +353,29 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
     /**
      * @param subgraph the subgraph to set
      */
-    public synchronized void setSubgraph(boolean subgraph) {
+    public void setSubgraph(boolean subgraph) {
         this.subgraph = subgraph;
     }
 
+    /**
+     * Returns false if the search was stopped, by its
+     * {@link org.openscience.smsd.tools.SearchBudget} or by the default
+     * iteration cap of the algorithm, and the mappings are the best found so
+     * far rather than the complete answer.
+     *
+     * @return true if the search ran to completion
+     */
+    public boolean isExhaustive() {
+        return exhaustive;
+    }
+
+    /**
+     * @param exhaustive the exhaustive to set
+     */
+    protected void setExhaustive(boolean exhaustive) {
+        this.exhaustive = exhaustive;
+    }
+
     /**
      * Returns bond maps between sourceAtomCount and targetAtomCount molecules based on the atoms
      *
@@ -310,44 +384,17 @@ public class BaseMapping extends ChemicalFilters implements IAtomMapping {
      * @param mappings mappings between sourceAtomCount and targetAtomCount molecule atoms
      * @return bond maps between sourceAtomCount and targetAtomCount molecules based on the atoms
      */
-    public synchronized List<Map<IBond, IBond>> makeBondMapsOfAtomMaps(IAtomContainer ac1,
+    public List<Map<IBond, IBond>> makeBondMapsOfAtomMaps(IAtomContainer ac1,
             IAtomContainer ac2, List<AtomAtomMapping> mappings) {
-        List<Map<IBond, IBond>> bondMaps = Collections.synchronizedList(new ArrayList<Map<IBond, IBond>>());
+        List<Map<IBond, IBond>> bondMaps = new ArrayList<Map<IBond, IBond>>();
+        CompiledGraph queryGraph = new CompiledGraph(ac1);
+        CompiledGraph targetGraph = new CompiledGraph(ac2);
         for (AtomAtomMapping mapping : mappings) {
-            bondMaps.add(makeBondMapOfAtomMap(ac1, ac2, mapping));
+            bondMaps.add(makeBondMapOfAtomMap(queryGraph, targetGraph, mapping));
         }
         return bondMaps;
     }
 
-    /**
-     *
-     * Returns bond map between sourceAtomCount and targetAtomCount molecules based on the atoms
-     *
-     * @param ac1 sourceAtomCount molecule
-     * @param ac2 targetAtomCount molecule
-     * @param mapping mappings between sourceAtomCount and targetAtomCount molecule atoms
-     * @return bond map between sourceAtomCount and targetAtomCount molecules based on the atoms
-     */
-    private synchronized Map<IBond, IBond> makeBondMapOfAtomMap(IAtomContainer ac1, IAtomContainer ac2,
-            AtomAtomMapping mapping) {
-
-        Map<IBond, IBond> bondbondMappingMap = Collections.synchronizedMap(new HashMap<IBond, IBond>());
-
-        for (Map.Entry<IAtom, IAtom> map1 : mapping.getMappingsByAtoms().entrySet()) {
-            for (Map.Entry<IAtom, IAtom> map2 : mapping.getMappingsByAtoms().entrySet()) {
-                if (map1.getKey() != map2.getKey()) {
-                    IBond bond1 = ac1.getBond(map1.getKey(), map2.getKey());
-                    IBond bond2 = ac2.getBond(map1.getValue(), map2.getValue());
-                    if (bond1 != null && bond2 != null && !bondbondMappingMap.containsKey(bond1)) {
-                        bondbondMappingMap.put(bond1, bond2);
-                    }
-                }
-            }
-        }
-//        System.out.println("Mol Map size:" + bondbondMappingMap.size());
-        return bondbondMappingMap;
-    }
-
     /**
      * @return the matchAtomType
      */
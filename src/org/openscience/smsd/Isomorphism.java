@@ -38,6 +38,9 @@ import org.openscience.smsd.algorithm.single.SingleMappingHandler;
 import org.openscience.smsd.algorithm.vflib.VF2MCS;
 import org.openscience.smsd.helper.MoleculeInitializer;
 import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 import static org.openscience.smsd.interfaces.Algorithm.CDKMCS;
 import static org.openscience.smsd.interfaces.Algorithm.DEFAULT;
 import static org.openscience.smsd.interfaces.Algorithm.MCSPlus;
@@ -114,6 +117,11 @@ public final class Isomorphism extends BaseMapping implements Serializable {
             = LoggingToolFactory.createLoggingTool(Isomorphism.class);
     static final long serialVersionUID = 0x24845e5c5ae877L;
     private final Algorithm algorithmType;
+    private final transient SearchBudget budget;
+    /*
+     * timeout reported by the algorithm which produced the mappings
+     */
+    private boolean timeout = false;
     private double bondSensitiveMcGregorOut = -1;//mins
     private double bondInSensitiveMcGregor = -1;//mins
 
@@ -134,10 +142,33 @@ public final class Isomorphism extends BaseMapping implements Serializable {
             IQueryAtomContainer query,
             IAtomContainer target,
             Algorithm algorithmType) {
+        this(query, target, algorithmType, (SearchBudget) null);
+    }
+
+    /**
+     * Initialize query and target molecules and limit the search by a budget. If the budget runs out the best
+     * mappings found so far are reported and {@link #isExhaustive()} returns false.
+     *
+     * @param query query molecule
+     * @param target target molecule
+     * @param algorithmType {@link org.openscience.cdk.smsd.interfaces.Algorithm}
+     * @param budget search budget or null for an unlimited search
+     */
+    public Isomorphism(
+            IQueryAtomContainer query,
+            IAtomContainer target,
+            Algorithm algorithmType,
+            SearchBudget budget) {
         super(true, true, true, query, target);
         this.algorithmType = algorithmType;
-        mcsBuilder(query, target);
-        setSubgraph(isSubgraph());
+        this.budget = budget;
+        SearchStats stats = SearchStats.begin("Isomorphism." + algorithmType, query, target);
+        try {
+            mcsBuilder(query, target);
+            setSubgraph(isSubgraph());
+        } finally {
+            SearchStats.finish(stats, timeout);
+        }
     }
 
     /**
@@ -163,19 +194,50 @@ public final class Isomorphism extends BaseMapping implements Serializable {
             boolean bondTypeFlag,
             boolean matchRings,
             boolean matchAtomType) {
+        this(query, target, algorithmType, bondTypeFlag, matchRings, matchAtomType, null);
+    }
+
+    /**
+     * Initialize query and target molecules and limit the search by a budget. If the budget runs out the best
+     * mappings found so far are reported and {@link #isExhaustive()} returns false.
+     *
+     * @param query query mol
+     * @param target target mol
+     * @param algorithmType {@link org.openscience.cdk.smsd.interfaces.Algorithm}
+     * @param bondTypeFlag Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType
+     * @param budget search budget or null for an unlimited search
+     */
+    public Isomorphism(
+            IAtomContainer query,
+            IAtomContainer target,
+            Algorithm algorithmType,
+            boolean bondTypeFlag,
+            boolean matchRings,
+            boolean matchAtomType,
+            SearchBudget budget) {
         super(bondTypeFlag, matchRings, matchAtomType, query, target);
         this.algorithmType = algorithmType;
-        mcsBuilder(getQueryContainer(), getTargetContainer());
-        setSubgraph(isSubgraph());
+        this.budget = budget;
+        SearchStats stats = SearchStats.begin("Isomorphism." + algorithmType, query, target);
+        try {
+            mcsBuilder(getQueryContainer(), getTargetContainer());
+            setSubgraph(isSubgraph());
+        } finally {
+            SearchStats.finish(stats, timeout);
+        }
     }
 
     private synchronized void mcsBuilder(IAtomContainer mol1, IAtomContainer mol2) {
         if (isMatchRings()) {
+            long start = System.nanoTime();
             try {
                 MoleculeInitializer.initializeMolecule(mol1);
                 MoleculeInitializer.initializeMolecule(mol2);
             } catch (CDKException ex) {
             }
+            SearchStats.record(SearchStats.current(), Stage.PERCEPTION, start);
         }
         int rBondCount = mol1.getBondCount();
         int pBondCount = mol2.getBondCount();
@@ -206,26 +268,26 @@ public final class Isomorphism extends BaseMapping implements Serializable {
     }
 
     private synchronized void chooseAlgorithm() {
-
         switch (algorithmType) {
             case CDKMCS:
-                cdkMCSAlgorithm();
+                timeout = cdkMCSAlgorithm();
                 break;
             case DEFAULT:
-                defaultMCSAlgorithm();
+                timeout = defaultMCSAlgorithm();
                 break;
             case MCSPlus:
-                mcsPlusAlgorithm();
+                timeout = mcsPlusAlgorithm();
                 break;
             case VFLibMCS:
-                vfLibMCSAlgorithm();
+                timeout = vfLibMCSAlgorithm();
                 break;
         }
+        setExhaustive(!timeout && !isBudgetExhausted());
     }
 
     private synchronized boolean cdkMCSAlgorithm() {
         CDKMCSHandler mcs;
-        mcs = new CDKMCSHandler(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType());
+        mcs = new CDKMCSHandler(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
         clearMaps();
         getMCSList().addAll(mcs.getAllAtomMapping());
         return mcs.isTimeout();
@@ -233,27 +295,28 @@ public final class Isomorphism extends BaseMapping implements Serializable {
 
     private synchronized boolean mcsPlusAlgorithm() {
         MCSPlusHandler mcs;
-        mcs = new MCSPlusHandler(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType());
+        mcs = new MCSPlusHandler(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
         clearMaps();
         getMCSList().addAll(mcs.getAllAtomMapping());
         return mcs.isTimeout();
     }
 
-    private synchronized boolean substructureAlgorithm() throws CDKException {
+    private synchronized Substructure substructureAlgorithm() throws CDKException {
         Substructure mcs;
-        mcs = new Substructure(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), true);
+        mcs = new Substructure(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), true, budget);
         clearMaps();
         if (mcs.isSubgraph()) {
             getMCSList().addAll(mcs.getAllAtomMapping());
         }
-        return mcs.isSubgraph();
+        return mcs;
     }
 
-    private synchronized void vfLibMCSAlgorithm() {
+    private synchronized boolean vfLibMCSAlgorithm() {
         VF2MCS mcs;
-        mcs = new VF2MCS(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType());
+        mcs = new VF2MCS(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
         clearMaps();
         getMCSList().addAll(mcs.getAllAtomMapping());
+        return mcs.isTimeout();
     }
 
     private synchronized void singleMapping() {
@@ -263,23 +326,52 @@ public final class Isomorphism extends BaseMapping implements Serializable {
         getMCSList().addAll(mcs.getAllAtomMapping());
     }
 
-    private synchronized void defaultMCSAlgorithm() {
+    /*
+     * Returns true if the search which produced the reported mappings timed
+     * out
+     */
+    private synchronized boolean defaultMCSAlgorithm() {
         try {
-            boolean substructureAlgorithm = substructureAlgorithm();
-            if (!substructureAlgorithm) {
-                boolean timeoutMCS1 = cdkMCSAlgorithm();
-                if ((getMappingCount() == 0 && timeoutMCS1)
-                        || (timeoutMCS1 && getMappingCount() > 0
-                        && (getFirstAtomMapping().getCount() != getQueryContainer().getAtomCount()
-                        || getFirstAtomMapping().getCount() != getTargetContainer().getAtomCount()))) {
-                    vfLibMCSAlgorithm();
-                }
+            Substructure substructure = substructureAlgorithm();
+            if (substructure.isSubgraph()) {
+                return !substructure.isExhaustive();
+            }
+            if (isBudgetExhausted()) {
+                return true;
+            }
+            boolean timeoutMCS1 = cdkMCSAlgorithm();
+            /*
+             * a spent budget would leave VF2MCS with nothing to search, keep the CDKMCS mappings instead
+             */
+            if (isBudgetExhausted()) {
+                return timeoutMCS1;
+            }
+            if ((getMappingCount() == 0 && timeoutMCS1)
+                    || (timeoutMCS1 && getMappingCount() > 0
+                    && (getFirstAtomMapping().getCount() != getQueryContainer().getAtomCount()
+                    || getFirstAtomMapping().getCount() != getTargetContainer().getAtomCount()))) {
+                return vfLibMCSAlgorithm();
             }
+            return timeoutMCS1;
         } catch (CDKException e) {
-            logger.error(Level.SEVERE, null, e);
+            return searchFailed(e);
         }
     }
 
+    /*
+     * a search which failed leaves whatever mappings it found so far, they are
+     * not known to be complete
+     */
+    synchronized boolean searchFailed(CDKException e) {
+        logger.error(Level.SEVERE, null, e);
+        setExhaustive(false);
+        return true;
+    }
+
+    private boolean isBudgetExhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
     /**
      *
      * @return true if query is a subgraph of the target
@@ -310,28 +402,40 @@ public final class Isomorphism extends BaseMapping implements Serializable {
 
     /**
      * @return the bondSensitiveMcGregorOut
+     * @deprecated the value is not used by the search, limit the search with a
+     * {@link SearchBudget} instead
      */
+    @Deprecated
     public double getBondSensitiveMcGregorOut() {
         return bondSensitiveMcGregorOut;
     }
 
     /**
      * @param bondSensitiveMcGregorOut the bondSensitiveMcGregorOut to set
+     * @deprecated the value is not used by the search, limit the search with a
+     * {@link SearchBudget} instead
      */
+    @Deprecated
     public void setBondSenSitiveMcGregorOut(double bondSensitiveMcGregorOut) {
         this.bondSensitiveMcGregorOut = bondSensitiveMcGregorOut;
     }
 
     /**
      * @return the bondInSensitiveMcGregor
+     * @deprecated the value is not used by the search, limit the search with a
+     * {@link SearchBudget} instead
      */
+    @Deprecated
     public double getBondInSensitiveMcGregor() {
         return bondInSensitiveMcGregor;
     }
 
     /**
      * @param bondInSensitiveMcGregor the bondInSensitiveMcGregor to set
+     * @deprecated the value is not used by the search, limit the search with a
+     * {@link SearchBudget} instead
      */
+    @Deprecated
     public void setBondInSenSitiveMcGregor(double bondInSensitiveMcGregor) {
         this.bondInSensitiveMcGregor = bondInSensitiveMcGregor;
     }
@@ -0,0 +1,482 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * All-vs-all MCS similarity of a set of molecules. The atom based Tanimoto
+ * similarity (see {@link BaseMapping#getTanimotoSimilarity()}) of every pair
+ * is written to a memory mapped float matrix, so that the matrix of tens of
+ * thousands of molecules does not have to fit on the heap.
+ *
+ * The upper triangle is cut into square tiles which are computed in parallel.
+ * The molecules are perceived once; each tile works on its own copies of its
+ * row and column molecules, which keep the perception. Before a search the
+ * MCS size is bounded by the atom (type) counts the two molecules share; pairs
+ * whose bound on the similarity is below the threshold are not searched.
+ *
+ * <pre>
+ *  MCSSimilarityMatrix matrix = new MCSSimilarityMatrix(molecules, new File("similarity.bin"),
+ *          Algorithm.DEFAULT, true, true, true);
+ *  try {
+ *      matrix.setThreshold(0.6);
+ *      matrix.compute(8);
+ *      float similarity = matrix.getSimilarity(i, j);
+ *  } finally {
+ *      matrix.close();
+ *  }
+ * </pre>
+ *
+ * File layout: the upper triangle (i &lt; j) row by row as big endian floats,
+ * the value of pair (i, j) is at float index i * (2n - i - 1) / 2 + j - i - 1.
+ * Pairs skipped by the threshold, pairs which failed and pairs not computed
+ * yet are NaN; the file is filled with NaN when the matrix is created and
+ * again before every {@link #compute(int)}.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.MCSSimilarityMatrixTest")
+public final class MCSSimilarityMatrix implements Closeable {
+
+    private final static ILoggingTool logger
+            = LoggingToolFactory.createLoggingTool(MCSSimilarityMatrix.class);
+    /*
+     * floats per mapped segment (1 GB)
+     */
+    private static final int SEGMENT_SHIFT = 28;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private final List<IAtomContainer> molecules;
+    private final Algorithm algorithm;
+    private final boolean matchBonds;
+    private final boolean matchRings;
+    private final boolean matchAtomType;
+    private final int size;
+    private final int[] atomCounts;
+    /*
+     * per molecule: atom type ids and counts, sorted by id
+     */
+    private final int[][] typeIds;
+    private final int[][] typeCounts;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final AtomicLong searched = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private double threshold = 0.0;
+    private int tileSize = 64;
+    private long pairTimeoutMillis = 0;
+
+    /**
+     * Prepares the matrix of the molecules. The molecules are perceived (if
+     * rings are matched) and must not be modified while the matrix is in use.
+     *
+     * @param molecules molecules, row and column i is molecule i
+     * @param matrixFile file the matrix is written to, created or overwritten
+     * @param algorithm MCS algorithm
+     * @param matchBonds Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType Match atom types
+     * @throws IOException if the matrix file can not be created
+     */
+    @TestMethod("testCompute")
+    public MCSSimilarityMatrix(List<IAtomContainer> molecules, File matrixFile, Algorithm algorithm,
+            boolean matchBonds, boolean matchRings, boolean matchAtomType) throws IOException {
+        this.molecules = new ArrayList<IAtomContainer>(molecules);
+        this.algorithm = algorithm;
+        this.matchBonds = matchBonds;
+        this.matchRings = matchRings;
+        this.matchAtomType = matchAtomType;
+        this.size = molecules.size();
+        this.atomCounts = new int[size];
+        this.typeIds = new int[size][];
+        this.typeCounts = new int[size][];
+        Map<String, Integer> types = new HashMap<String, Integer>();
+        for (int i = 0; i < size; i++) {
+            IAtomContainer molecule = this.molecules.get(i);
+            if (matchRings) {
+                try {
+                    MoleculeInitializer.initializeMolecule(molecule);
+                } catch (CDKException e) {
+                    logger.warn("Perception of molecule " + i + " failed: " + e.getMessage());
+                }
+            }
+            atomCounts[i] = molecule.getAtomCount();
+            countTypes(i, molecule, types);
+        }
+
+        long pairs = pairCount();
+        this.file = new RandomAccessFile(matrixFile, "rw");
+        try {
+            file.setLength(pairs * 4);
+            FileChannel channel = file.getChannel();
+            this.segments = new MappedByteBuffer[(int) ((pairs + SEGMENT_MASK) >> SEGMENT_SHIFT)];
+            for (int s = 0; s < segments.length; s++) {
+                long start = ((long) s << SEGMENT_SHIFT) * 4;
+                long length = Math.min(pairs * 4 - start, (SEGMENT_MASK + 1) * 4);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+            }
+            clear();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void countTypes(int index, IAtomContainer molecule, Map<String, Integer> types) {
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (IAtom atom : molecule.atoms()) {
+            String type = matchAtomType && atom.getAtomTypeName() != null ? atom.getAtomTypeName() : atom.getSymbol();
+            Integer id = types.get(type);
+            if (id == null) {
+                id = types.size();
+                types.put(type, id);
+            }
+            Integer count = counts.get(id);
+            counts.put(id, count == null ? 1 : count + 1);
+        }
+        List<Integer> ids = new ArrayList<Integer>(counts.keySet());
+        Collections.sort(ids);
+        typeIds[index] = new int[ids.size()];
+        typeCounts[index] = new int[ids.size()];
+        for (int k = 0; k < ids.size(); k++) {
+            typeIds[index][k] = ids.get(k);
+            typeCounts[index][k] = counts.get(ids.get(k));
+        }
+    }
+
+    /**
+     * Pairs whose similarity can not reach the threshold are not searched.
+     *
+     * @param threshold smallest similarity of interest, 0 to search all pairs
+     */
+    @TestMethod("testThreshold")
+    public synchronized void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return smallest similarity of interest
+     */
+    @TestMethod("testThreshold")
+    public synchronized double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param tileSize rows and columns of a tile, 64 by default
+     */
+    public synchronized void setTileSize(int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Limits the time of every search. A search which runs out of time reports
+     * the best MCS found so far, so its similarity is a lower bound.
+     *
+     * @param pairTimeoutMillis time allowed per pair, 0 for no limit
+     */
+    public synchronized void setPairTimeout(long pairTimeoutMillis) {
+        this.pairTimeoutMillis = pairTimeoutMillis;
+    }
+
+    /**
+     * Computes the matrix.
+     *
+     * @param numberOfThreads threads to use, all processors if &lt;= 0
+     * @return number of pairs searched
+     * @throws InterruptedException if the calling thread was interrupted, the
+     * pairs not computed yet read as NaN
+     */
+    @TestMethod("testCompute,testThreshold")
+    public synchronized long compute(int numberOfThreads) throws InterruptedException {
+        int threads = numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        searched.set(0);
+        skipped.set(0);
+        clear();
+        try {
+            List<Callable<Void>> tiles = new ArrayList<Callable<Void>>();
+            for (int row = 0; row < size; row += tileSize) {
+                for (int column = row; column < size; column += tileSize) {
+                    tiles.add(new Tile(row, Math.min(row + tileSize, size),
+                            column, Math.min(column + tileSize, size), threshold, pairTimeoutMillis));
+                }
+            }
+            for (Future<Void> tile : executor.invokeAll(tiles)) {
+                try {
+                    tile.get();
+                } catch (ExecutionException e) {
+                    logger.error("Similarity tile failed: ", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return searched.get();
+    }
+
+    /**
+     * @return number of molecules
+     */
+    @TestMethod("testCompute")
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i molecule index
+     * @param j molecule index
+     * @return Tanimoto similarity of the pair, 1 for i = j, NaN if the pair was
+     * skipped or has not been computed
+     */
+    @TestMethod("testCompute,testThreshold,testNotComputed")
+    public float getSimilarity(int i, int j) {
+        if (i == j) {
+            return 1.0f;
+        }
+        long index = index(Math.min(i, j), Math.max(i, j));
+        return segments[(int) (index >> SEGMENT_SHIFT)].getFloat((int) (index & SEGMENT_MASK) * 4);
+    }
+
+    /**
+     * @param i molecule index
+     * @param j molecule index
+     * @return number of atoms in the MCS of the pair, -1 if the pair was
+     * skipped or has not been computed
+     */
+    @TestMethod("testCompute")
+    public int getCommonAtomCount(int i, int j) {
+        float similarity = getSimilarity(i, j);
+        if (Float.isNaN(similarity)) {
+            return -1;
+        }
+        int total = atomCounts[i] + atomCounts[j];
+        return (int) Math.round(similarity * total / (1.0 + similarity));
+    }
+
+    /**
+     * @param i molecule index
+     * @param j molecule index
+     * @return Euclidean distance of the pair, see
+     * {@link BaseMapping#getEuclideanDistance()}, NaN if the pair was skipped
+     * or has not been computed
+     */
+    @TestMethod("testCompute")
+    public double getEuclideanDistance(int i, int j) {
+        int common = getCommonAtomCount(i, j);
+        if (common < 0) {
+            return Double.NaN;
+        }
+        return Math.sqrt(atomCounts[i] + atomCounts[j] - 2 * common);
+    }
+
+    /**
+     * @return number of pairs searched by the last {@link #compute(int)}
+     */
+    @TestMethod("testThreshold")
+    public long getSearchedCount() {
+        return searched.get();
+    }
+
+    /**
+     * @return number of pairs skipped by the last {@link #compute(int)}
+     */
+    @TestMethod("testThreshold")
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Writes the matrix to disk and closes the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    @TestMethod("testCompute")
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        file.close();
+    }
+
+    /*
+     * NaN for every pair, a new file is zero filled and a reused one holds the
+     * values of an earlier run
+     */
+    private void clear() {
+        for (MappedByteBuffer segment : segments) {
+            for (int offset = 0; offset < segment.capacity(); offset += 4) {
+                segment.putFloat(offset, Float.NaN);
+            }
+        }
+    }
+
+    private long pairCount() {
+        return (long) size * (size - 1) / 2;
+    }
+
+    private long index(int i, int j) {
+        return (long) i * (2L * size - i - 1) / 2 + j - i - 1;
+    }
+
+    private void put(int i, int j, float similarity) {
+        long index = index(i, j);
+        ByteBuffer segment = segments[(int) (index >> SEGMENT_SHIFT)];
+        segment.putFloat((int) (index & SEGMENT_MASK) * 4, similarity);
+    }
+
+    /*
+     * atoms of the same (atom) type both molecules have, an upper bound of the
+     * MCS size
+     */
+    private int sharedAtoms(int i, int j) {
+        int[] ids1 = typeIds[i];
+        int[] ids2 = typeIds[j];
+        int shared = 0;
+        int a = 0;
+        int b = 0;
+        while (a < ids1.length && b < ids2.length) {
+            if (ids1[a] < ids2[b]) {
+                a++;
+            } else if (ids1[a] > ids2[b]) {
+                b++;
+            } else {
+                shared += Math.min(typeCounts[i][a++], typeCounts[j][b++]);
+            }
+        }
+        return shared;
+    }
+
+    private static float tanimoto(int common, int atoms1, int atoms2) {
+        return common == 0 ? 0.0f : (float) common / (atoms1 + atoms2 - common);
+    }
+
+    /*
+     * One block of the upper triangle. The searches perceive and may modify
+     * the molecules, so the tile works on its own copies.
+     */
+    private final class Tile implements Callable<Void> {
+
+        private final int rowStart;
+        private final int rowEnd;
+        private final int columnStart;
+        private final int columnEnd;
+        private final double threshold;
+        private final long timeoutMillis;
+        private final Map<Integer, IAtomContainer> copies = new HashMap<Integer, IAtomContainer>();
+
+        Tile(int rowStart, int rowEnd, int columnStart, int columnEnd, double threshold, long timeoutMillis) {
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.columnStart = columnStart;
+            this.columnEnd = columnEnd;
+            this.threshold = threshold;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public Void call() throws CloneNotSupportedException {
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int j = Math.max(columnStart, i + 1); j < columnEnd; j++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+                    int bound = sharedAtoms(i, j);
+                    if (tanimoto(bound, atomCounts[i], atomCounts[j]) < threshold) {
+                        put(i, j, Float.NaN);
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+                    put(i, j, similarity(i, j));
+                    searched.incrementAndGet();
+                }
+            }
+            return null;
+        }
+
+        private float similarity(int i, int j) throws CloneNotSupportedException {
+            if (atomCounts[i] == 0 || atomCounts[j] == 0) {
+                return 0.0f;
+            }
+            try {
+                SearchBudget budget = timeoutMillis > 0
+                        ? new SearchBudget(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), 0) : null;
+                Isomorphism comparison = new Isomorphism(copy(i), copy(j), algorithm,
+                        matchBonds, matchRings, matchAtomType, budget);
+                AtomAtomMapping mapping = comparison.getFirstAtomMapping();
+                return tanimoto(mapping.getCount(), atomCounts[i], atomCounts[j]);
+            } catch (RuntimeException e) {
+                logger.error("Similarity of " + i + " and " + j + " failed: ", e);
+                return Float.NaN;
+            }
+        }
+
+        private IAtomContainer copy(int index) throws CloneNotSupportedException {
+            IAtomContainer copy = copies.get(index);
+            if (copy == null) {
+                copy = molecules.get(index).clone();
+                if (matchRings) {
+                    MoleculeInitializer.setInitialized(copy);
+                }
+                copies.put(index, copy);
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.interfaces.IScreeningListener;
+import org.openscience.smsd.interfaces.ISubstructureScreen;
+
+/**
+ * Screens one query against a (large) set of targets on a thread pool.
+ *
+ * The engine runs either a substructure search, through a shared
+ * {@link CompiledQuery}, or an MCS search through {@link Isomorphism}, where a
+ * hit is a target with a non empty MCS. Targets are read lazily from the
+ * {@link Iterable} and at most <code>maxInFlight</code> targets are queued,
+ * running or waiting to be reported at any time, so the input can be a
+ * streaming reader over a library of millions of molecules.
+ *
+ * Hits are reported to an {@link IScreeningListener} (or put on a
+ * {@link BlockingQueue}) either in input order (default) or as they are found.
+ * A slow listener throttles the whole screen. {@link #cancel()}, interrupting
+ * the calling thread or an exception in a worker stops the screen; targets
+ * which are already running finish, but no more hits are reported.
+ *
+ * <pre>
+ * CompiledQuery query = new CompiledQuery(queryContainer, true, false, true);
+ * ScreeningEngine engine = new ScreeningEngine(query, 4);
+ * try {
+ *     int hits = engine.screen(targets, new IScreeningListener() {
+ *         public void hit(ScreeningHit hit) {
+ *             System.out.println(hit.getIndex() + " " + hit.getTarget().getID());
+ *         }
+ *     });
+ * } finally {
+ *     engine.shutdown();
+ * }
+ * </pre>
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.ScreeningEngineTest")
+public final class ScreeningEngine {
+
+    private final static ILoggingTool logger
+            = LoggingToolFactory.createLoggingTool(ScreeningEngine.class);
+    private final CompiledQuery compiledQuery;
+    private final IAtomContainer query;
+    private final Algorithm algorithm;
+    private final boolean matchBonds;
+    private final boolean matchRings;
+    private final boolean matchAtomType;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int maxInFlight;
+    private boolean ordered = true;
+    private boolean findAll = false;
+    private volatile boolean cancelled = false;
+    private ISubstructureScreen screen = null;
+
+    /**
+     * Substructure screening on a private pool of threads.
+     *
+     * @param query compiled query
+     * @param numberOfThreads threads to use, all processors if &lt;= 0
+     */
+    public ScreeningEngine(CompiledQuery query, int numberOfThreads) {
+        this(query, null, null, false, false, false,
+                Executors.newFixedThreadPool(threads(numberOfThreads)), true, threads(numberOfThreads) * 4);
+    }
+
+    /**
+     * Substructure screening on a caller supplied executor.
+     *
+     * @param query compiled query
+     * @param executor executor running the searches, not shut down by the engine
+     * @param maxInFlight maximum number of targets submitted and not yet reported
+     */
+    public ScreeningEngine(CompiledQuery query, ExecutorService executor, int maxInFlight) {
+        this(query, null, null, false, false, false, executor, false, maxInFlight);
+    }
+
+    /**
+     * MCS screening on a private pool of threads.
+     *
+     * @param query query molecule
+     * @param algorithm MCS algorithm
+     * @param matchBonds Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType Match atom types
+     * @param numberOfThreads threads to use, all processors if &lt;= 0
+     */
+    public ScreeningEngine(IAtomContainer query, Algorithm algorithm,
+            boolean matchBonds, boolean matchRings, boolean matchAtomType, int numberOfThreads) {
+        this(null, query, algorithm, matchBonds, matchRings, matchAtomType,
+                Executors.newFixedThreadPool(threads(numberOfThreads)), true, threads(numberOfThreads) * 4);
+    }
+
+    /**
+     * MCS screening on a caller supplied executor.
+     *
+     * @param query query molecule
+     * @param algorithm MCS algorithm
+     * @param matchBonds Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType Match atom types
+     * @param executor executor running the searches, not shut down by the engine
+     * @param maxInFlight maximum number of targets submitted and not yet reported
+     */
+    public ScreeningEngine(IAtomContainer query, Algorithm algorithm,
+            boolean matchBonds, boolean matchRings, boolean matchAtomType,
+            ExecutorService executor, int maxInFlight) {
+        this(null, query, algorithm, matchBonds, matchRings, matchAtomType, executor, false, maxInFlight);
+    }
+
+    private ScreeningEngine(CompiledQuery compiledQuery, IAtomContainer query, Algorithm algorithm,
+            boolean matchBonds, boolean matchRings, boolean matchAtomType,
+            ExecutorService executor, boolean ownExecutor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.compiledQuery = compiledQuery;
+        this.query = query;
+        this.algorithm = algorithm;
+        this.matchBonds = matchBonds;
+        this.matchRings = matchRings;
+        this.matchAtomType = matchAtomType;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    private static int threads(int numberOfThreads) {
+        return numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Screens the targets and reports every hit to the listener. The call
+     * returns when all the targets are processed or the screen is stopped.
+     *
+     * @param targets targets, read once and lazily
+     * @param listener receives the hits
+     * @return number of hits reported
+     * @throws CDKException if a search failed
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    @TestMethod("testScreen")
+    public int screen(Iterable<IAtomContainer> targets, IScreeningListener listener)
+            throws CDKException, InterruptedException {
+        cancelled = false;
+        final Run run = new Run(listener);
+        int index = 0;
+        try {
+            for (IAtomContainer target : targets) {
+                if (cancelled || run.failure != null) {
+                    break;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                run.permits.acquire();
+                final int position = index++;
+                final IAtomContainer molecule = target;
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            run.process(position, molecule);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    run.fail(ex);
+                    run.deliver(position, null);
+                }
+            }
+            run.permits.acquire(maxInFlight);
+            run.permits.release(maxInFlight);
+        } catch (InterruptedException ex) {
+            cancelled = true;
+            run.awaitQuietly();
+            throw ex;
+        }
+        if (run.failure != null) {
+            throw new CDKException("Screening failed: " + run.failure.getMessage(), run.failure);
+        }
+        return run.hitCount;
+    }
+
+    /**
+     * Screens the targets and puts every hit on the queue. The call blocks until
+     * the targets are processed, so a bounded queue has to be drained by another
+     * thread.
+     *
+     * @param targets targets, read once and lazily
+     * @param hits queue receiving the hits
+     * @return number of hits reported
+     * @throws CDKException if a search failed
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    @TestMethod("testScreenToQueue")
+    public int screen(Iterable<IAtomContainer> targets, final BlockingQueue<ScreeningHit> hits)
+            throws CDKException, InterruptedException {
+        return screen(targets, new IScreeningListener() {
+            @Override
+            public void hit(ScreeningHit hit) throws InterruptedException {
+                hits.put(hit);
+            }
+        });
+    }
+
+    /**
+     * Stops the screen in progress. The flag is cleared by the next call of
+     * screen.
+     */
+    @TestMethod("testCancel")
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the last screen was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Shuts down the thread pool if it was created by the engine.
+     */
+    public void shutdown() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private List<AtomAtomMapping> evaluate(IAtomContainer target, Queue<IAtomContainer> queryCopies)
+            throws CDKException {
+        if (compiledQuery != null) {
+            ISubstructureScreen extraScreen = screen;
+            if (extraScreen != null && !extraScreen.mayMatch(compiledQuery.getQuery(), target)) {
+                return Collections.emptyList();
+            }
+            if (findAll) {
+                return compiledQuery.findAll(target);
+            }
+            AtomAtomMapping mapping = compiledQuery.findFirst(target);
+            if (mapping == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(mapping);
+        }
+        /*
+         * Isomorphism perceives (and so modifies) the query, every search
+         * borrows a copy of its own
+         */
+        IAtomContainer copy = queryCopies.poll();
+        if (copy == null) {
+            try {
+                copy = query.clone();
+            } catch (CloneNotSupportedException ex) {
+                throw new CDKException("Query molecule can not be cloned", ex);
+            }
+        }
+        try {
+            Isomorphism comparison = new Isomorphism(copy, target, algorithm, matchBonds, matchRings, matchAtomType);
+            if (comparison.getMappingCount() == 0 || comparison.getFirstAtomMapping().isEmpty()) {
+                return Collections.emptyList();
+            }
+            return comparison.getAllAtomMapping();
+        } finally {
+            queryCopies.offer(copy);
+        }
+    }
+
+    /*
+     * State of one screen. Each submitted target holds a permit until it is
+     * reported (or dropped), so that in ordered mode the results waiting for a
+     * slow predecessor are bounded by maxInFlight as well. The query copies
+     * belong to the run, so nothing stays behind on the executor's threads.
+     */
+    private final class Run {
+
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final IScreeningListener listener;
+        private final Queue<IAtomContainer> queryCopies = new ConcurrentLinkedQueue<IAtomContainer>();
+        private final Map<Integer, ScreeningHit> pending = new HashMap<Integer, ScreeningHit>();
+        /*
+         * results ready to be reported, in reporting order
+         */
+        private final Queue<ScreeningHit> ready = new LinkedList<ScreeningHit>();
+        private boolean draining = false;
+        private int next = 0;
+        private int hitCount = 0;
+        private volatile Throwable failure = null;
+
+        Run(IScreeningListener listener) {
+            this.listener = listener;
+        }
+
+        void process(int position, IAtomContainer target) {
+            ScreeningHit hit = null;
+            try {
+                if (!cancelled && failure == null) {
+                    List<AtomAtomMapping> mappings = evaluate(target, queryCopies);
+                    if (!mappings.isEmpty()) {
+                        hit = new ScreeningHit(position, target, mappings);
+                    }
+                }
+            } catch (Throwable ex) {
+                fail(ex);
+            }
+            deliver(position, hit);
+        }
+
+        synchronized void fail(Throwable ex) {
+            if (failure == null) {
+                logger.error("Screening failed: ", ex);
+                failure = ex;
+            }
+        }
+
+        /*
+         * The listener is called outside the lock, so a slow listener only
+         * holds up the thread reporting to it. One thread at a time drains the
+         * ready results, which keeps the listener calls serial and in order;
+         * the other workers queue their results and go on.
+         */
+        void deliver(int position, ScreeningHit hit) {
+            synchronized (this) {
+                if (ordered) {
+                    pending.put(position, hit);
+                    while (pending.containsKey(next)) {
+                        ready.add(pending.remove(next));
+                        next++;
+                    }
+                } else {
+                    ready.add(hit);
+                }
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                ScreeningHit result;
+                synchronized (this) {
+                    if (ready.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    result = ready.poll();
+                }
+                emit(result);
+            }
+        }
+
+        private void emit(ScreeningHit hit) {
+            try {
+                if (hit != null && !cancelled && failure == null) {
+                    listener.hit(hit);
+                    hitCount++;
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                fail(ex);
+            } finally {
+                permits.release();
+            }
+        }
+
+        void awaitQuietly() {
+            permits.acquireUninterruptibly(maxInFlight);
+            permits.release(maxInFlight);
+        }
+    }
+
+    /**
+     * @return true if hits are reported in input order
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @param ordered report hits in input order (true) or as they are found
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * @return true if all the substructure mappings are reported for a hit
+     */
+    public boolean isFindAll() {
+        return findAll;
+    }
+
+    /**
+     * @param findAll report all the substructure mappings (true) or only the
+     * first one for each hit. Ignored in MCS mode.
+     */
+    public void setFindAll(boolean findAll) {
+        this.findAll = findAll;
+    }
+
+    /**
+     * @return the screen run before each substructure search, or null
+     */
+    public ISubstructureScreen getScreen() {
+        return screen;
+    }
+
+    /**
+     * Sets a screen run before each substructure search, targets it rejects
+     * are not searched. The compiled query already applies the path
+     * fingerprint screen, this one comes on top of it. Ignored in MCS mode.
+     *
+     * @param screen screen or null for none
+     */
+    public void setScreen(ISubstructureScreen screen) {
+        this.screen = screen;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * A target which matched the query in a {@link ScreeningEngine} run.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+public final class ScreeningHit {
+
+    private final int index;
+    private final IAtomContainer target;
+    private final List<AtomAtomMapping> mappings;
+
+    /**
+     *
+     * @param index position of the target in the input
+     * @param target matched target
+     * @param mappings mappings of the query on the target
+     */
+    public ScreeningHit(int index, IAtomContainer target, List<AtomAtomMapping> mappings) {
+        this.index = index;
+        this.target = target;
+        List<AtomAtomMapping> snapshots = new ArrayList<AtomAtomMapping>(mappings.size());
+        for (AtomAtomMapping mapping : mappings) {
+            snapshots.add(mapping.snapshot());
+        }
+        this.mappings = Collections.unmodifiableList(snapshots);
+    }
+
+    /**
+     * @return the position of the target in the input (0 based)
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the target
+     */
+    public IAtomContainer getTarget() {
+        return target;
+    }
+
+    /**
+     * @return all the mappings found for this target, as immutable snapshots
+     */
+    public List<AtomAtomMapping> getAllAtomMapping() {
+        return mappings;
+    }
+
+    /**
+     * @return the first mapping found for this target
+     */
+    public AtomAtomMapping getFirstAtomMapping() {
+        return mappings.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return "ScreeningHit{" + "index=" + index + ", mappings=" + mappings.size() + '}';
+    }
+}
@@ -35,6 +35,12 @@ import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.algorithm.single.SingleMappingHandler;
 import org.openscience.smsd.algorithm.vflib.VF2Sub;
 import org.openscience.smsd.algorithm.vflib.substructure.VF2;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.interfaces.ISubstructureScreen;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  * This is an ultra fast method to report if query is a substructure for target molecule. If this case is true then it
@@ -69,7 +75,10 @@ import org.openscience.smsd.algorithm.vflib.substructure.VF2;
  */
 public final class Substructure extends BaseMapping {
 
+    private static final ISubstructureScreen DEFAULT_SCREEN = new FingerprintScreen();
     private int vfMappingSize = -1;
+    private final SearchBudget budget;
+    private final ISubstructureScreen screen;
     private final ILoggingTool Logger
             = LoggingToolFactory.createLoggingTool(Substructure.class);
 
@@ -91,12 +100,61 @@ public final class Substructure extends BaseMapping {
             boolean matchRings,
             boolean matchAtomType,
             boolean findAllSubgraph) throws CDKException {
+        this(query, target, shouldMatchBonds, matchRings, matchAtomType, findAllSubgraph, null);
+    }
+
+    /**
+     * Constructor for VF Substructure Algorithm within a search budget. If the
+     * budget runs out {@link #isExhaustive()} returns false.
+     *
+     * @param query
+     * @param target
+     * @param shouldMatchBonds Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType
+     * @param findAllSubgraph report all subgraphs
+     * @param budget search budget or null
+     * @throws CDKException
+     */
+    public Substructure(
+            IAtomContainer query,
+            IAtomContainer target,
+            boolean shouldMatchBonds,
+            boolean matchRings,
+            boolean matchAtomType,
+            boolean findAllSubgraph,
+            SearchBudget budget) throws CDKException {
+        this(query, target, shouldMatchBonds, matchRings, matchAtomType, findAllSubgraph, budget, DEFAULT_SCREEN);
+    }
+
+    /**
+     * Constructor for VF Substructure Algorithm with a custom screen. Pairs
+     * rejected by the screen are reported as non subgraphs without running
+     * VF2. By default a {@link FingerprintScreen} is used.
+     *
+     * @param query
+     * @param target
+     * @param shouldMatchBonds Match bond types (i.e. double to double etc)
+     * @param matchRings Match ring atoms and ring size
+     * @param matchAtomType
+     * @param findAllSubgraph report all subgraphs
+     * @param budget search budget or null
+     * @param screen screen run before the search, null to always search
+     * @throws CDKException
+     */
+    public Substructure(
+            IAtomContainer query,
+            IAtomContainer target,
+            boolean shouldMatchBonds,
+            boolean matchRings,
+            boolean matchAtomType,
+            boolean findAllSubgraph,
+            SearchBudget budget,
+            ISubstructureScreen screen) throws CDKException {
         super(shouldMatchBonds, matchRings, matchAtomType, query, target);
-        if (findAllSubgraph) {
-            setSubgraph(findSubgraphs());
-        } else {
-            setSubgraph(findSubgraph());
-        }
+        this.budget = budget;
+        this.screen = screen;
+        search(findAllSubgraph);
     }
 
     /**
@@ -111,21 +169,40 @@ public final class Substructure extends BaseMapping {
             IQueryAtomContainer query,
             IAtomContainer target,
             boolean findAllSubgraph) throws CDKException {
+        this(query, target, findAllSubgraph, null);
+    }
+
+    /**
+     * Constructor for VF Substructure Algorithm within a search budget
+     *
+     * @param query
+     * @param target
+     * @param findAllSubgraph report all subgraphs
+     * @param budget search budget or null
+     * @throws CDKException
+     */
+    public Substructure(
+            IQueryAtomContainer query,
+            IAtomContainer target,
+            boolean findAllSubgraph,
+            SearchBudget budget) throws CDKException {
         super(true, true, true, query, target);
-        if (findAllSubgraph) {
-            setSubgraph(findSubgraphs());
-        } else {
-            setSubgraph(findSubgraph());
-        }
+        this.budget = budget;
+        this.screen = null;
+        search(findAllSubgraph);
     }
 
-    private synchronized boolean hasMap(AtomAtomMapping map, List<AtomAtomMapping> mapGlobal) {
-        for (AtomAtomMapping test : mapGlobal) {
-            if (test.equals(map)) {
-                return true;
+    private void search(boolean findAllSubgraph) throws CDKException {
+        SearchStats stats = SearchStats.begin("Substructure", getQueryContainer(), getTargetContainer());
+        try {
+            if (findAllSubgraph) {
+                setSubgraph(findSubgraphs());
+            } else {
+                setSubgraph(findSubgraph());
             }
+        } finally {
+            SearchStats.finish(stats, !isExhaustive());
         }
-        return false;
     }
 
     /**
@@ -144,17 +221,21 @@ public final class Substructure extends BaseMapping {
         if (getQueryContainer().getAtomCount() == 1 || getTargetContainer().getAtomCount() == 1) {
             singleMapping(isMatchBonds());
         } else {
-            if (getQueryContainer().getAtomCount() > getTargetContainer().getAtomCount()) {
+            if (getQueryContainer().getAtomCount() > getTargetContainer().getAtomCount()
+                    || !isScreenPassed()) {
                 return false;
             }
             VF2 mapper;
+            long start = System.nanoTime();
             List<AtomAtomMapping> mappingsVF2 = new ArrayList<AtomAtomMapping>();
             if (getQueryContainer() instanceof IQueryAtomContainer) {
-                mapper = new VF2((IQueryAtomContainer) getQueryContainer(), getTargetContainer());
+                mapper = new VF2((IQueryAtomContainer) getQueryContainer(), getTargetContainer(), budget);
             } else {
-                mapper = new VF2(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType());
+                mapper = new VF2(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
             }
             isSubgraph = mapper.isSubgraph();
+            SearchStats.record(SearchStats.current(), Stage.SUBSTRUCTURE, start);
+            setExhaustive(!mapper.isTimeout());
             List<AtomAtomMapping> atomMappings = mapper.getAllAtomMapping();
 //            System.out.println("Mapping Size " + atomMappings.getCount());
             if (isSubgraph) {
@@ -183,17 +264,21 @@ public final class Substructure extends BaseMapping {
         if (getQueryContainer().getAtomCount() == 1 || getTargetContainer().getAtomCount() == 1) {
             singleMapping(isMatchBonds());
         } else {
-            if (getQueryContainer().getAtomCount() > getTargetContainer().getAtomCount()) {
+            if (getQueryContainer().getAtomCount() > getTargetContainer().getAtomCount()
+                    || !isScreenPassed()) {
                 return false;
             } else {
                 List<AtomAtomMapping> mappingsVF2 = new ArrayList<AtomAtomMapping>();
                 VF2Sub mapper;
+                long start = System.nanoTime();
                 if (getQueryContainer() instanceof IQueryAtomContainer) {
-                    mapper = new VF2Sub((IQueryAtomContainer) getQueryContainer(), getTargetContainer());
+                    mapper = new VF2Sub((IQueryAtomContainer) getQueryContainer(), getTargetContainer(), budget);
                 } else {
-                    mapper = new VF2Sub(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType());
+                    mapper = new VF2Sub(getQueryContainer(), getTargetContainer(), isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
                 }
                 isSubgraph = mapper.isSubgraph();
+                SearchStats.record(SearchStats.current(), Stage.SUBSTRUCTURE, start);
+                setExhaustive(!mapper.isTimeout());
                 List<AtomAtomMapping> atomMappings = mapper.getAllAtomMapping();
 //                    System.out.println("Mapping Size " + atomMapping.getCount());
                 if (isSubgraph) {
@@ -207,15 +292,29 @@ public final class Substructure extends BaseMapping {
         return isSubgraph;
     }
 
+    private boolean isScreenPassed() {
+        if (screen == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean passed = screen.mayMatch(getQueryContainer(), getTargetContainer());
+        SearchStats.record(SearchStats.current(), Stage.SCREEN, start);
+        return passed;
+    }
+
     private synchronized void setVFMappings(List<AtomAtomMapping> mappingsVF2) {
         int counter = 0;
+        MappingSet storedMappings = new MappingSet();
+        for (AtomAtomMapping mapping : getMCSList()) {
+            storedMappings.add(mapping);
+        }
         for (AtomAtomMapping solution : mappingsVF2) {
             AtomAtomMapping atomatomMapping = new AtomAtomMapping(getQueryContainer(), getTargetContainer());
             if (solution.getCount() > vfMappingSize) {
                 this.vfMappingSize = solution.getCount();
                 counter = 0;
             }
-            for (Map.Entry<IAtom, IAtom> mapping : solution.getMappingsByAtoms().entrySet()) {
+            for (Map.Entry<IAtom, IAtom> mapping : solution.getMappingsByAtomsView().entrySet()) {
                 IAtom qAtom;
                 IAtom tAtom;
 
@@ -232,8 +331,8 @@ public final class Substructure extends BaseMapping {
                     }
                 }
             }
-            if (!atomatomMapping.isEmpty() && !hasMap(atomatomMapping, getMCSList())
-                    && atomatomMapping.getCount() == vfMappingSize) {
+            if (!atomatomMapping.isEmpty() && atomatomMapping.getCount() == vfMappingSize
+                    && storedMappings.add(atomatomMapping)) {
                 getMCSList().add(counter, atomatomMapping);
                 counter++;
             }
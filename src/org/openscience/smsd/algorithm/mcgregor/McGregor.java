@@ -26,17 +26,18 @@ package org.openscience.smsd.algorithm.mcgregor;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import org.openscience.cdk.annotations.TestClass;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.smsd.helper.BinaryTree;
+import org.openscience.smsd.helper.CompiledGraph;
 import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  * Class which reports MCS solutions based on the McGregor algorithm published in 1982.
@@ -46,6 +47,11 @@ import org.openscience.smsd.tools.IterationManager;
  *
  * @cdk.cite SMSD2009}. </p>
  *
+ * The molecules are compiled once ({@link CompiledGraph}), atom symbols are interned to int labels and bond pair
+ * matches are cached, so that a level of the search works on primitive arrays only. The arc matrix of a level is
+ * shared by the whole branch and bound search: every change is recorded in an undo log and rolled back when the
+ * branch returns, only the surviving matrices are copied.
+ *
  * @cdk.module smsd
  * @cdk.githash
  *
@@ -54,6 +60,9 @@ import org.openscience.smsd.tools.IterationManager;
 @TestClass("org.openscience.cdk.smsd.algorithm.mcgregor.McGregorTest")
 public final class McGregor {
 
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte MISMATCH = 2;
     private final boolean shouldMatchRings;
     private final boolean bondMatch;
     private final boolean matchAtomType;
@@ -63,11 +72,11 @@ public final class McGregor {
     /**
      * @return the timeout
      */
-    public synchronized boolean isTimeout() {
+    public boolean isTimeout() {
         return timeout;
     }
 
-    private synchronized boolean checkTimeout() {
+    private boolean checkTimeout() {
         if (getIterationManager().isMaxIteration()) {
             this.timeout = true;
 //            System.err.println("McGregor MCS has hit the iteration limits " + getIterationManager().getCounter());
@@ -96,24 +105,32 @@ public final class McGregor {
      */
     private final IAtomContainer source;
     private final IAtomContainer target;
-    private BinaryTree last = null;
+    private final CompiledGraph sourceGraph;
+    private final CompiledGraph targetGraph;
+    private final int[] sourceLabels;
+    private final int[] targetLabels;
+    /*
+     * match of a source bond with a target bond, filled on demand
+     */
+    private final byte[][] bondMatches;
+    private final boolean queryContainer;
     private BinaryTree first = null;
-    private final Stack<List<Integer>> bestARCS;
-    private final List<Integer> modifiedARCS;
+    private final Stack<int[]> bestARCS;
     private int bestarcsleft;
     private int globalMCSSize;
     private final List<List<Integer>> mappings;
+    private boolean newMatrix = false;
     /*
-     * This should be more or equal to all the atom types
+     * arc matrix of the current level, the number of arcs set and the undo log of the cleared arcs
      */
-    private final String[] SIGNS = {
-        "$1", "$2", "$3", "$4", "$5", "$6", "$7", "$8", "$9", "$10", "$11", "$12",
-        "$13", "$15", "$16", "$17", "$18", "$19", "$20", "$21", "$22", "$23", "$24",
-        "$25", "$26", "$27", "$28", "$29", "$30", "$31", "$32", "$33", "$34", "$35",
-        "$36", "$37", "$38", "$39", "$40", "$41", "$42", "$43", "$44", "$45", "$46",
-        "$47", "$48", "$49", "$50", "$51", "$52", "$53", "$54", "$55"
-    };
-    private boolean newMatrix = false;
+    private boolean[] arcs;
+    private int arcCount;
+    private int[] undoLog;
+    private int undoSize;
+    private int[] neighborAtomsA;
+    private int[] neighborAtomsB;
+    private int neighborBondNumA;
+    private int neighborBondNumB;
 
     /**
      * Constructor for the McGregor algorithm.
@@ -131,14 +148,36 @@ public final class McGregor {
             boolean shouldMatchBonds,
             boolean shouldMatchRings,
             boolean matchAtomType) {
+        this(source, target, mappings, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * Constructor for the McGregor algorithm with a search budget, which
+     * replaces the default iteration cap unless it keeps the caps.
+     *
+     * @param source
+     * @param target
+     * @param mappings
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public McGregor(IAtomContainer source,
+            IAtomContainer target,
+            List<List<Integer>> mappings,
+            boolean shouldMatchBonds,
+            boolean shouldMatchRings,
+            boolean matchAtomType,
+            SearchBudget budget) {
         this.shouldMatchRings = shouldMatchRings;
         this.bondMatch = shouldMatchBonds;
         this.matchAtomType = matchAtomType;
         this.source = source;
         this.target = target;
-        this.mappings = Collections.synchronizedList(mappings);
+        this.mappings = mappings;
         this.bestarcsleft = 0;
-        setIterationManager(new IterationManager((this.source.getAtomCount() + this.target.getAtomCount()) * 1000));
+        setIterationManager(new IterationManager((this.source.getAtomCount() + this.target.getAtomCount()) * 1000, budget, "McGregor"));
 
         if (!mappings.isEmpty()) {
             this.globalMCSSize = mappings.get(0).size();
@@ -146,9 +185,15 @@ public final class McGregor {
             this.globalMCSSize = 0;
         }
 //        System.out.println("globalMCSSize " + globalMCSSize);
-        this.modifiedARCS = Collections.synchronizedList(new ArrayList<Integer>());
-        this.bestARCS = new Stack<List<Integer>>();
+        this.bestARCS = new Stack<int[]>();
         this.newMatrix = false;
+        this.queryContainer = source instanceof IQueryAtomContainer;
+        this.sourceGraph = new CompiledGraph(source);
+        this.targetGraph = new CompiledGraph(target);
+        Map<String, Integer> dictionary = McGregorChecks.newDictionary();
+        this.sourceLabels = McGregorChecks.symbolLabels(sourceGraph, dictionary);
+        this.targetLabels = McGregorChecks.symbolLabels(targetGraph, dictionary);
+        this.bondMatches = new byte[sourceGraph.getBondCount()][targetGraph.getBondCount()];
     }
 
     /**
@@ -159,23 +204,7 @@ public final class McGregor {
      * @param mappings
      */
     public McGregor(IQueryAtomContainer source, IAtomContainer target, List<List<Integer>> mappings) {
-        this.shouldMatchRings = true;
-        this.bondMatch = true;
-        this.matchAtomType = true;
-        this.source = source;
-        this.target = target;
-        this.mappings = Collections.synchronizedList(mappings);
-        this.bestarcsleft = 0;
-        setIterationManager(new IterationManager((this.source.getAtomCount() + this.target.getAtomCount()) * 1000));
-
-        if (!mappings.isEmpty()) {
-            this.globalMCSSize = mappings.get(0).size();
-        } else {
-            this.globalMCSSize = 0;
-        }
-        this.modifiedARCS = Collections.synchronizedList(new ArrayList<Integer>());
-        this.bestARCS = new Stack<List<Integer>>();
-        this.newMatrix = false;
+        this(source, target, mappings, true, true, true);
     }
 
     /**
@@ -185,164 +214,82 @@ public final class McGregor {
      * @param present_Mapping
      * @throws IOException
      */
-    public synchronized void startMcGregorIteration(int largestMappingSize, Map<Integer, Integer> present_Mapping) throws IOException {
+    public void startMcGregorIteration(int largestMappingSize, Map<Integer, Integer> present_Mapping) throws IOException {
 
+        long start = System.nanoTime();
         this.globalMCSSize = (largestMappingSize / 2);
 //        System.out.println("globalMCSSize " + globalMCSSize);
-        List<String> c_tab1_copy = McGregorChecks.generateCTabCopy(source);
-        List<String> c_tab2_copy = McGregorChecks.generateCTabCopy(target);
 
         //find mapped atoms of both molecules and store these in mappedAtoms
-        List<Integer> mapped_atoms = new ArrayList<Integer>();
+        int mapping_size = present_Mapping.size();
+        int[] mapped_atoms = new int[mapping_size * 2];
+        int counter = 0;
 //        System.out.println("\nMapped Atoms");
         for (Map.Entry<Integer, Integer> map : present_Mapping.entrySet()) {
 //            System.out.println("i:" + map.getKey() + " j:" + map.getValue());
-            mapped_atoms.add(map.getKey());
-            mapped_atoms.add(map.getValue());
+            mapped_atoms[counter++] = map.getKey();
+            mapped_atoms[counter++] = map.getValue();
         }
-        int mapping_size = present_Mapping.size();
 
-        List<Integer> i_bond_neighborsA = new ArrayList<Integer>();
-        List<String> c_bond_neighborsA = new ArrayList<String>();
-
-        List<Integer> i_bond_setA = new ArrayList<Integer>();
-        List<String> c_bond_setA = new ArrayList<String>();
-
-        List<Integer> i_bond_neighborsB = new ArrayList<Integer>();
-        List<Integer> i_bond_setB = new ArrayList<Integer>();
-        List<String> c_bond_neighborsB = new ArrayList<String>();
-        List<String> c_bond_setB = new ArrayList<String>();
-
-        //find unmapped atoms of molecule A
-        List<Integer> unmapped_atoms_molA = McGregorChecks.markUnMappedAtoms(true, source, present_Mapping);
-        int counter = 0;
-        int gSetBondNumA = 0;
-        int gSetBondNumB = 0;
-        int gNeighborBondnumA = 0; //number of remaining molecule A bonds after the clique search, which are neighbors of the MCS_1
-        int gNeighborBondNumB = 0; //number of remaining molecule B bonds after the clique search, which are neighbors of the MCS_1
-
-        QueryProcessor queryProcess = new QueryProcessor(
-                c_tab1_copy,
-                c_tab2_copy,
-                SIGNS,
-                gNeighborBondnumA,
-                gSetBondNumA,
-                i_bond_neighborsA,
-                c_bond_neighborsA,
-                mapping_size,
-                i_bond_setA,
-                c_bond_setA);
-
-        if (!(source instanceof IQueryAtomContainer)) {
-            queryProcess.process(
-                    source,
-                    target,
-                    unmapped_atoms_molA,
-                    mapped_atoms,
-                    counter);
-        } else {
-            queryProcess.process(
-                    (IQueryAtomContainer) source,
-                    target,
-                    unmapped_atoms_molA,
-                    mapped_atoms,
-                    counter);
+        int[] bondsA = new int[sourceGraph.getBondCount()];
+        for (int a = 0; a < bondsA.length; a++) {
+            bondsA[a] = a;
+        }
+        int[] bondsB = new int[targetGraph.getBondCount()];
+        for (int b = 0; b < bondsB.length; b++) {
+            bondsB[b] = b;
         }
 
-        gSetBondNumA = queryProcess.getBondNumA();
-        gNeighborBondnumA = queryProcess.getNeighborBondNumA();
-        i_bond_neighborsA = queryProcess.getIBondNeighboursA();
-        c_bond_neighborsA = queryProcess.getCBondNeighborsA();
-
-        //find unmapped atoms of molecule B
-        List<Integer> unmapped_atoms_molB = McGregorChecks.markUnMappedAtoms(false, target, present_Mapping);
-
-//        System.out.println("unmapped_atoms_molB: " + unmapped_atoms_molB.size());
-        //Extract bonds which are related with unmapped atoms of molecule B.
-        //In case that unmapped atoms are connected with already mapped atoms, the mapped atoms are labelled with
-        //new special signs -> the result are two vectors: cBondNeighborsA and int_bonds_molB, which contain those
-        //bonds of molecule B, which are relevant for the McGregorBondTypeInSensitive algorithm.
-        //The special signs must be transfered to the corresponding atoms of molecule A
-        TargetProcessor targetProcess = new TargetProcessor(
-                c_tab2_copy,
-                SIGNS,
-                gNeighborBondNumB,
-                gSetBondNumB,
-                i_bond_neighborsB,
-                c_bond_neighborsB,
-                gNeighborBondnumA,
-                i_bond_neighborsA,
-                c_bond_neighborsA);
-
-        targetProcess.process(
-                target,
-                unmapped_atoms_molB,
-                mapping_size,
-                i_bond_setB,
-                c_bond_setB,
-                mapped_atoms,
-                counter);
+        //Extract bonds which are related with unmapped atoms of both molecules. Bonds joining an unmapped atom to a
+        //mapped one are the neighbours of the MCS which can be used to extend it.
+        QueryProcessor queryProcess = new QueryProcessor(sourceGraph, sourceLabels);
+        queryProcess.process(bondsA, bondsA.length,
+                McGregorChecks.mappedCount(mapped_atoms, mapping_size, 0, sourceGraph.getAtomCount()));
 
-        gSetBondNumB = targetProcess.getBondNumB();
-        gNeighborBondNumB = targetProcess.getNeighborBondNumB();
-        i_bond_neighborsB = targetProcess.getIBondNeighboursB();
-        c_bond_neighborsB = targetProcess.getCBondNeighborsB();
+        TargetProcessor targetProcess = new TargetProcessor(targetGraph, targetLabels);
+        targetProcess.process(bondsB, bondsB.length,
+                McGregorChecks.mappedCount(mapped_atoms, mapping_size, 1, targetGraph.getAtomCount()));
 
         boolean dummy = false;
 
         McgregorHelper mcGregorHelper = new McgregorHelper(dummy,
-                present_Mapping.size(),
+                mapping_size,
                 mapped_atoms,
-                gNeighborBondnumA,
-                gNeighborBondNumB,
-                i_bond_neighborsA,
-                i_bond_neighborsB,
-                c_bond_neighborsA,
-                c_bond_neighborsB,
-                gSetBondNumA,
-                gSetBondNumB,
-                i_bond_setA,
-                i_bond_setB,
-                c_bond_setA,
-                c_bond_setB);
+                queryProcess,
+                targetProcess);
         iterator(mcGregorHelper);
+        SearchStats.record(SearchStats.current(), Stage.MCGREGOR, start);
     }
 
-    private synchronized int iterator(McgregorHelper mcGregorHelper) throws IOException {
+    private int iterator(McgregorHelper mcGregorHelper) throws IOException {
 
         boolean mappingCheckFlag = mcGregorHelper.isMappingCheckFlag();
         int mappedAtomCount = mcGregorHelper.getMappedAtomCount();
-        List<Integer> mappedAtoms = new ArrayList<Integer>(mcGregorHelper.getMappedAtomsOrg());
+        int[] mappedAtoms = mcGregorHelper.getMappedAtomsOrg();
         int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
         int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
 
-//        //check possible mappings:
-        boolean furtherMappingFlag = McGregorChecks.isFurtherMappingPossible(source, target, mcGregorHelper, isBondMatch(), isMatchRings(), isMatchAtomType());
+        //check possible mappings:
+        boolean furtherMappingFlag = setModifedArcs(mcGregorHelper);
 
         if (neighborBondNumA == 0 || neighborBondNumB == 0 || mappingCheckFlag || !furtherMappingFlag) {
             setFinalMappings(mappedAtoms, mappedAtomCount);
             return 0;
         }
 
-        modifiedARCS.clear();
-        int size = neighborBondNumA * neighborBondNumB;
-        for (int i = 0; i < size; i++) {
-            modifiedARCS.add(i, 0);
-        }
-        setModifedArcs(mcGregorHelper);
         first = new BinaryTree(-1);
-        last = first;
-        last.setEqual(null);
-        last.setNotEqual(null);
         bestarcsleft = 0;
 
-        startsearch(mcGregorHelper);
-        Stack<List<Integer>> bestARCSClone = new Stack<List<Integer>>();
+        startsearch();
+        if (bestARCS.empty() && isTimeout()) {
+            //stopped before any extension was stored, keep the mapping of this level
+            setFinalMappings(mappedAtoms, mappedAtomCount);
+            return 0;
+        }
+        Stack<int[]> bestARCSClone = new Stack<int[]>();
 
         bestARCSClone.addAll(bestARCS);
-        while (!bestARCS.empty()) {
-            bestARCS.pop();
-        }
+        bestARCS.clear();
         searchAndExtendMappings(bestARCSClone, mcGregorHelper);
 
         //System.out.println("In the iterator Termination");
@@ -351,158 +298,40 @@ public final class McGregor {
         return 0;
     }
 
-    private synchronized void searchAndExtendMappings(
-            Stack<List<Integer>> bestARCSClone,
+    private void searchAndExtendMappings(
+            Stack<int[]> bestARCSClone,
             McgregorHelper mcGregorHelper) throws IOException {
         int mappedAtomCount = mcGregorHelper.getMappedAtomCount();
         int setNumA = mcGregorHelper.getSetNumA();
         int setNumB = mcGregorHelper.getsetNumB();
-        List<Integer> i_bond_setA = mcGregorHelper.getIBondSetA();
-        List<Integer> i_bond_setB = mcGregorHelper.getIBondSetB();
-        List<String> c_bond_setA = mcGregorHelper.getCBondSetA();
-        List<String> c_bond_setB = mcGregorHelper.getCBondSetB();
+        int[] i_bond_setA = mcGregorHelper.getIBondSetA();
+        int[] i_bond_setB = mcGregorHelper.getIBondSetB();
 
         while (!bestARCSClone.empty()) {
 
-            List<Integer> MARCS_vector = new ArrayList<Integer>(bestARCSClone.peek());
-            List<Integer> new_Mapping = findMcGregorMapping(MARCS_vector, mcGregorHelper);
+            int[] new_Mapping = findMcGregorMapping(bestARCSClone.peek(), mcGregorHelper);
 
-            int newMapingSize = new_Mapping.size() / 2;
+            int newMapingSize = new_Mapping.length / 2;
             boolean no_further_MAPPINGS = false;
             if (mappedAtomCount == newMapingSize) {
                 no_further_MAPPINGS = true;
             }
 
-            List<Integer> new_i_neighborsA = new ArrayList<Integer>(); //instead of iBondNeighborAtomsA
-            List<Integer> new_i_neighborsB = new ArrayList<Integer>(); //instead of iBondNeighborAtomsB
-            List<String> new_c_neighborsA = new ArrayList<String>(); //instead of cBondNeighborsA
-            List<String> new_c_neighborsB = new ArrayList<String>(); //instead of cBondNeighborsB
-            List<Integer> new_i_bond_setA = new ArrayList<Integer>(); //instead of i_bond_setA
-            List<Integer> new_i_bond_setB = new ArrayList<Integer>(); //instead of i_bond_setB
-            List<String> new_c_bond_setA = new ArrayList<String>(); //instead of c_bond_setA
-            List<String> new_c_bond_setB = new ArrayList<String>(); //instead of c_bond_setB
-            //new values for setNumA + setNumB
-            //new arrays for i_bond_setA + i_bond_setB + c_bond_setB + c_bond_setB
-
-            List<String> c_setA_copy = McGregorChecks.generateCSetCopy(setNumA, c_bond_setA);
-            List<String> c_setB_copy = McGregorChecks.generateCSetCopy(setNumB, c_bond_setB);
-
-            //find unmapped atoms of molecule A
-            List<Integer> unmapped_atoms_molA = new ArrayList<Integer>();
-            int unmapped_numA = 0;
-            boolean atomA_is_unmapped = true;
-
-            for (int a = 0; a < source.getAtomCount(); a++) {
-                for (int b = 0; b < newMapingSize; b++) {
-                    if (a == new_Mapping.get(b * 2 + 0)) {
-                        atomA_is_unmapped = false;
-                    }
-                }
-                if (atomA_is_unmapped) {
-                    unmapped_atoms_molA.add(unmapped_numA, a);
-                    unmapped_numA += 1;
-                }
-                atomA_is_unmapped = true;
-            }
-
-            //The special signs must be transfered to the corresponding atoms of molecule B
-            int counter = 0;
-            //number of remaining molecule A bonds after the clique search, which aren't neighbors
-            int newSetBondNumA = 0; //instead of setNumA
-            int newNeighborNumA = 0; //instead of localNeighborBondnumA
-
-            QueryProcessor queryProcess
-                    = new QueryProcessor(
-                            c_setA_copy,
-                            c_setB_copy,
-                            SIGNS,
-                            newNeighborNumA,
-                            newSetBondNumA,
-                            new_i_neighborsA,
-                            new_c_neighborsA,
-                            newMapingSize,
-                            new_i_bond_setA,
-                            new_c_bond_setA);
-
-            queryProcess.process(
-                    setNumA,
-                    setNumB,
-                    i_bond_setA,
-                    i_bond_setB,
-                    unmapped_atoms_molA,
-                    new_Mapping,
-                    counter);
-
-            newSetBondNumA = queryProcess.getBondNumA();
-            newNeighborNumA = queryProcess.getNeighborBondNumA();
-            new_i_neighborsA = queryProcess.getIBondNeighboursA();
-            new_c_neighborsA = queryProcess.getCBondNeighborsA();
-
-            //find unmapped atoms of molecule B
-            List<Integer> unmapped_atoms_molB = new ArrayList<Integer>();
-            int unmapped_numB = 0;
-            boolean atomB_is_unmapped = true;
-
-            for (int a = 0; a < target.getAtomCount(); a++) {
-                for (int b = 0; b < newMapingSize; b++) {
-                    if (a == new_Mapping.get(b * 2 + 1)) {
-                        atomB_is_unmapped = false;
-                    }
-                }
-                if (atomB_is_unmapped) {
-                    unmapped_atoms_molB.add(unmapped_numB, a);
-                    unmapped_numB += 1;
-                }
-                atomB_is_unmapped = true;
-            }
+            //the remaining bonds of this level are split again against the extended mapping
+            QueryProcessor queryProcess = new QueryProcessor(sourceGraph, sourceLabels);
+            queryProcess.process(i_bond_setA, setNumA,
+                    McGregorChecks.mappedCount(new_Mapping, newMapingSize, 0, sourceGraph.getAtomCount()));
 
-            //number of remaining molecule B bonds after the clique search, which aren't neighbors
-            int newSetBondNumB = 0; //instead of setNumB
-            int newNeighborNumB = 0; //instead of localNeighborBondNumB
-
-            TargetProcessor targetProcess = new TargetProcessor(
-                    c_setB_copy,
-                    SIGNS,
-                    newNeighborNumB,
-                    newSetBondNumB,
-                    new_i_neighborsB,
-                    new_c_neighborsB,
-                    newNeighborNumA,
-                    new_i_neighborsA,
-                    new_c_neighborsA);
-
-            targetProcess.process(
-                    setNumB,
-                    unmapped_atoms_molB,
-                    newMapingSize,
-                    i_bond_setB,
-                    c_bond_setB,
-                    new_Mapping,
-                    counter,
-                    new_i_bond_setB,
-                    new_c_bond_setB);
-
-            newSetBondNumB = targetProcess.getBondNumB();
-            newNeighborNumB = targetProcess.getNeighborBondNumB();
-            new_i_neighborsB = targetProcess.getIBondNeighboursB();
-            new_c_neighborsB = targetProcess.getCBondNeighborsB();
+            TargetProcessor targetProcess = new TargetProcessor(targetGraph, targetLabels);
+            targetProcess.process(i_bond_setB, setNumB,
+                    McGregorChecks.mappedCount(new_Mapping, newMapingSize, 1, targetGraph.getAtomCount()));
 
 //             System.out.println("Mapped Atoms before Iterator2: " + mappedAtoms);
             McgregorHelper newMH = new McgregorHelper(no_further_MAPPINGS,
                     newMapingSize,
                     new_Mapping,
-                    newNeighborNumA,
-                    newNeighborNumB,
-                    new_i_neighborsA,
-                    new_i_neighborsB,
-                    new_c_neighborsA,
-                    new_c_neighborsB,
-                    newSetBondNumA,
-                    newSetBondNumB,
-                    new_i_bond_setA,
-                    new_i_bond_setB,
-                    new_c_bond_setA,
-                    new_c_bond_setB);
+                    queryProcess,
+                    targetProcess);
 
             iterator(newMH);
             bestARCSClone.pop();
@@ -510,109 +339,113 @@ public final class McGregor {
         }
     }
 
-    private synchronized List<Integer> findMcGregorMapping(List<Integer> MARCS, McgregorHelper mcGregorHelper) {
+    /*
+     * MARCS holds the positions of the arcs of a matrix, in row major order
+     */
+    private int[] findMcGregorMapping(int[] MARCS, McgregorHelper mcGregorHelper) {
 
-        int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
         int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
-        List<Integer> currentMapping = new ArrayList<Integer>(mcGregorHelper.getMappedAtomsOrg());
-        List<Integer> additional_mapping = new ArrayList<Integer>();
-
-        for (int x = 0; x < neighborBondNumA; x++) {
-            for (int y = 0; y < neighborBondNumB; y++) {
-                if (MARCS.get(x * neighborBondNumB + y) == 1) {
-                    extendMapping(x, y, mcGregorHelper, additional_mapping, currentMapping);
-                }
-            }
-        }
+        int mappedAtomCount = mcGregorHelper.getMappedAtomCount();
+        int[] mappedAtoms = mcGregorHelper.getMappedAtomsOrg();
+        int[] currentMapping = new int[mappedAtomCount * 2 + MARCS.length * 2 * mappedAtomCount];
+        System.arraycopy(mappedAtoms, 0, currentMapping, 0, mappedAtomCount * 2);
+        int size = mappedAtomCount;
 
-        int additionalMappingSize = additional_mapping.size();
-        //add McGregorBondTypeInSensitive mapping to the Clique mapping
-        for (int a = 0; a < additionalMappingSize; a += 2) {
-            currentMapping.add(additional_mapping.get(a + 0));
-            currentMapping.add(additional_mapping.get(a + 1));
+        for (int arc : MARCS) {
+            size = extendMapping(arc / neighborBondNumB, arc % neighborBondNumB, mcGregorHelper, currentMapping, size);
         }
 
 //        remove recurring mappings from currentMapping
-        List<Integer> unique_MAPPING = McGregorChecks.removeRecurringMappings(currentMapping);
-        return unique_MAPPING;
+        return McGregorChecks.removeRecurringMappings(currentMapping, size, sourceGraph.getAtomCount());
     }
 
-    private synchronized void setModifedArcs(McgregorHelper mcGregorHelper) {
-        int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
-        int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
-        List<Integer> iBondNeighborAtomsA = mcGregorHelper.getiBondNeighborAtomsA();
-        List<Integer> iBondNeighborAtomsB = mcGregorHelper.getiBondNeighborAtomsB();
-        List<String> cBondNeighborsA = mcGregorHelper.getcBondNeighborsA();
-        List<String> cBondNeighborsB = mcGregorHelper.getcBondNeighborsB();
+    /*
+     * Sets the arcs of the level between the neighbour bonds which can be matched, returns true if there is any
+     */
+    private boolean setModifedArcs(McgregorHelper mcGregorHelper) {
+        neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
+        neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
+        neighborAtomsA = mcGregorHelper.getiBondNeighborAtomsA();
+        neighborAtomsB = mcGregorHelper.getiBondNeighborAtomsB();
+        int[] iBondNeighborsA = mcGregorHelper.getiBondNeighborsA();
+        int[] iBondNeighborsB = mcGregorHelper.getiBondNeighborsB();
+        int[] cBondNeighborsA = mcGregorHelper.getcBondNeighborsA();
+        int[] cBondNeighborsB = mcGregorHelper.getcBondNeighborsB();
+
+        int size = neighborBondNumA * neighborBondNumB;
+        arcs = new boolean[size];
+        arcCount = 0;
+        if (undoLog == null || undoLog.length < size) {
+            undoLog = new int[Math.max(size, 16)];
+        }
+        undoSize = 0;
         for (int row = 0; row < neighborBondNumA; row++) {
+            int G1A = cBondNeighborsA[row * 2];
+            int G2A = cBondNeighborsA[row * 2 + 1];
             for (int column = 0; column < neighborBondNumB; column++) {
-
-                String G1A = cBondNeighborsA.get(row * 4 + 0);
-                String G2A = cBondNeighborsA.get(row * 4 + 1);
-                String G1B = cBondNeighborsB.get(column * 4 + 0);
-                String G2B = cBondNeighborsB.get(column * 4 + 1);
-
-                if (!(source instanceof IQueryAtomContainer) && matchGAtoms(G1A, G2A, G1B, G2B)) {
-                    int Index_I = iBondNeighborAtomsA.get(row * 3 + 0);
-                    int Index_IPlus1 = iBondNeighborAtomsA.get(row * 3 + 1);
-
-                    IAtom R1_A = source.getAtom(Index_I);
-                    IAtom R2_A = source.getAtom(Index_IPlus1);
-                    IBond reactantBond = source.getBond(R1_A, R2_A);
-
-                    int Index_J = iBondNeighborAtomsB.get(column * 3 + 0);
-                    int Index_JPlus1 = iBondNeighborAtomsB.get(column * 3 + 1);
-
-                    IAtom P1_B = target.getAtom(Index_J);
-                    IAtom P2_B = target.getAtom(Index_JPlus1);
-                    IBond productBond = target.getBond(P1_B, P2_B);
-                    if (McGregorChecks.isMatchFeasible(reactantBond, productBond, isBondMatch(), isMatchRings(), isMatchAtomType())) {
-                        modifiedARCS.set(row * neighborBondNumB + column, 1);
-                    }
-                } else if (source instanceof IQueryAtomContainer) {
-                    int Index_I = iBondNeighborAtomsA.get(row * 3 + 0);
-                    int Index_IPlus1 = iBondNeighborAtomsA.get(row * 3 + 1);
-
-                    IAtom R1_A = source.getAtom(Index_I);
-                    IAtom R2_A = source.getAtom(Index_IPlus1);
-                    IBond reactantBond = source.getBond(R1_A, R2_A);
-
-                    int Index_J = iBondNeighborAtomsB.get(column * 3 + 0);
-                    int Index_JPlus1 = iBondNeighborAtomsB.get(column * 3 + 1);
-
-                    IAtom P1_B = target.getAtom(Index_J);
-                    IAtom P2_B = target.getAtom(Index_JPlus1);
-                    IBond productBond = target.getBond(P1_B, P2_B);
-                    if (McGregorChecks.isMatchFeasible(reactantBond, productBond, isBondMatch(), isMatchRings(), isMatchAtomType())) {
-                        modifiedARCS.set(row * neighborBondNumB + column, 1);
+                if (queryContainer || McGregorChecks.isAtomMatch(
+                        G1A, G2A, cBondNeighborsB[column * 2], cBondNeighborsB[column * 2 + 1])) {
+                    if (isMatchFeasible(iBondNeighborsA[row], iBondNeighborsB[column])) {
+                        arcs[row * neighborBondNumB + column] = true;
+                        arcCount++;
                     }
                 }
             }
         }
+        return arcCount > 0;
     }
 
-    private synchronized void partsearch(int xstart, int ystart, List<Integer> TEMPMARCS_ORG, McgregorHelper mcGregorHelper) {
+    private boolean isMatchFeasible(int bondA, int bondB) {
+        byte match = bondMatches[bondA][bondB];
+        if (match == UNKNOWN) {
+            match = McGregorChecks.isMatchFeasible(source.getBond(bondA), target.getBond(bondB),
+                    isBondMatch(), isMatchRings(), isMatchAtomType()) ? MATCH : MISMATCH;
+            bondMatches[bondA][bondB] = match;
+        }
+        return match == MATCH;
+    }
+
+    /*
+     * Clears an arc, the change is undone by rollback
+     */
+    private void clearArc(int position) {
+        if (arcs[position]) {
+            arcs[position] = false;
+            arcCount--;
+            if (undoSize == undoLog.length) {
+                int[] log = new int[undoLog.length * 2];
+                System.arraycopy(undoLog, 0, log, 0, undoSize);
+                undoLog = log;
+            }
+            undoLog[undoSize++] = position;
+        }
+    }
+
+    private void rollback(int mark) {
+        while (undoSize > mark) {
+            arcs[undoLog[--undoSize]] = true;
+            arcCount++;
+        }
+    }
+
+    private void partsearch(int xstart, int ystart) {
 
         if (checkTimeout()) {
             return;
         }
 
-        int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
-        int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
-
         int xIndex = xstart;
         int yIndex = ystart;
+        int mark = undoSize;
 
-        List<Integer> TEMPMARCS = new ArrayList<Integer>(TEMPMARCS_ORG);
-
-        if (TEMPMARCS.get(xstart * neighborBondNumB + ystart) == 1) {
+        if (arcs[xstart * neighborBondNumB + ystart]) {
 
-            McGregorChecks.removeRedundantArcs(xstart, ystart, TEMPMARCS, mcGregorHelper);
-            int arcsleft = McGregorChecks.countArcsLeft(TEMPMARCS, neighborBondNumA, neighborBondNumB);
+            removeRedundantArcs(xstart, ystart);
+            int arcsleft = arcCount;
 
             //test best arcs left and skip rest if needed
             if (arcsleft >= bestarcsleft) {
-                setArcs(xIndex, yIndex, arcsleft, TEMPMARCS, mcGregorHelper);
+                setArcs(xIndex, yIndex, arcsleft);
             }
         } else {
             do {
@@ -622,79 +455,101 @@ public final class McGregor {
                     xIndex++;
                 }
 
-            } while ((xIndex < neighborBondNumA) && (TEMPMARCS.get(xIndex * neighborBondNumB + yIndex) != 1)); //Correction by ASAD set value minus 1
+            } while ((xIndex < neighborBondNumA) && !arcs[xIndex * neighborBondNumB + yIndex]); //Correction by ASAD set value minus 1
 
             if (xIndex < neighborBondNumA) {
 
-                partsearch(xIndex, yIndex, TEMPMARCS, mcGregorHelper);
-                TEMPMARCS.set(xIndex * neighborBondNumB + yIndex, 0);
-                partsearch(xIndex, yIndex, TEMPMARCS, mcGregorHelper);
+                partsearch(xIndex, yIndex);
+                clearArc(xIndex * neighborBondNumB + yIndex);
+                partsearch(xIndex, yIndex);
             } else {
-                int arcsleft = McGregorChecks.countArcsLeft(TEMPMARCS, neighborBondNumA, neighborBondNumB);
+                int arcsleft = arcCount;
                 if (arcsleft >= bestarcsleft) {
                     popBestArcs(arcsleft);
-                    if (checkMARCS(TEMPMARCS, neighborBondNumA, neighborBondNumB)) {
-                        bestARCS.push(TEMPMARCS);
-                    }
+                    storeArcs();
                 }
             }
         }
+        rollback(mark);
     }
 
-//The function is called in function partsearch. The function is given indexZ temporary matrix.
-//The function checks whether the temporary matrix is already found by calling the function
-//"verifyNodes". If the matrix already exists the function returns false which means that
-//the matrix will not be stored. Otherwise the function returns true which means that the
-//matrix will be stored in function partsearch.
-    private synchronized boolean checkMARCS(List<Integer> MARCS_T, int neighborBondNumA, int neighborBondNumB) {
+    /**
+     * The function is called in function partsearch. The function is given a position (row/column) within the arc
+     * matrix. First the function clears all arcs, which can be excluded in respect to the current atom by atom
+     * matching. After this the function clears all arcs in the same row and column of the current position, only the
+     * arc of the current position is kept.
+     */
+    private void removeRedundantArcs(int row, int column) {
+        int G1_atom = neighborAtomsA[row * 2];
+        int G2_atom = neighborAtomsA[row * 2 + 1];
+        int G3_atom = neighborAtomsB[column * 2];
+        int G4_atom = neighborAtomsB[column * 2 + 1];
 
-        int size = neighborBondNumA * neighborBondNumA;
-        List<Integer> posnum_list = new ArrayList<Integer>(size);
+        for (int x = 0; x < neighborBondNumA; x++) {
+            int row_atom1 = neighborAtomsA[x * 2];
+            int row_atom2 = neighborAtomsA[x * 2 + 1];
 
-        for (int i = 0; i < posnum_list.size(); i++) {
-            posnum_list.add(i, 0);
+            for (int y = 0; y < neighborBondNumB; y++) {
+                int position = x * neighborBondNumB + y;
+                if (arcs[position]
+                        && McGregorChecks.cases(G1_atom, G2_atom, G3_atom, G4_atom,
+                                row_atom1, row_atom2, neighborAtomsB[y * 2], neighborAtomsB[y * 2 + 1])) {
+                    clearArc(position);
+                }
+            }
         }
 
-        int yCounter = 0;
-        int count_entries = 0;
-        for (int x = 0; x < (neighborBondNumA * neighborBondNumB); x++) {
-            if (MARCS_T.get(x) == 1) {
-                posnum_list.add(yCounter, x);
-                yCounter += 1;
-                count_entries++;
+        for (int v = 0; v < neighborBondNumA; v++) {
+            if (v != row) {
+                clearArc(v * neighborBondNumB + column);
             }
         }
-        boolean flag = false;
 
-        verifyNodes(posnum_list, first, 0, count_entries);
-        if (isNewMatrix()) {
-            flag = true;
+        for (int w = 0; w < neighborBondNumB; w++) {
+            if (w != column) {
+                clearArc(row * neighborBondNumB + w);
+            }
         }
+    }
 
-        return flag;
+    /*
+     * Keeps the current matrix if it was not seen before
+     */
+    private void storeArcs() {
+        int[] positions = new int[arcCount];
+        int count_entries = 0;
+        for (int x = 0; x < arcs.length; x++) {
+            if (arcs[x]) {
+                positions[count_entries++] = x;
+            }
+        }
 
+        verifyNodes(positions, first, 0, count_entries);
+        if (isNewMatrix()) {
+            bestARCS.push(positions);
+        }
     }
 
-    private synchronized boolean verifyNodes(List<Integer> matrix, BinaryTree currentStructure, int index, int fieldLength) {
+    private boolean verifyNodes(int[] matrix, BinaryTree currentStructure, int index, int fieldLength) {
         if (index < fieldLength) {
-            if (matrix.get(index) == currentStructure.getValue() && currentStructure.getEqual() != null) {
+            if (matrix[index] == currentStructure.getValue() && currentStructure.getEqual() != null) {
                 setNewMatrix(false);
                 verifyNodes(matrix, currentStructure.getEqual(), index + 1, fieldLength);
             }
-            if (matrix.get(index) != currentStructure.getValue()) {
+            if (matrix[index] != currentStructure.getValue()) {
                 if (currentStructure.getNotEqual() != null) {
                     verifyNodes(matrix, currentStructure.getNotEqual(), index, fieldLength);
                 }
 
                 if (currentStructure.getNotEqual() == null) {
-                    currentStructure.setNotEqual(new BinaryTree(matrix.get(index)));
+                    currentStructure.setNotEqual(new BinaryTree(matrix[index]));
                     currentStructure.getNotEqual().setNotEqual(null);
                     int yIndex = 0;
 
                     BinaryTree last_one = currentStructure.getNotEqual();
 
                     while ((yIndex + index + 1) < fieldLength) {
-                        last_one.setEqual(new BinaryTree(matrix.get(yIndex + index + 1)));
+                        last_one.setEqual(new BinaryTree(matrix[yIndex + index + 1]));
                         last_one = last_one.getEqual();
                         last_one.setNotEqual(null);
                         yIndex++;
@@ -709,21 +564,12 @@ public final class McGregor {
         return true;
     }
 
-    private synchronized void startsearch(McgregorHelper mcGregorHelper) {
-
-        int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
-        int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
-
-        int size = neighborBondNumA * neighborBondNumB;
-        List<Integer> FIXARCS = new ArrayList<Integer>(size);//  Initialize FIXARCS with 0
-        for (int i = 0; i < size; i++) {
-            FIXARCS.add(i, 0);
-        }
+    private void startsearch() {
 
         int xIndex = 0;
         int yIndex = 0;
 
-        while ((xIndex < neighborBondNumA) && (modifiedARCS.get(xIndex * neighborBondNumB + yIndex) != 1)) {
+        while ((xIndex < neighborBondNumA) && !arcs[xIndex * neighborBondNumB + yIndex]) {
             yIndex++;
             if (yIndex == neighborBondNumB) {
                 yIndex = 0;
@@ -736,14 +582,12 @@ public final class McGregor {
             xIndex -= 1;
         }
 
-        if (modifiedARCS.get(xIndex * neighborBondNumB + yIndex) == 0) {
-            partsearch(xIndex, yIndex, modifiedARCS, mcGregorHelper);
-        }
-
-        if (modifiedARCS.get(xIndex * neighborBondNumB + yIndex) != 0) {
-            partsearch(xIndex, yIndex, modifiedARCS, mcGregorHelper);
-            modifiedARCS.set(xIndex * neighborBondNumB + yIndex, 0);
-            partsearch(xIndex, yIndex, modifiedARCS, mcGregorHelper);
+        if (!arcs[xIndex * neighborBondNumB + yIndex]) {
+            partsearch(xIndex, yIndex);
+        } else {
+            partsearch(xIndex, yIndex);
+            clearArc(xIndex * neighborBondNumB + yIndex);
+            partsearch(xIndex, yIndex);
         }
 
     }
@@ -753,8 +597,8 @@ public final class McGregor {
      *
      * @return mappings
      */
-    public synchronized List<List<Integer>> getMappings() {
-        return Collections.synchronizedList(mappings);
+    public List<List<Integer>> getMappings() {
+        return mappings;
     }
 
     /**
@@ -762,27 +606,26 @@ public final class McGregor {
      *
      * @return MCS size
      */
-    public synchronized int getMCSSize() {
+    public int getMCSSize() {
         return this.globalMCSSize;
     }
 
-    private synchronized void setFinalMappings(List<Integer> mapped_atoms, int mappedAtomCount) {
+    private void setFinalMappings(int[] mapped_atoms, int mappedAtomCount) {
         if (mappedAtomCount >= globalMCSSize) {
-//            System.out.println("Hello-1");
             if (mappedAtomCount > globalMCSSize) {
-//                System.out.println("Hello-2");
                 this.globalMCSSize = mappedAtomCount;
-//                System.out.println("best_MAPPING_size: " + globalMCSSize);
                 mappings.clear();
             }
-            mappings.add(mapped_atoms);
+            List<Integer> mapping = new ArrayList<Integer>(mapped_atoms.length);
+            for (int atom : mapped_atoms) {
+                mapping.add(atom);
+            }
+            mappings.add(mapping);
 //            System.out.println("mappings " + mappings);
         }
     }
 
-    private synchronized void setArcs(int xIndex, int yIndex, int arcsleft, List<Integer> TEMPMARCS, McgregorHelper mcGregorHelper) {
-        int neighborBondNumA = mcGregorHelper.getNeighborBondNumA();
-        int neighborBondNumB = mcGregorHelper.getNeighborBondNumB();
+    private void setArcs(int xIndex, int yIndex, int arcsleft) {
         do {
             yIndex += 1;
             if (yIndex == neighborBondNumB) {
@@ -791,80 +634,62 @@ public final class McGregor {
 
             }
         } //Correction by ASAD set value minus 1
-        while ((xIndex < neighborBondNumA) && (TEMPMARCS.get(xIndex * neighborBondNumB + yIndex) != 1));
+        while ((xIndex < neighborBondNumA) && !arcs[xIndex * neighborBondNumB + yIndex]);
         if (xIndex < neighborBondNumA) {
 
-            partsearch(xIndex, yIndex, TEMPMARCS, mcGregorHelper);
-            TEMPMARCS.set(xIndex * neighborBondNumB + yIndex, 0);
-            partsearch(xIndex, yIndex, TEMPMARCS, mcGregorHelper);
+            partsearch(xIndex, yIndex);
+            clearArc(xIndex * neighborBondNumB + yIndex);
+            partsearch(xIndex, yIndex);
 
         } else {
             popBestArcs(arcsleft);
-            if (checkMARCS(TEMPMARCS, neighborBondNumA, neighborBondNumB)) {
-                bestARCS.push(TEMPMARCS);
-            }
+            storeArcs();
         }
     }
 
-    private synchronized void popBestArcs(int arcsleft) {
+    private void popBestArcs(int arcsleft) {
         if (arcsleft > bestarcsleft) {
-            McGregorChecks.removeTreeStructure(first);
             first = new BinaryTree(-1);
-            last = new BinaryTree(-1);
-            last.setEqual(null);
-            last.setNotEqual(null);
-            while (!bestARCS.empty()) {
-                bestARCS.pop();
-            }
+            bestARCS.clear();
         }
         bestarcsleft = arcsleft;
     }
 
-    private synchronized void extendMapping(int xIndex, int yIndex, McgregorHelper mcGregorHelper, List<Integer> additional_mapping, List<Integer> currentMapping) {
-
-        int Atom1_moleculeA = mcGregorHelper.getiBondNeighborAtomsA().get(xIndex * 3 + 0);
-        int Atom2_moleculeA = mcGregorHelper.getiBondNeighborAtomsA().get(xIndex * 3 + 1);
-        int Atom1_moleculeB = mcGregorHelper.getiBondNeighborAtomsB().get(yIndex * 3 + 0);
-        int Atom2_moleculeB = mcGregorHelper.getiBondNeighborAtomsB().get(yIndex * 3 + 1);
-
-        IAtom R1_A = source.getAtom(Atom1_moleculeA);
-        IAtom R2_A = source.getAtom(Atom2_moleculeA);
-        IBond reactantBond = source.getBond(R1_A, R2_A);
+    private int extendMapping(int xIndex, int yIndex, McgregorHelper mcGregorHelper, int[] currentMapping, int size) {
 
-        IAtom P1_B = target.getAtom(Atom1_moleculeB);
-        IAtom P2_B = target.getAtom(Atom2_moleculeB);
-        IBond productBond = target.getBond(P1_B, P2_B);
+        int[] iBondNeighborAtomsA = mcGregorHelper.getiBondNeighborAtomsA();
+        int[] iBondNeighborAtomsB = mcGregorHelper.getiBondNeighborAtomsB();
+        int Atom1_moleculeA = iBondNeighborAtomsA[xIndex * 2];
+        int Atom2_moleculeA = iBondNeighborAtomsA[xIndex * 2 + 1];
+        int Atom1_moleculeB = iBondNeighborAtomsB[yIndex * 2];
+        int Atom2_moleculeB = iBondNeighborAtomsB[yIndex * 2 + 1];
 
 //      Bond Order Check Introduced by Asad
-        if (McGregorChecks.isMatchFeasible(reactantBond, productBond, isBondMatch(), isMatchRings(), isMatchAtomType())) {
+        if (isMatchFeasible(mcGregorHelper.getiBondNeighborsA()[xIndex], mcGregorHelper.getiBondNeighborsB()[yIndex])) {
 
             for (int indexZ = 0; indexZ < mcGregorHelper.getMappedAtomCount(); indexZ++) {
 
-                int Mapped_Atom_1 = currentMapping.get(indexZ * 2 + 0);
-                int Mapped_Atom_2 = currentMapping.get(indexZ * 2 + 1);
+                int Mapped_Atom_1 = currentMapping[indexZ * 2];
+                int Mapped_Atom_2 = currentMapping[indexZ * 2 + 1];
 
                 if ((Mapped_Atom_1 == Atom1_moleculeA) && (Mapped_Atom_2 == Atom1_moleculeB)) {
-                    additional_mapping.add(Atom2_moleculeA);
-                    additional_mapping.add(Atom2_moleculeB);
+                    size = add(currentMapping, size, Atom2_moleculeA, Atom2_moleculeB);
                 } else if ((Mapped_Atom_1 == Atom1_moleculeA) && (Mapped_Atom_2 == Atom2_moleculeB)) {
-                    additional_mapping.add(Atom2_moleculeA);
-                    additional_mapping.add(Atom1_moleculeB);
+                    size = add(currentMapping, size, Atom2_moleculeA, Atom1_moleculeB);
                 } else if ((Mapped_Atom_1 == Atom2_moleculeA) && (Mapped_Atom_2 == Atom1_moleculeB)) {
-                    additional_mapping.add(Atom1_moleculeA);
-                    additional_mapping.add(Atom2_moleculeB);
+                    size = add(currentMapping, size, Atom1_moleculeA, Atom2_moleculeB);
                 } else if ((Mapped_Atom_1 == Atom2_moleculeA) && (Mapped_Atom_2 == Atom2_moleculeB)) {
-                    additional_mapping.add(Atom1_moleculeA);
-                    additional_mapping.add(Atom1_moleculeB);
+                    size = add(currentMapping, size, Atom1_moleculeA, Atom1_moleculeB);
                 }
             }//for loop
         }
+        return size;
     }
 
-    private synchronized boolean matchGAtoms(String G1A, String G2A, String G1B, String G2B) {
-        return (G1A.compareToIgnoreCase(G1B) == 0
-                && G2A.compareToIgnoreCase(G2B) == 0)
-                || (G1A.compareToIgnoreCase(G2B) == 0
-                && G2A.compareToIgnoreCase(G1B) == 0);
+    private static int add(int[] mapping, int size, int queryAtom, int targetAtom) {
+        mapping[size * 2] = queryAtom;
+        mapping[size * 2 + 1] = targetAtom;
+        return size + 1;
     }
 
     /**
@@ -872,7 +697,7 @@ public final class McGregor {
      *
      * @return the newMatrix
      */
-    public synchronized boolean isNewMatrix() {
+    public boolean isNewMatrix() {
         return newMatrix;
     }
 
@@ -881,7 +706,7 @@ public final class McGregor {
      *
      * @param newMatrix the newMatrix to set
      */
-    public synchronized void setNewMatrix(boolean newMatrix) {
+    public void setNewMatrix(boolean newMatrix) {
         this.newMatrix = newMatrix;
     }
 
@@ -890,7 +715,7 @@ public final class McGregor {
      *
      * @return the bondMatch
      */
-    private synchronized boolean isBondMatch() {
+    private boolean isBondMatch() {
         return bondMatch;
     }
 
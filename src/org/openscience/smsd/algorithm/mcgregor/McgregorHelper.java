@@ -23,8 +23,6 @@
  */
 package org.openscience.smsd.algorithm.mcgregor;
 
-import java.util.Collections;
-import java.util.List;
 import org.openscience.cdk.annotations.TestClass;
 
 /**
@@ -32,6 +30,10 @@ import org.openscience.cdk.annotations.TestClass;
  *
  * The second part of the program extents the mapping by the McGregor algorithm in case,
  * that not all atoms of molecule A and molecule B are mapped by the clique approach.
+ *
+ * It holds the state of one McGregor level: the current mapping as (query, target) index
+ * pairs, the neighbour bonds (bonds with exactly one mapped atom) with their atom pairs and
+ * labels, and the remaining bonds of both molecules. The arrays are shared, not copied.
  * @cdk.module smsd
  * @cdk.githash
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
@@ -39,85 +41,50 @@ import org.openscience.cdk.annotations.TestClass;
 @TestClass("org.openscience.cdk.smsd.algorithm.mcgregor.McgregorHelperTest")
 public class McgregorHelper {
 
-    private final List<String> c_bond_setA;
-    private final List<String> c_bond_setB;
     private final boolean mappingCheckFlag;
     private final int mappedAtomCount;
-    private final List<Integer> mappedAtomsOrg;
+    private final int[] mappedAtomsOrg;
     private final int neighborBondNumA;
     private final int neighborBondNumB;
-    private final List<Integer> iBondNeighborAtomsA;
-    private final List<Integer> iBondNeighborAtomsB;
-    private final List<String> cBondNeighborsA;
-    private final List<String> cBondNeighborsB;
+    private final int[] iBondNeighborAtomsA;
+    private final int[] iBondNeighborAtomsB;
+    private final int[] iBondNeighborsA;
+    private final int[] iBondNeighborsB;
+    private final int[] cBondNeighborsA;
+    private final int[] cBondNeighborsB;
     private final int setNumA;
     private final int setNumB;
-    private final List<Integer> i_bond_setA;
-    private final List<Integer> i_bond_setB;
+    private final int[] i_bond_setA;
+    private final int[] i_bond_setB;
 
     /**
      * Stores the variables
      * @param mappingCheckFlag
      * @param mappedAtomCount
-     * @param mappedAtomsOrg
-     * @param neighborBondNumA
-     * @param neighborBondNumB
-     * @param iBondNeighborAtomsA
-     * @param iBondNeighborAtomsB
-     * @param cBondNeighborsA
-     * @param cBondNeighborsB
-     * @param setNumA
-     * @param setNumB
-     * @param i_bond_setA
-     * @param i_bond_setB
-     * @param c_bond_setA
-     * @param c_bond_setB
+     * @param mappedAtomsOrg (query, target) pairs
+     * @param queryProcess neighbour and remaining bonds of the query
+     * @param targetProcess neighbour and remaining bonds of the target
      */
     protected McgregorHelper(boolean mappingCheckFlag,
             int mappedAtomCount,
-            List<Integer> mappedAtomsOrg,
-            int neighborBondNumA,
-            int neighborBondNumB,
-            List<Integer> iBondNeighborAtomsA,
-            List<Integer> iBondNeighborAtomsB,
-            List<String> cBondNeighborsA,
-            List<String> cBondNeighborsB,
-            int setNumA,
-            int setNumB,
-            List<Integer> i_bond_setA,
-            List<Integer> i_bond_setB,
-            List<String> c_bond_setA,
-            List<String> c_bond_setB) {
-        this.c_bond_setA = c_bond_setA;
-        this.c_bond_setB = c_bond_setB;
+            int[] mappedAtomsOrg,
+            QueryProcessor queryProcess,
+            TargetProcessor targetProcess) {
         this.mappingCheckFlag = mappingCheckFlag;
         this.mappedAtomCount = mappedAtomCount;
         this.mappedAtomsOrg = mappedAtomsOrg;
-        this.neighborBondNumA = neighborBondNumA;
-        this.neighborBondNumB = neighborBondNumB;
-        this.iBondNeighborAtomsA = iBondNeighborAtomsA;
-        this.iBondNeighborAtomsB = iBondNeighborAtomsB;
-        this.cBondNeighborsA = cBondNeighborsA;
-        this.cBondNeighborsB = cBondNeighborsB;
-        this.setNumA = setNumA;
-        this.setNumB = setNumB;
-        this.i_bond_setA = i_bond_setA;
-        this.i_bond_setB = i_bond_setB;
-
-    }
-
-    /**
-     * @return the c_bond_setA
-     */
-    protected List<String> getCBondSetA() {
-        return Collections.unmodifiableList(c_bond_setA);
-    }
-
-    /**
-     * @return the c_bond_setB
-     */
-    protected List<String> getCBondSetB() {
-        return Collections.unmodifiableList(c_bond_setB);
+        this.neighborBondNumA = queryProcess.getNeighborBondNumA();
+        this.iBondNeighborsA = queryProcess.getIBondNeighboursA();
+        this.iBondNeighborAtomsA = queryProcess.getIBondNeighbourAtomsA();
+        this.cBondNeighborsA = queryProcess.getCBondNeighborsA();
+        this.setNumA = queryProcess.getBondNumA();
+        this.i_bond_setA = queryProcess.getIBondSetA();
+        this.neighborBondNumB = targetProcess.getNeighborBondNumB();
+        this.iBondNeighborsB = targetProcess.getIBondNeighboursB();
+        this.iBondNeighborAtomsB = targetProcess.getIBondNeighbourAtomsB();
+        this.cBondNeighborsB = targetProcess.getCBondNeighborsB();
+        this.setNumB = targetProcess.getBondNumB();
+        this.i_bond_setB = targetProcess.getIBondSetB();
     }
 
     /**
@@ -135,10 +102,10 @@ public class McgregorHelper {
     }
 
     /**
-     * @return the mappedAtomsOrg
+     * @return the mapped (query, target) pairs
      */
-    protected List<Integer> getMappedAtomsOrg() {
-        return Collections.unmodifiableList(mappedAtomsOrg);
+    protected int[] getMappedAtomsOrg() {
+        return mappedAtomsOrg;
     }
 
     /**
@@ -156,31 +123,45 @@ public class McgregorHelper {
     }
 
     /**
-     * @return the iBondNeighborAtomsA
+     * @return bond indices of the query neighbour bonds
+     */
+    protected int[] getiBondNeighborsA() {
+        return iBondNeighborsA;
+    }
+
+    /**
+     * @return bond indices of the target neighbour bonds
+     */
+    protected int[] getiBondNeighborsB() {
+        return iBondNeighborsB;
+    }
+
+    /**
+     * @return atom pairs of the query neighbour bonds
      */
-    protected List<Integer> getiBondNeighborAtomsA() {
-        return Collections.unmodifiableList(iBondNeighborAtomsA);
+    protected int[] getiBondNeighborAtomsA() {
+        return iBondNeighborAtomsA;
     }
 
     /**
-     * @return the iBondNeighborAtomsB
+     * @return atom pairs of the target neighbour bonds
      */
-    protected List<Integer> getiBondNeighborAtomsB() {
-        return Collections.unmodifiableList(iBondNeighborAtomsB);
+    protected int[] getiBondNeighborAtomsB() {
+        return iBondNeighborAtomsB;
     }
 
     /**
-     * @return the cBondNeighborsA
+     * @return label pairs of the query neighbour bonds
      */
-    protected List<String> getcBondNeighborsA() {
-        return Collections.unmodifiableList(cBondNeighborsA);
+    protected int[] getcBondNeighborsA() {
+        return cBondNeighborsA;
     }
 
     /**
-     * @return the cBondNeighborsB
+     * @return label pairs of the target neighbour bonds
      */
-    protected List<String> getcBondNeighborsB() {
-        return Collections.unmodifiableList(cBondNeighborsB);
+    protected int[] getcBondNeighborsB() {
+        return cBondNeighborsB;
     }
 
     /**
@@ -191,17 +172,17 @@ public class McgregorHelper {
     }
 
     /**
-     * @return the i_bond_setA
+     * @return bond indices of the remaining query bonds
      */
-    protected List<Integer> getIBondSetA() {
-        return Collections.unmodifiableList(i_bond_setA);
+    protected int[] getIBondSetA() {
+        return i_bond_setA;
     }
 
     /**
-     * @return the i_bond_setB
+     * @return bond indices of the remaining target bonds
      */
-    protected List<Integer> getIBondSetB() {
-        return Collections.unmodifiableList(i_bond_setB);
+    protected int[] getIBondSetB() {
+        return i_bond_setB;
     }
 
     int getsetNumB() {
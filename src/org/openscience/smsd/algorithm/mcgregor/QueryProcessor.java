@@ -24,16 +24,18 @@
  */
 package org.openscience.smsd.algorithm.mcgregor;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 import org.openscience.cdk.annotations.TestClass;
-import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.smsd.helper.CompiledGraph;
 
 /**
  * Class to handle mappings of query molecule.
  *
+ * Splits the candidate bonds of the query into neighbour bonds, which join an unmapped
+ * atom to a mapped one, and the remaining bonds between two unmapped atoms. Bonds between
+ * two mapped atoms are dropped. A neighbour bond is labelled with the symbol label of its
+ * unmapped atom and {@link McGregorChecks#MAPPED_LABEL} for its mapped atom, in bond order.
+ *
  * @cdk.module smsd
  * @cdk.githash
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
@@ -41,395 +43,75 @@ import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 @TestClass("org.openscience.cdk.smsd.algorithm.mcgregor.QueryProcessorTest")
 public class QueryProcessor {
 
-    private final List<String> cTab1Copy;
-    private final List<String> cTab2Copy;
-    private final String[] signs;
+    private final CompiledGraph query;
+    private final int[] labels;
     private int neighborBondNumA = 0; //number of remaining molecule A bonds after the clique search, which are neighbors of the MCS_1
     private int setBondNumA = 0; //number of remaining molecule A bonds after the clique search, which aren't neighbors
-    private final List<Integer> iBondNeighborsA;
-    private final List<String> cBondNeighborsA;
-    private final int newNeighborNumA;
-    private final List<Integer> newINeighborsA;
-    private final List<String> newCNeighborsA;
+    private int[] iBondNeighborsA;
+    private int[] iBondNeighborAtomsA;
+    private int[] cBondNeighborsA;
+    private int[] iBondSetA;
 
     /**
      * Query molecule
      *
-     * @param cTab1Copy
-     * @param cTab2Copy
-     * @param signArray
-     * @param neighbor_bondnum_A
-     * @param set_bondnum_A
-     * @param i_bond_neighborsA
-     * @param c_bond_neighborsA
-     * @param mappingSize
-     * @param i_bond_setA
-     * @param c_bond_setA
+     * @param query compiled query
+     * @param labels symbol label of each query atom
      */
-    protected QueryProcessor(
-            List<String> cTab1Copy,
-            List<String> cTab2Copy,
-            String[] signArray,
-            int neighbor_bondnum_A,
-            int set_bondnum_A,
-            List<Integer> i_bond_neighborsA,
-            List<String> c_bond_neighborsA,
-            int mappingSize,
-            List<Integer> i_bond_setA,
-            List<String> c_bond_setA) {
-
-        this.cTab1Copy = cTab1Copy;
-        this.cTab2Copy = cTab2Copy;
-        this.signs = signArray;
-        this.neighborBondNumA = neighbor_bondnum_A;
-        this.setBondNumA = set_bondnum_A;
-        this.iBondNeighborsA = i_bond_neighborsA;
-        this.cBondNeighborsA = c_bond_neighborsA;
-        this.newNeighborNumA = mappingSize;
-        this.newINeighborsA = i_bond_setA;
-        this.newCNeighborsA = c_bond_setA;
+    protected QueryProcessor(CompiledGraph query, int[] labels) {
+        this.query = query;
+        this.labels = labels;
     }
 
     /**
      *
-     * @param query
-     * @param target
-     * @param unmapped_atoms_molA
-     * @param mapped_atoms
-     * @param counter
+     * @param bonds candidate bond indices
+     * @param bondNum number of candidate bonds
+     * @param mappedCount number of times each query atom occurs in the mapping
      */
-    protected void process(
-            IAtomContainer query,
-            IAtomContainer target,
-            List<Integer> unmapped_atoms_molA,
-            List<Integer> mapped_atoms,
-            int counter) {
-
-        int unmapped_numA = unmapped_atoms_molA.size();
-
-//        System.out.println("\n" + cTab1Copy + "\n");
-        for (int atomIndex = 0; atomIndex < query.getBondCount(); atomIndex++) {
-
-            Integer indexI = query.getAtomNumber(query.getBond(atomIndex).getAtom(0));
-            Integer indexJ = query.getAtomNumber(query.getBond(atomIndex).getAtom(1));
-            Integer order = query.getBond(atomIndex).getOrder().numeric();
-
-            boolean bond_considered = false;
-            boolean normal_bond = true;
-
-//            System.out.println(AtomI + "= , =" + AtomJ );
-            for (Integer unMappedAtomIndex = 0; unMappedAtomIndex < unmapped_numA; unMappedAtomIndex++) {
-
-                if (unmapped_atoms_molA.get(unMappedAtomIndex).equals(indexI)) {
-                    normal_bond = unMappedAtomsEqualsIndexJ(query, target, atomIndex, counter, mapped_atoms, indexI, indexJ, order);
-                    bond_considered = true;
-                } else //if a connecting atom found?
-                if (unmapped_atoms_molA.get(unMappedAtomIndex).equals(indexJ)) {
-                    normal_bond = unMappedAtomsEqualsIndexI(query, target, atomIndex, counter, mapped_atoms, indexI, indexJ, order);
-                    bond_considered = true;
-                }
-                if (normal_bond && bond_considered) {
-                    markNormalBonds(atomIndex, indexI, indexJ, order);
-                    break;
-                }
+    protected void process(int[] bonds, int bondNum, int[] mappedCount) {
+        neighborBondNumA = 0;
+        setBondNumA = 0;
+        iBondNeighborsA = new int[bondNum];
+        iBondNeighborAtomsA = new int[bondNum * 2];
+        cBondNeighborsA = new int[bondNum * 2];
+        iBondSetA = new int[bondNum];
+
+        for (int k = 0; k < bondNum; k++) {
+            int bond = bonds[k];
+            int indexI = query.getBondBegin(bond);
+            int indexJ = query.getBondEnd(bond);
+            if (indexI == -1 || indexJ == -1) {
+                continue;
             }
-        }
-    }
-
-    /**
-     *
-     * @param query
-     * @param target
-     * @param unmapped_atoms_molA
-     * @param mapped_atoms
-     * @param counter
-     */
-    protected void process(
-            IQueryAtomContainer query,
-            IAtomContainer target,
-            List<Integer> unmapped_atoms_molA,
-            List<Integer> mapped_atoms,
-            int counter) {
-
-        int unmapped_numA = unmapped_atoms_molA.size();
-
-//        System.out.println("\n" + cTab1Copy + "\n");
-        for (int atomIndex = 0; atomIndex < query.getBondCount(); atomIndex++) {
-            Integer indexI = query.getAtomNumber(query.getBond(atomIndex).getAtom(0));
-            Integer indexJ = query.getAtomNumber(query.getBond(atomIndex).getAtom(1));
-            Integer order = 0;
-            if (query.getBond(atomIndex).getOrder() != null) {
-                order = query.getBond(atomIndex).getOrder().numeric();
-            }
-
-            boolean bond_considered = false;
-            boolean normal_bond = true;
-
-//            System.out.println(AtomI + "= , =" + AtomJ );
-            for (Integer unMappedAtomIndex = 0; unMappedAtomIndex < unmapped_numA; unMappedAtomIndex++) {
-
-                if (unmapped_atoms_molA.get(unMappedAtomIndex).equals(indexI)) {
-                    normal_bond = unMappedAtomsEqualsIndexJ(query, target, atomIndex, counter, mapped_atoms, indexI, indexJ, order);
-                    bond_considered = true;
-                } else //Does a ungemaptes atom at second position in the connection occur?
-                if (unmapped_atoms_molA.get(unMappedAtomIndex).equals(indexJ)) {
-                    normal_bond = unMappedAtomsEqualsIndexI(query, target, atomIndex, counter, mapped_atoms, indexI, indexJ, order);
-                    bond_considered = true;
+            if (mappedCount[indexI] == 0) {
+                if (mappedCount[indexJ] == 0) {
+                    iBondSetA[setBondNumA++] = bond;
                 }
-                if (normal_bond && bond_considered) {
-                    markNormalBonds(atomIndex, indexI, indexJ, order);
-                    break;
+                for (int c = 0; c < mappedCount[indexJ]; c++) {
+                    addNeighbor(bond, indexI, indexJ, labels[indexI], McGregorChecks.MAPPED_LABEL);
                 }
-            }
-        }
-    }
-
-    /**
-     *
-     * @param setNumA
-     * @param setNumB
-     * @param i_bond_setA
-     * @param i_bond_setB
-     * @param unmapped_atoms_molA
-     * @param new_Mapping
-     * @param counter
-     */
-    protected void process(
-            int setNumA,
-            int setNumB,
-            List<Integer> i_bond_setA,
-            List<Integer> i_bond_setB,
-            List<Integer> unmapped_atoms_molA,
-            List<Integer> new_Mapping,
-            int counter) {
-
-        boolean bond_considered = false;
-        boolean normal_bond = true;
-
-//        System.out.println("\n" + cTab1Copy + "\n");
-        for (int atomIndex = 0; atomIndex < setNumA; atomIndex++) {
-            Integer indexI = i_bond_setA.get(atomIndex * 3 + 0);
-            Integer indexJ = i_bond_setA.get(atomIndex * 3 + 1);
-            Integer order = i_bond_setA.get(atomIndex * 3 + 2);
-
-            for (Integer unMappedAtomIndex : unmapped_atoms_molA) {
-                if (unMappedAtomIndex.equals(indexI)) {
-                    normal_bond = unMappedAtomsEqualsIndexJ(setNumA, setNumB, i_bond_setA, i_bond_setB, atomIndex,
-                            counter, new_Mapping, indexI, indexJ, order);
-                    bond_considered = true;
-                } else if (unMappedAtomIndex.equals(indexJ)) {
-                    normal_bond = unMappedAtomsEqualsIndexI(setNumA, setNumB, i_bond_setA, i_bond_setB, atomIndex,
-                            counter, new_Mapping, indexI, indexJ, order);
-                    bond_considered = true;
-                }
-
-                if (normal_bond && bond_considered) {
-                    markNormalBonds(atomIndex, indexI, indexJ, order);
-                    normal_bond = true;
-                    break;
+            } else if (mappedCount[indexJ] == 0) {
+                for (int c = 0; c < mappedCount[indexI]; c++) {
+                    addNeighbor(bond, indexI, indexJ, McGregorChecks.MAPPED_LABEL, labels[indexJ]);
                 }
             }
-            bond_considered = false;
         }
     }
 
-    private int searchCorrespondingAtom(int mapped_atoms_size, int atom_from_other_molecule, int molecule,
-            List<Integer> mapped_atoms_org) {
-
-        List<Integer> mapped_atoms = new ArrayList<Integer>(mapped_atoms_org);
-
-        int corresponding_atom = 0;
-        for (int a = 0; a < mapped_atoms_size; a++) {
-            if ((molecule == 1)
-                    && (mapped_atoms.get(a * 2 + 0).intValue() == atom_from_other_molecule)) {
-                corresponding_atom = mapped_atoms.get(a * 2 + 1);
-            }
-            if ((molecule == 2)
-                    && (mapped_atoms.get(a * 2 + 1).intValue() == atom_from_other_molecule)) {
-                corresponding_atom = mapped_atoms.get(a * 2 + 0);
-            }
+    private void addNeighbor(int bond, int indexI, int indexJ, int labelI, int labelJ) {
+        if (neighborBondNumA == iBondNeighborsA.length) {
+            int capacity = neighborBondNumA * 2 + 2;
+            iBondNeighborsA = Arrays.copyOf(iBondNeighborsA, capacity);
+            iBondNeighborAtomsA = Arrays.copyOf(iBondNeighborAtomsA, capacity * 2);
+            cBondNeighborsA = Arrays.copyOf(cBondNeighborsA, capacity * 2);
         }
-        return corresponding_atom;
-    }
-
-    private void markNormalBonds(int atomIndex,
-            Integer indexI,
-            Integer indexJ,
-            Integer order) {
-        newINeighborsA.add(indexI);
-        newINeighborsA.add(indexJ);
-        newINeighborsA.add(order);
-        newCNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 0));
-        newCNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 1));
-        newCNeighborsA.add("X");
-        newCNeighborsA.add("X");
-        setBondNumA++;
-    }
-
-    private void step1(int atomIndex, int counter) {
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 0));
-        cBondNeighborsA.add(signs[counter]);
-        cBondNeighborsA.add("X");
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 1));
-    }
-
-    private void step2(int atomIndex) {
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 0));
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 1));
-        cBondNeighborsA.add("X");
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 3));
-    }
-
-    private void step3(int atomIndex, int counter) {
-        cBondNeighborsA.add(signs[counter]);
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 1));
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 0));
-        cBondNeighborsA.add("X");
-    }
-
-    private void step4(int atomIndex) {
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 0));
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 1));
-        cBondNeighborsA.add(cTab1Copy.get(atomIndex * 4 + 2));
-        cBondNeighborsA.add("X");
-    }
-
-    private boolean unMappedAtomsEqualsIndexJ(
-            IAtomContainer query,
-            IAtomContainer target,
-            int atomIndex,
-            int counter,
-            List<Integer> mapped_atoms,
-            Integer indexI,
-            Integer indexJ,
-            Integer order) {
-        boolean normal_bond = true;
-        for (int c = 0; c < newNeighborNumA; c++) {
-
-            if (mapped_atoms.get(c * 2).equals(indexJ)) {
-                setBondNeighbors(indexI, indexJ, order);
-                if (cTab1Copy.get(atomIndex * 4 + 3).compareToIgnoreCase("X") == 0) {
-                    step1(atomIndex, counter);
-                    McGregorChecks.changeCharBonds(indexJ, signs[counter], query.getBondCount(), query, cTab1Copy);
-                    int cor_atom = searchCorrespondingAtom(newNeighborNumA, indexJ, 1, mapped_atoms);
-                    McGregorChecks.changeCharBonds(cor_atom, signs[counter], target.getBondCount(), target, cTab2Copy);
-                    counter++;
-                } else {
-                    step2(atomIndex);
-                }
-                normal_bond = false;
-                neighborBondNumA++;
-            }
-        }
-        return normal_bond;
-    }
-
-    private boolean unMappedAtomsEqualsIndexI(
-            IAtomContainer query,
-            IAtomContainer target,
-            int atomIndex,
-            int counter,
-            List<Integer> mapped_atoms,
-            Integer indexI,
-            Integer indexJ,
-            Integer order) {
-
-        boolean normal_bond = true;
-        for (int c = 0; c < newNeighborNumA; c++) {
-
-            if (mapped_atoms.get(c * 2 + 0).equals(indexI)) {
-                setBondNeighbors(indexI, indexJ, order);
-                if (cTab1Copy.get(atomIndex * 4 + 2).compareToIgnoreCase("X") == 0) {
-                    step3(atomIndex, counter);
-                    McGregorChecks.changeCharBonds(indexI, signs[counter], query.getBondCount(), query, cTab1Copy);
-                    int cor_atom = searchCorrespondingAtom(newNeighborNumA, indexI, 1, mapped_atoms);
-                    McGregorChecks.changeCharBonds(cor_atom, signs[counter], target.getBondCount(), target, cTab2Copy);
-                    counter++;
-                } else {
-                    step4(atomIndex);
-                }
-                normal_bond = false;
-                neighborBondNumA++;
-                //System.out.println("Neighbor");
-                //System.out.println(neighborBondNumA);
-            }
-        }
-        return normal_bond;
-    }
-
-    private boolean unMappedAtomsEqualsIndexJ(
-            int setNumA,
-            int setNumB,
-            List<Integer> i_bond_setA,
-            List<Integer> i_bond_setB,
-            int atomIndex,
-            int counter,
-            List<Integer> new_Mapping,
-            Integer indexI,
-            Integer indexJ,
-            Integer order) {
-        boolean normal_bond = true;
-        for (int c = 0; c < newNeighborNumA; c++) {
-
-            if (new_Mapping.get(c * 2 + 0).equals(indexJ)) {
-
-                setBondNeighbors(indexI, indexJ, order);
-                if (cTab1Copy.get(atomIndex * 4 + 3).compareToIgnoreCase("X") == 0) {
-                    step1(atomIndex, counter);
-                    McGregorChecks.changeCharBonds(indexJ, signs[counter], setNumA, i_bond_setA, cTab1Copy);
-                    int cor_atom = McGregorChecks.searchCorrespondingAtom(newNeighborNumA, indexJ, 1, new_Mapping);
-                    McGregorChecks.changeCharBonds(cor_atom, signs[counter], setNumB, i_bond_setB, cTab2Copy);
-                    counter++;
-
-                } else {
-                    step2(atomIndex);
-                }
-                normal_bond = false;
-                neighborBondNumA++;
-            }
-        }
-        return normal_bond;
-    }
-
-    private boolean unMappedAtomsEqualsIndexI(
-            int setNumA,
-            int setNumB,
-            List<Integer> i_bond_setA,
-            List<Integer> i_bond_setB,
-            int atomIndex,
-            int counter, List<Integer> new_Mapping,
-            Integer indexI,
-            Integer indexJ,
-            Integer order) {
-        boolean normal_bond = true;
-        for (int c = 0; c < newNeighborNumA; c++) {
-
-            if (new_Mapping.get(c * 2 + 0).equals(indexI)) {
-                setBondNeighbors(indexI, indexJ, order);
-                if (cTab1Copy.get(atomIndex * 4 + 2).compareToIgnoreCase("X") == 0) {
-                    step3(atomIndex, counter);
-                    McGregorChecks.changeCharBonds(indexI, signs[counter], setNumA, i_bond_setA, cTab1Copy);
-                    int cor_atom = McGregorChecks.searchCorrespondingAtom(newNeighborNumA, indexI, 1, new_Mapping);
-                    McGregorChecks.changeCharBonds(cor_atom, signs[counter], setNumB, i_bond_setB, cTab2Copy);
-                    counter++;
-                } else {
-                    step4(atomIndex);
-                }
-
-                normal_bond = false;
-                neighborBondNumA++;
-
-            }
-        }
-        return normal_bond;
-    }
-
-    private void setBondNeighbors(Integer indexI,
-            Integer indexJ,
-            Integer order) {
-        iBondNeighborsA.add(indexI);
-        iBondNeighborsA.add(indexJ);
-        iBondNeighborsA.add(order);
+        iBondNeighborsA[neighborBondNumA] = bond;
+        iBondNeighborAtomsA[neighborBondNumA * 2] = indexI;
+        iBondNeighborAtomsA[neighborBondNumA * 2 + 1] = indexJ;
+        cBondNeighborsA[neighborBondNumA * 2] = labelI;
+        cBondNeighborsA[neighborBondNumA * 2 + 1] = labelJ;
+        neighborBondNumA++;
     }
 
     /**
@@ -449,11 +131,19 @@ public class QueryProcessor {
         return this.setBondNumA;
     }
 
-    List<Integer> getIBondNeighboursA() {
-        return Collections.unmodifiableList(this.iBondNeighborsA);
+    int[] getIBondNeighboursA() {
+        return this.iBondNeighborsA;
+    }
+
+    int[] getIBondNeighbourAtomsA() {
+        return this.iBondNeighborAtomsA;
+    }
+
+    int[] getCBondNeighborsA() {
+        return this.cBondNeighborsA;
     }
 
-    List<String> getCBondNeighborsA() {
-        return Collections.unmodifiableList(this.cBondNeighborsA);
+    int[] getIBondSetA() {
+        return this.iBondSetA;
     }
 }
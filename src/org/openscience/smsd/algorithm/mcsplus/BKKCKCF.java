@@ -20,19 +20,26 @@
 package org.openscience.smsd.algorithm.mcsplus;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 import org.openscience.cdk.annotations.TestClass;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  * This class implements Bron-Kerbosch clique detection algorithm as it is described in [F. Cazals, C. Karande: An
  * Algorithm for reporting maximal c-cliques; processedVertex.Comp. Sc. (2005); vol 349; pp. 484-490]
  *
+ * Only the c-cliques of maximum size are kept. The vertex sets are <code>long[]</code> bitsets over the vertices of
+ * the compatibility graph and the c-edge / d-edge adjacency rows are built once, so that the set operations of the
+ * enumeration are word wise. A branch is cut when the current clique plus a greedy colouring bound of its candidates
+ * can not reach the best size found so far, and a pivot is used whenever it is safe for c-cliques (see
+ * {@link #choosePivot}).
  *
  * BronKerboschCazalsKarandeKochCliqueFinder.java
  *
@@ -40,54 +47,33 @@ import org.openscience.cdk.annotations.TestClass;
  * @cdk.module smsd
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
  */
-@TestClass("org.openscience.cdk.smsd.BKKCKCFTest")
+@TestClass("org.openscience.smsd.algorithm.mcsplus.BKKCKCFTest")
 public final class BKKCKCF {
 
     private final Set<List<Integer>> max_Cliques_Set;
-    /**
-     * *****************************************************************
-     */
-    /*
-     *T: is a set of vertices which have already been used for the
-     * initialization of ENUMERATE_CLIQUES
-     */
-    private final List<Integer> T;
-    /*
-     * C: set of vertices belonging to the current clique
-     */
-    private final List<Integer> C;
     /*
-     * S: set of vertices which are not allowed to be added
-     * to C
+     * number of vertices and of 64 bit words per vertex set
      */
-    private final List<Integer> S;
+    private final int vertexCount;
+    private final int words;
     /*
-     *P: is a set of vertices which <b>can</b> be added to C, because they are
-     * neighbours of vertex u via <i>c-edges</i>
+     * adjacency rows: c-edges, d-edges and their union
      */
-    private final Stack<Integer> P;
+    private final long[][] cAdjacency;
+    private final long[][] dAdjacency;
+    private final long[][] adjacency;
     /*
-     * D: is a set of vertices which <b>cannot</b> be added to C, because they are
-     * neighbours of vertex u via <i>d-edges</i>
+     * T: is a set of vertices which have already been used for the
+     * initialization of ENUMERATE_CLIQUES
      */
-    private final Stack<Integer> D;
+    private final long[] T;
     /*
-     *V: stored all the vertices for the Graph G
-     * V[G]: nodes of vector comp_graph_nodes are stored in V
-     */
-    private static Stack<Integer> V;
-    /**
-     * ********************************************************************
+     * C: vertices belonging to the current clique, in the order they were added
      */
-    private final List<Integer> C_edges;
-    private final List<Integer> D_edges;
-    private final List<Integer> comp_graph_nodes;
-
+    private final int[] C;
     private int best_clique_size;
-    private List<Integer> C_copy;
-    private Stack<Integer> P_copy;
-    private Stack<Integer> D_copy;
-    private List<Integer> S_copy;
+    private final SearchBudget budget;
+    private boolean timeout = false;
 
     /**
      * Creates a new instance of BKKCKCF
@@ -100,307 +86,265 @@ public final class BKKCKCF {
             List<Integer> compGraphNodes,
             List<Integer> cEdges,
             List<Integer> dEdges) {
+        this(compGraphNodes.size() / 3,
+                toRows(compGraphNodes.size() / 3, cEdges),
+                toRows(compGraphNodes.size() / 3, dEdges));
+    }
+
+    /**
+     * Creates a new instance of BKKCKCF over a compatibility graph given as
+     * packed adjacency rows, see {@link CompatibilityGraph}. Row i holds bit j
+     * (word j / 64) if vertex i is joined to vertex j. A pair carrying both a
+     * c- and a d-edge is treated as a c-edge. The rows are not modified.
+     *
+     * @param vertexCount number of vertices
+     * @param cRows c-edge rows, vertexCount x ((vertexCount + 63) / 64)
+     * @param dRows d-edge rows, vertexCount x ((vertexCount + 63) / 64)
+     */
+    public BKKCKCF(int vertexCount, long[][] cRows, long[][] dRows) {
+        this(vertexCount, cRows, dRows, null);
+    }
 
-        this.comp_graph_nodes = Collections.unmodifiableList(new ArrayList<Integer>(compGraphNodes));
-        this.C_edges = Collections.unmodifiableList(new ArrayList<Integer>(cEdges));
-        this.D_edges = Collections.unmodifiableList(new ArrayList<Integer>(dEdges));
+    /**
+     * Creates a new instance of BKKCKCF which stops when the budget runs out,
+     * the largest cliques found until then are reported.
+     *
+     * @param vertexCount number of vertices
+     * @param cRows c-edge rows, vertexCount x ((vertexCount + 63) / 64)
+     * @param dRows d-edge rows, vertexCount x ((vertexCount + 63) / 64)
+     * @param budget search budget or null
+     */
+    public BKKCKCF(int vertexCount, long[][] cRows, long[][] dRows, SearchBudget budget) {
+        this.budget = budget;
+        this.vertexCount = vertexCount;
+        this.words = (vertexCount + 63) >>> 6;
+        if (cRows.length < vertexCount || dRows.length < vertexCount) {
+            throw new IllegalArgumentException("Expected " + vertexCount + " adjacency rows");
+        }
+        this.cAdjacency = cRows;
+        this.dAdjacency = new long[vertexCount][words];
+        this.adjacency = new long[vertexCount][words];
         best_clique_size = 0;
         max_Cliques_Set = new HashSet<List<Integer>>();
+        T = new long[words];
+        C = new int[vertexCount];
 
-        T = new ArrayList<Integer>(); //Initialize the T Vector
-        C = new ArrayList<Integer>();
-        P = new Stack<Integer>();
-        D = new Stack<Integer>();
-        S = new ArrayList<Integer>();
-        V = new Stack<Integer>();
-        int V_set_size = comp_graph_nodes.size() / 3;
-        for (int a = 0; a < V_set_size; a++) {
-            V.add(comp_graph_nodes.get(a * 3 + 2));
+        for (int i = 0; i < vertexCount; i++) {
+            for (int w = 0; w < words; w++) {
+                dAdjacency[i][w] = dRows[i][w] & ~cRows[i][w];
+                adjacency[i][w] = cRows[i][w] | dAdjacency[i][w];
+            }
         }
-        V.add(0);
+        long start = System.nanoTime();
         Init_Algorithm();
+        SearchStats.record(SearchStats.current(), Stage.CLIQUE_SEARCH, start);
     }
 
     /*
-     * Call the wrapper for ENUMERATE_CLIQUES
-     *
+     * vertex ids of the edge lists are 1 based, ids out of range and loops
+     * are ignored
      */
-    private void Init_Algorithm() {
-
-        /*
-         * N[u]: set of neighbours of vertex u in Graph G
-         *
-         */
-        List<Integer> N;
-        int b = 0;
-
-        /*
-         * Let T be the set of Nodes already been used in the initialization
-         *
-         */
-        T.clear();
-
-        while (V.get(b) != 0) {
-
-            int central_node = V.get(b);
-
-            P.clear();
-            D.clear();
-            S.clear();
-            C.clear();
-
-            //find the neighbors of the central node from V
-            N = find_neighbors(V.get(b));
-            //get neighbours and order S, P oder D
-            for (int c = 0; c < N.size(); c += 2) {
-                //Grouping of the neighbors in S,P and D
-
-                /*
-                 * u and v are adjacent via a C-edge
-                 */
-                if (N.get(c + 1) == 1) {
-                    if (T.contains(N.get(c))) {
-                        S.add(N.get(c));
-                    } else {
-                        P.push(N.get(c));
-                    }
-
-                } else if (N.get(c + 1) == 2) {
-                    // u and v are adjacent via a D-edge
-                    D.add(N.get(c));
-                }
-                //find respective neighbor position in P, which is needed for the deletion from V
-
-                int neighbor_position = -1;
-
-                int elementAtC = N.get(c);
-
-                for (int d = 0; d < V.size(); d++) {
-                    if (elementAtC == V.elementAt(d)) {
-                        neighbor_position = d;
-                    }
-                }
-
-                //delete neighbor from set V
-                if (neighbor_position != -1) {
-                    //System.out.println("neighbor_position : " + neighbor_position);
-                    for (int e = neighbor_position; e < (V.size() - 1); e++) {
-                        V.set(e, V.get(e + 1));
-                    }
-                    V.pop();
-                    if (neighbor_position < b) {
-                        b -= 1;
-                    }
-                }
+    private static long[][] toRows(int vertexCount, List<Integer> edges) {
+        long[][] rows = new long[vertexCount][(vertexCount + 63) >>> 6];
+        for (int a = 0; a + 1 < edges.size(); a += 2) {
+            int i = edges.get(a) - 1;
+            int j = edges.get(a + 1) - 1;
+            if (i < 0 || j < 0 || i >= vertexCount || j >= vertexCount || i == j) {
+                continue;
             }
-            P.add(0);
-            C.add(central_node);
-            Enumerate_Cliques(C, P, D, S);
-            T.add(V.get(b));
-            b++;
+            rows[i][j >>> 6] |= 1L << j;
+            rows[j][i >>> 6] |= 1L << i;
         }
-
+        return rows;
     }
 
-    private int Enumerate_Cliques(List<Integer> C, Stack<Integer> P, Stack<Integer> D, List<Integer> S) {
-
-        List<Integer> N = new ArrayList<Integer>(); ////Initialization Vector N
-        Stack<Integer> P_Prime = new Stack<Integer>();//Defined as P' in the paper
-
-        C_copy = new ArrayList<Integer>();
-        P_copy = new Stack<Integer>();
-        D_copy = new Stack<Integer>();
-        S_copy = new ArrayList<Integer>();
-
-        for (Integer I : P) {
-            P_Prime.add(I);
-        }
-
-        if (P.size() == 1) {
-            if (S.isEmpty()) {
-                //store best solutions in stack max_Cliques_Set
-                int clique_size = C.size();
-
-                if (clique_size >= best_clique_size) {
-                    if (clique_size > best_clique_size) {
-                        max_Cliques_Set.clear();
-                        best_clique_size = clique_size;
-//                        System.out.println("Best Cliques Size: " + best_clique_size + " " + clique_size);
-                    }
-                    if (clique_size == best_clique_size) {
-                        max_Cliques_Set.add(C);
-                    }
-                }
-
-                return 0;
+    /*
+     * Call the wrapper for ENUMERATE_CLIQUES, once per vertex. The c-neighbours
+     * of a vertex which already served as a start are excluded (S) as all the
+     * cliques containing both have been reported.
+     */
+    private void Init_Algorithm() {
+        for (int u = 0; u < vertexCount && !timeout; u++) {
+            long[] P = new long[words];
+            long[] D = new long[words];
+            long[] S = new long[words];
+            for (int w = 0; w < words; w++) {
+                P[w] = cAdjacency[u][w] & ~T[w];
+                S[w] = cAdjacency[u][w] & T[w];
+                D[w] = dAdjacency[u][w];
             }
+            C[0] = u;
+            Enumerate_Cliques(1, P, D, S);
+            T[u >>> 6] |= 1L << u;
         }
-        int a = 0;
+    }
 
-        while (P_Prime.elementAt(a) != 0) {
-            int ui = P_Prime.get(a);
-            //remove P_Prime[a] from P
-            //find position of P_Prime node in P
-            int P_size = P.size();
-            Integer ut_node_pos = 100000;
-            for (int counter = 0; counter < P_size - 1; counter++) {
-                if (P.elementAt(counter) == ui) {
-                    ut_node_pos = counter;
-                }
-            }
-            if (ut_node_pos == 100000) {
-                System.out.println("ut_node_pos = 100000");
-            }
-            //delete P_Prime node in P
-            for (int counter = ut_node_pos; counter < P_size - 1; counter++) {
-                P.set(counter, P.get(counter + 1));
+    /*
+     * P: vertices which can be added to C, they are adjacent to every vertex of
+     * C and c-adjacent to at least one.
+     * D: vertices adjacent to every vertex of C but only via d-edges, they move
+     * to P once a c-neighbour joins C.
+     * S: vertices which are not allowed to be added to C.
+     */
+    private void Enumerate_Cliques(int cliqueSize, long[] P, long[] D, long[] S) {
+        if (timeout || (budget != null && budget.tick())) {
+            timeout = true;
+            return;
+        }
+        if (isEmpty(P)) {
+            if (isEmpty(S)) {
+                storeClique(cliqueSize);
             }
+            return;
+        }
+        if (cliqueSize + colourBound(P, D) < best_clique_size) {
+            return;
+        }
 
-            P.pop();
-
-            C_copy.clear();
-            P_copy.clear();
-            D_copy.clear();
-            S_copy.clear();
-            N.clear();
-
-            for (Integer obj : C) {
-                C_copy.add(obj);
+        long[] branch = P.clone();
+        int pivot = choosePivot(P, D, S);
+        if (pivot != -1) {
+            for (int w = 0; w < words; w++) {
+                branch[w] &= ~adjacency[pivot][w];
             }
+        }
 
-            for (Integer obj : P) {
-                P_copy.add(obj);
+        for (int ui = nextSetBit(branch, 0); ui != -1; ui = nextSetBit(branch, ui + 1)) {
+            long[] newP = new long[words];
+            long[] newD = new long[words];
+            long[] newS = new long[words];
+            long[] cRow = cAdjacency[ui];
+            long[] dRow = dAdjacency[ui];
+            long[] row = adjacency[ui];
+            for (int w = 0; w < words; w++) {
+                long promoted = D[w] & cRow[w];
+                newP[w] = (P[w] & row[w]) | (promoted & ~T[w]);
+                newS[w] = (S[w] & row[w]) | (promoted & T[w]);
+                newD[w] = D[w] & dRow[w];
             }
-            for (Integer obj : D) {
-                D_copy.add(obj);
+            C[cliqueSize] = ui;
+            Enumerate_Cliques(cliqueSize + 1, newP, newD, newS);
+            if (timeout) {
+                return;
             }
-            for (Integer obj : S) {
-                S_copy.add(obj);
+            P[ui >>> 6] &= ~(1L << ui);
+            S[ui >>> 6] |= 1L << ui;
+            if (cliqueSize + colourBound(P, D) < best_clique_size) {
+                return;
             }
+        }
+    }
 
-            P_copy.pop(); //Entferne Endekennung bei P_copy POP method() in CPP
-
-            N = find_neighbors(P_Prime.get(a));
-
-            int N_size = N.size();
-
-            for (int b = 0; b < N_size; b += 2) {
-
-                int D_set_size = D.size();
-                int Nelement_at_b = N.get(b);
-
-                for (int c = 0; c < D_set_size; c++) {
-
-                    if (Nelement_at_b == D.elementAt(c)) {
-                        if (N.get(b + 1) == 1) {
-                            //u and v are adjacent via a C-edge
-
-                            if (T.contains(Nelement_at_b)) {
-                                S_copy.add(N.get(b));
-                            } else {
-                                P_copy.push(N.get(b));
-                            }
-
-                            int D_copy_size = D_copy.size();
-                            int Nb_position = 10000;
-                            for (int e = 0; e < D_copy_size; e++) {
-                                if (Nelement_at_b == D_copy.elementAt(e)) {
-                                    Nb_position = e;
-                                }
-                            }
-                            for (int e = Nb_position; e < D_copy_size - 1; e++) {
-                                D_copy.set(e, D_copy.get(e + 1));
-                            }
-
-                            D_copy.pop();
-                        }
-                        /*//Abschnitt sinnlos, denn wenn etwas in S war ist, es nach S' kopiert worden
-                         if(N[b+1] == 2){     //u and v are adjacent via a D-edge
-                         if().....
-                         }*/
-                    }
-                }
-                int ut_set_size = P_Prime.size();
-                int neighbor_position = -1;
-                for (int e = 0; e < ut_set_size; e++) {
-                    if (Nelement_at_b == P_Prime.elementAt(e)) {
-                        neighbor_position = e;
+    /*
+     * Every maximal c-clique above C contains the pivot u or one of the
+     * vertices of P which are not adjacent to u, provided u is a c-neighbour
+     * of C (u in P or S) and adjacent to all of D: otherwise a clique made of
+     * neighbours of u could be extended by u. Returns the candidate with most
+     * neighbours in P, or -1 if there is none.
+     */
+    private int choosePivot(long[] P, long[] D, long[] S) {
+        int pivot = -1;
+        int best = -1;
+        for (int pass = 0; pass < 2; pass++) {
+            long[] candidates = pass == 0 ? P : S;
+            for (int u = nextSetBit(candidates, 0); u != -1; u = nextSetBit(candidates, u + 1)) {
+                long[] row = adjacency[u];
+                boolean coversD = true;
+                int neighbours = 0;
+                for (int w = 0; w < words; w++) {
+                    if ((D[w] & ~row[w]) != 0L) {
+                        coversD = false;
+                        break;
                     }
+                    neighbours += Long.bitCount(P[w] & row[w]);
                 }
-                if (neighbor_position != -1) {
-                    for (int e = neighbor_position; e < ut_set_size - 1; e++) {
-                        P_Prime.set(e, P_Prime.get(e + 1));
-                    }
-                    P_Prime.pop(); //TODO:Check removeElementsAt to see whether size returns number of elements or index value
-                    if (neighbor_position < a) {
-                        a -= 1;
-                    }
+                if (coversD && neighbours > best) {
+                    best = neighbours;
+                    pivot = u;
                 }
             }
-            Stack<Integer> P_copy_N_intersec = new Stack<Integer>();
-            Stack<Integer> D_copy_N_intersec = new Stack<Integer>();
-            List<Integer> S_copy_N_intersec = new ArrayList<Integer>();
-
-            int nElement;
-
-            for (int sec = 0; sec < N_size; sec += 2) {
-
-                nElement = N.get(sec);
+        }
+        return pivot;
+    }
 
-                if (P_copy.contains(nElement)) {
-                    P_copy_N_intersec.push(nElement);
-                }
-                if (D_copy.contains(nElement)) {
-                    D_copy_N_intersec.add(nElement);
-                }
-                if (S_copy.contains(nElement)) {
-                    S_copy_N_intersec.add(nElement);
+    /*
+     * Number of colours of a greedy colouring of P and D, an upper bound on the
+     * number of vertices which can still join C.
+     */
+    private int colourBound(long[] P, long[] D) {
+        long[] uncoloured = new long[words];
+        long[] available = new long[words];
+        for (int w = 0; w < words; w++) {
+            uncoloured[w] = P[w] | D[w];
+        }
+        int colours = 0;
+        while (!isEmpty(uncoloured)) {
+            colours++;
+            System.arraycopy(uncoloured, 0, available, 0, words);
+            for (int v = nextSetBit(available, 0); v != -1; v = nextSetBit(available, v + 1)) {
+                uncoloured[v >>> 6] &= ~(1L << v);
+                long[] row = adjacency[v];
+                for (int w = 0; w < words; w++) {
+                    available[w] &= ~row[w];
                 }
-
             }
-            P_copy_N_intersec.add(0);
-            C_copy.add(ui);
-
-            Enumerate_Cliques(C_copy, P_copy_N_intersec, D_copy_N_intersec, S_copy_N_intersec);
-            S.add(ui);
-            a++;
         }
-        return 0;
+        return colours;
     }
 
-    private List<Integer> find_neighbors(int central_node) {
-
-        List<Integer> neighbor_vec = new ArrayList<Integer>();
-
-        int C_edge_number = C_edges.size() / 2;
+    private void storeClique(int cliqueSize) {
+        if (cliqueSize < best_clique_size) {
+            return;
+        }
+        if (cliqueSize > best_clique_size) {
+            max_Cliques_Set.clear();
+            best_clique_size = cliqueSize;
+        }
+        int[] sorted = new int[cliqueSize];
+        System.arraycopy(C, 0, sorted, 0, cliqueSize);
+        Arrays.sort(sorted);
+        List<Integer> clique = new ArrayList<Integer>(cliqueSize);
+        for (int v : sorted) {
+            clique.add(v + 1);
+        }
+        max_Cliques_Set.add(clique);
+    }
 
-        for (int a = 0; a < C_edge_number; a++) {
-            if (C_edges.get(a * 2 + 0) == central_node) {
-                neighbor_vec.add(C_edges.get(a * 2 + 1));
-                neighbor_vec.add(1); // 1 means: is connected via C-edge
-            }
-            if (C_edges.get(a * 2 + 1) == central_node) {
-                neighbor_vec.add(C_edges.get(a * 2 + 0));
-                neighbor_vec.add(1); // 1 means: is connected via C-edge
+    private boolean isEmpty(long[] set) {
+        for (int w = 0; w < words; w++) {
+            if (set[w] != 0L) {
+                return false;
             }
         }
+        return true;
+    }
 
-        int D_edge_number = D_edges.size() / 2;
-        for (int a = 0; a < D_edge_number; a++) {
-            if (D_edges.get(a * 2 + 0) == central_node) {
-                neighbor_vec.add(D_edges.get(a * 2 + 1));
-                neighbor_vec.add(2); // 2 means: is connected via D-edge
+    private int nextSetBit(long[] set, int from) {
+        int w = from >>> 6;
+        if (w >= words) {
+            return -1;
+        }
+        long word = set[w] & (-1L << from);
+        while (true) {
+            if (word != 0L) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                return bit < vertexCount ? bit : -1;
             }
-            if (D_edges.get(a * 2 + 1) == central_node) {
-                neighbor_vec.add(D_edges.get(a * 2 + 0));
-                neighbor_vec.add(2); // 2 means: is connected via D-edge
+            if (++w == words) {
+                return -1;
             }
+            word = set[w];
         }
+    }
 
-        return neighbor_vec;
+    /**
+     * @return true if the enumeration was stopped by the budget
+     */
+    public boolean isTimeout() {
+        return timeout;
     }
 
-    public synchronized int getBestCliqueSize() {
+    public int getBestCliqueSize() {
         return best_clique_size;
     }
 
@@ -408,8 +352,7 @@ public final class BKKCKCF {
      *
      * @return
      */
-    public synchronized Collection<List<Integer>> getMaxCliqueSet() {
-        //System.out.println("max_Cliques_Set: " + max_Cliques_Set.size());
+    public Collection<List<Integer>> getMaxCliqueSet() {
         return Collections.unmodifiableCollection(max_Cliques_Set);
     }
 }
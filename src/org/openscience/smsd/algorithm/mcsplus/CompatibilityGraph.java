@@ -0,0 +1,177 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.mcsplus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+
+/**
+ * Compatibility (modular product) graph of two molecules as built by
+ * {@link CompatibilityGraphBuilder}. Node n pairs query atom
+ * {@link #getQueryIndex(int)} with target atom {@link #getTargetIndex(int)};
+ * the c-edges and d-edges are packed adjacency rows, row n holding bit m
+ * (word m / 64) if nodes n and m are joined. The rows can be handed to
+ * {@link BKKCKCF#BKKCKCF(int, long[][], long[][])} as they are.
+ *
+ * Node indices are 0 based here while the cliques reported by
+ * {@link BKKCKCF} and the triples of {@link #getCompGraphNodes()} use 1 based
+ * ids.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.algorithm.mcsplus.CompatibilityGraphBuilderTest")
+public final class CompatibilityGraph {
+
+    private final int nodeCount;
+    private final int[] queryIndex;
+    private final int[] targetIndex;
+    private final long[][] cRows;
+    private final long[][] dRows;
+    private final int cEdgeCount;
+    private final int dEdgeCount;
+    private List<Integer> compGraphNodes = null;
+
+    CompatibilityGraph(int nodeCount, int[] queryIndex, int[] targetIndex, long[][] cRows, long[][] dRows) {
+        this.nodeCount = nodeCount;
+        this.queryIndex = queryIndex;
+        this.targetIndex = targetIndex;
+        this.cRows = cRows;
+        this.dRows = dRows;
+        this.cEdgeCount = countEdges(cRows);
+        this.dEdgeCount = countEdges(dRows);
+    }
+
+    private static int countEdges(long[][] rows) {
+        int bits = 0;
+        for (long[] row : rows) {
+            for (long word : row) {
+                bits += Long.bitCount(word);
+            }
+        }
+        return bits / 2;
+    }
+
+    /**
+     * Number of nodes of the compatibility graph.
+     *
+     * @return node count
+     */
+    @TestMethod("testBenzeneToluene")
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param node 0 based node index
+     * @return the query atom index of the node
+     */
+    public int getQueryIndex(int node) {
+        return queryIndex[node];
+    }
+
+    /**
+     * @param node 0 based node index
+     * @return the target atom index of the node
+     */
+    public int getTargetIndex(int node) {
+        return targetIndex[node];
+    }
+
+    /**
+     * @param n 0 based node index
+     * @param m 0 based node index
+     * @return true if n and m are joined by a c-edge
+     */
+    @TestMethod("testBenzeneToluene")
+    public boolean isCEdge(int n, int m) {
+        return (cRows[n][m >>> 6] & (1L << m)) != 0L;
+    }
+
+    /**
+     * @param n 0 based node index
+     * @param m 0 based node index
+     * @return true if n and m are joined by a d-edge
+     */
+    public boolean isDEdge(int n, int m) {
+        return (dRows[n][m >>> 6] & (1L << m)) != 0L;
+    }
+
+    /**
+     * C-edge rows. The returned arrays are shared and must not be modified.
+     *
+     * @return c-edge adjacency rows
+     */
+    public long[][] getCRows() {
+        return cRows;
+    }
+
+    /**
+     * D-edge rows. The returned arrays are shared and must not be modified.
+     *
+     * @return d-edge adjacency rows
+     */
+    public long[][] getDRows() {
+        return dRows;
+    }
+
+    /**
+     * @return number of c-edges
+     */
+    public int getCEdgeCount() {
+        return cEdgeCount;
+    }
+
+    /**
+     * @return number of d-edges
+     */
+    public int getDEdgeCount() {
+        return dEdgeCount;
+    }
+
+    /**
+     * The nodes in the (query atom, target atom, 1 based id) triple layout of
+     * {@link GenerateCompatibilityGraph#getCompGraphNodes()}, for
+     * {@link ExactMapping}.
+     *
+     * @return node triples
+     */
+    public synchronized List<Integer> getCompGraphNodes() {
+        if (compGraphNodes == null) {
+            List<Integer> nodes = new ArrayList<Integer>(nodeCount * 3);
+            for (int n = 0; n < nodeCount; n++) {
+                nodes.add(queryIndex[n]);
+                nodes.add(targetIndex[n]);
+                nodes.add(n + 1);
+            }
+            compGraphNodes = Collections.unmodifiableList(nodes);
+        }
+        return compGraphNodes;
+    }
+}
@@ -0,0 +1,465 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.mcsplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryBond;
+import org.openscience.smsd.algorithm.matchers.DefaultMatcher;
+import org.openscience.smsd.helper.CompiledGraph;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
+
+/**
+ * Builds the compatibility graph of two molecules directly as packed
+ * adjacency rows (see {@link CompatibilityGraph}). It produces the same graph
+ * as {@link GenerateCompatibilityGraph}:
+ * <ul>
+ * <li>a node pairs a query and a target atom of the same element whose
+ * sorted neighbourhood labels are equal (bond sensitive) or contained
+ * (bond insensitive);</li>
+ * <li>two nodes are joined by a c-edge if both atom pairs are bonded and the
+ * bonds match, and by a d-edge if the bonds do not match or neither pair is
+ * bonded;</li>
+ * <li>if that graph has no c-edge, the nodes are rebuilt from the element
+ * (or query atom) alone and only c-edges are kept.</li>
+ * </ul>
+ *
+ * The atom labels are interned to ints once per molecule and the bond pairs
+ * are matched once per pair of bonds, so that a row is made of a few word
+ * wise masks plus a walk over the neighbours of its two atoms. Large graphs
+ * are built in parallel by chunks of rows.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.algorithm.mcsplus.CompatibilityGraphBuilderTest")
+public final class CompatibilityGraphBuilder {
+
+    /**
+     * Graphs with at least this many nodes are built in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 2048;
+    private static final int CHUNK_ROWS = 256;
+    private static final int LABEL_SIZE = 7;
+    private static final String PADDING = "Z9";
+    private static final byte MATCH = 1;
+    private static final byte MISMATCH = 2;
+    private final IAtomContainer source;
+    private final IAtomContainer target;
+    private final boolean shouldMatchBonds;
+    private final boolean shouldMatchRings;
+    private final boolean matchAtomType;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a builder, large graphs are built on a pool which lives for the
+     * duration of {@link #build()}.
+     *
+     * @param source query molecule
+     * @param target target molecule
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     */
+    public CompatibilityGraphBuilder(
+            IAtomContainer source,
+            IAtomContainer target,
+            boolean shouldMatchBonds,
+            boolean shouldMatchRings,
+            boolean matchAtomType) {
+        this(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * Creates a builder which runs the row chunks of large graphs on the given
+     * executor. The executor is not shut down by the builder.
+     *
+     * @param source query molecule
+     * @param target target molecule
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param executor executor for the row chunks, or null
+     */
+    public CompatibilityGraphBuilder(
+            IAtomContainer source,
+            IAtomContainer target,
+            boolean shouldMatchBonds,
+            boolean shouldMatchRings,
+            boolean matchAtomType,
+            ExecutorService executor) {
+        this.source = source;
+        this.target = target;
+        this.shouldMatchBonds = shouldMatchBonds;
+        this.shouldMatchRings = shouldMatchRings;
+        this.matchAtomType = matchAtomType;
+        this.executor = executor;
+    }
+
+    /**
+     * Builds the compatibility graph.
+     *
+     * @return the compatibility graph
+     */
+    @TestMethod("testBenzeneToluene")
+    public CompatibilityGraph build() {
+        long start = System.nanoTime();
+        CompiledGraph query = new CompiledGraph(source);
+        CompiledGraph subject = new CompiledGraph(target);
+        Product product = new Product(query, subject, labelledNodes(query, subject), true);
+        CompatibilityGraph graph = product.build();
+        if (graph.getCEdgeCount() == 0) {
+            product = new Product(query, subject, elementNodes(query, subject), false);
+            graph = product.build();
+        }
+        SearchStats.record(SearchStats.current(), Stage.COMPATIBILITY_GRAPH, start);
+        return graph;
+    }
+
+    /*
+     * Nodes of the labelled graph: same element and equal (bond sensitive) or
+     * contained (bond insensitive) neighbourhood labels
+     */
+    private int[][] labelledNodes(CompiledGraph query, CompiledGraph subject) {
+        Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        int[] querySymbols = new int[query.getAtomCount()];
+        int[] subjectSymbols = new int[subject.getAtomCount()];
+        int[][] queryLabels = labels(query, dictionary, querySymbols);
+        int[][] subjectLabels = labels(subject, dictionary, subjectSymbols);
+
+        int[][] nodes = new int[query.getAtomCount()][subject.getAtomCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            for (int j = 0; j < nodes[i].length; j++) {
+                boolean compatible = querySymbols[i] == subjectSymbols[j]
+                        && (shouldMatchBonds
+                        ? Arrays.equals(queryLabels[i], subjectLabels[j])
+                        : isSubset(queryLabels[i], subjectLabels[j]));
+                nodes[i][j] = compatible ? 0 : -1;
+            }
+        }
+        return nodes;
+    }
+
+    /*
+     * Nodes of the fall back graph: query atom match or same element
+     */
+    private int[][] elementNodes(CompiledGraph query, CompiledGraph subject) {
+        int[][] nodes = new int[query.getAtomCount()][subject.getAtomCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            IAtom atom1 = query.getContainer().getAtom(i);
+            for (int j = 0; j < nodes[i].length; j++) {
+                IAtom atom2 = subject.getContainer().getAtom(j);
+                boolean compatible = (atom1 instanceof IQueryAtom && ((IQueryAtom) atom1).matches(atom2))
+                        || (atom1.getSymbol() != null && atom1.getSymbol().equalsIgnoreCase(atom2.getSymbol()));
+                nodes[i][j] = compatible ? 0 : -1;
+            }
+        }
+        return nodes;
+    }
+
+    /*
+     * Sorted, interned labels made of the atom and its neighbours, padded to
+     * LABEL_SIZE
+     */
+    private int[][] labels(CompiledGraph graph, Map<String, Integer> dictionary, int[] symbols) {
+        int padding = intern(dictionary, PADDING);
+        int[][] labels = new int[graph.getAtomCount()][];
+        for (int i = 0; i < labels.length; i++) {
+            IAtom atom = graph.getContainer().getAtom(i);
+            int[] neighbours = graph.getNeighbours(i);
+            int[] label = new int[Math.max(LABEL_SIZE, neighbours.length + 1)];
+            Arrays.fill(label, padding);
+            label[0] = intern(dictionary, atomLabel(atom));
+            for (int k = 0; k < neighbours.length; k++) {
+                label[k + 1] = intern(dictionary, atomLabel(graph.getContainer().getAtom(neighbours[k])));
+            }
+            Arrays.sort(label);
+            labels[i] = label;
+            symbols[i] = intern(dictionary, atom.getSymbol());
+        }
+        return labels;
+    }
+
+    private String atomLabel(IAtom atom) {
+        if (matchAtomType && atom.getAtomTypeName() != null) {
+            return atom.getAtomTypeName();
+        }
+        return atom.getSymbol();
+    }
+
+    private static int intern(Map<String, Integer> dictionary, String label) {
+        Integer id = dictionary.get(label);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(label, id);
+        }
+        return id;
+    }
+
+    /*
+     * Number of query label entries present in the target label equals the
+     * size of the target label
+     */
+    private static boolean isSubset(int[] labelA, int[] labelB) {
+        int common = 0;
+        for (int a : labelA) {
+            if (Arrays.binarySearch(labelB, a) >= 0) {
+                common++;
+            }
+        }
+        return common == labelB.length;
+    }
+
+    private boolean isMatchFeasible(IBond bondA1, IBond bondA2) {
+        if (bondA1 instanceof IQueryBond) {
+            if (((IQueryBond) bondA1).matches(bondA2)) {
+                IQueryAtom atom1 = (IQueryAtom) (bondA1.getAtom(0));
+                IQueryAtom atom2 = (IQueryAtom) (bondA1.getAtom(1));
+                return atom1.matches(bondA2.getAtom(0)) && atom2.matches(bondA2.getAtom(1))
+                        || atom1.matches(bondA2.getAtom(1)) && atom2.matches(bondA2.getAtom(0));
+            }
+            return false;
+        }
+        return DefaultMatcher.matches(bondA1, bondA2, shouldMatchBonds, shouldMatchRings, matchAtomType);
+    }
+
+    /**
+     * Product of the two molecules over a given node set. The node set is an
+     * atom by atom matrix, -1 for the pairs which are not nodes; the node ids
+     * are assigned in row major order.
+     */
+    private final class Product {
+
+        private final CompiledGraph query;
+        private final CompiledGraph subject;
+        private final int[][] nodes;
+        private final boolean withDEdges;
+        private final int nodeCount;
+        private final int words;
+        private final int[] queryIndex;
+        private final int[] targetIndex;
+        /*
+         * nodes by query atom and by target atom
+         */
+        private final long[][] byQuery;
+        private final long[][] byTarget;
+        /*
+         * bond pair compatibility, query bonds by target bonds: MATCH,
+         * MISMATCH or 0 if the pair never joins two nodes
+         */
+        private final byte[][] bondPairs;
+        private final long[][] cRows;
+        private final long[][] dRows;
+
+        Product(CompiledGraph query, CompiledGraph subject, int[][] nodes, boolean withDEdges) {
+            this.query = query;
+            this.subject = subject;
+            this.nodes = nodes;
+            this.withDEdges = withDEdges;
+
+            int count = 0;
+            for (int[] row : nodes) {
+                for (int j = 0; j < row.length; j++) {
+                    if (row[j] != -1) {
+                        row[j] = count++;
+                    }
+                }
+            }
+            this.nodeCount = count;
+            this.words = (nodeCount + 63) >>> 6;
+            this.queryIndex = new int[nodeCount];
+            this.targetIndex = new int[nodeCount];
+            this.byQuery = new long[query.getAtomCount()][words];
+            this.byTarget = new long[subject.getAtomCount()][words];
+            for (int i = 0; i < nodes.length; i++) {
+                for (int j = 0; j < nodes[i].length; j++) {
+                    int n = nodes[i][j];
+                    if (n != -1) {
+                        queryIndex[n] = i;
+                        targetIndex[n] = j;
+                        byQuery[i][n >>> 6] |= 1L << n;
+                        byTarget[j][n >>> 6] |= 1L << n;
+                    }
+                }
+            }
+            this.bondPairs = matchBondPairs();
+            this.cRows = new long[nodeCount][words];
+            this.dRows = new long[nodeCount][words];
+        }
+
+        /*
+         * Matches the bond pairs which join two nodes, once per pair
+         */
+        private byte[][] matchBondPairs() {
+            byte[][] pairs = new byte[query.getBondCount()][subject.getBondCount()];
+            for (int a = 0; a < pairs.length; a++) {
+                int i1 = query.getBondBegin(a);
+                int i2 = query.getBondEnd(a);
+                if (i1 == -1 || i2 == -1) {
+                    continue;
+                }
+                for (int b = 0; b < pairs[a].length; b++) {
+                    int j1 = subject.getBondBegin(b);
+                    int j2 = subject.getBondEnd(b);
+                    if (j1 == -1 || j2 == -1) {
+                        continue;
+                    }
+                    if ((nodes[i1][j1] != -1 && nodes[i2][j2] != -1)
+                            || (nodes[i1][j2] != -1 && nodes[i2][j1] != -1)) {
+                        boolean match = isMatchFeasible(
+                                query.getContainer().getBond(a), subject.getContainer().getBond(b));
+                        pairs[a][b] = match ? MATCH : MISMATCH;
+                    }
+                }
+            }
+            return pairs;
+        }
+
+        CompatibilityGraph build() {
+            if (nodeCount < PARALLEL_THRESHOLD) {
+                fillRows(0, nodeCount);
+            } else if (executor != null) {
+                fillRows(executor);
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                try {
+                    fillRows(pool);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            return new CompatibilityGraph(nodeCount, queryIndex, targetIndex, cRows, dRows);
+        }
+
+        private void fillRows(ExecutorService pool) {
+            List<Future<Object>> chunks = new ArrayList<Future<Object>>();
+            for (int from = 0; from < nodeCount; from += CHUNK_ROWS) {
+                final int start = from;
+                final int end = Math.min(nodeCount, from + CHUNK_ROWS);
+                chunks.add(pool.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        fillRows(start, end);
+                        return null;
+                    }
+                }));
+            }
+            try {
+                for (Future<Object> chunk : chunks) {
+                    chunk.get();
+                }
+            } catch (InterruptedException ex) {
+                for (Future<Object> chunk : chunks) {
+                    chunk.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Compatibility graph build interrupted", ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Compatibility graph build failed", ex.getCause());
+            }
+        }
+
+        /*
+         * Rows [from, to). A row only writes itself, so chunks can run
+         * concurrently.
+         */
+        private void fillRows(int from, int to) {
+            long[] free = new long[words];
+            for (int n = from; n < to; n++) {
+                int i = queryIndex[n];
+                int j = targetIndex[n];
+                long[] cRow = cRows[n];
+                long[] dRow = dRows[n];
+                int[] queryNeighbours = query.getNeighbours(i);
+                int[] queryBonds = query.getNeighbourBonds(i);
+                int[] subjectNeighbours = subject.getNeighbours(j);
+                int[] subjectBonds = subject.getNeighbourBonds(j);
+
+                /*
+                 * d-edges to the nodes whose atoms are bonded to neither i
+                 * nor j (and differ from both)
+                 */
+                if (withDEdges) {
+                    Arrays.fill(free, -1L);
+                    clear(free, byQuery[i]);
+                    clear(free, byTarget[j]);
+                    for (int k : queryNeighbours) {
+                        clear(free, byQuery[k]);
+                    }
+                    for (int k : subjectNeighbours) {
+                        clear(free, byTarget[k]);
+                    }
+                    for (int w = 0; w < words; w++) {
+                        dRow[w] = free[w];
+                    }
+                    if (words > 0) {
+                        dRow[words - 1] &= -1L >>> (-nodeCount & 63);
+                    }
+                }
+
+                /*
+                 * c- or d-edges to the nodes whose atoms are bonded to i and j
+                 */
+                for (int a = 0; a < queryNeighbours.length; a++) {
+                    int[] row = nodes[queryNeighbours[a]];
+                    byte[] pairs = bondPairs[queryBonds[a]];
+                    for (int b = 0; b < subjectNeighbours.length; b++) {
+                        int m = row[subjectNeighbours[b]];
+                        if (m == -1 || m == n) {
+                            continue;
+                        }
+                        if (pairs[subjectBonds[b]] == MATCH) {
+                            cRow[m >>> 6] |= 1L << m;
+                        } else if (withDEdges) {
+                            dRow[m >>> 6] |= 1L << m;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void clear(long[] set, long[] mask) {
+            for (int w = 0; w < words; w++) {
+                set[w] &= ~mask[w];
+            }
+        }
+    }
+}
@@ -53,7 +53,7 @@ public class ExactMapping {
 //        System.out.println("VEC  SIZE " + vec_size);
         for (int a = 0; a < clique_siz; a++) {
             for (int b = 0; b < vec_size; b += 3) {
-                if (clique_List.get(a) == comp_graph_nodes.get(b + 2)) {
+                if (clique_List.get(a).equals(comp_graph_nodes.get(b + 2))) {
                     clique_mapping.add(comp_graph_nodes.get(b));
                     clique_mapping.add(comp_graph_nodes.get(b + 1));
                 }
@@ -100,7 +100,7 @@ public class ExactMapping {
 //        System.out.println("VEC  SIZE " + vec_size);
             for (int a = 0; a < clique_List.size(); a++) {
                 for (int b = 0; b < comp_graph_nodes.size(); b += 3) {
-                    if (clique_List.get(a) == comp_graph_nodes.get(b + 2)) {
+                    if (clique_List.get(a).equals(comp_graph_nodes.get(b + 2))) {
                         clique_mapping.put(comp_graph_nodes.get(b), comp_graph_nodes.get(b + 1));
                     }
                 }
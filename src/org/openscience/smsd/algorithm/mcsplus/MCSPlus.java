@@ -36,6 +36,7 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.smsd.algorithm.mcgregor.McGregor;
 import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class handles MCS plus algorithm which is a combination of c-clique algorithm and McGregor algorithm.
@@ -58,6 +59,7 @@ public final class MCSPlus {
 
     private IterationManager iterationManager = null;
     private final boolean matchAtomType;
+    private final SearchBudget budget;
 
     /**
      * @return the timeout
@@ -89,6 +91,22 @@ public final class MCSPlus {
      * @param matchAtomType
      */
     public MCSPlus(IAtomContainer ac1, IAtomContainer ac2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+        this(ac1, ac2, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * MCS plus search within a budget. When the budget runs out the largest
+     * mappings found so far are reported and {@link #isTimeout()} is set.
+     *
+     * @param ac1
+     * @param ac2
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public MCSPlus(IAtomContainer ac1, IAtomContainer ac2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType, SearchBudget budget) {
+        this.budget = budget;
         this.shouldMatchRings = shouldMatchRings;
         this.shouldMatchBonds = shouldMatchBonds;
         this.matchAtomType = matchAtomType;
@@ -112,19 +130,19 @@ public final class MCSPlus {
 
 //        System.out.println("ac1 : " + ac1.getAtomCount());
 //        System.out.println("ac2 : " + ac2.getAtomCount());
-        setIterationManager(new IterationManager((ac1.getAtomCount() + ac2.getAtomCount())));
+        setIterationManager(new IterationManager((ac1.getAtomCount() + ac2.getAtomCount()), budget, "MCSPlus"));
         try {
-            GenerateCompatibilityGraph gcg = new GenerateCompatibilityGraph(ac1, ac2, isMatchBonds(), isMatchRings(), matchAtomType);
-            List<Integer> comp_graph_nodes = gcg.getCompGraphNodes();
-
-            List<Integer> cEdges = gcg.getCEgdes();
-            List<Integer> dEdges = gcg.getDEgdes();
+            CompatibilityGraph graph = new CompatibilityGraphBuilder(
+                    ac1, ac2, isMatchBonds(), isMatchRings(), matchAtomType).build();
 //
 //            System.out.println("**************************************************");
-//            System.out.println("C_edges: " + cEdges.size());
-//            System.out.println("D_edges: " + dEdges.size());
-//            System.out.println("comp_graph_nodes: " + comp_graph_nodes);
-            BKKCKCF init = new BKKCKCF(comp_graph_nodes, cEdges, dEdges);
+//            System.out.println("C_edges: " + graph.getCEdgeCount());
+//            System.out.println("D_edges: " + graph.getDEdgeCount());
+//            System.out.println("comp_graph_nodes: " + graph.getNodeCount());
+            BKKCKCF init = new BKKCKCF(graph.getNodeCount(), graph.getCRows(), graph.getDRows(), budget);
+            if (init.isTimeout()) {
+                this.timeout = true;
+            }
             Stack<List<Integer>> maxCliqueSet = new Stack<List<Integer>>();
             maxCliqueSet.addAll(init.getMaxCliqueSet());
 
@@ -134,16 +152,14 @@ public final class MCSPlus {
             List<Map<Integer, Integer>> mappings = new ArrayList<Map<Integer, Integer>>();
 
             while (!maxCliqueSet.empty()) {
-                Map<Integer, Integer> indexindexMapping;
-                indexindexMapping = ExactMapping.extractMapping(comp_graph_nodes, maxCliqueSet.peek());
-                if (indexindexMapping != null) {
-                    mappings.add(indexindexMapping);
+                Map<Integer, Integer> indexindexMapping = new TreeMap<Integer, Integer>();
+                for (Integer node : maxCliqueSet.peek()) {
+                    indexindexMapping.put(graph.getQueryIndex(node - 1), graph.getTargetIndex(node - 1));
                 }
+                mappings.add(indexindexMapping);
                 maxCliqueSet.pop();
             }
 
-            //clear all the compatibility graph content
-            gcg.clear();
 //            System.out.println("mappings: " + mappings.size());
             extendMappings = searchMcGregorMapping(ac1, ac2, mappings);
 //            int size = !extendMappings.isEmpty() ? (extendMappings.size() / 2) : 0;
@@ -166,20 +182,24 @@ public final class MCSPlus {
             Map<Integer, Integer> extendMapping = new TreeMap<Integer, Integer>(firstPassMappings);
             McGregor mgit;
             if (ac1.getAtomCount() > ac2.getAtomCount()) {
-                mgit = new McGregor(ac1, ac2, cliques, isMatchBonds(), isMatchRings(), isMatchAtomType());
+                mgit = new McGregor(ac1, ac2, cliques, isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
             } else {
                 extendMapping.clear();
                 ROPFlag = false;
                 for (Map.Entry<Integer, Integer> map : firstPassMappings.entrySet()) {
                     extendMapping.put(map.getValue(), map.getKey());
                 }
-                mgit = new McGregor(ac2, ac1, cliques, isMatchBonds(), isMatchRings(), isMatchAtomType());
+                mgit = new McGregor(ac2, ac1, cliques, isMatchBonds(), isMatchRings(), isMatchAtomType(), budget);
             }
 //            System.out.println("\nStart McGregor search");
             //Start McGregor search
             mgit.startMcGregorIteration(mgit.getMCSSize(), extendMapping);
             cliques = mgit.getMappings();
 //            System.out.println("\nSol count after MG " + cliques.size());
+            if (budget != null && mgit.isTimeout()) {
+                this.timeout = true;
+                break;
+            }
             if (checkTimeout()) {
                 break;
             }
@@ -30,12 +30,12 @@ import java.util.TreeMap;
 
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.filters.PostFilter;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class acts as a handler class for MCSPlus algorithm. {@link org.openscience.cdk.smsd.algorithm.mcsplus.MCSPlus}
@@ -56,6 +56,7 @@ public final class MCSPlusHandler implements IResults {
     private final boolean shouldMatchBonds;
     private final boolean matchAtomType;
     private final boolean timeout;
+    private final SearchBudget budget;
 
     /**
      * Constructor for the MCS Plus algorithm class
@@ -68,6 +69,22 @@ public final class MCSPlusHandler implements IResults {
      */
     public MCSPlusHandler(IAtomContainer source, IAtomContainer target,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+        this(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * Constructor for the MCS Plus algorithm class with a search budget
+     *
+     * @param source
+     * @param target
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public MCSPlusHandler(IAtomContainer source, IAtomContainer target,
+            boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType, SearchBudget budget) {
+        this.budget = budget;
         this.source = source;
         this.target = target;
         this.shouldMatchRings = shouldMatchRings;
@@ -85,6 +102,7 @@ public final class MCSPlusHandler implements IResults {
      * @param target
      */
     public MCSPlusHandler(IQueryAtomContainer source, IQueryAtomContainer target) {
+        this.budget = null;
         this.source = source;
         this.target = target;
         this.shouldMatchRings = true;
@@ -103,13 +121,13 @@ public final class MCSPlusHandler implements IResults {
         List<List<Integer>> mappings;
         MCSPlus mcsplus;
         if (source.getAtomCount() < target.getAtomCount()) {
-            mcsplus = new MCSPlus(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType);
+            mcsplus = new MCSPlus(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, budget);
             List<List<Integer>> overlaps = mcsplus.getOverlaps();
             mappings = Collections.synchronizedList(overlaps);
 
         } else {
             flagExchange = true;
-            mcsplus = new MCSPlus(target, source, shouldMatchBonds, shouldMatchRings, matchAtomType);
+            mcsplus = new MCSPlus(target, source, shouldMatchBonds, shouldMatchRings, matchAtomType, budget);
             List<List<Integer>> overlaps = mcsplus.getOverlaps();
             mappings = Collections.synchronizedList(overlaps);
         }
@@ -160,13 +178,7 @@ public final class MCSPlusHandler implements IResults {
 
                     int IIndex = map.getKey();
                     int JIndex = map.getValue();
-
-                    IAtom sourceAtom;
-                    IAtom targetAtom;
-
-                    sourceAtom = source.getAtom(IIndex);
-                    targetAtom = target.getAtom(JIndex);
-                    atomMappings.put(sourceAtom, targetAtom);
+                    atomMappings.put(IIndex, JIndex);
                 }
                 allAtomMCS.add(counter++, atomMappings);
             }
@@ -20,6 +20,7 @@ import org.openscience.smsd.algorithm.matchers.DefaultAtomMatcher;
 import org.openscience.smsd.algorithm.matchers.DefaultAtomTypeMatcher;
 import org.openscience.smsd.algorithm.matchers.DefaultMatcher;
 import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class implements atom multipurpose structure comparison tool. It allows to find maximal common substructure,
@@ -68,10 +69,27 @@ import org.openscience.smsd.tools.IterationManager;
  */
 public class CDKMCS {
 
-    protected static boolean timeout = false;
     protected final static int ID1 = 0;
     protected final static int ID2 = 1;
-    private static IterationManager iterationManager = null;
+    private boolean timeout = false;
+    private IterationManager iterationManager = null;
+    private final SearchBudget budget;
+
+    /**
+     * Creates a search context with the default iteration cap.
+     */
+    public CDKMCS() {
+        this(null);
+    }
+
+    /**
+     * Creates a search context whose searches stop when the budget runs out.
+     *
+     * @param budget search budget or null
+     */
+    public CDKMCS(SearchBudget budget) {
+        this.budget = budget;
+    }
 
     ///////////////////////////////////////////////////////////////////////////
     //                            Query Methods
@@ -94,7 +112,7 @@ public class CDKMCS {
      * @return true if the 2 molecule are isomorph
      * @throws CDKException if the first molecule is an instance of IQueryAtomContainer
      */
-    public static boolean isIsomorph(IAtomContainer g1, IAtomContainer g2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
+    public boolean isIsomorph(IAtomContainer g1, IAtomContainer g2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         if (g1 instanceof IQueryAtomContainer) {
             throw new CDKException(
                     "The first IAtomContainer must not be an IQueryAtomContainer");
@@ -132,7 +150,7 @@ public class CDKMCS {
      * matching bonds.
      * @throws CDKException
      */
-    public static List<CDKRMap> getIsomorphMap(IAtomContainer g1, IAtomContainer g2,
+    public List<CDKRMap> getIsomorphMap(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         if (g1 instanceof IQueryAtomContainer) {
             throw new CDKException(
@@ -161,7 +179,7 @@ public class CDKMCS {
      * of matching atoms.
      * @throws CDKException if the first molecules is not an instance of {@link IQueryAtomContainer}
      */
-    public static List<CDKRMap> getIsomorphAtomsMap(IAtomContainer g1, IAtomContainer g2,
+    public List<CDKRMap> getIsomorphAtomsMap(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         if (g1 instanceof IQueryAtomContainer) {
             throw new CDKException(
@@ -188,7 +206,7 @@ public class CDKMCS {
      * @return the list of all the 'mappings'
      * @throws CDKException
      */
-    public static List<List<CDKRMap>> getIsomorphMaps(IAtomContainer g1, IAtomContainer g2,
+    public List<List<CDKRMap>> getIsomorphMaps(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         return search(g1, g2, getBitSet(g1), getBitSet(g2), true, true, shouldMatchBonds, shouldMatchRings, matchAtomType);
     }
@@ -215,7 +233,7 @@ public class CDKMCS {
      * @throws CDKException
      * @see #makeAtomsMapsOfBondsMaps(List, IAtomContainer, IAtomContainer)
      */
-    public static List<List<CDKRMap>> getSubgraphMaps(IAtomContainer g1, IAtomContainer g2,
+    public List<List<CDKRMap>> getSubgraphMaps(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         return search(g1, g2, new BitSet(), getBitSet(g2), true, true, shouldMatchBonds, shouldMatchRings, matchAtomType);
     }
@@ -232,7 +250,7 @@ public class CDKMCS {
      * containing Ids of matching bonds.
      * @throws CDKException
      */
-    public static List<CDKRMap> getSubgraphMap(IAtomContainer g1, IAtomContainer g2,
+    public List<CDKRMap> getSubgraphMap(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         List<CDKRMap> result = null;
         List<List<CDKRMap>> rMapsList = search(g1, g2, new BitSet(), getBitSet(g2), false, false,
@@ -258,7 +276,7 @@ public class CDKMCS {
      * containing Ids of matching atoms.
      * @throws CDKException
      */
-    public static List<List<CDKRMap>> getSubgraphAtomsMaps(IAtomContainer g1,
+    public List<List<CDKRMap>> getSubgraphAtomsMaps(IAtomContainer g1,
             IAtomContainer g2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType)
             throws CDKException {
         List<CDKRMap> list = checkSingleAtomCases(g1, g2);
@@ -285,7 +303,7 @@ public class CDKMCS {
      * containing Ids of matching atoms.
      * @throws CDKException
      */
-    public static List<CDKRMap> getSubgraphAtomsMap(IAtomContainer g1,
+    public List<CDKRMap> getSubgraphAtomsMap(IAtomContainer g1,
             IAtomContainer g2, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType)
             throws CDKException {
         List<CDKRMap> list = checkSingleAtomCases(g1, g2);
@@ -309,7 +327,7 @@ public class CDKMCS {
      * @return true if g2 a subgraph on g1
      * @throws CDKException
      */
-    public static boolean isSubgraph(IAtomContainer g1, IAtomContainer g2,
+    public boolean isSubgraph(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         if (g1 instanceof IQueryAtomContainer) {
             throw new CDKException(
@@ -359,7 +377,7 @@ public class CDKMCS {
      * @return the list of all the maximal common substructure found projected of g1 (list of GraphAtomContainer )
      * @throws CDKException
      */
-    public static List<IAtomContainer> getOverlaps(IAtomContainer g1, IAtomContainer g2,
+    public List<IAtomContainer> getOverlaps(IAtomContainer g1, IAtomContainer g2,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         List<List<CDKRMap>> rMapsList = search(g1, g2, new BitSet(), new BitSet(), true, false, shouldMatchBonds, shouldMatchRings, matchAtomType);
 
@@ -432,7 +450,7 @@ public class CDKMCS {
      * @return a List of Lists of {@link CDKRMap} objects that represent the search solutions
      * @throws CDKException
      */
-    public static List<List<CDKRMap>> search(IAtomContainer g1, IAtomContainer g2, BitSet c1,
+    public List<List<CDKRMap>> search(IAtomContainer g1, IAtomContainer g2, BitSet c1,
             BitSet c2, boolean findAllStructure, boolean findAllMap,
             boolean shouldMatchBonds, boolean shouldMatchRings,
             boolean matchAtomType) throws CDKException {
@@ -464,9 +482,13 @@ public class CDKMCS {
         // build the CDKRGraph corresponding to this problem
         CDKRGraph rGraph = buildRGraph(g1, g2, shouldMatchBonds, shouldMatchRings, matchAtomType);
         // Set time data
-        setIterationManager(new IterationManager((g1.getAtomCount() + g2.getAtomCount())));
+        setIterationManager(new IterationManager((g1.getAtomCount() + g2.getAtomCount()), budget, "CDKMCS"));
+        rGraph.setIterationManager(getIterationManager());
         // parse the CDKRGraph with the given constrains and options
         rGraph.parse(c1, c2, findAllStructure, findAllMap);
+        if (rGraph.isTimeout()) {
+            timeout = true;
+        }
         List<BitSet> solutionList = rGraph.getSolutions();
 
         // conversions of CDKRGraph's internal solutions to G1/G2 mappings
@@ -561,7 +583,7 @@ public class CDKMCS {
      * @return the list cleaned
      * @throws CDKException if there is a problem in obtaining subgraphs
      */
-    private static List<IAtomContainer> getMaximum(List<IAtomContainer> graphList,
+    private List<IAtomContainer> getMaximum(List<IAtomContainer> graphList,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         List<IAtomContainer> reducedGraphList = new ArrayList<IAtomContainer>();
         reducedGraphList.addAll(graphList);
@@ -1118,21 +1140,21 @@ public class CDKMCS {
     /**
      * @return the timeout
      */
-    public static boolean isTimeout() {
+    public boolean isTimeout() {
         return timeout;
     }
 
     /**
      * @return the iterationManager
      */
-    protected static IterationManager getIterationManager() {
+    protected IterationManager getIterationManager() {
         return iterationManager;
     }
 
     /**
      * @param aIterationManager the iterationManager to set
      */
-    private static void setIterationManager(IterationManager aIterationManager) {
+    private void setIterationManager(IterationManager aIterationManager) {
         iterationManager = aIterationManager;
     }
 }
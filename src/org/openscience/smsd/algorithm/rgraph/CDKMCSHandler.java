@@ -37,6 +37,9 @@ import org.openscience.cdk.interfaces.IAtomContainerSet;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  * This class acts as a handler class for CDKMCS algorithm {@link org.openscience.cdk.smsd.algorithm.cdk.CDKMCS}.
@@ -59,6 +62,7 @@ public class CDKMCSHandler implements IResults {
     private final boolean shouldMatchBonds;
     private final boolean matchAtomType;
     private boolean timeout;
+    private final SearchBudget budget;
 
     //~--- constructors -------------------------------------------------------
     /*
@@ -74,6 +78,21 @@ public class CDKMCSHandler implements IResults {
      */
     public CDKMCSHandler(IAtomContainer source, IAtomContainer target,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+        this(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     *
+     * @param source
+     * @param target
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public CDKMCSHandler(IAtomContainer source, IAtomContainer target,
+            boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType, SearchBudget budget) {
+        this.budget = budget;
         this.source = source;
         this.target = target;
         this.shouldMatchRings = shouldMatchRings;
@@ -90,6 +109,7 @@ public class CDKMCSHandler implements IResults {
      * @param target
      */
     public CDKMCSHandler(IQueryAtomContainer source, IQueryAtomContainer target) {
+        this.budget = null;
         this.source = source;
         this.target = target;
         this.shouldMatchRings = true;
@@ -106,7 +126,8 @@ public class CDKMCSHandler implements IResults {
      */
     @TestMethod("testSearchMCS")
     private synchronized boolean searchMCS() {
-        CDKRMapHandler rmap = new CDKRMapHandler();
+        long start = System.nanoTime();
+        CDKRMapHandler rmap = new CDKRMapHandler(budget);
         List<Map<Integer, Integer>> solutions;
         try {
 
@@ -125,6 +146,7 @@ public class CDKMCSHandler implements IResults {
             rmap = null;
             System.err.println("WARNING: " + e.getMessage());
         }
+        SearchStats.record(SearchStats.current(), Stage.CDK_MCS, start);
         return rmap.isTimeout();
     }
 
@@ -142,7 +164,7 @@ public class CDKMCSHandler implements IResults {
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) throws CDKException {
         ArrayList<Integer> atomSerialsToDelete = new ArrayList<Integer>();
 
-        List<List<CDKRMap>> matches = CDKMCS.getSubgraphAtomsMaps(mol, mcss, shouldMatchBonds, shouldMatchRings, matchAtomType);
+        List<List<CDKRMap>> matches = new CDKMCS().getSubgraphAtomsMaps(mol, mcss, shouldMatchBonds, shouldMatchRings, matchAtomType);
         List<CDKRMap> mapList = matches.get(0);
         for (Object o : mapList) {
             CDKRMap rmap = (CDKRMap) o;
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.List;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.exception.CDKException;
+import org.openscience.smsd.tools.IterationManager;
 
 /**
  * This class implements the Resolution Graph (CDKRGraph). The CDKRGraph is a graph based representation of the search
@@ -123,6 +124,9 @@ public class CDKRGraph {
     private boolean stop = false;
     private int nbIteration = 0;
     private BitSet graphBitSet = null;
+    // iteration budget of the current search, owned by the caller
+    private IterationManager iterationManager = null;
+    private boolean timeout = false;
     // -1 for infinite search and one min is 1
 
     /**
@@ -212,6 +216,7 @@ public class CDKRGraph {
     public synchronized void parse(BitSet sourceBitSet, BitSet targetBitSet, boolean findAllStructure, boolean findAllMap) throws CDKException {
         // initialize the list of solution
         getSolutionList().clear();
+        this.timeout = false;
 
         // builds the set of starting nodes
         // according to the constrains
@@ -647,12 +652,32 @@ public class CDKRGraph {
         return graphBitSet;
     }
 
+    /**
+     * Sets the iteration budget used by {@link #parse(BitSet, BitSet, boolean, boolean)}. Without one the search is
+     * not bounded.
+     *
+     * @param iterationManager the iterationManager to set
+     */
+    public void setIterationManager(IterationManager iterationManager) {
+        this.iterationManager = iterationManager;
+    }
+
+    /**
+     * @return true if the last parse stopped because the iteration budget was exhausted
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
     private boolean checkTimeout() {
-        if (CDKMCS.getIterationManager().isMaxIteration()) {
-            CDKMCS.timeout = true;
+        if (iterationManager == null) {
+            return false;
+        }
+        if (iterationManager.isMaxIteration()) {
+            timeout = true;
             return true;
         }
-        CDKMCS.getIterationManager().increment();
+        iterationManager.increment();
         return false;
     }
 }
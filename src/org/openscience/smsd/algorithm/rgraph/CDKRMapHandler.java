@@ -36,6 +36,7 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.tools.manipulator.BondManipulator;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This algorithm derives from the algorithm described in [Tonnelier, C. and Jauffret, Ph. and Hanser, Th. and Jauffret,
@@ -51,7 +52,17 @@ import org.openscience.cdk.tools.manipulator.BondManipulator;
 public final class CDKRMapHandler {
 
     public CDKRMapHandler() {
+        this(null);
+    }
+
+    /**
+     * Handler whose searches stop when the budget runs out.
+     *
+     * @param budget search budget or null
+     */
+    public CDKRMapHandler(SearchBudget budget) {
         this.timeout = false;
+        this.budget = budget;
     }
 
     /**
@@ -93,6 +104,7 @@ public final class CDKRMapHandler {
     private IAtomContainer source;
     private IAtomContainer target;
     private boolean timeout;
+    private final SearchBudget budget;
 
     /**
      * This function calculates all the possible combinations of MCS
@@ -112,9 +124,11 @@ public final class CDKRMapHandler {
         List<Map<Integer, Integer>> solution = new ArrayList<Map<Integer, Integer>>();
         setMappings(solution);
 
+        CDKMCS cdkMCS = new CDKMCS(budget);
+
         if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
             List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
@@ -126,8 +140,8 @@ public final class CDKRMapHandler {
             }
 
         } else {
-            List<List<CDKRMap>> overlaps = CDKMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true, shouldMatchBonds, shouldMatchRings, matchAtomType);
-            this.setTimeout(CDKMCS.isTimeout());
+            List<List<CDKRMap>> overlaps = cdkMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true, shouldMatchBonds, shouldMatchRings, matchAtomType);
+            this.setTimeout(cdkMCS.isTimeout());
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
             while (!allMaxOverlaps.empty()) {
@@ -167,10 +181,11 @@ public final class CDKRMapHandler {
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
+        CDKMCS cdkMCS = new CDKMCS(budget);
         if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
 
             List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
@@ -180,9 +195,9 @@ public final class CDKRMapHandler {
         } else {
 
             List<List<CDKRMap>> overlaps
-                    = CDKMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true,
+                    = cdkMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true,
                             shouldMatchBonds, shouldMatchRings, matchAtomType);
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
@@ -220,10 +235,11 @@ public final class CDKRMapHandler {
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
+        CDKMCS cdkMCS = new CDKMCS(budget);
         if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
 
             List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
@@ -233,11 +249,11 @@ public final class CDKRMapHandler {
         } else {
 
             List<List<CDKRMap>> overlaps
-                    = CDKMCS.getSubgraphMaps(getSource(), getTarget(),
+                    = cdkMCS.getSubgraphMaps(getSource(), getTarget(),
                             shouldMatchBonds,
                             shouldMatchRings,
                             matchAtomType);
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
@@ -275,10 +291,11 @@ public final class CDKRMapHandler {
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
+        CDKMCS cdkMCS = new CDKMCS(budget);
         if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
 
             List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
-            this.setTimeout(CDKMCS.isTimeout());
+            this.setTimeout(cdkMCS.isTimeout());
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
@@ -288,8 +305,8 @@ public final class CDKRMapHandler {
         } else {
 
             List<List<CDKRMap>> overlaps
-                    = CDKMCS.getIsomorphMaps(getSource(), getTarget(), shouldMatchBonds, shouldMatchRings, matchAtomType);
-            this.setTimeout(CDKMCS.isTimeout());
+                    = cdkMCS.getIsomorphMaps(getSource(), getTarget(), shouldMatchBonds, shouldMatchRings, matchAtomType);
+            this.setTimeout(cdkMCS.isTimeout());
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
@@ -40,6 +40,8 @@ import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.algorithm.mcgregor.McGregor;
 import org.openscience.smsd.algorithm.vflib.interfaces.INode;
 import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class should be used to find MCS between source graph and target graph.
@@ -65,12 +67,18 @@ public class BaseMCS {
     protected final List<Map<INode, IAtom>> vfLibSolutions;
     final List<Map<Integer, Integer>> allLocalMCS;
     final List<AtomAtomMapping> allLocalAtomAtomMapping;
+    final MappingSet allLocalMCSSet;
+    protected final SearchBudget budget;
+    protected boolean timeout = false;
     private final static ILoggingTool Logger
             = LoggingToolFactory.createLoggingTool(BaseMCS.class);
 
-    BaseMCS(IAtomContainer source, IAtomContainer target, boolean matchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+    BaseMCS(IAtomContainer source, IAtomContainer target, boolean matchBonds, boolean shouldMatchRings, boolean matchAtomType,
+            SearchBudget budget) {
+        this.budget = budget;
         this.allLocalAtomAtomMapping = new ArrayList<AtomAtomMapping>();
         this.allLocalMCS = new ArrayList<Map<Integer, Integer>>();
+        this.allLocalMCSSet = new MappingSet();
         this.shouldMatchRings = shouldMatchRings;
         this.matchBonds = matchBonds;
         this.matchAtomType = matchAtomType;
@@ -80,20 +88,14 @@ public class BaseMCS {
     }
 
     /**
+     * True if a larger clique or the clique itself is stored in mapGlobal.
      *
      * @param cliqueMap
      * @param mapGlobal
      * @return
      */
-    protected synchronized boolean hasClique(Map<Integer, Integer> cliqueMap, List<Map<Integer, Integer>> mapGlobal) {
-        for (Map<Integer, Integer> storedMap : mapGlobal) {
-            if (cliqueMap.size() < storedMap.size()) {
-                return true;
-            } else if (cliqueMap.equals(storedMap)) {
-                return true;
-            }
-        }
-        return false;
+    protected boolean hasClique(Map<Integer, Integer> cliqueMap, MappingSet mapGlobal) {
+        return cliqueMap.size() < mapGlobal.getLargestSize() || mapGlobal.contains(cliqueMap);
     }
 
     /**
@@ -102,20 +104,20 @@ public class BaseMCS {
      * @throws CDKException
      * @throws IOException
      */
-    protected synchronized void extendCliquesWithMcGregor(List<Map<Integer, Integer>> refinedMCSSeeds) throws CDKException, IOException {
+    protected void extendCliquesWithMcGregor(List<Map<Integer, Integer>> refinedMCSSeeds) throws CDKException, IOException {
         List<List<Integer>> mappings = new ArrayList<List<Integer>>();
         boolean ROPFlag = true;
         for (Map<Integer, Integer> firstPassMappings : refinedMCSSeeds) {
             Map<Integer, Integer> extendMapping = new TreeMap<Integer, Integer>(firstPassMappings);
             McGregor mgit;
             if (source instanceof IQueryAtomContainer) {
-                mgit = new McGregor((IQueryAtomContainer) source, target, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType());
+                mgit = new McGregor((IQueryAtomContainer) source, target, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType(), budget);
             } else {
                 if (countR > countP) {
-                    mgit = new McGregor(source, target, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType());
+                    mgit = new McGregor(source, target, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType(), budget);
                 } else {
                     extendMapping.clear();
-                    mgit = new McGregor(target, source, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType());
+                    mgit = new McGregor(target, source, mappings, isBondMatchFlag(), isMatchRings(), isMatchAtomType(), budget);
                     ROPFlag = false;
                     for (Map.Entry<Integer, Integer> map : firstPassMappings.entrySet()) {
                         extendMapping.put(map.getValue(), map.getKey());
@@ -125,6 +127,12 @@ public class BaseMCS {
             //Start McGregor search
             mgit.startMcGregorIteration(mgit.getMCSSize(), extendMapping);
             mappings = mgit.getMappings();
+            if (mgit.isTimeout()) {
+                timeout = true;
+                if (budget != null) {
+                    break;
+                }
+            }
         }
 //        System.out.println("\nSol count after MG " + mappings.size());
         setMcGregorMappings(ROPFlag, mappings);
@@ -137,7 +145,7 @@ public class BaseMCS {
      * @param RONP
      * @param query
      */
-    protected synchronized void setVFMappings(boolean RONP, IQuery query) {
+    protected void setVFMappings(boolean RONP, IQuery query) {
         /*
          * Sort biggest clique to smallest
          */
@@ -165,7 +173,7 @@ public class BaseMCS {
                 }
 
                 if (qIndex != -1 && tIndex != -1) {
-                    atomatomMapping.put(qAtom, tAtom);
+                    atomatomMapping.put(qIndex, tIndex);
                     indexindexMapping.put(qIndex, tIndex);
                 } else {
                     try {
@@ -177,41 +185,37 @@ public class BaseMCS {
             }
 
             if (!indexindexMapping.isEmpty()
-                    && !hasClique(indexindexMapping, getLocalMCSSolution())) {
+                    && !hasClique(indexindexMapping, allLocalMCSSet)) {
+                allLocalMCSSet.add(indexindexMapping);
                 getLocalAtomMCSSolution().add(atomatomMapping);
                 getLocalMCSSolution().add(indexindexMapping);
             }
         }
     }
 
-    private synchronized void setMcGregorMappings(boolean RONP, List<List<Integer>> mappings) throws CDKException {
+    private void setMcGregorMappings(boolean RONP, List<List<Integer>> mappings) throws CDKException {
         int counter = 0;
         int solSize = 0;
         getLocalAtomMCSSolution().clear();
         getLocalMCSSolution().clear();
+        allLocalMCSSet.clear();
         for (List<Integer> mapping : mappings) {
             AtomAtomMapping atomatomMapping = new AtomAtomMapping(source, target);
             Map<Integer, Integer> indexindexMapping = new TreeMap<Integer, Integer>();
             for (int index = 0; index < mapping.size(); index += 2) {
-                IAtom qAtom;
-                IAtom tAtom;
                 int qIndex;
                 int tIndex;
 
                 if (RONP) {
-                    qAtom = source.getAtom(mapping.get(index));
-                    tAtom = target.getAtom(mapping.get(index + 1));
                     qIndex = mapping.get(index);
                     tIndex = mapping.get(index + 1);
                 } else {
-                    qAtom = source.getAtom(mapping.get(index + 1));
-                    tAtom = target.getAtom(mapping.get(index));
                     qIndex = mapping.get(index + 1);
                     tIndex = mapping.get(index);
                 }
 
                 if (qIndex != -1 && tIndex != -1) {
-                    atomatomMapping.put(qAtom, tAtom);
+                    atomatomMapping.put(qIndex, tIndex);
                     indexindexMapping.put(qIndex, tIndex);
                 } else {
                     throw new CDKException("Atom index pointing to NULL");
@@ -221,11 +225,13 @@ public class BaseMCS {
                 solSize = indexindexMapping.size();
                 getLocalAtomMCSSolution().clear();
                 getLocalMCSSolution().clear();
+                allLocalMCSSet.clear();
                 counter = 0;
             }
             if (!indexindexMapping.isEmpty()
-                    && !hasClique(indexindexMapping, getLocalMCSSolution())
-                    && indexindexMapping.size() == solSize) {
+                    && indexindexMapping.size() == solSize
+                    && !hasClique(indexindexMapping, allLocalMCSSet)) {
+                allLocalMCSSet.add(indexindexMapping);
                 getLocalAtomMCSSolution().add(counter, atomatomMapping);
                 getLocalMCSSolution().add(counter, indexindexMapping);
                 counter++;
@@ -234,11 +240,11 @@ public class BaseMCS {
 
     }
 
-    protected synchronized IAtomContainer getReactantMol() {
+    protected IAtomContainer getReactantMol() {
         return source;
     }
 
-    protected synchronized IAtomContainer getProductMol() {
+    protected IAtomContainer getProductMol() {
         return target;
     }
 
@@ -252,25 +258,25 @@ public class BaseMCS {
     /**
      * @return the shouldMatchBonds
      */
-    protected synchronized boolean isBondMatchFlag() {
+    protected boolean isBondMatchFlag() {
         return matchBonds;
     }
 
     /**
      * @return the allLocalMCS
      */
-    private synchronized List<Map<Integer, Integer>> getLocalMCSSolution() {
-        return Collections.synchronizedList(allLocalMCS);
+    private List<Map<Integer, Integer>> getLocalMCSSolution() {
+        return allLocalMCS;
     }
 
     /**
      * @return the allLocalAtomAtomMapping
      */
-    private synchronized List<AtomAtomMapping> getLocalAtomMCSSolution() {
-        return Collections.synchronizedList(allLocalAtomAtomMapping);
+    private List<AtomAtomMapping> getLocalAtomMCSSolution() {
+        return allLocalAtomAtomMapping;
     }
 
-    protected synchronized boolean isExtensionRequired(List<Map<Integer, Integer>> mcsSeeds) {
+    protected boolean isExtensionRequired(List<Map<Integer, Integer>> mcsSeeds) {
         int maxSize = 0;
         for (Map<Integer, Integer> map : mcsSeeds) {
             if (map.size() > maxSize) {
@@ -280,7 +286,7 @@ public class BaseMCS {
         return this.source.getAtomCount() > maxSize && this.target.getAtomCount() > maxSize;
     }
 
-    protected synchronized boolean isExtensionRequired() {
+    protected boolean isExtensionRequired() {
         int commonAtomCount = checkCommonAtomCount(getReactantMol(), getProductMol());
         int maxSize = 0;
         for (Map<Integer, Integer> map : allLocalMCS) {
@@ -291,7 +297,7 @@ public class BaseMCS {
         return commonAtomCount > maxSize;
     }
 
-    private synchronized int checkCommonAtomCount(IAtomContainer reactantMolecule, IAtomContainer productMolecule) {
+    private int checkCommonAtomCount(IAtomContainer reactantMolecule, IAtomContainer productMolecule) {
         ArrayList<String> atoms = new ArrayList<String>();
         for (int i = 0; i < reactantMolecule.getAtomCount(); i++) {
             atoms.add(reactantMolecule.getAtom(i).getSymbol());
@@ -47,6 +47,8 @@ import org.openscience.smsd.algorithm.vflib.query.QueryCompiler;
 import org.openscience.smsd.algorithm.vflib.seeds.MCSSeedGenerator;
 import org.openscience.smsd.interfaces.Algorithm;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class should be used to find MCS between source graph and target graph.
@@ -76,8 +78,25 @@ public final class VF2MCS extends BaseMCS implements IResults {
      * @param matchAtomType
      */
     public VF2MCS(IAtomContainer source, IAtomContainer target, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
-        super(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType);
+        this(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * Constructor for an extended VF Algorithm for the MCS search within a budget. When the budget runs out the
+     * largest mappings found so far are reported and {@link #isTimeout()} is set.
+     *
+     * @param source
+     * @param target
+     * @param shouldMatchBonds bond match
+     * @param shouldMatchRings ring match
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public VF2MCS(IAtomContainer source, IAtomContainer target, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType,
+            SearchBudget budget) {
+        super(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, budget);
         boolean timoutVF = searchVFMappings();
+        this.timeout = timoutVF;
 
         /*
          * An extension is triggered if its mcs solution is smaller than reactant and product. An enrichment is
@@ -102,11 +121,12 @@ public final class VF2MCS extends BaseMCS implements IResults {
              * Clean VF mapping data
              */
             allLocalMCS.clear();
+            allLocalMCSSet.clear();
             allLocalAtomAtomMapping.clear();
             ExecutorService executor = Executors.newSingleThreadExecutor();
             CompletionService<List<AtomAtomMapping>> cs = new ExecutorCompletionService<List<AtomAtomMapping>>(executor);
-            MCSSeedGenerator mcsSeedGeneratorUIT = new MCSSeedGenerator(source, target, isBondMatchFlag(), isMatchRings(), matchAtomType, Algorithm.CDKMCS);
-            MCSSeedGenerator mcsSeedGeneratorKoch = new MCSSeedGenerator(source, target, isBondMatchFlag(), isMatchRings(), matchAtomType, Algorithm.MCSPlus);
+            MCSSeedGenerator mcsSeedGeneratorUIT = new MCSSeedGenerator(source, target, isBondMatchFlag(), isMatchRings(), matchAtomType, Algorithm.CDKMCS, budget);
+            MCSSeedGenerator mcsSeedGeneratorKoch = new MCSSeedGenerator(source, target, isBondMatchFlag(), isMatchRings(), matchAtomType, Algorithm.MCSPlus, budget);
             int jobCounter = 0;
             cs.submit(mcsSeedGeneratorUIT);
             jobCounter++;
@@ -126,7 +146,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
                     chosen = cs.take().get();
                     for (AtomAtomMapping mapping : chosen) {
                         Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
-                        map.putAll(mapping.getMappingsByIndex());
+                        map.putAll(mapping.getMappingsByIndexView());
                         mcsSeeds.add(map);
                     }
                 } catch (InterruptedException ex) {
@@ -149,17 +169,20 @@ public final class VF2MCS extends BaseMCS implements IResults {
             int solutionSize = 0;
             counter = 0;
             List<Map<Integer, Integer>> cleanedMCSSeeds = new ArrayList<Map<Integer, Integer>>();
+            MappingSet cleanedMCSSeedSet = new MappingSet();
 //            System.out.println("mergin  UIT & KochCliques");
             if (!mcsSeeds.isEmpty()) {
                 for (Map<Integer, Integer> map : mcsSeeds) {
                     if (map.size() > solutionSize) {
                         solutionSize = map.size();
                         cleanedMCSSeeds.clear();
+                        cleanedMCSSeedSet.clear();
                         counter = 0;
                     }
                     if (!map.isEmpty()
                             && map.size() == solutionSize
-                            && !hasClique(map, cleanedMCSSeeds)) {
+                            && !hasClique(map, cleanedMCSSeedSet)) {
+                        cleanedMCSSeedSet.add(map);
                         cleanedMCSSeeds.add(counter, map);
                         counter++;
                     }
@@ -168,7 +191,8 @@ public final class VF2MCS extends BaseMCS implements IResults {
             for (Map<Integer, Integer> map : mcsVFSeeds) {
                 if (!map.isEmpty()
                         && map.size() >= solutionSize
-                        && !hasClique(map, cleanedMCSSeeds)) {
+                        && !hasClique(map, cleanedMCSSeedSet)) {
+                    cleanedMCSSeedSet.add(map);
                     cleanedMCSSeeds.add(counter, map);
                     counter++;
                 }
@@ -194,6 +218,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
              */
             mcsSeeds.clear();
             cleanedMCSSeeds.clear();
+            cleanedMCSSeedSet.clear();
 
             /*
              * Integerate the solutions
@@ -225,6 +250,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
              * Clear the local solution after storing it into mcs solutions
              */
             allLocalMCS.clear();
+            allLocalMCSSet.clear();
             allLocalAtomAtomMapping.clear();
 
         } else {
@@ -257,7 +283,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
      * Note: VF MCS will search for cliques which will match the types. Mcgregor will extend the cliques depending of
      * the bond type (sensitive and insensitive).
      */
-    protected synchronized boolean searchVFMappings() {
+    protected boolean searchVFMappings() {
 //        System.out.println("searchVFMappings ");
         IQuery queryCompiler;
         IMapper mapper;
@@ -270,7 +296,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
 
         if (source instanceof IQueryAtomContainer) {
             queryCompiler = new QueryCompiler((IQueryAtomContainer) source).compile();
-            mapper = new VFMCSMapper(queryCompiler);
+            mapper = new VFMCSMapper(queryCompiler, budget);
             List<Map<INode, IAtom>> maps = mapper.getMaps(getProductMol());
             if (maps != null) {
                 vfLibSolutions.addAll(maps);
@@ -279,7 +305,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
 
         } else if (countR <= countP) {//isBondMatchFlag()
             queryCompiler = new QueryCompiler(this.source, true, isMatchRings(), isMatchAtomType()).compile();
-            mapper = new VFMCSMapper(queryCompiler);
+            mapper = new VFMCSMapper(queryCompiler, budget);
             List<Map<INode, IAtom>> map = mapper.getMaps(this.target);
             if (map != null) {
                 vfLibSolutions.addAll(map);
@@ -287,7 +313,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
             setVFMappings(true, queryCompiler);
         } else {
             queryCompiler = new QueryCompiler(this.target, true, isMatchRings(), isMatchAtomType()).compile();
-            mapper = new VFMCSMapper(queryCompiler);
+            mapper = new VFMCSMapper(queryCompiler, budget);
             List<Map<INode, IAtom>> map = mapper.getMaps(this.source);
             if (map != null) {
                 vfLibSolutions.addAll(map);
@@ -307,6 +333,13 @@ public final class VF2MCS extends BaseMCS implements IResults {
         this(source, target, true, true, true);
     }
 
+    /**
+     * @return true if the VF or McGregor search was stopped before it completed
+     */
+    public boolean isTimeout() {
+        return timeout || (budget != null && budget.isExhausted());
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -314,7 +347,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
      */
     @Override
     @TestMethod("testGetAllAtomMapping")
-    public synchronized List<AtomAtomMapping> getAllAtomMapping() {
+    public List<AtomAtomMapping> getAllAtomMapping() {
         return Collections.unmodifiableList(allAtomMCS);
     }
 
@@ -325,7 +358,7 @@ public final class VF2MCS extends BaseMCS implements IResults {
      */
     @Override
     @TestMethod("testGetFirstAtomMapping")
-    public synchronized AtomAtomMapping getFirstAtomMapping() {
+    public AtomAtomMapping getFirstAtomMapping() {
         if (allAtomMCS.iterator().hasNext()) {
             return allAtomMCS.iterator().next();
         }
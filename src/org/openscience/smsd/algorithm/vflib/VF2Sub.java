@@ -40,8 +40,11 @@ import org.openscience.smsd.algorithm.vflib.interfaces.INode;
 import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
 import org.openscience.smsd.algorithm.vflib.map.VFMapper;
 import org.openscience.smsd.algorithm.vflib.query.QueryCompiler;
+import org.openscience.smsd.helper.CompiledGraph;
 import org.openscience.smsd.helper.MoleculeInitializer;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class should be used to find MCS between source graph and target graph.
@@ -72,6 +75,8 @@ public class VF2Sub implements IResults {
     private int countR = 0;
     private int countP = 0;
     private boolean isSubgraph = false;
+    private final SearchBudget budget;
+    private boolean timeout = false;
     private final static ILoggingTool Logger
             = LoggingToolFactory.createLoggingTool(VF2Sub.class);
 
@@ -86,6 +91,22 @@ public class VF2Sub implements IResults {
      */
     public VF2Sub(IAtomContainer source, IAtomContainer target,
             boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+        this(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType, null);
+    }
+
+    /**
+     * Constructor for an extended VF Algorithm for the MCS search within a budget
+     *
+     * @param source
+     * @param target
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public VF2Sub(IAtomContainer source, IAtomContainer target,
+            boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType, SearchBudget budget) {
+        this.budget = budget;
         this.source = source;
         this.target = target;
         allAtomMCS = new ArrayList<AtomAtomMapping>();
@@ -105,6 +126,18 @@ public class VF2Sub implements IResults {
      * @param target
      */
     public VF2Sub(IQueryAtomContainer source, IAtomContainer target) {
+        this(source, target, (SearchBudget) null);
+    }
+
+    /**
+     * Constructor for an extended VF Algorithm for the MCS search within a budget
+     *
+     * @param source
+     * @param target
+     * @param budget search budget or null
+     */
+    public VF2Sub(IQueryAtomContainer source, IAtomContainer target, SearchBudget budget) {
+        this.budget = budget;
         this.source = source;
         this.target = target;
         allAtomMCS = new ArrayList<AtomAtomMapping>();
@@ -125,6 +158,9 @@ public class VF2Sub implements IResults {
             return false;
         }
         boolean timoutVF = searchVFMappings();
+        if (budget != null && timoutVF) {
+            timeout = true;
+        }
         boolean flag = isExtensionFeasible();
         if (flag && !vfLibSolutions.isEmpty() && !timoutVF) {
             try {
@@ -150,13 +186,11 @@ public class VF2Sub implements IResults {
         return commonAtomCount > bestHitSize;
     }
 
-    private boolean hasMap(Map<Integer, Integer> maps, List<Map<Integer, Integer>> mapGlobal) {
-        for (Map<Integer, Integer> test : mapGlobal) {
-            if (test.equals(maps)) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @return true if the search budget ran out before the search completed
+     */
+    public boolean isTimeout() {
+        return timeout || (budget != null && budget.isExhausted());
     }
 
     /**
@@ -217,7 +251,7 @@ public class VF2Sub implements IResults {
         vfLibSolutions = new ArrayList<Map<INode, IAtom>>();
         if (source instanceof IQueryAtomContainer) {
             queryCompiler = new QueryCompiler((IQueryAtomContainer) source).compile();
-            mapper = new VFMapper(queryCompiler);
+            mapper = new VFMapper(queryCompiler, budget);
             List<Map<INode, IAtom>> maps = mapper.getMaps(getProductMol());
             if (maps != null) {
                 vfLibSolutions.addAll(maps);
@@ -225,7 +259,7 @@ public class VF2Sub implements IResults {
             setVFMappings(true, queryCompiler);
         } else if (countR <= countP) {
             queryCompiler = new QueryCompiler(this.source, this.matchBonds, this.shouldMatchRings, this.matchAtomType).compile();
-            mapper = new VFMapper(queryCompiler);
+            mapper = new VFMapper(queryCompiler, budget);
             List<Map<INode, IAtom>> maps = mapper.getMaps(getProductMol());
             if (maps != null) {
                 vfLibSolutions.addAll(maps);
@@ -246,10 +280,10 @@ public class VF2Sub implements IResults {
             Map<Integer, Integer> extendMapping = new TreeMap<Integer, Integer>(firstPassMappings);
             McGregor mgit;
             if (source instanceof IQueryAtomContainer) {
-                mgit = new McGregor((IQueryAtomContainer) source, target, mappings, this.matchBonds, this.shouldMatchRings, this.matchAtomType);
+                mgit = new McGregor((IQueryAtomContainer) source, target, mappings, this.matchBonds, this.shouldMatchRings, this.matchAtomType, budget);
             } else {
                 extendMapping.clear();
-                mgit = new McGregor(target, source, mappings, this.matchBonds, this.shouldMatchRings, this.matchAtomType);
+                mgit = new McGregor(target, source, mappings, this.matchBonds, this.shouldMatchRings, this.matchAtomType, budget);
                 ROPFlag = false;
                 for (Map.Entry<Integer, Integer> map : firstPassMappings.entrySet()) {
                     extendMapping.put(map.getValue(), map.getKey());
@@ -258,6 +292,10 @@ public class VF2Sub implements IResults {
             //Start McGregor search
             mgit.startMcGregorIteration(mgit.getMCSSize(), extendMapping);
             mappings = mgit.getMappings();
+            if (budget != null && mgit.isTimeout()) {
+                timeout = true;
+                break;
+            }
         }
 //        System.out.println("\nSol count after MG" + mappings.size());
         setMcGregorMappings(ROPFlag, mappings);
@@ -267,6 +305,15 @@ public class VF2Sub implements IResults {
 
     private synchronized void setVFMappings(boolean RONP, IQuery query) {
         int counter = 0;
+        /*
+         * index lookups through the compiled graphs are O(1), getAtomNumber is a linear scan
+         */
+        CompiledGraph sourceGraph = new CompiledGraph(source);
+        CompiledGraph targetGraph = new CompiledGraph(target);
+        MappingSet storedMCS = new MappingSet();
+        for (Map<Integer, Integer> map : allMCSCopy) {
+            storedMCS.add(map);
+        }
         for (Map<INode, IAtom> solution : vfLibSolutions) {
             AtomAtomMapping atomatomMapping = new AtomAtomMapping(source, target);
             Map<Integer, Integer> indexindexMapping = new TreeMap<Integer, Integer>();
@@ -280,17 +327,17 @@ public class VF2Sub implements IResults {
                 if (RONP) {
                     qAtom = query.getAtom(mapping.getKey());
                     tAtom = mapping.getValue();
-                    qIndex = source.getAtomNumber(qAtom);
-                    tIndex = target.getAtomNumber(tAtom);
+                    qIndex = sourceGraph.indexOf(qAtom);
+                    tIndex = targetGraph.indexOf(tAtom);
                 } else {
                     tAtom = query.getAtom(mapping.getKey());
                     qAtom = mapping.getValue();
-                    qIndex = source.getAtomNumber(qAtom);
-                    tIndex = target.getAtomNumber(tAtom);
+                    qIndex = sourceGraph.indexOf(qAtom);
+                    tIndex = targetGraph.indexOf(tAtom);
                 }
 
                 if (qIndex != -1 && tIndex != -1) {
-                    atomatomMapping.put(qAtom, tAtom);
+                    atomatomMapping.put(qIndex, tIndex);
                     indexindexMapping.put(qIndex, tIndex);
                 } else {
                     try {
@@ -304,10 +351,11 @@ public class VF2Sub implements IResults {
                 bestHitSize = indexindexMapping.size();
                 allAtomMCSCopy.clear();
                 allMCSCopy.clear();
+                storedMCS.clear();
                 counter = 0;
             }
-            if (!atomatomMapping.isEmpty() && !hasMap(indexindexMapping, allMCSCopy)
-                    && indexindexMapping.size() == bestHitSize) {
+            if (!atomatomMapping.isEmpty() && indexindexMapping.size() == bestHitSize
+                    && storedMCS.add(indexindexMapping)) {
 //                System.out.println("\nvfMCSSize: " + bestHitSize);
                 allAtomMCSCopy.add(counter, atomatomMapping);
                 allMCSCopy.add(counter, indexindexMapping);
@@ -319,30 +367,27 @@ public class VF2Sub implements IResults {
 
     private synchronized void setMcGregorMappings(boolean RONP, List<List<Integer>> mappings) throws CDKException {
         int counter = 0;
+        MappingSet storedMCS = new MappingSet();
+        for (Map<Integer, Integer> map : allMCS) {
+            storedMCS.add(map);
+        }
         for (List<Integer> mapping : mappings) {
             AtomAtomMapping atomatomMapping = new AtomAtomMapping(source, target);
             Map<Integer, Integer> indexindexMapping = new TreeMap<Integer, Integer>();
             for (int index = 0; index < mapping.size(); index += 2) {
-                IAtom qAtom;
-                IAtom tAtom;
                 Integer qIndex;
                 Integer tIndex;
 
                 if (RONP) {
-                    qAtom = getReactantMol().getAtom(mapping.get(index));
-                    tAtom = getProductMol().getAtom(mapping.get(index + 1));
-
                     qIndex = mapping.get(index);
                     tIndex = mapping.get(index + 1);
                 } else {
-                    qAtom = getReactantMol().getAtom(mapping.get(index + 1));
-                    tAtom = getProductMol().getAtom(mapping.get(index));
                     qIndex = mapping.get(index + 1);
                     tIndex = mapping.get(index);
                 }
 
                 if (qIndex != null && tIndex != null) {
-                    atomatomMapping.put(qAtom, tAtom);
+                    atomatomMapping.put(qIndex, tIndex);
                     indexindexMapping.put(qIndex, tIndex);
                 } else {
                     throw new CDKException("Atom index pointing to NULL");
@@ -353,11 +398,12 @@ public class VF2Sub implements IResults {
                 bestHitSize = indexindexMapping.size();
                 allAtomMCS.clear();
                 allMCS.clear();
+                storedMCS.clear();
                 counter = 0;
             }
 
-            if (!atomatomMapping.isEmpty() && !hasMap(indexindexMapping, allMCS)
-                    && (indexindexMapping.size()) == bestHitSize) {
+            if (!atomatomMapping.isEmpty() && (indexindexMapping.size()) == bestHitSize
+                    && storedMCS.add(indexindexMapping)) {
                 allAtomMCS.add(counter, atomatomMapping);
                 allMCS.add(counter, indexindexMapping);
                 counter++;
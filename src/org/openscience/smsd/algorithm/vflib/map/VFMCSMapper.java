@@ -49,7 +49,6 @@
 package org.openscience.smsd.algorithm.vflib.map;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,13 +58,18 @@ import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.smsd.algorithm.vflib.interfaces.IMapper;
 import org.openscience.smsd.algorithm.vflib.interfaces.INode;
 import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
-import org.openscience.smsd.algorithm.vflib.interfaces.IState;
 import org.openscience.smsd.algorithm.vflib.query.QueryCompiler;
 import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class finds MCS between query and target molecules using VF2 algorithm.
  *
+ * The search runs on a single {@link VFMCSState}; the mappings found are kept
+ * as target index arrays and checked against the stored ones through a
+ * {@link MappingSet}, they are only turned into atom maps when they are returned.
+ *
  * @cdk.module smsd
  * @cdk.githash
  *
@@ -76,16 +80,31 @@ public class VFMCSMapper implements IMapper {
 
     private boolean timeout = false;
     private final IQuery query;
-    private final List<Map<INode, IAtom>> maps;
+    private final List<int[]> maps;
+    private final MappingSet seenMaps;
     private IterationManager iterationManager = null;
+    private final SearchBudget budget;
 
     /**
      *
      * @param query
      */
     public VFMCSMapper(IQuery query) {
+        this(query, null);
+    }
+
+    /**
+     * Mapper whose searches stop when the budget runs out, the budget replaces
+     * the iteration cap unless it keeps the caps.
+     *
+     * @param query
+     * @param budget search budget or null
+     */
+    public VFMCSMapper(IQuery query, SearchBudget budget) {
+        this.budget = budget;
         this.query = query;
-        this.maps = Collections.synchronizedList(new ArrayList<Map<INode, IAtom>>());
+        this.maps = new ArrayList<int[]>();
+        this.seenMaps = new MappingSet();
     }
 
     /**
@@ -96,8 +115,7 @@ public class VFMCSMapper implements IMapper {
      * @param matchAtomType
      */
     public VFMCSMapper(IAtomContainer queryMolecule, boolean bondMatcher, boolean ringMatcher, boolean matchAtomType) {
-        this.query = new QueryCompiler(queryMolecule, bondMatcher, ringMatcher, matchAtomType).compile();
-        this.maps = new ArrayList<Map<INode, IAtom>>();
+        this(new QueryCompiler(queryMolecule, bondMatcher, ringMatcher, matchAtomType).compile(), null);
     }
 
     /**
@@ -139,10 +157,8 @@ public class VFMCSMapper implements IMapper {
      */
     @Override
     public boolean hasMap(IAtomContainer targetMolecule) {
-        setIterationManager(new IterationManager((this.query.countNodes() + targetMolecule.getAtomCount())));
-        IState state = new VFMCSState(query, targetMolecule);
-        maps.clear();
-        return mapFirst(state);
+        VFMCSState state = newState(targetMolecule);
+        return !state.isDead() && mapFirst(state, 0);
     }
 
     /**
@@ -150,11 +166,15 @@ public class VFMCSMapper implements IMapper {
      */
     @Override
     public List<Map<INode, IAtom>> getMaps(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
-        IState state = new VFMCSState(query, target);
-        maps.clear();
-        mapAll(state);
-        return new ArrayList<Map<INode, IAtom>>(maps);
+        VFMCSState state = newState(target);
+        if (!state.isDead()) {
+            mapAll(state, 0);
+        }
+        List<Map<INode, IAtom>> result = new ArrayList<Map<INode, IAtom>>(maps.size());
+        for (int[] core : maps) {
+            result.add(toMap(state, core));
+        }
+        return result;
     }
 
     /**
@@ -165,11 +185,11 @@ public class VFMCSMapper implements IMapper {
      */
     @Override
     public Map<INode, IAtom> getFirstMap(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
-        IState state = new VFMCSState(query, target);
-        maps.clear();
-        mapFirst(state);
-        return maps.isEmpty() ? new HashMap<INode, IAtom>() : maps.get(0);
+        VFMCSState state = newState(target);
+        if (!state.isDead()) {
+            mapFirst(state, 0);
+        }
+        return maps.isEmpty() ? new HashMap<INode, IAtom>() : toMap(state, maps.get(0));
     }
 
     /**
@@ -177,84 +197,95 @@ public class VFMCSMapper implements IMapper {
      */
     @Override
     public int countMaps(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
-        IState state = new VFMCSState(query, target);
-        maps.clear();
-        mapAll(state);
+        VFMCSState state = newState(target);
+        if (!state.isDead()) {
+            mapAll(state, 0);
+        }
         return maps.size();
     }
 
-    private boolean hasMap(Map<INode, IAtom> map) {
-        for (Map<INode, IAtom> storedMap : maps) {
-            if (storedMap.size() > map.size()) {
-                return true;
+    private VFMCSState newState(IAtomContainer target) {
+        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount()), budget, "VFMCS"));
+        maps.clear();
+        seenMaps.clear();
+        return new VFMCSState(query, target);
+    }
+
+    private Map<INode, IAtom> toMap(VFMCSState state, int[] core) {
+        Map<INode, IAtom> map = new HashMap<INode, IAtom>();
+        for (int q = 0; q < core.length; q++) {
+            if (core[q] != -1) {
+                map.put(state.getNode(q), state.getTarget().getAtom(core[q]));
             }
         }
-        if (maps.contains(map)) {
-            return true;
-        }
-        return false;
+        return map;
     }
 
-    private void addMapping(IState state) {
-        Map<INode, IAtom> map = state.getMap();
-        if (maps.isEmpty()) {
-            maps.add(map);
-        } else if (!hasMap(map)) {
-            maps.add(map);
+    /*
+     * true if a larger mapping or the current mapping itself has been stored
+     */
+    private boolean hasMap(VFMCSState state) {
+        int size = state.getMapSize();
+        if (seenMaps.getLargestSize() > size) {
+            return true;
         }
+        if (seenMaps.getLargestSize() < size || maps.isEmpty()) {
+            return false;
+        }
+        return seenMaps.contains(state.getQueryCore());
     }
 
-    private void mapAll(IState state) {
-        if (state.isDead()) {
-            return;
+    private void addMapping(VFMCSState state) {
+        if (maps.isEmpty() || !hasMap(state)) {
+            maps.add(state.getQueryCore().clone());
+            seenMaps.add(state.getQueryCore());
         }
+    }
 
-        if (hasMap(state.getMap())) {
-            state.backTrack();
+    private void mapAll(VFMCSState state, int depth) {
+        if (hasMap(state)) {
+            state.backTrack(depth);
         }
 
         if (state.isGoal()) {
-            Map<INode, IAtom> map = state.getMap();
-            if (!hasMap(map)) {
+            if (!hasMap(state)) {
                 addMapping(state);
             }
             return;
         } else {
-            Map<INode, IAtom> map = state.getMap();
-            if (!hasMap(map)) {
+            if (!hasMap(state)) {
                 addMapping(state);
             }
         }
 
-        while (state.hasNextCandidate() && !checkTimeout()) {
-            Match candidate = state.nextCandidate();
-            if (state.isMatchFeasible(candidate)) {
-                IState nextState = state.nextState(candidate);
-                mapAll(nextState);
-                nextState.backTrack();
+        while (state.hasNextCandidate(depth) && !checkTimeout()) {
+            state.nextCandidate(depth);
+            int q = state.getCandidateQuery();
+            int t = state.getCandidateTarget();
+            if (state.isMatchFeasible(depth, q, t)) {
+                state.nextState(depth, q, t);
+                mapAll(state, depth + 1);
+                state.backTrack(depth + 1);
             }
         }
     }
 
-    private boolean mapFirst(IState state) {
-        if (state.isDead()) {
-            return false;
-        }
-
+    private boolean mapFirst(VFMCSState state, int depth) {
         if (state.isGoal()) {
             addMapping(state);
             return true;
         }
 
         boolean found = false;
-        while (!found && state.hasNextCandidate()) {
-            Match candidate = state.nextCandidate();
-            if (state.isMatchFeasible(candidate)) {
-                IState nextState = state.nextState(candidate);
-                found = mapFirst(nextState);
+        while (!found && state.hasNextCandidate(depth)) {
+            state.nextCandidate(depth);
+            int q = state.getCandidateQuery();
+            int t = state.getCandidateTarget();
+            if (state.isMatchFeasible(depth, q, t)) {
+                state.nextState(depth, q, t);
+                found = mapFirst(state, depth + 1);
                 if (!found) {
-                    nextState.backTrack();
+                    state.backTrack(depth + 1);
                 }
             }
         }
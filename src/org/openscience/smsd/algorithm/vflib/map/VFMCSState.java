@@ -50,23 +50,36 @@
  */
 package org.openscience.smsd.algorithm.vflib.map;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IBond;
 import org.openscience.smsd.algorithm.vflib.interfaces.IEdge;
 import org.openscience.smsd.algorithm.vflib.interfaces.INode;
 import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
 import org.openscience.smsd.algorithm.vflib.interfaces.IState;
-import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.helper.CompiledGraph;
 
 /**
- * This class finds mapping states between query and target molecules.
+ * This class holds the search state of the {@link VFMCSMapper}.
+ *
+ * A single state is modified in place: {@link #nextState(int, int, int)}
+ * extends the path by one pair and loads the candidates of the next depth on a
+ * shared candidate stack, {@link #backTrack(int)} restores the mapping. Query
+ * nodes and target atoms are referred to by index and the atom and bond
+ * matches are cached, so the search itself does not allocate.
+ *
+ * The atom mapping is shared by all the depths of the search (as it was by the
+ * chained states this class replaces) and backtracking keeps its rules: a head
+ * whose neighbours are all mapped stays mapped, a complete mapping is cleared.
+ *
+ * The {@link IState} methods treat this object as the root of the search,
+ * {@link #nextState(Match)} returns a view of the next depth on the same
+ * state. The views have to be used depth first, as the mappers do.
  *
  * @cdk.module smsd
  * @cdk.githash
@@ -75,58 +88,227 @@ import org.openscience.smsd.tools.IterationManager;
 @TestClass("org.openscience.cdk.smsd.algorithm.vflib.VFLibTest")
 public class VFMCSState implements IState {
 
-    private List<Match> candidates;
-    private IQuery query;
-    private IAtomContainer target;
-    private List<INode> queryPath;
-    private List<IAtom> targetPath;
-    private Map<INode, IAtom> map;
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte MISMATCH = 2;
+    private final IAtomContainer target;
+    private final CompiledGraph targetGraph;
+    private final int queryCount;
+    private final int targetCount;
+    private final INode[] nodes;
+    private final Map<INode, Integer> nodeIndex;
+    private final IEdge[] edges;
+    private final int[][] queryNeighbors;
+    /*
+     * query edge index between two nodes, -1 if they are not connected
+     */
+    private final int[][] queryEdges;
+    private final boolean[][] atomMatches;
+    private final byte[][] bondMatches;
+    /*
+     * the shared mapping: target atom of each query node (-1 if unmapped), the
+     * number of query nodes mapped on each target atom and the mapped nodes in
+     * insertion order
+     */
+    private final int[] queryCore;
+    private final int[] targetUse;
+    private final int[] mapOrder;
+    private int mapOrderSize;
+    private int mapSize;
+    /*
+     * path of the search, the pair added at depth d is stored at index d
+     */
+    private int[] pathQuery;
+    private int[] pathTarget;
+    /*
+     * candidate stack, the candidates of depth d are stored between
+     * candidateBase[d] and candidateTop[d] and taken from the top
+     */
+    private int[] candidateQuery;
+    private int[] candidateTarget;
+    private int[] candidateBase;
+    private int[] candidateTop;
+    private int lastQuery;
+    private int lastTarget;
+    private final IState root;
 
     /**
-     * initialize the VFState with query and target
+     * initialize the state with query and target and load the root candidates
      *
      * @param query
      * @param target
      */
     public VFMCSState(IQuery query, IAtomContainer target) {
-        this.map = new HashMap<INode, IAtom>();
-        this.queryPath = new ArrayList<INode>();
-        this.targetPath = new ArrayList<IAtom>();
-        this.candidates = new ArrayList<Match>();
-        this.query = query;
         this.target = target;
-        loadRootCandidates();
+        this.targetGraph = new CompiledGraph(target);
+        this.queryCount = query.countNodes();
+        this.targetCount = target.getAtomCount();
 
+        this.nodes = new INode[queryCount];
+        this.nodeIndex = new IdentityHashMap<INode, Integer>(queryCount * 2);
+        for (int i = 0; i < queryCount; i++) {
+            nodes[i] = query.getNode(i);
+            nodeIndex.put(nodes[i], i);
+        }
+        this.edges = new IEdge[query.countEdges()];
+        Map<IEdge, Integer> edgeIndex = new IdentityHashMap<IEdge, Integer>(edges.length * 2);
+        for (int e = 0; e < edges.length; e++) {
+            edges[e] = query.getEdge(e);
+            edgeIndex.put(edges[e], e);
+        }
+        this.queryNeighbors = new int[queryCount][];
+        this.queryEdges = new int[queryCount][queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            queryNeighbors[i] = new int[nodes[i].countNeighbors()];
+            int k = 0;
+            for (INode neighbor : nodes[i].neighbors()) {
+                queryNeighbors[i][k++] = nodeIndex.get(neighbor);
+            }
+            for (int j = 0; j < queryCount; j++) {
+                IEdge edge = query.getEdge(nodes[i], nodes[j]);
+                queryEdges[i][j] = edge == null ? -1 : edgeIndex.get(edge);
+            }
+        }
+        this.atomMatches = new boolean[queryCount][targetCount];
+        for (int i = 0; i < queryCount; i++) {
+            for (int j = 0; j < targetCount; j++) {
+                atomMatches[i][j] = nodes[i].getAtomMatcher().matches(target.getAtom(j));
+            }
+        }
+        this.bondMatches = new byte[edges.length][targetGraph.getBondCount()];
+
+        this.queryCore = new int[queryCount];
+        Arrays.fill(queryCore, -1);
+        this.targetUse = new int[targetCount];
+        this.mapOrder = new int[queryCount];
+        this.pathQuery = new int[queryCount + 1];
+        this.pathTarget = new int[queryCount + 1];
+        this.candidateBase = new int[queryCount + 2];
+        this.candidateTop = new int[queryCount + 2];
+        this.candidateQuery = new int[Math.max(16, queryCount * targetCount)];
+        this.candidateTarget = new int[candidateQuery.length];
+        loadRootCandidates();
+        this.root = new DepthState(0);
     }
 
-    private VFMCSState(VFMCSState state, Match match) {
-        this.candidates = new ArrayList<Match>();
-        this.queryPath = new ArrayList<INode>(state.queryPath);
-        this.targetPath = new ArrayList<IAtom>(state.targetPath);
-        this.map = state.map;
-        this.query = state.query;
-        this.target = state.target;
-        map.put(match.getQueryNode(), match.getTargetAtom());
-        queryPath.add(match.getQueryNode());
-        targetPath.add(match.getTargetAtom());
-        loadCandidates(match);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDead() {
+        return queryCount > targetCount;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void backTrack() {
-        if (queryPath.isEmpty() || isGoal()) {
-            map.clear();
+    public boolean isGoal() {
+        return mapSize == queryCount;
+    }
+
+    /**
+     * @return number of mapped query nodes
+     */
+    int getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * Target atom index of each query node, -1 if the node is not mapped. The
+     * array is live and must not be modified.
+     *
+     * @return the current mapping
+     */
+    int[] getQueryCore() {
+        return queryCore;
+    }
+
+    INode getNode(int queryIndex) {
+        return nodes[queryIndex];
+    }
+
+    IAtomContainer getTarget() {
+        return target;
+    }
+
+    boolean hasNextCandidate(int depth) {
+        return candidateTop[depth] > candidateBase[depth];
+    }
+
+    /**
+     * Takes the next candidate of a depth, see {@link #getCandidateQuery()}
+     * and {@link #getCandidateTarget()}.
+     *
+     * @param depth
+     */
+    void nextCandidate(int depth) {
+        int top = --candidateTop[depth];
+        lastQuery = candidateQuery[top];
+        lastTarget = candidateTarget[top];
+    }
+
+    int getCandidateQuery() {
+        return lastQuery;
+    }
+
+    int getCandidateTarget() {
+        return lastTarget;
+    }
+
+    /**
+     * Returns true if the pair can extend the path of the given depth.
+     *
+     * @param depth current depth (length of the path)
+     * @param q query node
+     * @param t target atom
+     * @return true if the pair is feasible
+     */
+    boolean isMatchFeasible(int depth, int q, int t) {
+        if (queryCore[q] != -1 || targetUse[t] > 0) {
+            return false;
+        }
+        if (queryNeighbors[q].length > targetGraph.getDegree(t) || !atomMatches[q][t]) {
+            return false;
+        }
+        return matchBonds(depth, q, t);
+    }
+
+    /**
+     * Adds the pair to the mapping and the path, and loads the candidates of
+     * the next depth.
+     *
+     * @param depth current depth (length of the path)
+     * @param q query node
+     * @param t target atom
+     */
+    void nextState(int depth, int q, int t) {
+        ensureDepth(depth + 1);
+        put(q, t);
+        pathQuery[depth] = q;
+        pathTarget[depth] = t;
+        candidateBase[depth + 1] = candidateTop[depth];
+        candidateTop[depth + 1] = candidateTop[depth];
+        loadCandidates(depth + 1, q, t);
+    }
+
+    /**
+     * Returns the mapping to its condition before the head of the path of the
+     * given depth was added.
+     *
+     * @param depth length of the path
+     */
+    void backTrack(int depth) {
+        if (depth == 0 || isGoal()) {
+            clearMap();
             return;
         }
-        if (isHeadMapped()) {
+        if (isHeadMapped(pathQuery[depth - 1])) {
             return;
         }
-        map.clear();
-        for (int i = 0; i < queryPath.size() - 1; i++) {
-            map.put(queryPath.get(i), targetPath.get(i));
+        clearMap();
+        for (int i = 0; i < depth - 1; i++) {
+            put(pathQuery[i], pathTarget[i]);
         }
     }
 
@@ -135,7 +317,12 @@ public class VFMCSState implements IState {
      */
     @Override
     public Map<INode, IAtom> getMap() {
-        return Collections.synchronizedMap(new HashMap<INode, IAtom>(map));
+        Map<INode, IAtom> map = new HashMap<INode, IAtom>();
+        for (int k = 0; k < mapOrderSize; k++) {
+            int q = mapOrder[k];
+            map.put(nodes[q], target.getAtom(queryCore[q]));
+        }
+        return Collections.synchronizedMap(map);
     }
 
     /**
@@ -143,23 +330,15 @@ public class VFMCSState implements IState {
      */
     @Override
     public boolean hasNextCandidate() {
-        return !candidates.isEmpty();
+        return root.hasNextCandidate();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isDead() {
-        return query.countNodes() > target.getAtomCount();
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean isGoal() {
-        return map.size() == query.countNodes();
+    public Match nextCandidate() {
+        return root.nextCandidate();
     }
 
     /**
@@ -167,139 +346,192 @@ public class VFMCSState implements IState {
      */
     @Override
     public boolean isMatchFeasible(Match match) {
-        if (map.containsKey(match.getQueryNode())
-                || map.containsValue(match.getTargetAtom())) {
-            return false;
-        }
-        if (!matchAtoms(match)) {
-            return false;
-        }
-        if (!matchBonds(match)) {
-            return false;
-        }
-        return true;
+        return root.isMatchFeasible(match);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Match nextCandidate() {
-        return candidates.remove(candidates.size() - 1);
+    public IState nextState(Match match) {
+        return root.nextState(match);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public IState nextState(Match match) {
-        return new VFMCSState(this, match);
+    public void backTrack() {
+        root.backTrack();
     }
 
-    private void loadRootCandidates() {
-        for (int i = 0; i < query.countNodes(); i++) {
-            for (int j = 0; j < target.getAtomCount(); j++) {
-                if (query.getNode(i).getAtomMatcher().matches(target.getAtom(j))) {
-                    Match match = new Match(query.getNode(i), target.getAtom(j));
-                    candidates.add(match);
-                }
-            }
+    private void put(int q, int t) {
+        int previous = queryCore[q];
+        if (previous == -1) {
+            mapOrder[mapOrderSize++] = q;
+            mapSize++;
+        } else {
+            targetUse[previous]--;
         }
+        queryCore[q] = t;
+        targetUse[t]++;
     }
 
-//@TODO Asad Check the Neighbour count
-    private void loadCandidates(Match lastMatch) {
-        IAtom atom = lastMatch.getTargetAtom();
-        List<IAtom> targetNeighbors = target.getConnectedAtomsList(atom);
-        for (INode q : lastMatch.getQueryNode().neighbors()) {
-            for (IAtom t : targetNeighbors) {
-                if (q.getAtomMatcher().matches(t)) {
-                    Match match = new Match(q, t);
-                    if (isCandidateFeasible(match)) {
-                        candidates.add(match);
-                    }
-                }
-            }
+    private void clearMap() {
+        for (int k = 0; k < mapOrderSize; k++) {
+            int q = mapOrder[k];
+            targetUse[queryCore[q]]--;
+            queryCore[q] = -1;
         }
+        mapOrderSize = 0;
+        mapSize = 0;
     }
 
-    private boolean isCandidateFeasible(Match candidate) {
-        for (INode queryAtom : map.keySet()) {
-            if (queryAtom.equals(candidate.getQueryNode())
-                    || map.get(queryAtom).equals(candidate.getTargetAtom())) {
+    private boolean isHeadMapped(int head) {
+        for (int neighbor : queryNeighbors[head]) {
+            if (queryCore[neighbor] == -1) {
                 return false;
             }
         }
         return true;
     }
-    //This function is updated by Asad to include more matches
 
-    private boolean matchAtoms(Match match) {
-        IAtom atom = match.getTargetAtom();
-        if (match.getQueryNode().countNeighbors() > target.getConnectedAtomsCount(atom)) {
-            return false;
+    private void loadRootCandidates() {
+        int top = 0;
+        for (int i = 0; i < queryCount; i++) {
+            for (int j = 0; j < targetCount; j++) {
+                if (atomMatches[i][j]) {
+                    candidateQuery[top] = i;
+                    candidateTarget[top++] = j;
+                }
+            }
         }
-        return match.getQueryNode().getAtomMatcher().matches(atom);
+        candidateBase[0] = 0;
+        candidateTop[0] = top;
     }
 
-    private boolean matchBonds(Match match) {
-        if (queryPath.isEmpty()) {
-            return true;
+    private void loadCandidates(int depth, int q, int t) {
+        int[] targetNeighbors = targetGraph.getNeighbours(t);
+        int top = candidateTop[depth];
+        for (int qn : queryNeighbors[q]) {
+            if (queryCore[qn] != -1) {
+                continue;
+            }
+            for (int tn : targetNeighbors) {
+                if (atomMatches[qn][tn] && targetUse[tn] == 0) {
+                    if (top == candidateQuery.length) {
+                        candidateQuery = Arrays.copyOf(candidateQuery, top * 2);
+                        candidateTarget = Arrays.copyOf(candidateTarget, top * 2);
+                    }
+                    candidateQuery[top] = qn;
+                    candidateTarget[top++] = tn;
+                }
+            }
         }
+        candidateTop[depth] = top;
+    }
 
-        if (!matchBondsToHead(match)) {
+    private boolean matchBonds(int depth, int q, int t) {
+        if (depth == 0) {
+            return true;
+        }
+        int head = depth - 1;
+        int headEdge = queryEdges[pathQuery[head]][q];
+        int headBond = targetGraph.getBondIndex(pathTarget[head], t);
+        if (headEdge == -1 || headBond == -1 || !matchBond(headEdge, headBond)) {
             return false;
         }
-
-        for (int i = 0; i < queryPath.size() - 1; i++) {
-            IEdge queryBond = query.getEdge(queryPath.get(i), match.getQueryNode());
-            IBond targetBond = target.getBond(targetPath.get(i), match.getTargetAtom());
-
-            if (queryBond == null) {
+        for (int i = 0; i < head; i++) {
+            int queryEdge = queryEdges[pathQuery[i]][q];
+            if (queryEdge == -1) {
                 continue;
             }
-            if (targetBond == null) {
-                return false;
-            }
-            if (!matchBond(queryBond, targetBond)) {
+            int targetBond = targetGraph.getBondIndex(pathTarget[i], t);
+            if (targetBond == -1 || !matchBond(queryEdge, targetBond)) {
                 return false;
             }
         }
         return true;
     }
 
-    private boolean matchBond(IEdge edge, IBond targetBond) {
-        return edge.getBondMatcher().matches(targetBond);
+    private boolean matchBond(int queryEdge, int targetBond) {
+        byte cached = bondMatches[queryEdge][targetBond];
+        if (cached == UNKNOWN) {
+            cached = edges[queryEdge].getBondMatcher().matches(target.getBond(targetBond)) ? MATCH : MISMATCH;
+            bondMatches[queryEdge][targetBond] = cached;
+        }
+        return cached == MATCH;
     }
 
-    private boolean isHeadMapped() {
-        INode head = queryPath.get(queryPath.size() - 1);
-        for (INode neighbor : head.neighbors()) {
-            if (!map.containsKey(neighbor)) {
-                return false;
-            }
+    /*
+     * the path is not bounded by the query size: a backtracked head can be
+     * added again further down
+     */
+    private void ensureDepth(int depth) {
+        if (depth >= pathQuery.length) {
+            pathQuery = Arrays.copyOf(pathQuery, depth * 2);
+            pathTarget = Arrays.copyOf(pathTarget, depth * 2);
+        }
+        if (depth + 1 >= candidateBase.length) {
+            candidateBase = Arrays.copyOf(candidateBase, (depth + 1) * 2);
+            candidateTop = Arrays.copyOf(candidateTop, (depth + 1) * 2);
         }
-        return true;
     }
 
-    private boolean matchBondsToHead(Match match) {
-        INode queryHead = getQueryPathHead();
-        IAtom targetHead = getTargetPathHead();
+    /*
+     * IState view of one depth of the search
+     */
+    private final class DepthState implements IState {
 
-        IEdge queryBond = query.getEdge(queryHead, match.getQueryNode());
-        IBond targetBond = target.getBond(targetHead, match.getTargetAtom());
+        private final int depth;
 
-        if (queryBond == null || targetBond == null) {
-            return false;
+        DepthState(int depth) {
+            this.depth = depth;
         }
-        return matchBond(queryBond, targetBond);
-    }
 
-    private INode getQueryPathHead() {
-        return queryPath.get(queryPath.size() - 1);
-    }
+        @Override
+        public Map<INode, IAtom> getMap() {
+            return VFMCSState.this.getMap();
+        }
+
+        @Override
+        public boolean hasNextCandidate() {
+            return VFMCSState.this.hasNextCandidate(depth);
+        }
+
+        @Override
+        public Match nextCandidate() {
+            VFMCSState.this.nextCandidate(depth);
+            return new Match(nodes[lastQuery], target.getAtom(lastTarget));
+        }
+
+        @Override
+        public boolean isMatchFeasible(Match match) {
+            Integer q = nodeIndex.get(match.getQueryNode());
+            int t = targetGraph.indexOf(match.getTargetAtom());
+            return q != null && t != -1 && VFMCSState.this.isMatchFeasible(depth, q, t);
+        }
+
+        @Override
+        public boolean isGoal() {
+            return VFMCSState.this.isGoal();
+        }
+
+        @Override
+        public boolean isDead() {
+            return VFMCSState.this.isDead();
+        }
+
+        @Override
+        public IState nextState(Match match) {
+            VFMCSState.this.nextState(depth, nodeIndex.get(match.getQueryNode()),
+                    targetGraph.indexOf(match.getTargetAtom()));
+            return new DepthState(depth + 1);
+        }
 
-    private IAtom getTargetPathHead() {
-        return targetPath.get(targetPath.size() - 1);
+        @Override
+        public void backTrack() {
+            VFMCSState.this.backTrack(depth);
+        }
     }
 }
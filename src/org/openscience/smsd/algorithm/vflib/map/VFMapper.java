@@ -62,6 +62,7 @@ import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
 import org.openscience.smsd.algorithm.vflib.interfaces.IState;
 import org.openscience.smsd.algorithm.vflib.query.QueryCompiler;
 import org.openscience.smsd.tools.IterationManager;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class finds MCS between query and target molecules using VF2 algorithm.
@@ -77,6 +78,7 @@ public class VFMapper implements IMapper {
     private final IQuery query;
     private final List<Map<INode, IAtom>> maps;
     private IterationManager iterationManager = null;
+    private final SearchBudget budget;
     private boolean timeout = false;
 
     /**
@@ -84,6 +86,18 @@ public class VFMapper implements IMapper {
      * @param query
      */
     public VFMapper(IQuery query) {
+        this(query, null);
+    }
+
+    /**
+     * Mapper whose searches stop when the budget runs out, the budget replaces
+     * the iteration cap.
+     *
+     * @param query
+     * @param budget search budget or null
+     */
+    public VFMapper(IQuery query, SearchBudget budget) {
+        this.budget = budget;
         this.query = query;
         this.maps = Collections.synchronizedList(new ArrayList<Map<INode, IAtom>>());
     }
@@ -96,6 +110,7 @@ public class VFMapper implements IMapper {
      * @param matchAtomType
      */
     public VFMapper(IAtomContainer queryMolecule, boolean bondMatcher, boolean ringMatcher, boolean matchAtomType) {
+        this.budget = null;
         this.query = new QueryCompiler(queryMolecule, bondMatcher, ringMatcher, matchAtomType).compile();
         this.maps = new ArrayList<Map<INode, IAtom>>();
     }
@@ -139,7 +154,7 @@ public class VFMapper implements IMapper {
      */
     @Override
     public boolean hasMap(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
+        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount()), budget, "VFSubstructure"));
         IState state = new VFState(query, target);
         maps.clear();
         return mapFirst(state);
@@ -150,7 +165,7 @@ public class VFMapper implements IMapper {
      */
     @Override
     public List<Map<INode, IAtom>> getMaps(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
+        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount()), budget, "VFSubstructure"));
         IState state = new VFState(query, target);
         maps.clear();
         mapAll(state);
@@ -165,7 +180,7 @@ public class VFMapper implements IMapper {
      */
     @Override
     public Map<INode, IAtom> getFirstMap(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
+        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount()), budget, "VFSubstructure"));
         IState state = new VFState(query, target);
         maps.clear();
         mapFirst(state);
@@ -177,7 +192,7 @@ public class VFMapper implements IMapper {
      */
     @Override
     public int countMaps(IAtomContainer target) {
-        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount())));
+        setIterationManager(new IterationManager((this.query.countNodes() + target.getAtomCount()), budget, "VFSubstructure"));
         IState state = new VFState(query, target);
         maps.clear();
         mapAll(state);
@@ -34,11 +34,15 @@ import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.algorithm.mcsplus.BKKCKCF;
-import org.openscience.smsd.algorithm.mcsplus.GenerateCompatibilityGraph;
+import org.openscience.smsd.algorithm.mcsplus.CompatibilityGraph;
+import org.openscience.smsd.algorithm.mcsplus.CompatibilityGraphBuilder;
 import org.openscience.smsd.algorithm.rgraph.CDKRMapHandler;
 import org.openscience.smsd.algorithm.vflib.Map1ValueComparator;
 import org.openscience.smsd.algorithm.vflib.SortOrder;
 import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
+import org.openscience.smsd.tools.SearchStats;
+import org.openscience.smsd.tools.SearchStats.Stage;
 
 /**
  * This class should be used to find MCS between source graph and target graph.
@@ -63,6 +67,12 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
             = LoggingToolFactory.createLoggingTool(MCSSeedGenerator.class);
     private final boolean bondMatch;
     private final boolean matchAtomType;
+    private final SearchBudget budget;
+    /*
+     * statistics of the search which created the generator, call() runs on
+     * a worker thread
+     */
+    private final SearchStats stats;
 
     /**
      *
@@ -74,6 +84,22 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
      * @param algorithm
      */
     public MCSSeedGenerator(IAtomContainer source, IAtomContainer target, boolean bondMatch, boolean ringMatch, boolean matchAtomType, Algorithm algorithm) {
+        this(source, target, bondMatch, ringMatch, matchAtomType, algorithm, null);
+    }
+
+    /**
+     *
+     * @param source
+     * @param target
+     * @param bondMatch
+     * @param ringMatch
+     * @param matchAtomType
+     * @param algorithm
+     * @param budget search budget or null
+     */
+    public MCSSeedGenerator(IAtomContainer source, IAtomContainer target, boolean bondMatch, boolean ringMatch, boolean matchAtomType, Algorithm algorithm,
+            SearchBudget budget) {
+        this.budget = budget;
         this.source = source;
         this.target = target;
         this.allCliqueAtomMCS = new ArrayList<AtomAtomMapping>();
@@ -81,10 +107,22 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
         this.algorithm = algorithm;
         this.matchAtomType = matchAtomType;
         this.bondMatch = bondMatch;
+        this.stats = SearchStats.current();
     }
 
     @Override
     public List<AtomAtomMapping> call() throws Exception {
+        SearchStats previous = SearchStats.attach(stats);
+        long start = System.nanoTime();
+        try {
+            return seeds();
+        } finally {
+            SearchStats.record(stats, Stage.VF_SEEDS, start);
+            SearchStats.attach(previous);
+        }
+    }
+
+    private List<AtomAtomMapping> seeds() throws Exception {
 //        System.out.println("ac1: " + this.source.getAtomCount());
 //        System.out.println("ac2: " + this.target.getAtomCount());
         if (algorithm.equals(Algorithm.CDKMCS)) {
@@ -114,11 +152,8 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
             ac1 = target;
             ac2 = source;
         }
-        GenerateCompatibilityGraph gcg = new GenerateCompatibilityGraph(ac1, ac2, bondMatch, ringMatch, matchAtomType);
-        List<Integer> comp_graph_nodes = gcg.getCompGraphNodes();
-        List<Integer> cEdges = gcg.getCEgdes();
-        List<Integer> dEdges = gcg.getDEgdes();
-        BKKCKCF init = new BKKCKCF(comp_graph_nodes, cEdges, dEdges);
+        CompatibilityGraph graph = new CompatibilityGraphBuilder(ac1, ac2, bondMatch, ringMatch, matchAtomType).build();
+        BKKCKCF init = new BKKCKCF(graph.getNodeCount(), graph.getCRows(), graph.getDRows(), budget);
         Stack<List<Integer>> maxCliqueSet = new Stack<List<Integer>>();
         maxCliqueSet.addAll(init.getMaxCliqueSet());
         Collections.sort(maxCliqueSet, new Comparator<List<Integer>>() {
@@ -132,27 +167,18 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
             AtomAtomMapping atomatomMapping = new AtomAtomMapping(source, target);
 
             for (Integer value : peek) {
-                int[] index = getIndex(value.intValue(), comp_graph_nodes);
-                Integer qIndex = index[0];
-                Integer tIndex = index[1];
-                if (qIndex != -1 && tIndex != -1) {
-                    IAtom qAtom;
-                    IAtom tAtom;
-                    if (flagExchange) {
-                        qAtom = source.getAtom(tIndex);
-                        tAtom = target.getAtom(qIndex);
-                    } else {
-                        qAtom = source.getAtom(qIndex);
-                        tAtom = target.getAtom(tIndex);
-                    }
-                    atomatomMapping.put(qAtom, tAtom);
+                int qIndex = graph.getQueryIndex(value - 1);
+                int tIndex = graph.getTargetIndex(value - 1);
+                IAtom qAtom;
+                IAtom tAtom;
+                if (flagExchange) {
+                    qAtom = source.getAtom(tIndex);
+                    tAtom = target.getAtom(qIndex);
                 } else {
-                    try {
-                        throw new CDKException("Atom index pointing to -1");
-                    } catch (CDKException ex) {
-                        Logger.error(Level.SEVERE, null, ex);
-                    }
+                    qAtom = source.getAtom(qIndex);
+                    tAtom = target.getAtom(tIndex);
                 }
+                atomatomMapping.put(qAtom, tAtom);
             }
 
             if (!atomatomMapping.isEmpty()) {
@@ -160,7 +186,6 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
             }
             maxCliqueSet.pop();
         }
-        gcg.clear();
         return Collections.unmodifiableList(allCliqueAtomMCS);
     }
 
@@ -169,7 +194,7 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
      * @return
      */
     private List<AtomAtomMapping> addUIT() throws CDKException {
-        CDKRMapHandler rmap = new CDKRMapHandler();
+        CDKRMapHandler rmap = new CDKRMapHandler(budget);
         List<Map<Integer, Integer>> solutions;
 
         boolean rOnPFlag;
@@ -224,17 +249,4 @@ public class MCSSeedGenerator implements Callable<List<AtomAtomMapping>> {
         }
         return Collections.unmodifiableList(allCliqueAtomMCS);
     }
-
-    private int[] getIndex(int cliqueIndex, List<Integer> comp_graph_nodes) {
-        int[] v = new int[2];
-        v[0] = -1;
-        v[1] = -1;
-        for (int i = 0; i < comp_graph_nodes.size(); i += 3) {
-            if (cliqueIndex == comp_graph_nodes.get(i + 2)) {
-                v[0] = comp_graph_nodes.get(i);
-                v[1] = comp_graph_nodes.get(i + 1);
-            }
-        }
-        return v;
-    }
 }
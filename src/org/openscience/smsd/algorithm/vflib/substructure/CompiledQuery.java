@@ -0,0 +1,486 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.vflib.substructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.IQueryBond;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.algorithm.matchers.AtomMatcher;
+import org.openscience.smsd.algorithm.matchers.BondMatcher;
+import org.openscience.smsd.algorithm.matchers.DefaultAtomMatcher;
+import org.openscience.smsd.algorithm.matchers.DefaultBondMatcher;
+import org.openscience.smsd.helper.CompiledGraph;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * A substructure query compiled once and matched against any number of
+ * targets. Everything that only depends on the query is computed in the
+ * constructor: the compiled graph, the atom and bond matchers, the atom degrees,
+ * the VF2 matching order, the query side of the subgraph heuristics
+ * (element and bond order counts) and the path fingerprint used to screen
+ * targets (see {@link FingerprintScreen}).
+ *
+ * The object is immutable, every call of {@link #matches(IAtomContainer)} or
+ * {@link #findAll(IAtomContainer)} works on its own search state, so a single
+ * instance can be shared between threads. The query container must not be
+ * modified after compilation.
+ *
+ * <pre>
+ *  CompiledQuery query = new CompiledQuery(queryContainer, true, true, true);
+ *  for (IAtomContainer target : library) {
+ *      if (query.matches(target)) {
+ *          ...
+ *      }
+ *  }
+ * </pre>
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.algorithm.vflib.substructure.CompiledQueryTest")
+public final class CompiledQuery {
+
+    private final IAtomContainer query;
+    private final CompiledGraph graph;
+    private final boolean shouldMatchBonds;
+    private final boolean shouldMatchRings;
+    private final boolean matchAtomType;
+    private final AtomMatcher[] atomMatchers;
+    private final BondMatcher[] bondMatchers;
+    private final int[] order;
+    private final int singleBondCount;
+    private final int doubleBondCount;
+    private final int tripleBondCount;
+    private final int aromaticBondCount;
+    private final Map<String, Integer> elementCounts;
+    private final long[] fingerprint;
+
+    /**
+     * Compiles a query molecule.
+     *
+     * @param query query molecule
+     * @param shouldMatchBonds bond match flag
+     * @param shouldMatchRings ring match flag
+     * @param matchAtomType atom type match flag
+     */
+    public CompiledQuery(IAtomContainer query,
+            boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
+        this.query = query;
+        this.shouldMatchBonds = shouldMatchBonds;
+        this.shouldMatchRings = shouldMatchRings;
+        this.matchAtomType = matchAtomType;
+        this.graph = new CompiledGraph(query);
+
+        int atomCount = graph.getAtomCount();
+        this.atomMatchers = new AtomMatcher[atomCount];
+        for (int i = 0; i < atomCount; i++) {
+            atomMatchers[i] = new DefaultAtomMatcher(query.getAtom(i), shouldMatchRings);
+        }
+
+        this.bondMatchers = new BondMatcher[graph.getBondCount()];
+        int single = 0;
+        int dbl = 0;
+        int triple = 0;
+        int aromatic = 0;
+        for (int b = 0; b < bondMatchers.length; b++) {
+            IBond bond = query.getBond(b);
+            if (bond instanceof IQueryBond) {
+                bondMatchers[b] = new DefaultBondMatcher(bond, shouldMatchBonds);
+                continue;
+            }
+            if (bond.getFlag(CDKConstants.ISAROMATIC)) {
+                aromatic++;
+            } else if (bond.getOrder() == IBond.Order.SINGLE) {
+                single++;
+            } else if (bond.getOrder() == IBond.Order.DOUBLE) {
+                dbl++;
+            } else if (bond.getOrder() == IBond.Order.TRIPLE) {
+                triple++;
+            }
+        }
+        this.singleBondCount = single;
+        this.doubleBondCount = dbl;
+        this.tripleBondCount = triple;
+        this.aromaticBondCount = aromatic;
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < atomCount; i++) {
+            IAtom atom = query.getAtom(i);
+            if (atom instanceof IQueryAtom) {
+                continue;
+            }
+            Integer count = counts.get(atom.getSymbol());
+            counts.put(atom.getSymbol(), count == null ? 1 : count + 1);
+        }
+        this.elementCounts = Collections.unmodifiableMap(counts);
+        this.order = matchingOrder(graph);
+        this.fingerprint = FingerprintScreen.fingerprint(query);
+    }
+
+    /**
+     * Compiles a query container (SMARTS etc.).
+     *
+     * @param query query container
+     */
+    public CompiledQuery(IQueryAtomContainer query) {
+        this(query, true, true, true);
+    }
+
+    /*
+     * Connected, most constrained first order: the next atom is the one with
+     * most bonds to the atoms already ordered, ties broken by degree. New
+     * components start with the highest degree atom left.
+     */
+    private static int[] matchingOrder(CompiledGraph graph) {
+        int atomCount = graph.getAtomCount();
+        int[] matchingOrder = new int[atomCount];
+        int[] connections = new int[atomCount];
+        boolean[] placed = new boolean[atomCount];
+        for (int position = 0; position < atomCount; position++) {
+            int best = -1;
+            for (int i = 0; i < atomCount; i++) {
+                if (placed[i]) {
+                    continue;
+                }
+                if (best == -1
+                        || connections[i] > connections[best]
+                        || (connections[i] == connections[best]
+                        && graph.getDegree(i) > graph.getDegree(best))) {
+                    best = i;
+                }
+            }
+            placed[best] = true;
+            matchingOrder[position] = best;
+            int[] neighbours = graph.getNeighbours(best);
+            for (int k = 0; k < neighbours.length; k++) {
+                connections[neighbours[k]]++;
+            }
+        }
+        return matchingOrder;
+    }
+
+    /**
+     * Returns true if the query is a substructure of the target.
+     *
+     * @param target target molecule
+     * @return true if a match is found
+     */
+    @TestMethod("testMatches")
+    public boolean matches(IAtomContainer target) {
+        return findFirst(target) != null;
+    }
+
+    /**
+     * Returns the first substructure mapping of the query on the target.
+     *
+     * @param target target molecule
+     * @return first mapping or null if the query is not a substructure
+     */
+    @TestMethod("testFindFirst")
+    public AtomAtomMapping findFirst(IAtomContainer target) {
+        return findFirst(target, null);
+    }
+
+    /**
+     * Returns the first substructure mapping of the query on the target, the
+     * search gives up once the budget is exhausted.
+     *
+     * @param target target molecule
+     * @param budget search budget or null
+     * @return first mapping or null if none was found
+     */
+    public AtomAtomMapping findFirst(IAtomContainer target, SearchBudget budget) {
+        State state = newState(target, budget);
+        if (state == null) {
+            return null;
+        }
+        List<AtomAtomMapping> mappings = new ArrayList<AtomAtomMapping>(1);
+        state.matchFirst(mappings);
+        return mappings.isEmpty() ? null : mappings.get(0);
+    }
+
+    /**
+     * Returns all the unique substructure mappings of the query on the target.
+     *
+     * @param target target molecule
+     * @return list of mappings, empty if the query is not a substructure
+     */
+    @TestMethod("testFindAll")
+    public List<AtomAtomMapping> findAll(IAtomContainer target) {
+        return findAll(target, null);
+    }
+
+    /**
+     * Returns the unique substructure mappings of the query on the target that
+     * were found before the budget was exhausted.
+     *
+     * @param target target molecule
+     * @param budget search budget or null
+     * @return list of mappings, empty if none was found
+     */
+    public List<AtomAtomMapping> findAll(IAtomContainer target, SearchBudget budget) {
+        List<AtomAtomMapping> mappings = new ArrayList<AtomAtomMapping>();
+        State state = newState(target, budget);
+        if (state != null) {
+            state.matchAll(mappings, new MappingSet());
+        }
+        return mappings;
+    }
+
+    /**
+     * Lazily enumerates the unique substructure mappings of the query on the
+     * target. The search is suspended between two hits, so the first hits
+     * come without enumerating the others and the mappings are not kept.
+     *
+     * <pre>
+     *  for (AtomAtomMapping mapping : query.iterate(target, 10, null)) {
+     *      ...
+     *  }
+     * </pre>
+     *
+     * @param target target molecule
+     * @return mappings, each iterator runs a new search
+     */
+    @TestMethod("testIterate")
+    public Iterable<AtomAtomMapping> iterate(IAtomContainer target) {
+        return iterate(target, 0, null);
+    }
+
+    /**
+     * Lazily enumerates at most limit unique substructure mappings of the
+     * query on the target, stopping when the budget is exhausted.
+     *
+     * @param target target molecule
+     * @param limit maximum number of mappings, 0 or less for no limit
+     * @param budget search budget or null, shared by the iterators
+     * @return mappings, each iterator runs a new search
+     */
+    @TestMethod("testIterate")
+    public Iterable<AtomAtomMapping> iterate(final IAtomContainer target, final int limit, final SearchBudget budget) {
+        return new Iterable<AtomAtomMapping>() {
+            @Override
+            public Iterator<AtomAtomMapping> iterator() {
+                return new MappingIterator(target, limit, budget);
+            }
+        };
+    }
+
+    /*
+     * Returns a fresh search state or null if the target can be rejected
+     * without a search.
+     */
+    State newState(IAtomContainer target, SearchBudget budget) {
+        if (graph.getAtomCount() > target.getAtomCount() || !isSubgraphHeuristicsMatch(target)) {
+            return null;
+        }
+        if (fingerprint != null) {
+            long[] targetFingerprint = FingerprintScreen.getFingerprint(target);
+            if (targetFingerprint != null && !FingerprintScreen.isSubset(fingerprint, targetFingerprint)) {
+                return null;
+            }
+        }
+        State state = new State(this, new CompiledGraph(target), budget);
+        return state.isDead() ? null : state;
+    }
+
+    /**
+     * Same test as
+     * {@link org.openscience.smsd.helper.MoleculeInitializer#testIsSubgraphHeuristics(IAtomContainer, IAtomContainer, boolean)}
+     * with the query side precomputed.
+     *
+     * @param target target molecule
+     * @return false if the query can not be a substructure of the target
+     */
+    @TestMethod("testIsSubgraphHeuristicsMatch")
+    public boolean isSubgraphHeuristicsMatch(IAtomContainer target) {
+        if (shouldMatchBonds) {
+            int single = 0;
+            int dbl = 0;
+            int triple = 0;
+            int aromatic = 0;
+            for (int i = 0; i < target.getBondCount(); i++) {
+                IBond bond = target.getBond(i);
+                if (bond.getFlag(CDKConstants.ISAROMATIC)) {
+                    aromatic++;
+                } else if (bond.getOrder() == IBond.Order.SINGLE) {
+                    single++;
+                } else if (bond.getOrder() == IBond.Order.DOUBLE) {
+                    dbl++;
+                } else if (bond.getOrder() == IBond.Order.TRIPLE) {
+                    triple++;
+                }
+            }
+            if (single < singleBondCount
+                    || aromatic < aromaticBondCount
+                    || dbl < doubleBondCount
+                    || triple < tripleBondCount) {
+                return false;
+            }
+        }
+
+        if (elementCounts.isEmpty()) {
+            return true;
+        }
+        Map<String, Integer> remaining = new HashMap<String, Integer>(elementCounts);
+        for (int i = 0; i < target.getAtomCount(); i++) {
+            String symbol = target.getAtom(i).getSymbol();
+            Integer count = remaining.get(symbol);
+            if (count != null) {
+                if (count > 1) {
+                    remaining.put(symbol, count - 1);
+                } else {
+                    remaining.remove(symbol);
+                    if (remaining.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return remaining.isEmpty();
+    }
+
+    CompiledGraph getGraph() {
+        return graph;
+    }
+
+    AtomMatcher getAtomMatcher(int atom) {
+        return atomMatchers[atom];
+    }
+
+    BondMatcher getBondMatcher(int bond) {
+        return bondMatchers[bond];
+    }
+
+    int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the query molecule
+     */
+    public IAtomContainer getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the shouldMatchBonds
+     */
+    public boolean isMatchBonds() {
+        return shouldMatchBonds;
+    }
+
+    /**
+     * @return the shouldMatchRings
+     */
+    public boolean isMatchRings() {
+        return shouldMatchRings;
+    }
+
+    /**
+     * @return the matchAtomType
+     */
+    public boolean isMatchAtomType() {
+        return matchAtomType;
+    }
+
+    /*
+     * Iterator over the goal states of one search. Only the pairs of the
+     * mappings already returned are kept (to drop the duplicates reached
+     * through a different atom order).
+     */
+    private final class MappingIterator implements Iterator<AtomAtomMapping> {
+
+        private final IAtomContainer target;
+        private final int limit;
+        private final SearchBudget budget;
+        private State state;
+        private MappingSet storedMappings;
+        private AtomAtomMapping next;
+        private int count;
+        private boolean started;
+
+        MappingIterator(IAtomContainer target, int limit, SearchBudget budget) {
+            this.target = target;
+            this.limit = limit;
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (!started) {
+                started = true;
+                state = newState(target, budget);
+                storedMappings = new MappingSet();
+            }
+            if (state == null || (limit > 0 && count >= limit)) {
+                return false;
+            }
+            while (state.nextGoal()) {
+                if (storedMappings.add(state.getSharedMapping())) {
+                    next = state.getMapping();
+                    count++;
+                    return true;
+                }
+            }
+            state = null;
+            return false;
+        }
+
+        @Override
+        public AtomAtomMapping next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AtomAtomMapping mapping = next;
+            next = null;
+            return mapping;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -47,15 +47,13 @@
 package org.openscience.smsd.algorithm.vflib.substructure;
 
 import java.util.List;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.algorithm.matchers.AtomMatcher;
 import org.openscience.smsd.algorithm.matchers.BondMatcher;
-import org.openscience.smsd.algorithm.matchers.DefaultAtomMatcher;
-import org.openscience.smsd.algorithm.matchers.DefaultBondMatcher;
+import org.openscience.smsd.helper.CompiledGraph;
+import org.openscience.smsd.tools.MappingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class finds mapping states between query and target molecules.
@@ -64,27 +62,75 @@ import org.openscience.smsd.algorithm.matchers.DefaultBondMatcher;
  * @cdk.githash
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
  */
-// The State class represents a single state in the isomorphism detection
-// algorithm. Every state uses and modifies the same SharedState object.
+// The State class represents the search state of the isomorphism detection
+// algorithm. A single State is modified in place: addPair() pushes a candidate
+// pair and backTrack() pops it again. All the graph lookups go through the
+// compiled (int[][]) graphs so that the inner loop neither allocates nor
+// dereferences IAtom objects.
 final class State {
 
-    private final boolean shouldMatchBonds;
-    private final boolean shouldMatchRings;
+    private final CompiledQuery query;
     private final IAtomContainer source;
     private final IAtomContainer target;
-    private final boolean matchAtomType;
-
-    // Returns true if the state contains an isomorphism.
-    public boolean isGoal() {
-        return size == source.getAtomCount();
+    private final CompiledGraph sourceGraph;
+    private final CompiledGraph targetGraph;
+    private final int[] order;
+    private final int sourceSize;
+    private final int targetSize;
+    private final SharedState sharedState;
+    private final SearchBudget budget;
+    /*
+     * per depth undo log: the pair added at depth d and the terminal sizes
+     * before it was added
+     */
+    private final int[] addedSource;
+    private final int[] addedTarget;
+    private final int[] savedSourceTerminalSize;
+    private final int[] savedTargetTerminalSize;
+    private boolean[][] matches;
+    private boolean isMatchPossible = false;
+    private int size;
+    private int sourceTerminalSize;
+    private int targetTerminalSize;
+    private int candidateSource;
+    private int candidateTarget;
+    private final int[] lastSourceAt;
+    private final int[] lastTargetAt;
+    private boolean started = false;
+    private boolean atGoal = false;
+    private boolean finished = false;
+
+    State(CompiledQuery query, CompiledGraph targetGraph, SearchBudget budget) {
+        this.query = query;
+        this.budget = budget;
+        this.sourceGraph = query.getGraph();
+        this.targetGraph = targetGraph;
+        this.order = query.getOrder();
+        this.source = sourceGraph.getContainer();
+        this.target = targetGraph.getContainer();
+        this.sourceSize = sourceGraph.getAtomCount();
+        this.targetSize = targetGraph.getAtomCount();
+        this.size = 0;
+        this.sourceTerminalSize = 0;
+        this.targetTerminalSize = 0;
+        this.sharedState = new SharedState(sourceSize, targetSize);
+        this.addedSource = new int[sourceSize + 1];
+        this.addedTarget = new int[sourceSize + 1];
+        this.savedSourceTerminalSize = new int[sourceSize + 1];
+        this.savedTargetTerminalSize = new int[sourceSize + 1];
+        this.lastSourceAt = new int[sourceSize + 1];
+        this.lastTargetAt = new int[sourceSize + 1];
+        this.matches = new boolean[sourceSize][targetSize];
+        this.isMatchPossible = isFeasible();
     }
 
-    public boolean isDead() {
-        return (!isMatchPossible || source.getAtomCount() > target.getAtomCount());
+    // Returns true if the state contains an isomorphism.
+    boolean isGoal() {
+        return size == sourceSize;
     }
 
-    public boolean hasNextCandidate(Pair<Integer, Integer> candidate) {
-        return candidate.getSourceAtom() == -1 ? false : true;
+    boolean isDead() {
+        return (!isMatchPossible || sourceSize > targetSize);
     }
 
     int getSize() {
@@ -99,79 +145,14 @@ final class State {
         return target;
     }
 
-    IAtom sourceAtom(int index) {
-        return source.getAtom(index);
-    }
-
-    IAtom targetAtom(int index) {
-        return target.getAtom(index);
-    }
-    private int size;
-    private int sourceTerminalSize;
-    private int targetTerminalSize;
-    private Pair<Integer, Integer> lastAddition;
-    private SharedState sharedState;
-    private boolean ownSharedState;
-    private boolean[][] matches;
-    private boolean isMatchPossible = false;
-
-    State(IAtomContainer source, IAtomContainer target,
-            boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
-        this.size = 0;
-        this.sourceTerminalSize = 0;
-        this.targetTerminalSize = 0;
-        this.source = source;
-        this.target = target;
-        this.ownSharedState = true;
-        this.matches = new boolean[this.source.getAtomCount()][this.target.getAtomCount()];
-        this.isMatchPossible = isFeasible();
-
-        this.lastAddition = new Pair<Integer, Integer>(-1, -1);
-        this.sharedState = new SharedState(source.getAtomCount(),
-                target.getAtomCount());
-        this.shouldMatchBonds = shouldMatchBonds;
-        this.shouldMatchRings = shouldMatchRings;
-        this.matchAtomType = matchAtomType;
-    }
-
-    State(IQueryAtomContainer source, IAtomContainer target) {
-        this.size = 0;
-        this.sourceTerminalSize = 0;
-        this.targetTerminalSize = 0;
-        this.source = source;
-        this.target = target;
-        this.ownSharedState = true;
-        this.matches = new boolean[this.source.getAtomCount()][this.target.getAtomCount()];
-        this.isMatchPossible = isFeasible();
-
-        this.lastAddition = new Pair<Integer, Integer>(-1, -1);
-        this.sharedState = new SharedState(source.getAtomCount(),
-                target.getAtomCount());
-        this.shouldMatchBonds = true;
-        this.shouldMatchRings = true;
-        this.matchAtomType = true;
-    }
-
-    State(State state) {
-        this.size = state.size;
-        this.sourceTerminalSize = state.sourceTerminalSize;
-        this.targetTerminalSize = state.targetTerminalSize;
-        this.source = state.source;
-        this.target = state.target;
-        this.ownSharedState = false;
-        this.matches = state.matches;
-        this.lastAddition = new Pair<Integer, Integer>(-1, -1);
-        this.sharedState = state.sharedState;
-        this.shouldMatchBonds = state.shouldMatchBonds;
-        this.shouldMatchRings = state.shouldMatchRings;
-        this.matchAtomType = state.matchAtomType;
-    }
-
     private boolean isFeasible() {
-        for (int i = 0; i < source.getAtomCount(); i++) {
+        for (int i = 0; i < sourceSize; i++) {
             boolean flag = false;
-            for (int j = 0; j < target.getAtomCount(); j++) {
-                if (matcher(i, j)) {
+            AtomMatcher atomMatcher = query.getAtomMatcher(i);
+            int sourceDegree = sourceGraph.getDegree(i);
+            for (int j = 0; j < targetSize; j++) {
+                if (sourceDegree <= targetGraph.getDegree(j)
+                        && atomMatcher.matches(target.getAtom(j))) {
                     this.matches[i][j] = true;
                     flag = true;
                 } else {
@@ -187,36 +168,31 @@ final class State {
 //        System.out.println("Compatibility graph " + candidates.size());
     }
 
-    public void dispose() {
-        if (this.ownSharedState) {
-            if (this.sharedState != null) {
-                this.sharedState = null;
-            }
-        }
-    }
-
     // Returns the current isomorphism for the state in an AtomMapping
     // object.
     AtomAtomMapping getMapping() {
         AtomAtomMapping mapping = new AtomAtomMapping(source, target);
 
-        for (int i = 0; i < size; i++) {
-            mapping.put(source.getAtom(i),
-                    target.getAtom(sharedState.sourceMapping[i]));
+        for (int i = 0; i < sourceSize; i++) {
+            if (sharedState.sourceMapping[i] != -1) {
+                mapping.put(i, sharedState.sourceMapping[i]);
+            }
         }
         return mapping;
     }
 
-    // Returns the next candidate pair (sourceAtom, targetAtom) to be added
-    // to the state. The candidate should be checked for feasibility and then added
-    // using the addPair() method.
-    Pair<Integer, Integer> nextCandidate(
-            Pair<Integer, Integer> lastCandidate) {
-        int lastSourceAtom = lastCandidate.getSourceAtom();
-        int lastTargetAtom = lastCandidate.getTargetAtom();
+    // Target atom of each query atom (-1 if unmapped) in the current state,
+    // the array is shared and changes with the state.
+    int[] getSharedMapping() {
+        return sharedState.sourceMapping;
+    }
 
-        int sourceSize = source.getAtomCount();
-        int targetSize = target.getAtomCount();
+    // Finds the next candidate pair (sourceAtom, targetAtom) after the last
+    // candidate to be added to the state. Source atoms are visited in the
+    // matching order of the compiled query, candidateSource holds the position
+    // in that order. The candidate should be checked for feasibility and then
+    // added using the addPair() method.
+    private boolean nextCandidate(int lastSourceAtom, int lastTargetAtom) {
 
         if (lastSourceAtom == -1) {
             lastSourceAtom = 0;
@@ -228,136 +204,136 @@ final class State {
             lastTargetAtom++;
         }
 
-        if (sourceTerminalSize > size && targetTerminalSize > size) {
+        boolean useTerminalSet = sourceTerminalSize > size && targetTerminalSize > size;
+        int[] sourceMapping = sharedState.sourceMapping;
+        int[] targetMapping = sharedState.targetMapping;
+
+        if (useTerminalSet) {
+            int[] sourceTerminalSet = sharedState.sourceTerminalSet;
             while (lastSourceAtom < sourceSize
-                    && (sharedState.sourceMapping[lastSourceAtom] != -1
-                    || sharedState.sourceTerminalSet[lastSourceAtom] == 0)) {
+                    && (sourceMapping[order[lastSourceAtom]] != -1
+                    || sourceTerminalSet[order[lastSourceAtom]] == 0)) {
                 lastSourceAtom++;
                 lastTargetAtom = 0;
             }
         } else {
             while (lastSourceAtom < sourceSize
-                    && sharedState.sourceMapping[lastSourceAtom] != -1) {
+                    && sourceMapping[order[lastSourceAtom]] != -1) {
                 lastSourceAtom++;
                 lastTargetAtom = 0;
             }
         }
 
-        if (sourceTerminalSize > size && targetTerminalSize > size) {
+        if (useTerminalSet) {
+            int[] targetTerminalSet = sharedState.targetTerminalSet;
             while (lastTargetAtom < targetSize
-                    && (sharedState.targetMapping[lastTargetAtom] != -1
-                    || sharedState.targetTerminalSet[lastTargetAtom] == 0)) {
+                    && (targetMapping[lastTargetAtom] != -1
+                    || targetTerminalSet[lastTargetAtom] == 0)) {
                 lastTargetAtom++;
             }
         } else {
             while (lastTargetAtom < targetSize
-                    && sharedState.targetMapping[lastTargetAtom] != -1) {
+                    && targetMapping[lastTargetAtom] != -1) {
                 lastTargetAtom++;
             }
         }
 
         if (lastSourceAtom < sourceSize && lastTargetAtom < targetSize) {
-            return new Pair<Integer, Integer>(lastSourceAtom, lastTargetAtom);
+            candidateSource = lastSourceAtom;
+            candidateTarget = lastTargetAtom;
+            return true;
         }
-
-        return new Pair<Integer, Integer>(-1, -1);
+        candidateSource = -1;
+        candidateTarget = -1;
+        return false;
     }
 
     // Adds the candidate pair (sourceAtom, targetAtom) to the state. The
     // candidate pair must be feasible to add it to the state.
-    void nextState(Pair<Integer, Integer> candidate) {
+    private void addPair(int sourceAtom, int targetAtom) {
+        savedSourceTerminalSize[size] = sourceTerminalSize;
+        savedTargetTerminalSize[size] = targetTerminalSize;
+        addedSource[size] = sourceAtom;
+        addedTarget[size] = targetAtom;
         size++;
-        lastAddition = candidate;
 
-        int sourceAtom = candidate.getSourceAtom();
-        int targetAtom = candidate.getTargetAtom();
+        int[] sourceTerminalSet = sharedState.sourceTerminalSet;
+        int[] targetTerminalSet = sharedState.targetTerminalSet;
 
-        if (sharedState.sourceTerminalSet[sourceAtom] < 1) {
-            sharedState.sourceTerminalSet[sourceAtom] = size;
+        if (sourceTerminalSet[sourceAtom] < 1) {
+            sourceTerminalSet[sourceAtom] = size;
 //                sourceTerminalSize++;
         }
 
-        if (sharedState.targetTerminalSet[targetAtom] < 1) {
-            sharedState.targetTerminalSet[targetAtom] = size;
+        if (targetTerminalSet[targetAtom] < 1) {
+            targetTerminalSet[targetAtom] = size;
 //                targetTerminalSize++;
         }
 
         sharedState.sourceMapping[sourceAtom] = targetAtom;
         sharedState.targetMapping[targetAtom] = sourceAtom;
 
-        List<IAtom> sourceNeighbours
-                = source.getConnectedAtomsList(source.getAtom(sourceAtom));
-        for (IAtom neighbor : sourceNeighbours) {
-            int neighbourIndex = source.getAtomNumber(neighbor);
-            if (sharedState.sourceTerminalSet[neighbourIndex] < 1) {
-                sharedState.sourceTerminalSet[neighbourIndex] = size;
+        int[] sourceNeighbours = sourceGraph.getNeighbours(sourceAtom);
+        for (int k = 0; k < sourceNeighbours.length; k++) {
+            int neighbourIndex = sourceNeighbours[k];
+            if (sourceTerminalSet[neighbourIndex] < 1) {
+                sourceTerminalSet[neighbourIndex] = size;
                 sourceTerminalSize++;
             }
         }
 
-        List<IAtom> targetNeighbours = target.getConnectedAtomsList(target.getAtom(targetAtom));
-        for (IAtom neighbor : targetNeighbours) {
-            int neighbourIndex = target.getAtomNumber(neighbor);
-            if (sharedState.targetTerminalSet[neighbourIndex] < 1) {
-                sharedState.targetTerminalSet[neighbourIndex] = size;
+        int[] targetNeighbours = targetGraph.getNeighbours(targetAtom);
+        for (int k = 0; k < targetNeighbours.length; k++) {
+            int neighbourIndex = targetNeighbours[k];
+            if (targetTerminalSet[neighbourIndex] < 1) {
+                targetTerminalSet[neighbourIndex] = size;
                 targetTerminalSize++;
             }
         }
     }
 
     // Restores the shared state to how it was before adding the last
-    // candidate pair. Assumes addPair() has been called on the state only once.
-    void backTrack() {
-        if (isGoal()) {
-            lastAddition = new Pair<Integer, Integer>(-1, -1);
-            return;
-        }
-        int addedSourceAtom = lastAddition.getSourceAtom();
+    // candidate pair.
+    private void backTrack() {
+        int addedSourceAtom = addedSource[size - 1];
+        int addedTargetAtom = addedTarget[size - 1];
 
-        if (sharedState.sourceTerminalSet[addedSourceAtom] == size) {
-            sharedState.sourceTerminalSet[addedSourceAtom] = 0;
+        int[] sourceTerminalSet = sharedState.sourceTerminalSet;
+        int[] targetTerminalSet = sharedState.targetTerminalSet;
+
+        if (sourceTerminalSet[addedSourceAtom] == size) {
+            sourceTerminalSet[addedSourceAtom] = 0;
         }
 
-        List<IAtom> sourceNeighbours
-                = source.getConnectedAtomsList(source.getAtom(addedSourceAtom));
-        for (IAtom neighbor : sourceNeighbours) {
-            int neighbourIndex = source.getAtomNumber(neighbor);
-            if (sharedState.sourceTerminalSet[neighbourIndex] == size) {
-                sharedState.sourceTerminalSet[neighbourIndex] = 0;
+        int[] sourceNeighbours = sourceGraph.getNeighbours(addedSourceAtom);
+        for (int k = 0; k < sourceNeighbours.length; k++) {
+            int neighbourIndex = sourceNeighbours[k];
+            if (sourceTerminalSet[neighbourIndex] == size) {
+                sourceTerminalSet[neighbourIndex] = 0;
             }
         }
 
-        int addedTargetAtom = lastAddition.getTargetAtom();
-
-        if (sharedState.targetTerminalSet[addedTargetAtom] == size) {
-            sharedState.targetTerminalSet[addedTargetAtom] = 0;
+        if (targetTerminalSet[addedTargetAtom] == size) {
+            targetTerminalSet[addedTargetAtom] = 0;
         }
 
-        List<IAtom> targetNeighbours
-                = target.getConnectedAtomsList(target.getAtom(addedTargetAtom));
-        for (IAtom neighbor : targetNeighbours) {
-            int neighbourIndex = target.getAtomNumber(neighbor);
-            if (sharedState.targetTerminalSet[neighbourIndex] == size) {
-                sharedState.targetTerminalSet[neighbourIndex] = 0;
+        int[] targetNeighbours = targetGraph.getNeighbours(addedTargetAtom);
+        for (int k = 0; k < targetNeighbours.length; k++) {
+            int neighbourIndex = targetNeighbours[k];
+            if (targetTerminalSet[neighbourIndex] == size) {
+                targetTerminalSet[neighbourIndex] = 0;
             }
         }
 
         sharedState.sourceMapping[addedSourceAtom] = -1;
         sharedState.targetMapping[addedTargetAtom] = -1;
         size--;
-        lastAddition = new Pair<Integer, Integer>(-1, -1);
+        sourceTerminalSize = savedSourceTerminalSize[size];
+        targetTerminalSize = savedTargetTerminalSize[size];
     }
 
-    boolean isMatchFeasible(Pair<Integer, Integer> candidate) {
-        int sourceAtom = candidate.getSourceAtom();
-        int targetAtom = candidate.getTargetAtom();
+    private boolean isMatchFeasible(int sourceAtom, int targetAtom) {
 
-//        if (sourceNeighbours.size() > targetNeighbours.size()) {
-//            return false;
-//        }
-//        if (!matchAtoms(source.getAtom(sourceAtom), target.getAtom(targetAtom))) {
-//            return false;
-//        }
         if (!this.matches[sourceAtom][targetAtom]) {
             return false;
         }
@@ -367,29 +343,21 @@ final class State {
         int sourceNewNeighborCount = 0;
         int targetNewNeighborCount = 0;
 
-        List<IAtom> sourceNeighbours
-                = source.getConnectedAtomsList(source.getAtom(sourceAtom));
-
-        for (IAtom neighbour : sourceNeighbours) {
-            int neighbourIndex = source.getAtomNumber(neighbour);
+        int[] sourceNeighbours = sourceGraph.getNeighbours(sourceAtom);
+        int[] sourceBonds = sourceGraph.getNeighbourBonds(sourceAtom);
 
-            IAtom sourceAtomAtom = source.getAtom(sourceAtom);
-            IBond sourceBond = source.getBond(sourceAtomAtom, neighbour);
+        for (int k = 0; k < sourceNeighbours.length; k++) {
+            int neighbourIndex = sourceNeighbours[k];
 
             if (sharedState.sourceMapping[neighbourIndex] != -1) {
                 int targetNeighbor = sharedState.sourceMapping[neighbourIndex];
-                IAtom targetNeighbourAtom = target.getAtom(targetNeighbor);
-                IAtom targetAtomAtom = target.getAtom(targetAtom);
-
-                if (target.getBond(targetAtomAtom, targetNeighbourAtom) == null) {
+                int targetBond = targetGraph.getBondIndex(targetAtom, targetNeighbor);
+                if (targetBond == -1) {
                     return false;
                 }
-
-                IBond targetBond = target.getBond(targetAtomAtom, targetNeighbourAtom);
-                if (!matchBonds(sourceBond, targetBond)) {
+                if (!matchBonds(sourceBonds[k], targetBond)) {
                     return false;
                 }
-
             } else {
                 if (sharedState.sourceTerminalSet[neighbourIndex] > 0) {
                     sourceTerminalNeighborCount++;
@@ -399,19 +367,10 @@ final class State {
             }
         }
 
-        List<IAtom> targetNeighbours
-                = target.getConnectedAtomsList(target.getAtom(targetAtom));
-        for (IAtom neighbour : targetNeighbours) {
-            int neighbourIndex = target.getAtomNumber(neighbour);
-            if (sharedState.targetMapping[neighbourIndex] != -1) {
-//                    int sourceNeighbor = sharedState.targetMapping[neighbourIndex];
-//                    IAtom sourceNeighbourAtom = source.getAtom(sourceNeighbor);
-//                    IAtom sourceAtomAtom = source.getAtom(targetAtom);
-//
-//                    if (source.getBond(sourceAtomAtom, sourceNeighbourAtom) == null) {
-//                        return false;
-//                    }
-            } else {
+        int[] targetNeighbours = targetGraph.getNeighbours(targetAtom);
+        for (int k = 0; k < targetNeighbours.length; k++) {
+            int neighbourIndex = targetNeighbours[k];
+            if (sharedState.targetMapping[neighbourIndex] == -1) {
                 if (sharedState.targetTerminalSet[neighbourIndex] > 0) {
                     targetTerminalNeighborCount++;
                 } else {
@@ -423,101 +382,81 @@ final class State {
                 && (sourceNewNeighborCount <= targetNewNeighborCount);
     }
 
-    boolean matchFirst(State state, List<AtomAtomMapping> mappings) {
-//            System.out.println("Matched " + state.size + " out of " + state.source.getAtomCount());
-        if (state.isGoal()) {
-            mappings.add(state.getMapping());
+    boolean matchFirst(List<AtomAtomMapping> mappings) {
+        if (nextGoal()) {
+            mappings.add(getMapping());
             return true;
         }
-
-        Pair<Integer, Integer> lastCandidate = new Pair<Integer, Integer>(-1, -1);
-
-        boolean found = false;
-        while (!found) {
-            Pair<Integer, Integer> candidate = state.nextCandidate(lastCandidate);
-
-            if (!state.hasNextCandidate(candidate)) {
-                return false;
-            }
-
-            lastCandidate = candidate;
-
-            if (state.isMatchFeasible(candidate)) {
-                State nextState = new State(state);
-                nextState.nextState(candidate);
-                found = matchFirst(nextState, mappings);
-                if (found) {
-                    return true;
-                }
-                nextState.backTrack();
-            }
-        }
-
-        return found;
+        return false;
     }
 
-    /* TO DO: Fix the match all results*/
-    void matchAll(State state, List<AtomAtomMapping> mappings) {
-//        System.out.println("Matched " + state.size + " out of " + state.source.getAtomCount());
-
-        if (state.isGoal()) {
-            AtomAtomMapping map = state.getMapping();
-            if (!hasMap(map, mappings)) {
-                mappings.add(state.getMapping());
-            }
-            return;
-        }
-
-        Pair<Integer, Integer> lastCandidate = new Pair<Integer, Integer>(-1, -1);
-        Pair<Integer, Integer> candidate = state.nextCandidate(lastCandidate);
-
-        while (state.hasNextCandidate(candidate)) {
-            lastCandidate = candidate;
-            if (state.isMatchFeasible(candidate)) {
-                State nextState = new State(state);
-                nextState.nextState(candidate);
-                matchAll(nextState, mappings);
-                nextState.backTrack();
+    void matchAll(List<AtomAtomMapping> mappings, MappingSet storedMappings) {
+        while (nextGoal()) {
+            if (storedMappings.add(getSharedMapping())) {
+                mappings.add(getMapping());
             }
         }
     }
 
-    private boolean matcher(int queryAtom, int targetAtom) {
-        List<IAtom> sourceNeighbours
-                = source.getConnectedAtomsList(source.getAtom(queryAtom));
-        List<IAtom> targetNeighbours
-                = target.getConnectedAtomsList(target.getAtom(targetAtom));
-        if (!matchAtoms(source.getAtom(queryAtom), target.getAtom(targetAtom))) {
+    // Runs the depth first search up to the next goal state and returns true,
+    // or false once the search space (or the budget) is exhausted. The
+    // candidate reached at every depth is kept in lastSourceAt/lastTargetAt,
+    // so the next call resumes the backtracking where this one stopped and
+    // the goal states come in the same order as a recursive search.
+    boolean nextGoal() {
+        if (finished) {
             return false;
         }
-        if (sourceNeighbours.size() > targetNeighbours.size()) {
-            return false;
+        if (!started) {
+            started = true;
+            lastSourceAt[0] = -1;
+            lastTargetAt[0] = -1;
+            if (isGoal()) {
+                atGoal = true;
+                return true;
+            }
+        } else if (atGoal) {
+            atGoal = false;
+            if (size == 0) {
+                finished = true;
+                return false;
+            }
+            backTrack();
         }
-        return true;
-    }
-
-    boolean matchBonds(IBond queryBond, IBond targetBond) {
-        BondMatcher defaultVFBondMatcher = new DefaultBondMatcher(queryBond, shouldMatchBonds);
-        return defaultVFBondMatcher.matches(targetBond);
-    }
-
-    boolean matchAtoms(IAtom sourceAtom, IAtom targetAtom) {
-        AtomMatcher defaultVFAtomMatcher;
-        if (matchAtomType) {
-            defaultVFAtomMatcher
-                    = new DefaultAtomMatcher(sourceAtom, shouldMatchRings);
-        } else {
-            defaultVFAtomMatcher = new DefaultAtomMatcher(sourceAtom, shouldMatchRings);
+        while (true) {
+            int depth = size;
+            if (!nextCandidate(lastSourceAt[depth], lastTargetAt[depth])) {
+                if (depth == 0) {
+                    finished = true;
+                    return false;
+                }
+                backTrack();
+                continue;
+            }
+            if (budget != null && budget.tick()) {
+                finished = true;
+                return false;
+            }
+            lastSourceAt[depth] = candidateSource;
+            lastTargetAt[depth] = candidateTarget;
+            if (isMatchFeasible(order[candidateSource], candidateTarget)) {
+                addPair(order[candidateSource], candidateTarget);
+                if (isGoal()) {
+                    atGoal = true;
+                    return true;
+                }
+                lastSourceAt[size] = -1;
+                lastTargetAt[size] = -1;
+            }
         }
-        return defaultVFAtomMatcher.matches(targetAtom);
     }
 
-    private boolean hasMap(AtomAtomMapping map, List<AtomAtomMapping> mappings) {
-        for (AtomAtomMapping test : mappings) {
-            if (test.equals(map)) {
-                return true;
-            }
+    private boolean matchBonds(int queryBond, int targetBond) {
+        BondMatcher queryBondMatcher = query.getBondMatcher(queryBond);
+        if (queryBondMatcher != null) {
+            return queryBondMatcher.matches(target.getBond(targetBond));
         }
-        return false;
+        return CompiledGraph.bondLabelsMatch(sourceGraph.getBondLabel(queryBond),
+                targetGraph.getBondLabel(targetBond), query.isMatchBonds());
     }
 }
@@ -51,8 +51,8 @@ import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.AtomAtomMapping;
-import org.openscience.smsd.helper.MoleculeInitializer;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * This class finds mapping states between query and target molecules.
@@ -66,9 +66,8 @@ public final class VF2 implements IResults {
     private List<AtomAtomMapping> allAtomMCS = null;
     private final IAtomContainer source;
     private final IAtomContainer target;
-    private final boolean shouldMatchRings;
-    private final boolean shouldMatchBonds;
-    private final boolean matchAtomType;
+    private final CompiledQuery compiledQuery;
+    private final SearchBudget budget;
 
     private boolean isSubgraph = false;
     private final ILoggingTool Logger
@@ -84,13 +83,22 @@ public final class VF2 implements IResults {
      * @param matchAtomType
      */
     public VF2(IAtomContainer source, IAtomContainer target, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType) {
-        this.source = source;
-        this.target = target;
-        this.shouldMatchRings = shouldMatchRings;
-        this.shouldMatchBonds = shouldMatchBonds;
-        this.allAtomMCS = new ArrayList<AtomAtomMapping>();
-        this.isSubgraph = findSubgraph();
-        this.matchAtomType = matchAtomType;
+        this(new CompiledQuery(source, shouldMatchBonds, shouldMatchRings, matchAtomType), target);
+    }
+
+    /**
+     * Constructor for an extended VF Algorithm for the MCS search within a budget
+     *
+     * @param source
+     * @param target
+     * @param shouldMatchBonds
+     * @param shouldMatchRings
+     * @param matchAtomType
+     * @param budget search budget or null
+     */
+    public VF2(IAtomContainer source, IAtomContainer target, boolean shouldMatchBonds, boolean shouldMatchRings, boolean matchAtomType,
+            SearchBudget budget) {
+        this(new CompiledQuery(source, shouldMatchBonds, shouldMatchRings, matchAtomType), target, budget);
     }
 
     /**
@@ -100,12 +108,44 @@ public final class VF2 implements IResults {
      * @param target
      */
     public VF2(IQueryAtomContainer source, IAtomContainer target) {
-        this.source = source;
+        this(new CompiledQuery(source), target);
+    }
+
+    /**
+     * Constructor for an extended VF Algorithm for the MCS search within a budget
+     *
+     * @param source
+     * @param target
+     * @param budget search budget or null
+     */
+    public VF2(IQueryAtomContainer source, IAtomContainer target, SearchBudget budget) {
+        this(new CompiledQuery(source), target, budget);
+    }
+
+    /**
+     * Constructor for a precompiled query, the query side of the search is not
+     * recomputed.
+     *
+     * @param compiledQuery
+     * @param target
+     */
+    public VF2(CompiledQuery compiledQuery, IAtomContainer target) {
+        this(compiledQuery, target, null);
+    }
+
+    /**
+     * Constructor for a precompiled query searched within a budget.
+     *
+     * @param compiledQuery
+     * @param target
+     * @param budget search budget or null
+     */
+    public VF2(CompiledQuery compiledQuery, IAtomContainer target, SearchBudget budget) {
+        this.compiledQuery = compiledQuery;
+        this.budget = budget;
+        this.source = compiledQuery.getQuery();
         this.target = target;
-        this.shouldMatchRings = true;
-        this.shouldMatchBonds = true;
-        this.matchAtomType = true;
-        allAtomMCS = new ArrayList<AtomAtomMapping>();
+        this.allAtomMCS = new ArrayList<AtomAtomMapping>();
         this.isSubgraph = findSubgraph();
     }
 
@@ -114,25 +154,11 @@ public final class VF2 implements IResults {
      * This can be used for finding both graph-graph isomorphisms and graph-subgraph isomorphisms. In the latter case
      * graph 'a' is the subgraph, implying a.size() < b.size(). In the case that no isomorphism is found an empty
      * mapping is returned.
-     *
-     *
-     *
-     *
-     *
-     *
-     *
-     *
-     * @param shouldMatchBonds
-     * @param shouldMatchRings
-     * @return
      */
-    private synchronized void isomorphism() {
-
-        if (!isDead(source, target) && MoleculeInitializer.testIsSubgraphHeuristics(source, target, shouldMatchBonds)) {
-            State state = new State(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType);
-            if (!state.isDead()) {
-                state.matchFirst(state, allAtomMCS);
-            }
+    private void isomorphism() {
+        AtomAtomMapping mapping = compiledQuery.findFirst(target, budget);
+        if (mapping != null) {
+            allAtomMCS.add(mapping);
         }
     }
 
@@ -144,19 +170,8 @@ public final class VF2 implements IResults {
      *
      *
      */
-    private synchronized void isomorphisms() {
-
-        if (!isDead(source, target) && MoleculeInitializer.testIsSubgraphHeuristics(source, target, shouldMatchBonds)) {
-            State state = new State(source, target, shouldMatchBonds, shouldMatchRings, matchAtomType);
-            if (!state.isDead()) {
-                state.matchAll(state, allAtomMCS);
-            }
-        }
-    }
-
-    // Returns true substructure is bigger than the target
-    private synchronized boolean isDead(IAtomContainer a, IAtomContainer b) {
-        return a.getAtomCount() > b.getAtomCount();
+    private void isomorphisms() {
+        allAtomMCS.addAll(compiledQuery.findAll(target, budget));
     }
 
     private boolean findSubgraph() {
@@ -188,4 +203,11 @@ public final class VF2 implements IResults {
     public boolean isSubgraph() {
         return isSubgraph;
     }
+
+    /**
+     * @return true if the search budget ran out before the search completed
+     */
+    public boolean isTimeout() {
+        return budget != null && budget.isExhausted();
+    }
 }
@@ -33,7 +33,9 @@ import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.helper.CompiledGraph;
 
 /**
  *
@@ -60,13 +62,13 @@ public class ChemicalFilters extends BaseFilter {
             IAtomContainer sourceMol,
             IAtomContainer targetMol) {
         super(sourceMol, targetMol);
-        this.allAtomMCS = Collections.synchronizedList(new ArrayList<AtomAtomMapping>());
+        this.allAtomMCS = new ArrayList<AtomAtomMapping>();
         this.stereoFilter = new StereoFilter(this);
         this.fragmentFilter = new FragmentFilter(this);
         this.energyFilter = new EnergyFilter(this);
     }
 
-    private synchronized void clear(
+    private void clear(
             Map<Integer, AtomAtomMapping> sortedAllAtomMCS,
             Map<Integer, Double> stereoScoreMap,
             Map<Integer, Integer> fragmentScoreMap,
@@ -83,11 +85,11 @@ public class ChemicalFilters extends BaseFilter {
      * @throws CDKException
      */
     @TestMethod("testSortResultsByEnergies")
-    public synchronized void sortResultsByEnergies() throws CDKException {
-        Map<Integer, AtomAtomMapping> allEnergyAtomMCS = Collections.synchronizedSortedMap(new TreeMap<Integer, AtomAtomMapping>());
-        Map<Integer, Double> stereoScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Double>());
-        Map<Integer, Integer> fragmentScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Integer>());
-        Map<Integer, Double> energySelectionMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Double>());
+    public void sortResultsByEnergies() throws CDKException {
+        Map<Integer, AtomAtomMapping> allEnergyAtomMCS = new TreeMap<Integer, AtomAtomMapping>();
+        Map<Integer, Double> stereoScoreMap = new TreeMap<Integer, Double>();
+        Map<Integer, Integer> fragmentScoreMap = new TreeMap<Integer, Integer>();
+        Map<Integer, Double> energySelectionMap = new TreeMap<Integer, Double>();
 
         initializeMaps(allEnergyAtomMCS, stereoScoreMap, fragmentScoreMap, energySelectionMap);
         double lowestEnergyScore = energyFilter.sortResults(allEnergyAtomMCS, energySelectionMap);
@@ -114,11 +116,11 @@ public class ChemicalFilters extends BaseFilter {
      * Sort solution by ascending order of the fragment count.
      */
     @TestMethod("testSortResultsByFragments")
-    public synchronized void sortResultsByFragments() {
-        Map<Integer, AtomAtomMapping> allFragmentAtomMCS = Collections.synchronizedSortedMap(new TreeMap<Integer, AtomAtomMapping>());
-        Map<Integer, Double> stereoScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Double>());
-        Map<Integer, Double> energyScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Double>());
-        Map<Integer, Integer> fragmentScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Integer>());
+    public void sortResultsByFragments() {
+        Map<Integer, AtomAtomMapping> allFragmentAtomMCS = new TreeMap<Integer, AtomAtomMapping>();
+        Map<Integer, Double> stereoScoreMap = new TreeMap<Integer, Double>();
+        Map<Integer, Double> energyScoreMap = new TreeMap<Integer, Double>();
+        Map<Integer, Integer> fragmentScoreMap = new TreeMap<Integer, Integer>();
 
         initializeMaps(
                 allFragmentAtomMCS,
@@ -161,11 +163,11 @@ public class ChemicalFilters extends BaseFilter {
      * @throws CDKException
      */
     @TestMethod("testSortResultsByStereoAndBondMatch")
-    public synchronized void sortResultsByStereoAndBondMatch() throws CDKException {
-        Map<Integer, AtomAtomMapping> allStereoAtomMCS = Collections.synchronizedMap(new HashMap<Integer, AtomAtomMapping>());
-        Map<Integer, Integer> fragmentScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Integer>());
-        Map<Integer, Double> energyScoreMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Double>());
-        Map<Integer, Double> stereoScoreMap = Collections.synchronizedMap(new HashMap<Integer, Double>());
+    public void sortResultsByStereoAndBondMatch() throws CDKException {
+        Map<Integer, AtomAtomMapping> allStereoAtomMCS = new HashMap<Integer, AtomAtomMapping>();
+        Map<Integer, Integer> fragmentScoreMap = new TreeMap<Integer, Integer>();
+        Map<Integer, Double> energyScoreMap = new TreeMap<Integer, Double>();
+        Map<Integer, Double> stereoScoreMap = new HashMap<Integer, Double>();
 
         initializeMaps(
                 allStereoAtomMCS,
@@ -222,7 +224,7 @@ public class ChemicalFilters extends BaseFilter {
      * @return sorted bond breaking energy
      */
     @TestMethod("testGetSortedEnergy")
-    public synchronized List<Double> getSortedEnergy() {
+    public List<Double> getSortedEnergy() {
         return Collections.unmodifiableList(energyFilter.getScores());
     }
 
@@ -232,7 +234,7 @@ public class ChemicalFilters extends BaseFilter {
      * @return sorted fragment count
      */
     @TestMethod("testGetSortedFragment")
-    public synchronized List<Integer> getSortedFragment() {
+    public List<Integer> getSortedFragment() {
         return Collections.unmodifiableList(fragmentFilter.getScores());
     }
 
@@ -242,11 +244,11 @@ public class ChemicalFilters extends BaseFilter {
      * @return sorted stereo matches
      */
     @TestMethod("testGetStereoMatches")
-    public synchronized List<Double> getStereoMatches() {
+    public List<Double> getStereoMatches() {
         return Collections.unmodifiableList(stereoFilter.getScores());
     }
 
-    private synchronized void initializeMaps(
+    private void initializeMaps(
             Map<Integer, AtomAtomMapping> sortedAllAtomMCS,
             Map<Integer, Double> stereoScoreMap,
             Map<Integer, Integer> fragmentScoreMap,
@@ -267,7 +269,7 @@ public class ChemicalFilters extends BaseFilter {
 
     }
 
-    private synchronized void addSolution(int counter, int key,
+    private void addSolution(int counter, int key,
             Map<Integer, AtomAtomMapping> allFragmentAtomMCS,
             Map<Integer, Double> stereoScoreMap,
             Map<Integer, Double> energyScoreMap,
@@ -280,7 +282,7 @@ public class ChemicalFilters extends BaseFilter {
 
     }
 
-    private synchronized void clear() {
+    private void clear() {
         allAtomMCS.clear();
         energyFilter.clearScores();
         fragmentFilter.clearScores();
@@ -290,7 +292,35 @@ public class ChemicalFilters extends BaseFilter {
     /**
      * @return the mcsList
      */
-    public synchronized List<AtomAtomMapping> getMCSList() {
-        return Collections.synchronizedList(allAtomMCS);
+    public List<AtomAtomMapping> getMCSList() {
+        return allAtomMCS;
+    }
+
+    /**
+     * Returns the bonds of the query whose atoms are both mapped, paired
+     * with the bond between the mapped target atoms (if any). The graphs
+     * must be compiled from the query and target of the mapping.
+     *
+     * @param queryGraph compiled query of the mapping
+     * @param targetGraph compiled target of the mapping
+     * @param mapping atom-atom mapping
+     * @return bond map between the query and the target
+     */
+    protected static Map<IBond, IBond> makeBondMapOfAtomMap(CompiledGraph queryGraph, CompiledGraph targetGraph,
+            AtomAtomMapping mapping) {
+        Map<IBond, IBond> bondbondMappingMap = new HashMap<IBond, IBond>();
+        for (int b = 0; b < queryGraph.getBondCount(); b++) {
+            int i = mapping.getMappedTargetIndex(queryGraph.getBondBegin(b));
+            int j = mapping.getMappedTargetIndex(queryGraph.getBondEnd(b));
+            if (i == -1 || j == -1) {
+                continue;
+            }
+            int targetBond = targetGraph.getBondIndex(i, j);
+            if (targetBond != -1) {
+                bondbondMappingMap.put(queryGraph.getContainer().getBond(b),
+                        targetGraph.getContainer().getBond(targetBond));
+            }
+        }
+        return bondbondMappingMap;
     }
 }
@@ -52,7 +52,7 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
     }
 
     @Override
-    public synchronized Integer sortResults(
+    public Integer sortResults(
             Map<Integer, AtomAtomMapping> allFragmentAtomMCS,
             Map<Integer, Integer> fragmentScoreMap) throws CDKException {
 
@@ -70,22 +70,22 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
     }
 
     @Override
-    public synchronized List<Integer> getScores() {
+    public List<Integer> getScores() {
         return Collections.unmodifiableList(fragmentSize);
     }
 
     @Override
-    public synchronized void clearScores() {
+    public void clearScores() {
         fragmentSize.clear();
     }
 
     @Override
-    public synchronized void addScore(int counter, Integer value) {
+    public void addScore(int counter, Integer value) {
         fragmentSize.add(counter, value);
     }
 
     @Override
-    public synchronized void fillMap(Map<Integer, Integer> fragmentScoreMap) {
+    public void fillMap(Map<Integer, Integer> fragmentScoreMap) {
         int Index = 0;
         for (Integer score : fragmentSize) {
             fragmentScoreMap.put(Index, score);
@@ -93,14 +93,14 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
         }
     }
 
-    private synchronized int getMappedMoleculeFragmentSize(AtomAtomMapping mcsAtomSolution) {
+    private int getMappedMoleculeFragmentSize(AtomAtomMapping mcsAtomSolution) {
 
         IAtomContainer Educt = DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getQuery());
         IAtomContainer product = DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getTarget());
 
 
         if (mcsAtomSolution != null) {
-            for (Map.Entry<IAtom, IAtom> map : mcsAtomSolution.getMappingsByAtoms().entrySet()) {
+            for (Map.Entry<IAtom, IAtom> map : mcsAtomSolution.getMappingsByAtomsView().entrySet()) {
                 IAtom atomE = map.getKey();
                 IAtom atomP = map.getValue();
                 Educt.removeAtomAndConnectedElectronContainers(atomE);
@@ -110,7 +110,7 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
         return getFragmentCount(Educt) + getFragmentCount(product);
     }
 
-    private synchronized int getFragmentCount(IAtomContainer molecule) {
+    private int getFragmentCount(IAtomContainer molecule) {
         boolean fragmentFlag = true;
         IAtomContainerSet fragmentMolSet = DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainerSet.class);
         int countFrag = 0;
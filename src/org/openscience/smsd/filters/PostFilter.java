@@ -20,12 +20,12 @@
 package org.openscience.smsd.filters;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.smsd.tools.MappingSet;
 
 /**
  * Class that cleans redundant mappings from the solution set.
@@ -52,7 +52,7 @@ public class PostFilter {
      * @return Filtered non-redundant mappings
      */
     @TestMethod("testFilter")
-    public synchronized static List<Map<Integer, Integer>> filter(List<List<Integer>> mappings) {
+    public static List<Map<Integer, Integer>> filter(List<List<Integer>> mappings) {
         List<Map<Integer, Integer>> final_MAPPINGS = new ArrayList<Map<Integer, Integer>>();
         if (mappings != null && !mappings.isEmpty()) {
             List<Map<Integer, Integer>> removeRedundantMapping = removeRedundantMapping(mappings);
@@ -61,33 +61,25 @@ public class PostFilter {
         return final_MAPPINGS;
     }
 
-    private synchronized static boolean hasMap(Map<Integer, Integer> newMap, List<Map<Integer, Integer>> nonRedundantMapping) {
-        for (Map<Integer, Integer> storedMap : nonRedundantMapping) {
-            if (storedMap.equals(newMap)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      *
      * @param mapping_org
      * @return
      */
-    private synchronized static List<Map<Integer, Integer>> removeRedundantMapping(List<List<Integer>> mapping_org) {
-        List<Map<Integer, Integer>> nonRedundantMapping = Collections.synchronizedList(new ArrayList<Map<Integer, Integer>>());
+    private static List<Map<Integer, Integer>> removeRedundantMapping(List<List<Integer>> mapping_org) {
+        List<Map<Integer, Integer>> nonRedundantMapping = new ArrayList<Map<Integer, Integer>>();
+        MappingSet storedMappings = new MappingSet();
         for (List<Integer> M : mapping_org) {
             Map<Integer, Integer> newMap = getMappingMapFromList(M);
-            if (!hasMap(newMap, nonRedundantMapping)) {
+            if (storedMappings.add(newMap)) {
                 nonRedundantMapping.add(newMap);
             }
         }
         return nonRedundantMapping;
     }
 
-    private synchronized static Map<Integer, Integer> getMappingMapFromList(List<Integer> list) {
-        Map<Integer, Integer> newMap = Collections.synchronizedSortedMap(new TreeMap<Integer, Integer>());
+    private static Map<Integer, Integer> getMappingMapFromList(List<Integer> list) {
+        Map<Integer, Integer> newMap = new TreeMap<Integer, Integer>();
         for (int index = 0; index < list.size(); index += 2) {
             newMap.put(list.get(index), list.get(index + 1));
         }
@@ -39,7 +39,7 @@ import org.openscience.cdk.annotations.TestMethod;
 public class Sotter {
     
     @TestMethod("testSortMapByValueInAscendingOrder")
-    public synchronized static Map<Integer, Double> sortMapByValueInAscendingOrder(Map<Integer, Double> map) {
+    public static Map<Integer, Double> sortMapByValueInAscendingOrder(Map<Integer, Double> map) {
         List<Map.Entry<Integer, Double>> list = new LinkedList<Map.Entry<Integer, Double>>(map.entrySet());
         // Sort the list using an annonymous inner class implementing Comparator for the compare method
         Collections.sort(list, new Comparator<Map.Entry<Integer, Double>>() {
@@ -58,7 +58,7 @@ public class Sotter {
     }
 
     @TestMethod("testSortMapByValueInDescendingOrder")
-    public synchronized static Map<Integer, Double> sortMapByValueInDescendingOrder(Map<Integer, Double> map) {
+    public static Map<Integer, Double> sortMapByValueInDescendingOrder(Map<Integer, Double> map) {
         List<Map.Entry<Integer, Double>> list = new LinkedList<Map.Entry<Integer, Double>>(map.entrySet());
         // Sort the list using an annonymous inner class implementing Comparator for the compare method
         Collections.sort(list, new Comparator<Map.Entry<Integer, Double>>() {
@@ -25,7 +25,6 @@ package org.openscience.smsd.filters;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -42,6 +41,7 @@ import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryBond;
 import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.helper.CompiledGraph;
 import org.openscience.smsd.ring.HanserRingFinder;
 
 /**
@@ -57,11 +57,11 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
 
     StereoFilter(ChemicalFilters chemfilter) {
         this.chemfilter = chemfilter;
-        stereoScore = Collections.synchronizedList(new ArrayList<Double>());
+        stereoScore = new ArrayList<Double>();
     }
 
     @Override
-    public synchronized Double sortResults(
+    public Double sortResults(
             Map<Integer, AtomAtomMapping> allStereoAtomMCS,
             Map<Integer, Double> stereoScoreMap) throws CDKException {
 
@@ -75,22 +75,22 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
     }
 
     @Override
-    public synchronized List<Double> getScores() {
+    public List<Double> getScores() {
         return Collections.unmodifiableList(stereoScore);
     }
 
     @Override
-    public synchronized void clearScores() {
+    public void clearScores() {
         stereoScore.clear();
     }
 
     @Override
-    public synchronized void addScore(int counter, Double score) {
+    public void addScore(int counter, Double score) {
         stereoScore.add(counter, score);
     }
 
     @Override
-    public synchronized void fillMap(Map<Integer, Double> stereoScoreMap) {
+    public void fillMap(Map<Integer, Double> stereoScoreMap) {
         int Index = 0;
         for (Double score : stereoScore) {
             stereoScoreMap.put(Index, score);
@@ -98,25 +98,27 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         }
     }
 
-    private synchronized boolean getStereoBondChargeMatch(Map<Integer, Double> stereoScoreMap,
+    private boolean getStereoBondChargeMatch(Map<Integer, Double> stereoScoreMap,
             Map<Integer, AtomAtomMapping> allStereoAtomMCS) throws CDKException {
 
         boolean stereoMatchFlag = false;
+        CompiledGraph queryGraph = new CompiledGraph(chemfilter.getQuery());
+        CompiledGraph targetGraph = new CompiledGraph(chemfilter.getTarget());
         for (Integer Key : allStereoAtomMCS.keySet()) {
             try {
                 double score = 0.0;
                 //            System.out.println("\nStart score " + score);
                 AtomAtomMapping atomMapMCS = allStereoAtomMCS.get(Key);
                 double atomScore = getAtomScore(score, atomMapMCS, chemfilter.getQuery(), chemfilter.getTarget());
-                Map<IBond, IBond> bondMaps = makeBondMapsOfAtomMaps(chemfilter.getQuery(), chemfilter.getTarget(), atomMapMCS);
+                Map<IBond, IBond> bondMaps = ChemicalFilters.makeBondMapOfAtomMap(queryGraph, targetGraph, atomMapMCS);
                 double ringScore = 0.0;
                 if (chemfilter.getQuery().getBondCount() > 1
                         && chemfilter.getTarget().getBondCount() > 1
                         && !(chemfilter.getQuery() instanceof IQueryAtomContainer
                         || chemfilter.getTarget() instanceof IQueryAtomContainer)) {
-                    List<IAtomContainer> subgraphRList = getMappedFragment(chemfilter.getQuery(), atomMapMCS.getMappingsByAtoms().keySet());
+                    List<IAtomContainer> subgraphRList = getMappedFragment(chemfilter.getQuery(), atomMapMCS.getMappingsByAtomsView().keySet());
                     double rscore = getRingMatchScore(subgraphRList);
-                    List<IAtomContainer> subgraphPList = getMappedFragment(chemfilter.getTarget(), atomMapMCS.getMappingsByAtoms().values());
+                    List<IAtomContainer> subgraphPList = getMappedFragment(chemfilter.getTarget(), atomMapMCS.getMappingsByAtomsView().values());
                     double pscore = getRingMatchScore(subgraphPList);
                     ringScore = rscore + pscore;
                 }
@@ -134,30 +136,10 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return stereoMatchFlag;
     }
 
-    private synchronized Map<IBond, IBond> makeBondMapsOfAtomMaps(IAtomContainer ac1, IAtomContainer ac2,
-            AtomAtomMapping mappings) {
-
-        Map<IBond, IBond> bondbondMappingMap = new HashMap<IBond, IBond>();
-
-        for (Map.Entry<IAtom, IAtom> map1 : mappings.getMappingsByAtoms().entrySet()) {
-            for (Map.Entry<IAtom, IAtom> map2 : mappings.getMappingsByAtoms().entrySet()) {
-                if (map1.getKey() != map2.getKey()) {
-                    IBond bond1 = ac1.getBond(map1.getKey(), map2.getKey());
-                    IBond bond2 = ac2.getBond(map1.getValue(), map2.getValue());
-                    if (bond1 != null && bond2 != null && !bondbondMappingMap.containsKey(bond1)) {
-                        bondbondMappingMap.put(bond1, bond2);
-                    }
-                }
-            }
-        }
-//        System.out.println("Mol Map size:" + bondbondMappingMap.size());
-        return bondbondMappingMap;
-    }
-
-    private synchronized double getAtomScore(double scoreGlobal, AtomAtomMapping atomMapMCS, IAtomContainer reactant,
+    private double getAtomScore(double scoreGlobal, AtomAtomMapping atomMapMCS, IAtomContainer reactant,
             IAtomContainer product) {
         double score = scoreGlobal;
-        for (Map.Entry<IAtom, IAtom> mappings : atomMapMCS.getMappingsByAtoms().entrySet()) {
+        for (Map.Entry<IAtom, IAtom> mappings : atomMapMCS.getMappingsByAtomsView().entrySet()) {
             IAtom rAtom = mappings.getKey();
             IAtom pAtom = mappings.getValue();
 
@@ -195,7 +177,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return score;
     }
 
-    private synchronized double getBondScore(double scoreGlobal, Map<IBond, IBond> bondMaps) {
+    private double getBondScore(double scoreGlobal, Map<IBond, IBond> bondMaps) {
         double score = scoreGlobal;
         for (Map.Entry<IBond, IBond> matchedBonds : bondMaps.entrySet()) {
 
@@ -207,7 +189,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return score;
     }
 
-    private synchronized double getBondTypeMatches(IBond queryBond, IBond targetBond) {
+    private double getBondTypeMatches(IBond queryBond, IBond targetBond) {
         double score = 0;
 
         if (targetBond instanceof IQueryBond && queryBond instanceof IBond) {
@@ -275,7 +257,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
      * @param bond
      * @return
      */
-    public synchronized static int convertBondStereo(IBond bond) {
+    public static int convertBondStereo(IBond bond) {
         int value;
         switch (bond.getStereo()) {
             case UP:
@@ -311,7 +293,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
      * @param bond
      * @return
      */
-    public synchronized static int convertBondOrder(IBond bond) {
+    public static int convertBondOrder(IBond bond) {
         int value;
         switch (bond.getOrder()) {
             case QUADRUPLE:
@@ -332,7 +314,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return value;
     }
 
-    private synchronized double getRingMatchScore(List<IAtomContainer> list) throws CloneNotSupportedException {
+    private double getRingMatchScore(List<IAtomContainer> list) throws CloneNotSupportedException {
         double lScore = 0;
         IAtomContainer listMap = list.get(0).clone();
         IAtomContainer subGraph = list.get(1).clone();
@@ -349,7 +331,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return lScore;
     }
 
-    private synchronized double getRingMatch(IRingSet rings, IAtomContainer atoms) {
+    private double getRingMatch(IRingSet rings, IAtomContainer atoms) {
         double score = 0.0;
         for (IAtom a : atoms.atoms()) {
             for (IAtomContainer ring : rings.atomContainers()) {
@@ -363,7 +345,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return score;
     }
 
-    private synchronized List<IAtomContainer> getMappedFragment(IAtomContainer molecule, Collection<IAtom> atomsMCS) throws CloneNotSupportedException {
+    private List<IAtomContainer> getMappedFragment(IAtomContainer molecule, Collection<IAtom> atomsMCS) throws CloneNotSupportedException {
         IAtomContainer subgraphContainer;
 
         if (molecule instanceof IAtomContainer) {
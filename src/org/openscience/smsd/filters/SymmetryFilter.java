@@ -0,0 +1,253 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.filters;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.helper.AutomorphismGroup;
+import org.openscience.smsd.tools.MappingSet;
+
+/**
+ * Removes the mappings which only differ by a symmetry of the query or of the
+ * target. Two mappings m and m' are equivalent if m' = b.m.a<sup>-1</sup> for
+ * an automorphism a of the query and b of the target (see
+ * {@link AutomorphismGroup}); the filter keeps the first mapping of each
+ * class and the others can be generated again with
+ * {@link #expand(AtomAtomMapping)}.
+ *
+ * Equivalent mappings have the same fragment and bond energy scores, the
+ * stereo score (3D) is only computed for the representatives.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module smsd
+ */
+@TestClass("org.openscience.smsd.filters.SymmetryFilterTest")
+public final class SymmetryFilter {
+
+    private static final long MAX_GROUP_PRODUCT = 65536;
+    private final IAtomContainer query;
+    private final IAtomContainer target;
+    private final AutomorphismGroup queryGroup;
+    private final AutomorphismGroup targetGroup;
+    private final List<int[]> queryPermutations;
+    private final List<int[]> targetPermutations;
+
+    /**
+     * Enumerates the automorphisms of the query and target.
+     *
+     * @param query query molecule
+     * @param target target molecule
+     * @param matchRings ring match flag
+     * @param matchAtomType atom type match flag
+     */
+    public SymmetryFilter(IAtomContainer query, IAtomContainer target, boolean matchRings, boolean matchAtomType) {
+        this(query, target, new AutomorphismGroup(query, matchRings, matchAtomType),
+                query == target ? null : new AutomorphismGroup(target, matchRings, matchAtomType));
+    }
+
+    private SymmetryFilter(IAtomContainer query, IAtomContainer target,
+            AutomorphismGroup queryGroup, AutomorphismGroup targetGroup) {
+        this.query = query;
+        this.target = target;
+        this.queryGroup = queryGroup;
+        this.targetGroup = targetGroup == null ? queryGroup : targetGroup;
+        this.queryPermutations = new ArrayList<int[]>(this.queryGroup.getPermutations());
+        this.targetPermutations = new ArrayList<int[]>(this.targetGroup.getPermutations());
+        /*
+         * canonicalization costs |Aut(query)| x |Aut(target)| per mapping, above
+         * the cap only the larger group is used (fewer mappings are merged)
+         */
+        if ((long) queryPermutations.size() * targetPermutations.size() > MAX_GROUP_PRODUCT) {
+            if (queryPermutations.size() < targetPermutations.size()) {
+                keepIdentity(queryPermutations);
+            } else {
+                keepIdentity(targetPermutations);
+            }
+        }
+    }
+
+    private static void keepIdentity(List<int[]> permutations) {
+        int[] identity = new int[permutations.get(0).length];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        permutations.clear();
+        permutations.add(identity);
+    }
+
+    /**
+     * Returns the first mapping of each symmetry class, in the order of the
+     * input list.
+     *
+     * @param mappings mappings between the query and target
+     * @return one mapping per symmetry class
+     */
+    @TestMethod("testFilterBenzene")
+    public List<AtomAtomMapping> filter(List<AtomAtomMapping> mappings) {
+        List<AtomAtomMapping> representatives = new ArrayList<AtomAtomMapping>();
+        if (queryPermutations.size() == 1 && targetPermutations.size() == 1) {
+            representatives.addAll(mappings);
+            return representatives;
+        }
+        MappingSet classes = new MappingSet();
+        int[] core = new int[query.getAtomCount()];
+        int[] image = new int[core.length];
+        int[] canonical = new int[core.length];
+        for (AtomAtomMapping mapping : mappings) {
+            for (int q = 0; q < core.length; q++) {
+                core[q] = mapping.getMappedTargetIndex(q);
+            }
+            canonicalize(core, image, canonical);
+            if (classes.add(canonical)) {
+                representatives.add(mapping);
+            }
+        }
+        return representatives;
+    }
+
+    /*
+     * smallest image (lexicographic order of the target index per query atom)
+     * of the mapping under the query and target automorphisms
+     */
+    private void canonicalize(int[] core, int[] image, int[] canonical) {
+        boolean first = true;
+        for (int[] a : queryPermutations) {
+            for (int[] b : targetPermutations) {
+                apply(core, a, b, image);
+                if (first || isSmaller(image, canonical)) {
+                    System.arraycopy(image, 0, canonical, 0, image.length);
+                    first = false;
+                }
+            }
+        }
+    }
+
+    private static void apply(int[] core, int[] a, int[] b, int[] image) {
+        for (int q = 0; q < core.length; q++) {
+            image[a[q]] = core[q] == -1 ? -1 : b[core[q]];
+        }
+    }
+
+    private static boolean isSmaller(int[] x, int[] y) {
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] != y[i]) {
+                return x[i] < y[i];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lazily generates the distinct mappings equivalent to the given one,
+     * starting with the mapping itself.
+     *
+     * @param mapping mapping between the query and target
+     * @return equivalent mappings
+     */
+    @TestMethod("testExpand")
+    public Iterable<AtomAtomMapping> expand(final AtomAtomMapping mapping) {
+        return new Iterable<AtomAtomMapping>() {
+            @Override
+            public Iterator<AtomAtomMapping> iterator() {
+                return new Expansion(mapping);
+            }
+        };
+    }
+
+    /**
+     * @return the automorphism group of the query
+     */
+    public AutomorphismGroup getQueryGroup() {
+        return queryGroup;
+    }
+
+    /**
+     * @return the automorphism group of the target
+     */
+    public AutomorphismGroup getTargetGroup() {
+        return targetGroup;
+    }
+
+    private final class Expansion implements Iterator<AtomAtomMapping> {
+
+        private final int[] core;
+        private final int[] image;
+        private final MappingSet seen;
+        private int queryIndex;
+        private int targetIndex;
+        private AtomAtomMapping next;
+
+        Expansion(AtomAtomMapping mapping) {
+            this.core = new int[query.getAtomCount()];
+            for (int q = 0; q < core.length; q++) {
+                core[q] = mapping.getMappedTargetIndex(q);
+            }
+            this.image = new int[core.length];
+            this.seen = new MappingSet();
+            seen.add(core);
+            this.next = mapping;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && queryIndex < queryPermutations.size()) {
+                apply(core, queryPermutations.get(queryIndex), targetPermutations.get(targetIndex), image);
+                if (++targetIndex == targetPermutations.size()) {
+                    targetIndex = 0;
+                    queryIndex++;
+                }
+                if (seen.add(image)) {
+                    AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+                    for (int q = 0; q < image.length; q++) {
+                        if (image[q] != -1) {
+                            mapping.put(q, image[q]);
+                        }
+                    }
+                    next = mapping;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public AtomAtomMapping next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AtomAtomMapping mapping = next;
+            next = null;
+            return mapping;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IDoubleBondStereochemistry;
+import org.openscience.cdk.interfaces.IStereoElement;
+import org.openscience.cdk.interfaces.ITetrahedralChirality;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * Automorphism group of a molecule and the orbits of its atoms. The
+ * automorphisms are the atom permutations which keep the element, charge,
+ * hydrogen count and aromaticity of every atom and the order, aromaticity and
+ * ring flag of every bond, so two mappings which differ by an automorphism
+ * have the same bond changes and fragments. The Kekule order of aromatic
+ * bonds is not kept (see {@link CompiledGraph#sameBondLabels(int, int)}),
+ * otherwise a Kekule benzene would only have half of its symmetry. The bond
+ * energies are the same for two such mappings unless the mapping cuts an
+ * aromatic ring, then the energy filter may score the cut bonds by their
+ * Kekule orders, which are arbitrary in the input already.
+ *
+ * The atoms which carry stereo (a stereo parity, a stereo bond or a tetrahedral
+ * or double bond stereo element) are kept in place by every automorphism, so
+ * the mappings of a symmetry class also have the same stereo score and the
+ * representative kept by {@link org.openscience.smsd.BaseMapping#reduceSymmetricMappings()}
+ * ranks like the mappings it stands for.
+ *
+ * The group is enumerated with the VF2 substructure search of the molecule on
+ * itself. Molecules with a very large group (many equivalent methyl or
+ * t-butyl groups, etc.) are not enumerated: the search stops after
+ * maxIterations steps or maxSize automorphisms and the group is reported as
+ * incomplete with the identity as its only element, which is always safe to
+ * use.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.helper.AutomorphismGroupTest")
+public final class AutomorphismGroup {
+
+    /**
+     * Default cap on the search steps of the enumeration.
+     */
+    public static final long DEFAULT_MAX_ITERATIONS = 100000;
+    /**
+     * Default cap on the number of automorphisms.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    private final int atomCount;
+    private final List<int[]> permutations;
+    private final int[] orbits;
+    private final boolean complete;
+
+    /**
+     * Enumerates the automorphism group with the default caps.
+     *
+     * @param container molecule
+     * @param matchRings ring match flag
+     * @param matchAtomType atom type match flag
+     */
+    public AutomorphismGroup(IAtomContainer container, boolean matchRings, boolean matchAtomType) {
+        this(container, matchRings, matchAtomType, DEFAULT_MAX_ITERATIONS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Enumerates the automorphism group.
+     *
+     * @param container molecule
+     * @param matchRings ring match flag
+     * @param matchAtomType atom type match flag
+     * @param maxIterations cap on the search steps
+     * @param maxSize cap on the number of automorphisms
+     */
+    public AutomorphismGroup(IAtomContainer container, boolean matchRings, boolean matchAtomType,
+            long maxIterations, int maxSize) {
+        this.atomCount = container.getAtomCount();
+        List<int[]> group = null;
+        if (atomCount > 1 && !(container instanceof IQueryAtomContainer)) {
+            group = enumerate(container, matchRings, matchAtomType, maxIterations, maxSize);
+        }
+        this.complete = group != null || atomCount <= 1;
+        if (group == null) {
+            group = new ArrayList<int[]>(1);
+            group.add(identity(atomCount));
+        }
+        this.permutations = Collections.unmodifiableList(group);
+        this.orbits = orbits(atomCount, permutations);
+    }
+
+    private static List<int[]> enumerate(IAtomContainer container, boolean matchRings, boolean matchAtomType,
+            long maxIterations, int maxSize) {
+        SearchBudget budget = new SearchBudget(0, maxIterations);
+        CompiledQuery query = new CompiledQuery(container, true, matchRings, matchAtomType);
+        List<AtomAtomMapping> mappings = query.findAll(container, budget);
+        if (budget.isExhausted() || mappings.isEmpty()) {
+            return null;
+        }
+        CompiledGraph graph = new CompiledGraph(container);
+        boolean[] stereo = stereoAtoms(container, graph);
+        List<int[]> group = new ArrayList<int[]>();
+        for (AtomAtomMapping mapping : mappings) {
+            int[] permutation = new int[graph.getAtomCount()];
+            for (int i = 0; i < permutation.length; i++) {
+                permutation[i] = mapping.getMappedTargetIndex(i);
+            }
+            /*
+             * the permutations keeping the stricter labels form a subgroup
+             */
+            if (isAutomorphism(container, graph, stereo, permutation)) {
+                group.add(permutation);
+                if (group.size() > maxSize) {
+                    return null;
+                }
+            }
+        }
+        return group.isEmpty() ? null : group;
+    }
+
+    private static boolean isAutomorphism(IAtomContainer container, CompiledGraph graph, boolean[] stereo,
+            int[] permutation) {
+        for (int i = 0; i < permutation.length; i++) {
+            if (permutation[i] == -1 || (stereo[i] && permutation[i] != i)) {
+                return false;
+            }
+            IAtom atom = container.getAtom(i);
+            IAtom image = container.getAtom(permutation[i]);
+            if (!same(atom.getSymbol(), image.getSymbol())
+                    || !same(atom.getFormalCharge(), image.getFormalCharge())
+                    || !same(atom.getImplicitHydrogenCount(), image.getImplicitHydrogenCount())
+                    || atom.getFlag(CDKConstants.ISAROMATIC) != image.getFlag(CDKConstants.ISAROMATIC)) {
+                return false;
+            }
+        }
+        for (int b = 0; b < graph.getBondCount(); b++) {
+            int u = graph.getBondBegin(b);
+            int v = graph.getBondEnd(b);
+            if (u == -1 || v == -1) {
+                continue;
+            }
+            int image = graph.getBondIndex(permutation[u], permutation[v]);
+            if (image == -1 || !CompiledGraph.sameBondLabels(graph.getBondLabel(image), graph.getBondLabel(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * atoms which have to stay in place: the stereo centres and their ligands,
+     * and the atoms of the stereo bonds
+     */
+    private static boolean[] stereoAtoms(IAtomContainer container, CompiledGraph graph) {
+        boolean[] stereo = new boolean[graph.getAtomCount()];
+        for (int i = 0; i < stereo.length; i++) {
+            Integer parity = container.getAtom(i).getStereoParity();
+            if (parity != null && parity != 0) {
+                stereo[i] = true;
+            }
+        }
+        for (int b = 0; b < graph.getBondCount(); b++) {
+            IBond.Stereo bondStereo = container.getBond(b).getStereo();
+            if (bondStereo != null && bondStereo != IBond.Stereo.NONE) {
+                mark(stereo, graph, container.getBond(b));
+            }
+        }
+        for (IStereoElement element : container.stereoElements()) {
+            if (element instanceof ITetrahedralChirality) {
+                ITetrahedralChirality chirality = (ITetrahedralChirality) element;
+                mark(stereo, graph, chirality.getChiralAtom());
+                for (IAtom ligand : chirality.getLigands()) {
+                    mark(stereo, graph, ligand);
+                }
+            } else if (element instanceof IDoubleBondStereochemistry) {
+                IDoubleBondStereochemistry doubleBond = (IDoubleBondStereochemistry) element;
+                mark(stereo, graph, doubleBond.getStereoBond());
+                for (IBond bond : doubleBond.getBonds()) {
+                    mark(stereo, graph, bond);
+                }
+            }
+        }
+        return stereo;
+    }
+
+    private static void mark(boolean[] stereo, CompiledGraph graph, IBond bond) {
+        for (IAtom atom : bond.atoms()) {
+            mark(stereo, graph, atom);
+        }
+    }
+
+    private static void mark(boolean[] stereo, CompiledGraph graph, IAtom atom) {
+        int index = graph.indexOf(atom);
+        if (index != -1) {
+            stereo[index] = true;
+        }
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int[] identity(int atomCount) {
+        int[] permutation = new int[atomCount];
+        for (int i = 0; i < atomCount; i++) {
+            permutation[i] = i;
+        }
+        return permutation;
+    }
+
+    private static int[] orbits(int atomCount, List<int[]> permutations) {
+        int[] orbits = identity(atomCount);
+        for (int[] permutation : permutations) {
+            for (int i = 0; i < atomCount; i++) {
+                orbits[i] = Math.min(orbits[i], permutation[i]);
+            }
+        }
+        return orbits;
+    }
+
+    /**
+     * @return number of automorphisms, 1 if the group is trivial or was not
+     * enumerated
+     */
+    @TestMethod("testBenzene")
+    public int size() {
+        return permutations.size();
+    }
+
+    /**
+     * @return true if only the identity is known
+     */
+    @TestMethod("testAsymmetric")
+    public boolean isTrivial() {
+        return permutations.size() == 1;
+    }
+
+    /**
+     * @return false if the enumeration was stopped by its caps
+     */
+    @TestMethod("testIncomplete")
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the automorphisms, permutation[i] is the image of atom i. The
+     * first one is not necessarily the identity. The arrays are shared and
+     * must not be modified.
+     *
+     * @return automorphisms
+     */
+    @TestMethod("testBenzene")
+    public List<int[]> getPermutations() {
+        return permutations;
+    }
+
+    /**
+     * Returns the orbit of an atom, identified by the smallest atom index in
+     * it. Two atoms are in the same orbit if an automorphism maps one on the
+     * other.
+     *
+     * @param atomIndex atom index
+     * @return orbit of the atom
+     */
+    @TestMethod("testToluene")
+    public int getOrbit(int atomIndex) {
+        return orbits[atomIndex];
+    }
+
+    /**
+     * @return number of orbits
+     */
+    @TestMethod("testToluene")
+    public int countOrbits() {
+        int count = 0;
+        for (int i = 0; i < atomCount; i++) {
+            if (orbits[i] == i) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
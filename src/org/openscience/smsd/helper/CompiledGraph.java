@@ -0,0 +1,289 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * Immutable, index based view of an atom container. The neighbour lists, the
+ * bond indices and an integer bond label are computed once so that the graph
+ * matchers can walk the molecule without calling
+ * {@link IAtomContainer#getConnectedAtomsList(IAtom)} or
+ * {@link IAtomContainer#getAtomNumber(IAtom)} (both linear scans) in their
+ * inner loops.
+ *
+ * The bond label packs the bond order, aromaticity and ring flags:
+ * <pre>
+ *  bits 0-3 : order ordinal + 1 (0 if the order is not set)
+ *  bit  4   : aromatic
+ *  bit  5   : in ring
+ * </pre>
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.helper.CompiledGraphTest")
+public final class CompiledGraph {
+
+    private static final int ORDER_MASK = 0x0F;
+    private static final int AROMATIC = 0x10;
+    private static final int RING = 0x20;
+    private final IAtomContainer container;
+    private final int atomCount;
+    private final int bondCount;
+    private final int[][] neighbours;
+    private final int[][] neighbourBonds;
+    private final int[] bondAtom0;
+    private final int[] bondAtom1;
+    private final int[] bondLabels;
+    private final Map<IAtom, Integer> atomIndex;
+
+    /**
+     * Compiles the graph of the container. The container should not be
+     * modified while the compiled graph is in use.
+     *
+     * @param container molecule to compile
+     */
+    public CompiledGraph(IAtomContainer container) {
+        this.container = container;
+        this.atomCount = container.getAtomCount();
+        this.bondCount = container.getBondCount();
+        this.atomIndex = new IdentityHashMap<IAtom, Integer>(atomCount * 2);
+        for (int i = 0; i < atomCount; i++) {
+            atomIndex.put(container.getAtom(i), i);
+        }
+
+        this.bondAtom0 = new int[bondCount];
+        this.bondAtom1 = new int[bondCount];
+        this.bondLabels = new int[bondCount];
+        int[] degree = new int[atomCount];
+        for (int b = 0; b < bondCount; b++) {
+            IBond bond = container.getBond(b);
+            Integer i = atomIndex.get(bond.getAtom(0));
+            Integer j = atomIndex.get(bond.getAtom(1));
+            bondAtom0[b] = i == null ? -1 : i;
+            bondAtom1[b] = j == null ? -1 : j;
+            bondLabels[b] = bondLabel(bond);
+            if (i != null && j != null) {
+                degree[i]++;
+                degree[j]++;
+            }
+        }
+
+        this.neighbours = new int[atomCount][];
+        this.neighbourBonds = new int[atomCount][];
+        for (int i = 0; i < atomCount; i++) {
+            neighbours[i] = new int[degree[i]];
+            neighbourBonds[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (int b = 0; b < bondCount; b++) {
+            int i = bondAtom0[b];
+            int j = bondAtom1[b];
+            if (i == -1 || j == -1) {
+                continue;
+            }
+            neighbours[i][degree[i]] = j;
+            neighbourBonds[i][degree[i]++] = b;
+            neighbours[j][degree[j]] = i;
+            neighbourBonds[j][degree[j]++] = b;
+        }
+    }
+
+    /**
+     * Returns the packed label of a bond.
+     *
+     * @param bond
+     * @return bond label
+     */
+    @TestMethod("testBondLabel")
+    public static int bondLabel(IBond bond) {
+        int label = bond.getOrder() == null ? 0 : (bond.getOrder().ordinal() + 1) & ORDER_MASK;
+        if (bond.getFlag(CDKConstants.ISAROMATIC)) {
+            label |= AROMATIC;
+        }
+        if (bond.getFlag(CDKConstants.ISINRING)) {
+            label |= RING;
+        }
+        return label;
+    }
+
+    /**
+     * Label based equivalent of
+     * {@link org.openscience.smsd.algorithm.matchers.DefaultBondMatcher} for
+     * plain (non query) bonds.
+     *
+     * @param queryLabel
+     * @param targetLabel
+     * @param shouldMatchBonds
+     * @return true if the bonds match
+     */
+    @TestMethod("testBondLabelsMatch")
+    public static boolean bondLabelsMatch(int queryLabel, int targetLabel, boolean shouldMatchBonds) {
+        if (!shouldMatchBonds) {
+            return true;
+        }
+        boolean sameOrder = (queryLabel & ORDER_MASK) == (targetLabel & ORDER_MASK);
+        boolean queryAromatic = (queryLabel & AROMATIC) != 0;
+        boolean targetAromatic = (targetLabel & AROMATIC) != 0;
+        if (queryAromatic == targetAromatic && sameOrder) {
+            return true;
+        } else if (queryAromatic && targetAromatic) {
+            return true;
+        }
+        return ((queryLabel & RING) == (targetLabel & RING)) && sameOrder;
+    }
+
+    /**
+     * Returns true if two bond labels describe the same bond up to the Kekule
+     * order: equal labels, or two aromatic bonds with the same ring flag.
+     *
+     * @param label1
+     * @param label2
+     * @return true if the bonds are equivalent
+     */
+    @TestMethod("testSameBondLabels")
+    public static boolean sameBondLabels(int label1, int label2) {
+        if ((label1 & AROMATIC) != 0 && (label2 & AROMATIC) != 0) {
+            return (label1 & ~ORDER_MASK) == (label2 & ~ORDER_MASK);
+        }
+        return label1 == label2;
+    }
+
+    /**
+     * Returns the index of the bond between atoms i and j, or -1 if they are
+     * not bonded.
+     *
+     * @param i atom index
+     * @param j atom index
+     * @return bond index or -1
+     */
+    @TestMethod("testGetBondIndex")
+    public int getBondIndex(int i, int j) {
+        int[] nbrs = neighbours[i];
+        for (int k = 0; k < nbrs.length; k++) {
+            if (nbrs[k] == j) {
+                return neighbourBonds[i][k];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the atom in the compiled container, or -1.
+     *
+     * @param atom
+     * @return atom index
+     */
+    @TestMethod("testIndexOf")
+    public int indexOf(IAtom atom) {
+        Integer index = atomIndex.get(atom);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Neighbour indices of an atom. The returned array is shared and must not
+     * be modified.
+     *
+     * @param i atom index
+     * @return neighbours of atom i
+     */
+    @TestMethod("testGetNeighbours")
+    public int[] getNeighbours(int i) {
+        return neighbours[i];
+    }
+
+    /**
+     * Bond indices of an atom, parallel to {@link #getNeighbours(int)}. The
+     * returned array is shared and must not be modified.
+     *
+     * @param i atom index
+     * @return bonds of atom i
+     */
+    public int[] getNeighbourBonds(int i) {
+        return neighbourBonds[i];
+    }
+
+    /**
+     * @param i atom index
+     * @return the degree of atom i
+     */
+    public int getDegree(int i) {
+        return neighbours[i].length;
+    }
+
+    /**
+     * @param b bond index
+     * @return the packed label of bond b
+     */
+    public int getBondLabel(int b) {
+        return bondLabels[b];
+    }
+
+    /**
+     * @param b bond index
+     * @return first atom index of bond b
+     */
+    public int getBondBegin(int b) {
+        return bondAtom0[b];
+    }
+
+    /**
+     * @param b bond index
+     * @return second atom index of bond b
+     */
+    public int getBondEnd(int b) {
+        return bondAtom1[b];
+    }
+
+    /**
+     * @return the atomCount
+     */
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    /**
+     * @return the bondCount
+     */
+    public int getBondCount() {
+        return bondCount;
+    }
+
+    /**
+     * @return the compiled container
+     */
+    public IAtomContainer getContainer() {
+        return container;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.smsd.interfaces.ISubstructureScreen;
+
+/**
+ * Path fingerprint screen for substructure searches. Every simple path of up
+ * to {@link #MAX_PATH_LENGTH} atoms is hashed on its element symbols and sets
+ * one bit of a {@link #SIZE} bit fingerprint. A substructure embedding maps
+ * each path of the query onto a path of the target with the same symbols, so
+ * the query can only be a substructure if its bits are a subset of the target
+ * bits.
+ *
+ * Bonds are left out of the paths on purpose: aromatic and ring bonds may
+ * match different orders (see {@link CompiledGraph#bondLabelsMatch}), keeping
+ * them out leaves the screen a strict necessary condition whatever the match
+ * options.
+ *
+ * The fingerprint of a molecule is computed once and kept next to its
+ * perception until the molecule is modified. Query containers (or containers
+ * with query atoms) have no fingerprint and always pass the screen.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.helper.FingerprintScreenTest")
+public final class FingerprintScreen implements ISubstructureScreen {
+
+    /**
+     * Number of bits in a fingerprint.
+     */
+    public static final int SIZE = 1024;
+    /**
+     * Longest path, in atoms, hashed into a fingerprint.
+     */
+    public static final int MAX_PATH_LENGTH = 7;
+    private static final int WORDS = SIZE / 64;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param query
+     * @param target
+     * @return false if the query bits are not a subset of the target bits
+     */
+    @Override
+    @TestMethod("testMayMatch,testQueryContainer")
+    public boolean mayMatch(IAtomContainer query, IAtomContainer target) {
+        long[] queryBits = getFingerprint(query);
+        if (queryBits == null) {
+            return true;
+        }
+        long[] targetBits = getFingerprint(target);
+        return targetBits == null || isSubset(queryBits, targetBits);
+    }
+
+    /**
+     * Returns the fingerprint of a container, computed on the first call and
+     * reused until the container is modified. The returned array is shared and
+     * must not be modified.
+     *
+     * @param container
+     * @return fingerprint or null if the container has query atoms
+     */
+    @TestMethod("testCache")
+    public static long[] getFingerprint(IAtomContainer container) {
+        if (container instanceof IQueryAtomContainer) {
+            return null;
+        }
+        long stamp = PerceptionCache.stamp(container);
+        long[] bits = PerceptionCache.getFingerprint(container, stamp);
+        if (bits == null) {
+            bits = fingerprint(container);
+            if (bits != null) {
+                PerceptionCache.storeFingerprint(container, stamp, bits);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Caches a fingerprint computed earlier (for instance one read back from a
+     * {@link org.openscience.smsd.tools.TargetLibrary}) for a container. The
+     * bits must be those {@link #fingerprint(IAtomContainer)} returns for it.
+     *
+     * @param container
+     * @param bits fingerprint of the container
+     */
+    @TestMethod("testCache")
+    public static void setFingerprint(IAtomContainer container, long[] bits) {
+        if (bits.length != WORDS) {
+            throw new IllegalArgumentException("Fingerprint of " + bits.length + " words, expected " + WORDS);
+        }
+        PerceptionCache.storeFingerprint(container, PerceptionCache.stamp(container), bits);
+    }
+
+    /**
+     * Computes the fingerprint of a container without using the cache.
+     *
+     * @param container
+     * @return fingerprint or null if the container has query atoms or atoms
+     * without a symbol
+     */
+    @TestMethod("testMayMatch")
+    public static long[] fingerprint(IAtomContainer container) {
+        if (container instanceof IQueryAtomContainer) {
+            return null;
+        }
+        int atomCount = container.getAtomCount();
+        int[] labels = new int[atomCount];
+        for (int i = 0; i < atomCount; i++) {
+            IAtom atom = container.getAtom(i);
+            if (atom instanceof IQueryAtom || atom.getSymbol() == null) {
+                return null;
+            }
+            labels[i] = atom.getSymbol().hashCode();
+        }
+        CompiledGraph graph = new CompiledGraph(container);
+        long[] bits = new long[WORDS];
+        boolean[] visited = new boolean[atomCount];
+        for (int i = 0; i < atomCount; i++) {
+            visit(graph, labels, visited, bits, i, 1, 0L);
+        }
+        return bits;
+    }
+
+    /**
+     * @param query
+     * @param target
+     * @return true if every bit set in the query is set in the target
+     */
+    @TestMethod("testMayMatch")
+    public static boolean isSubset(long[] query, long[] target) {
+        for (int i = 0; i < query.length; i++) {
+            if ((query[i] & ~target[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void visit(CompiledGraph graph, int[] labels, boolean[] visited, long[] bits,
+            int atom, int length, long hash) {
+        hash = hash * 0x100000001B3L + labels[atom] + length;
+        setBit(bits, hash);
+        if (length == MAX_PATH_LENGTH) {
+            return;
+        }
+        visited[atom] = true;
+        for (int next : graph.getNeighbours(atom)) {
+            if (!visited[next]) {
+                visit(graph, labels, visited, bits, next, length + 1, hash);
+            }
+        }
+        visited[atom] = false;
+    }
+
+    private static void setBit(long[] bits, long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        int bit = (int) (hash & (SIZE - 1));
+        bits[bit >>> 6] |= 1L << (bit & 63);
+    }
+}
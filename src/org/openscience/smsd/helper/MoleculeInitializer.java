@@ -42,6 +42,8 @@ import org.openscience.cdk.ringsearch.SSSRFinder;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.smsd.ring.HanserRingFinder;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  *
@@ -52,170 +54,325 @@ import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
  */
 public class MoleculeInitializer {
 
-    /**
-     * Prepare the molecule for analysis.
-     * <p/>
-     * We perform ring perception and aromaticity detection and set up the appropriate properties. Right now, this
-     * function is called each time we need to do a query and this is inefficient.
-     *
-     * @param atomContainer Atom container where rings are to be marked
-     * @throws CDKException if there is a problem in ring perception or aromaticity detection, which is usually related
-     * to a timeout in the ring finding code.
-     */
     private static final ILoggingTool Logger
             = LoggingToolFactory.createLoggingTool(MoleculeInitializer.class);
+    /**
+     * Atom property holding the size of the smallest ring of the atom, 0 if it is not in a ring.
+     */
+    public static final String SMALLEST_RING_SIZE = "SMALLEST_RING_SIZE";
+    /**
+     * Ring size limit of the {@link RingPerception#BOUNDED} mode.
+     */
+    public static final int DEFAULT_MAX_RING_SIZE = 12;
+    /**
+     * Per molecule time limit of the {@link RingPerception#BOUNDED} mode (1 s).
+     */
+    public static final long DEFAULT_RING_PERCEPTION_TIMEOUT = 1000000000L;
+    private static RingPerception ringPerception = RingPerception.ALL_RINGS;
+    private static int maxRingSize = DEFAULT_MAX_RING_SIZE;
+    private static long ringPerceptionTimeout = DEFAULT_RING_PERCEPTION_TIMEOUT;
 
     /**
+     * How the ring sizes used for ring matching are perceived.
+     */
+    public enum RingPerception {
+
+        /**
+         * All the rings, using CDK's AllRingsFinder. Exponential on fused polycycles.
+         */
+        ALL_RINGS,
+        /**
+         * All the rings up to a size limit, within a time limit, using the {@link HanserRingFinder}. Larger rings and
+         * molecules which run out of time fall back to the SSSR. The fallback is cached like a complete perception and
+         * reported by {@link MoleculeInitializer#isDegraded(IAtomContainer)}.
+         */
+        BOUNDED
+    }
+
+    /**
+     * Prepare the molecule for analysis.
+     * <p/>
+     * We perform ring perception and aromaticity detection and set up the appropriate properties. The result is
+     * cached, a molecule which is unchanged since it was last prepared is not perceived again, its ring and aromaticity
+     * properties are restored from the cache instead.
+     * <p/>
+     * Restoring a cached perception does not take the global lock, only the perception itself is serialized.
      *
      * @param atomContainer Atom container where rings are to be marked
      * @throws CDKException if there is a problem in ring perception or aromaticity detection, which is usually related
      * to a timeout in the ring finding code.
      */
-    public synchronized static void initializeMolecule(IAtomContainer atomContainer) throws CDKException {
-        String SMALLEST_RING_SIZE = "SMALLEST_RING_SIZE";
-        if (!(atomContainer instanceof IQueryAtomContainer)) {
-            Map<String, Integer> valencesTable = new HashMap<String, Integer>();
-            valencesTable.put("H", 1);
-            valencesTable.put("Li", 1);
-            valencesTable.put("Be", 2);
-            valencesTable.put("B", 3);
-            valencesTable.put("C", 4);
-            valencesTable.put("N", 5);
-            valencesTable.put("O", 6);
-            valencesTable.put("F", 7);
-            valencesTable.put("Na", 1);
-            valencesTable.put("Mg", 2);
-            valencesTable.put("Al", 3);
-            valencesTable.put("Si", 4);
-            valencesTable.put("P", 5);
-            valencesTable.put("S", 6);
-            valencesTable.put("Cl", 7);
-            valencesTable.put("K", 1);
-            valencesTable.put("Ca", 2);
-            valencesTable.put("Ga", 3);
-            valencesTable.put("Ge", 4);
-            valencesTable.put("As", 5);
-            valencesTable.put("Se", 6);
-            valencesTable.put("Br", 7);
-            valencesTable.put("Rb", 1);
-            valencesTable.put("Sr", 2);
-            valencesTable.put("In", 3);
-            valencesTable.put("Sn", 4);
-            valencesTable.put("Sb", 5);
-            valencesTable.put("Te", 6);
-            valencesTable.put("I", 7);
-            valencesTable.put("Cs", 1);
-            valencesTable.put("Ba", 2);
-            valencesTable.put("Tl", 3);
-            valencesTable.put("Pb", 4);
-            valencesTable.put("Bi", 5);
-            valencesTable.put("Po", 6);
-            valencesTable.put("At", 7);
-            valencesTable.put("Fr", 1);
-            valencesTable.put("Ra", 2);
-            valencesTable.put("Cu", 2);
-            valencesTable.put("Mn", 2);
-            valencesTable.put("Co", 2);
-
-            // do all ring perception
-            AllRingsFinder arf = new AllRingsFinder();
-            IRingSet allRings = null;
-            try {
-                allRings = arf.findAllRings(atomContainer);
-            } catch (CDKException e) {
-                Logger.warn(e.toString());
-            }
+    public static void initializeMolecule(IAtomContainer atomContainer) throws CDKException {
+        if (atomContainer instanceof IQueryAtomContainer || PerceptionCache.restore(atomContainer)) {
+            return;
+        }
+        perceive(atomContainer);
+    }
 
-            // sets SSSR information
-            SSSRFinder finder = new SSSRFinder(atomContainer);
-            IRingSet sssr = finder.findEssentialRings();
-
-            for (IAtom atom : atomContainer.atoms()) {
-
-                // add a property to each ring atom that will be an array of
-                // Integers, indicating what size ring the given atom belongs to
-                // Add SSSR ring counts
-                if (allRings != null && allRings.contains(atom)) { // it's in a ring
-                    atom.setFlag(CDKConstants.ISINRING, true);
-                    atom.setFlag(CDKConstants.ISALIPHATIC, false);
-                    // lets find which ring sets it is a part of
-                    List<Integer> ringsizes = new ArrayList<Integer>();
-                    IRingSet currentRings = allRings.getRings(atom);
-                    int min = 0;
-                    for (int i = 0; i < currentRings.getAtomContainerCount(); i++) {
-                        int size = currentRings.getAtomContainer(i).getAtomCount();
-                        if (min > size) {
-                            min = size;
-                        }
-                        ringsizes.add(size);
-                    }
-                    Collections.sort(ringsizes);
-                    atom.setProperty(CDKConstants.RING_SIZES, ringsizes);
-                    atom.setProperty(CDKConstants.SMALLEST_RINGS, sssr.getRings(atom));
-                    atom.setProperty(SMALLEST_RING_SIZE, ringsizes.get(0));
-                } else {
-                    atom.setFlag(CDKConstants.ISINRING, false);
-                    atom.setFlag(CDKConstants.ISALIPHATIC, true);
-                    atom.setProperty(SMALLEST_RING_SIZE, 0);
-                }
+    private synchronized static void perceive(IAtomContainer atomContainer) throws CDKException {
+        /*
+         * another thread may have perceived the molecule while this one waited for the lock
+         */
+        if (PerceptionCache.restore(atomContainer)) {
+            return;
+        }
+        Map<String, Integer> valencesTable = new HashMap<String, Integer>();
+        valencesTable.put("H", 1);
+        valencesTable.put("Li", 1);
+        valencesTable.put("Be", 2);
+        valencesTable.put("B", 3);
+        valencesTable.put("C", 4);
+        valencesTable.put("N", 5);
+        valencesTable.put("O", 6);
+        valencesTable.put("F", 7);
+        valencesTable.put("Na", 1);
+        valencesTable.put("Mg", 2);
+        valencesTable.put("Al", 3);
+        valencesTable.put("Si", 4);
+        valencesTable.put("P", 5);
+        valencesTable.put("S", 6);
+        valencesTable.put("Cl", 7);
+        valencesTable.put("K", 1);
+        valencesTable.put("Ca", 2);
+        valencesTable.put("Ga", 3);
+        valencesTable.put("Ge", 4);
+        valencesTable.put("As", 5);
+        valencesTable.put("Se", 6);
+        valencesTable.put("Br", 7);
+        valencesTable.put("Rb", 1);
+        valencesTable.put("Sr", 2);
+        valencesTable.put("In", 3);
+        valencesTable.put("Sn", 4);
+        valencesTable.put("Sb", 5);
+        valencesTable.put("Te", 6);
+        valencesTable.put("I", 7);
+        valencesTable.put("Cs", 1);
+        valencesTable.put("Ba", 2);
+        valencesTable.put("Tl", 3);
+        valencesTable.put("Pb", 4);
+        valencesTable.put("Bi", 5);
+        valencesTable.put("Po", 6);
+        valencesTable.put("At", 7);
+        valencesTable.put("Fr", 1);
+        valencesTable.put("Ra", 2);
+        valencesTable.put("Cu", 2);
+        valencesTable.put("Mn", 2);
+        valencesTable.put("Co", 2);
 
-                // determine how many rings bonds each atom is a part of
-                int hCount;
-                if (atom.getImplicitHydrogenCount() == CDKConstants.UNSET) {
-                    hCount = 0;
-                } else {
-                    hCount = atom.getImplicitHydrogenCount();
-                }
+        // sets SSSR information
+        SSSRFinder finder = new SSSRFinder(atomContainer);
+        IRingSet sssr = finder.findEssentialRings();
+
+        // do all ring perception
+        IRingSet allRings = findRings(atomContainer, finder);
+        boolean complete = allRings != null;
+        if (!complete) {
+            allRings = finder.findSSSR();
+        }
 
-                List<IAtom> connectedAtoms = atomContainer.getConnectedAtomsList(atom);
-                int total = hCount + connectedAtoms.size();
-                for (IAtom connectedAtom : connectedAtoms) {
-                    if (connectedAtom.getSymbol().equals("H")) {
-                        hCount++;
+        for (IAtom atom : atomContainer.atoms()) {
+
+            // add a property to each ring atom that will be an array of
+            // Integers, indicating what size ring the given atom belongs to
+            // Add SSSR ring counts
+            if (allRings != null && allRings.contains(atom)) { // it's in a ring
+                atom.setFlag(CDKConstants.ISINRING, true);
+                atom.setFlag(CDKConstants.ISALIPHATIC, false);
+                // lets find which ring sets it is a part of
+                List<Integer> ringsizes = new ArrayList<Integer>();
+                IRingSet currentRings = allRings.getRings(atom);
+                int min = 0;
+                for (int i = 0; i < currentRings.getAtomContainerCount(); i++) {
+                    int size = currentRings.getAtomContainer(i).getAtomCount();
+                    if (min > size) {
+                        min = size;
                     }
+                    ringsizes.add(size);
                 }
-                atom.setProperty(CDKConstants.TOTAL_CONNECTIONS, total);
-                atom.setProperty(CDKConstants.TOTAL_H_COUNT, hCount);
+                Collections.sort(ringsizes);
+                atom.setProperty(CDKConstants.RING_SIZES, ringsizes);
+                atom.setProperty(CDKConstants.SMALLEST_RINGS, sssr.getRings(atom));
+                atom.setProperty(SMALLEST_RING_SIZE, ringsizes.get(0));
+            } else {
+                atom.setFlag(CDKConstants.ISINRING, false);
+                atom.setFlag(CDKConstants.ISALIPHATIC, true);
+                atom.setProperty(SMALLEST_RING_SIZE, 0);
+            }
+
+            // determine how many rings bonds each atom is a part of
+            int hCount;
+            if (atom.getImplicitHydrogenCount() == CDKConstants.UNSET) {
+                hCount = 0;
+            } else {
+                hCount = atom.getImplicitHydrogenCount();
+            }
 
-                if (valencesTable.get(atom.getSymbol()) != null) {
-                    int formalCharge = atom.getFormalCharge() == CDKConstants.UNSET ? 0 : atom.getFormalCharge();
-                    atom.setValency(valencesTable.get(atom.getSymbol()) - formalCharge);
+            List<IAtom> connectedAtoms = atomContainer.getConnectedAtomsList(atom);
+            int total = hCount + connectedAtoms.size();
+            for (IAtom connectedAtom : connectedAtoms) {
+                if (connectedAtom.getSymbol().equals("H")) {
+                    hCount++;
                 }
             }
+            atom.setProperty(CDKConstants.TOTAL_CONNECTIONS, total);
+            atom.setProperty(CDKConstants.TOTAL_H_COUNT, hCount);
 
-            for (IBond bond : atomContainer.bonds()) {
-                if (allRings != null && allRings.getRings(bond).getAtomContainerCount() > 0) {
-                    bond.setFlag(CDKConstants.ISINRING, true);
-                    bond.setFlag(CDKConstants.ISALIPHATIC, false);
+            if (valencesTable.get(atom.getSymbol()) != null) {
+                int formalCharge = atom.getFormalCharge() == CDKConstants.UNSET ? 0 : atom.getFormalCharge();
+                atom.setValency(valencesTable.get(atom.getSymbol()) - formalCharge);
+            }
+        }
+
+        for (IBond bond : atomContainer.bonds()) {
+            if (allRings != null && allRings.getRings(bond).getAtomContainerCount() > 0) {
+                bond.setFlag(CDKConstants.ISINRING, true);
+                bond.setFlag(CDKConstants.ISALIPHATIC, false);
+            }
+        }
+
+        for (IAtom atom : atomContainer.atoms()) {
+            List<IAtom> connectedAtoms = atomContainer.getConnectedAtomsList(atom);
+
+            int counter = 0;
+            IAtom any;
+            for (IAtom connectedAtom : connectedAtoms) {
+                any = connectedAtom;
+                if (any.getFlag(CDKConstants.ISINRING)) {
+                    counter++;
                 }
             }
+            atom.setProperty(CDKConstants.RING_CONNECTIONS, counter);
+        }
 
-            for (IAtom atom : atomContainer.atoms()) {
-                List<IAtom> connectedAtoms = atomContainer.getConnectedAtomsList(atom);
+        // check for atomaticity
+        try {
 
-                int counter = 0;
-                IAtom any;
-                for (IAtom connectedAtom : connectedAtoms) {
-                    any = connectedAtom;
-                    if (any.getFlag(CDKConstants.ISINRING)) {
-                        counter++;
+            AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(atomContainer);
+            CDKHueckelAromaticityDetector.detectAromaticity(atomContainer);
+
+        } catch (CDKException e) {
+            Logger.debug(e.toString());
+            throw new CDKException(e.toString(), e);
+        }
+        /*
+         * the SSSR fallback is cached too, a molecule whose ring search runs
+         * out of time would otherwise hold the lock for the full time limit
+         * on every comparison
+         */
+        PerceptionCache.store(atomContainer, !complete);
+    }
+
+    /*
+     * Ring sets used for the ring sizes, null if the perception timed out or
+     * was interrupted. The caller then falls back to the SSSR, which keeps the
+     * ring flags and the smallest ring sizes, rather than leaving the atoms
+     * without ring information.
+     */
+    private static IRingSet findRings(IAtomContainer atomContainer, SSSRFinder finder) {
+        IRingSet rings = null;
+        try {
+            if (ringPerception == RingPerception.BOUNDED) {
+                SearchBudget budget = new SearchBudget(ringPerceptionTimeout, 0);
+                rings = HanserRingFinder.getRingSet(atomContainer, maxRingSize, budget);
+                // macrocycles above the size limit
+                for (IAtomContainer ring : finder.findSSSR().atomContainers()) {
+                    if (ring.getAtomCount() > maxRingSize) {
+                        rings.addAtomContainer(ring);
                     }
                 }
-                atom.setProperty(CDKConstants.RING_CONNECTIONS, counter);
+            } else {
+                AllRingsFinder arf = new AllRingsFinder();
+                rings = arf.findAllRings(atomContainer);
             }
+        } catch (CDKException e) {
+            Logger.warn(e.toString());
+            rings = null;
+        }
+        return rings;
+    }
 
-            // check for atomaticity
-            try {
+    /**
+     * Selects the ring perception used by {@link #initializeMolecule(IAtomContainer)}. The molecules prepared with the
+     * previous mode are perceived again.
+     *
+     * @param mode ring perception mode
+     * @param maxRingSize largest ring size searched by the {@link RingPerception#BOUNDED} mode
+     * @param timeoutNanos time allowed per molecule in the {@link RingPerception#BOUNDED} mode, 0 or less for no limit
+     */
+    public synchronized static void setRingPerception(RingPerception mode, int maxRingSize, long timeoutNanos) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Ring perception mode is null");
+        }
+        if (maxRingSize < 3) {
+            throw new IllegalArgumentException("Ring size limit below 3: " + maxRingSize);
+        }
+        MoleculeInitializer.ringPerception = mode;
+        MoleculeInitializer.maxRingSize = maxRingSize;
+        MoleculeInitializer.ringPerceptionTimeout = timeoutNanos;
+        PerceptionCache.clear();
+    }
 
-                AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(atomContainer);
-                CDKHueckelAromaticityDetector.detectAromaticity(atomContainer);
+    /**
+     * Selects the ring perception with the default size and time limits.
+     *
+     * @param mode ring perception mode
+     */
+    public synchronized static void setRingPerception(RingPerception mode) {
+        setRingPerception(mode, DEFAULT_MAX_RING_SIZE, DEFAULT_RING_PERCEPTION_TIMEOUT);
+    }
 
-            } catch (CDKException e) {
-                Logger.debug(e.toString());
-                throw new CDKException(e.toString(), e);
-            }
+    /**
+     * @return the ring perception mode
+     */
+    public synchronized static RingPerception getRingPerception() {
+        return ringPerception;
+    }
+
+    /**
+     * Returns true if the molecule has been prepared by {@link #initializeMolecule(IAtomContainer)} and its structure
+     * has not changed since.
+     *
+     * @param atomContainer
+     * @return true if the molecule does not need to be perceived again
+     */
+    public static boolean isInitialized(IAtomContainer atomContainer) {
+        return PerceptionCache.isPrepared(atomContainer);
+    }
+
+    /**
+     * Returns true if the molecule has been prepared with the SSSR fallback of the {@link RingPerception#BOUNDED} mode
+     * (the ring search ran out of time or was interrupted) and its structure has not changed since. Its ring sizes are
+     * those of the SSSR rather than all the rings; {@link #invalidate(IAtomContainer)} makes the next call search the
+     * rings again.
+     *
+     * @param atomContainer
+     * @return true if the ring sizes of the molecule come from the SSSR fallback
+     */
+    public static boolean isDegraded(IAtomContainer atomContainer) {
+        return PerceptionCache.isDegraded(atomContainer);
+    }
+
+    /**
+     * Records the ring, aromaticity and atom type properties currently set on the molecule as its perception, so that
+     * {@link #initializeMolecule(IAtomContainer)} does not perceive it again. Meant for molecules rebuilt from a
+     * stored perception, e.g. by {@link org.openscience.smsd.tools.TargetLibrary}.
+     *
+     * @param atomContainer
+     */
+    public static void setInitialized(IAtomContainer atomContainer) {
+        if (!(atomContainer instanceof IQueryAtomContainer)) {
+            PerceptionCache.store(atomContainer, false);
         }
+    }
 
+    /**
+     * Forces the next {@link #initializeMolecule(IAtomContainer)} call to perceive the molecule again. Only needed if
+     * the perceived properties were edited by hand, structural changes are detected.
+     *
+     * @param atomContainer
+     */
+    public static void invalidate(IAtomContainer atomContainer) {
+        PerceptionCache.invalidate(atomContainer);
     }
 
     /**
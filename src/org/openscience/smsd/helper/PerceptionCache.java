@@ -0,0 +1,313 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * Remembers the outcome of
+ * {@link MoleculeInitializer#initializeMolecule(IAtomContainer)} so that a
+ * molecule compared many times (one against many screening) is perceived once.
+ *
+ * The entries are held weakly by container and carry a stamp of the structure
+ * as it was after perception: the atoms and bonds (by identity), element,
+ * charge, hydrogen count, atom type and bond order. A container whose stamp
+ * still matches is considered prepared and its ring sizes, SSSR membership,
+ * ring connections and ring/aromatic flags are restored from the entry, which
+ * costs a single pass over the atoms and bonds.
+ *
+ * A perception which fell back to the SSSR (see
+ * {@link MoleculeInitializer.RingPerception#BOUNDED}) is stored as well, with
+ * a degraded marker, so that a molecule whose ring search runs out of time is
+ * not searched again on every comparison.
+ *
+ * The screening fingerprint of a container (see {@link FingerprintScreen}) is
+ * kept next to its perception, under the same stamp.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.helper.PerceptionCacheTest")
+final class PerceptionCache {
+
+    private static final Map<IAtomContainer, Perception> CACHE = new WeakHashMap<IAtomContainer, Perception>();
+    private static final Map<IAtomContainer, Fingerprint> FINGERPRINTS = new WeakHashMap<IAtomContainer, Fingerprint>();
+
+    private PerceptionCache() {
+    }
+
+    /**
+     * Restores the perceived properties of a container prepared earlier. The
+     * stamp is computed and the properties are restored outside the lock,
+     * which only guards the lookup.
+     *
+     * @param container
+     * @return true if the container was prepared and has not changed since
+     */
+    @TestMethod("testRestore,testModified")
+    static boolean restore(IAtomContainer container) {
+        Perception perception = lookup(container);
+        if (perception == null) {
+            return false;
+        }
+        if (perception.stamp != stamp(container)) {
+            synchronized (PerceptionCache.class) {
+                if (CACHE.get(container) == perception) {
+                    CACHE.remove(container);
+                }
+            }
+            return false;
+        }
+        perception.apply(container);
+        return true;
+    }
+
+    /**
+     * @param container
+     * @return true if the container was prepared and has not changed since
+     */
+    @TestMethod("testModified")
+    static boolean isPrepared(IAtomContainer container) {
+        Perception perception = lookup(container);
+        return perception != null && perception.stamp == stamp(container);
+    }
+
+    /**
+     * @param container
+     * @return true if the container was prepared with the SSSR fallback and
+     * has not changed since
+     */
+    @TestMethod("testFallbackCached")
+    static boolean isDegraded(IAtomContainer container) {
+        Perception perception = lookup(container);
+        return perception != null && perception.degraded && perception.stamp == stamp(container);
+    }
+
+    /**
+     * Records the perceived properties of a container.
+     *
+     * @param container a container just prepared by the molecule initializer
+     * @param degraded true if the ring sizes are those of the SSSR fallback
+     */
+    @TestMethod("testRestore,testFallbackCached")
+    static void store(IAtomContainer container, boolean degraded) {
+        Perception perception = new Perception(container, degraded);
+        synchronized (PerceptionCache.class) {
+            CACHE.put(container, perception);
+        }
+    }
+
+    private static synchronized Perception lookup(IAtomContainer container) {
+        return CACHE.get(container);
+    }
+
+    /**
+     * Forgets a container, the next initialization perceives it again.
+     *
+     * @param container
+     */
+    @TestMethod("testInvalidate")
+    static synchronized void invalidate(IAtomContainer container) {
+        CACHE.remove(container);
+        FINGERPRINTS.remove(container);
+    }
+
+    /**
+     * Forgets all the containers.
+     */
+    static synchronized void clear() {
+        CACHE.clear();
+        FINGERPRINTS.clear();
+    }
+
+    /**
+     * @param container
+     * @param stamp current stamp of the container
+     * @return the fingerprint stored for the container or null if there is
+     * none or the container has changed since
+     */
+    @TestMethod("testFingerprint")
+    static synchronized long[] getFingerprint(IAtomContainer container, long stamp) {
+        Fingerprint fingerprint = FINGERPRINTS.get(container);
+        if (fingerprint == null) {
+            return null;
+        }
+        if (fingerprint.stamp != stamp) {
+            FINGERPRINTS.remove(container);
+            return null;
+        }
+        return fingerprint.bits;
+    }
+
+    /**
+     * Records the fingerprint of a container.
+     *
+     * @param container
+     * @param stamp stamp of the container the fingerprint was computed for
+     * @param bits fingerprint
+     */
+    @TestMethod("testFingerprint")
+    static synchronized void storeFingerprint(IAtomContainer container, long stamp, long[] bits) {
+        FINGERPRINTS.put(container, new Fingerprint(stamp, bits));
+    }
+
+    /**
+     * Structure stamp of a container. The order of the atoms and bonds is part
+     * of the stamp as the entries are stored by index.
+     *
+     * @param container
+     * @return stamp
+     */
+    @TestMethod("testModified")
+    static long stamp(IAtomContainer container) {
+        long stamp = 31L * container.getAtomCount() + container.getBondCount();
+        for (IAtom atom : container.atoms()) {
+            stamp = 31L * stamp + System.identityHashCode(atom);
+            stamp = 31L * stamp + hash(atom.getSymbol());
+            stamp = 31L * stamp + hash(atom.getFormalCharge());
+            stamp = 31L * stamp + hash(atom.getImplicitHydrogenCount());
+            stamp = 31L * stamp + hash(atom.getAtomTypeName());
+        }
+        for (IBond bond : container.bonds()) {
+            stamp = 31L * stamp + System.identityHashCode(bond);
+            for (IAtom atom : bond.atoms()) {
+                stamp = 31L * stamp + System.identityHashCode(atom);
+            }
+            stamp = 31L * stamp + hash(bond.getOrder());
+        }
+        return stamp;
+    }
+
+    private static int hash(Object value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static final class Fingerprint {
+
+        private final long stamp;
+        private final long[] bits;
+
+        Fingerprint(long stamp, long[] bits) {
+            this.stamp = stamp;
+            this.bits = bits;
+        }
+    }
+
+    /*
+     * Side copy of the properties set by the perception, indexed like the
+     * atoms and bonds of the container.
+     */
+    private static final class Perception {
+
+        private final long stamp;
+        private final boolean degraded;
+        private final boolean[] atomInRing;
+        private final boolean[] atomAliphatic;
+        private final boolean[] atomAromatic;
+        private final Object[] ringSizes;
+        private final Object[] smallestRings;
+        private final Object[] smallestRingSize;
+        private final Object[] ringConnections;
+        private final Object[] totalConnections;
+        private final Object[] totalHCount;
+        private final boolean[] bondInRing;
+        private final boolean[] bondAliphatic;
+        private final boolean[] bondAromatic;
+
+        Perception(IAtomContainer container, boolean degraded) {
+            this.degraded = degraded;
+            int atomCount = container.getAtomCount();
+            int bondCount = container.getBondCount();
+            this.atomInRing = new boolean[atomCount];
+            this.atomAliphatic = new boolean[atomCount];
+            this.atomAromatic = new boolean[atomCount];
+            this.ringSizes = new Object[atomCount];
+            this.smallestRings = new Object[atomCount];
+            this.smallestRingSize = new Object[atomCount];
+            this.ringConnections = new Object[atomCount];
+            this.totalConnections = new Object[atomCount];
+            this.totalHCount = new Object[atomCount];
+            for (int i = 0; i < atomCount; i++) {
+                IAtom atom = container.getAtom(i);
+                atomInRing[i] = atom.getFlag(CDKConstants.ISINRING);
+                atomAliphatic[i] = atom.getFlag(CDKConstants.ISALIPHATIC);
+                atomAromatic[i] = atom.getFlag(CDKConstants.ISAROMATIC);
+                ringSizes[i] = atom.getProperty(CDKConstants.RING_SIZES);
+                smallestRings[i] = atom.getProperty(CDKConstants.SMALLEST_RINGS);
+                smallestRingSize[i] = atom.getProperty(MoleculeInitializer.SMALLEST_RING_SIZE);
+                ringConnections[i] = atom.getProperty(CDKConstants.RING_CONNECTIONS);
+                totalConnections[i] = atom.getProperty(CDKConstants.TOTAL_CONNECTIONS);
+                totalHCount[i] = atom.getProperty(CDKConstants.TOTAL_H_COUNT);
+            }
+            this.bondInRing = new boolean[bondCount];
+            this.bondAliphatic = new boolean[bondCount];
+            this.bondAromatic = new boolean[bondCount];
+            for (int i = 0; i < bondCount; i++) {
+                IBond bond = container.getBond(i);
+                bondInRing[i] = bond.getFlag(CDKConstants.ISINRING);
+                bondAliphatic[i] = bond.getFlag(CDKConstants.ISALIPHATIC);
+                bondAromatic[i] = bond.getFlag(CDKConstants.ISAROMATIC);
+            }
+            this.stamp = stamp(container);
+        }
+
+        void apply(IAtomContainer container) {
+            for (int i = 0; i < atomInRing.length; i++) {
+                IAtom atom = container.getAtom(i);
+                atom.setFlag(CDKConstants.ISINRING, atomInRing[i]);
+                atom.setFlag(CDKConstants.ISALIPHATIC, atomAliphatic[i]);
+                atom.setFlag(CDKConstants.ISAROMATIC, atomAromatic[i]);
+                setProperty(atom, CDKConstants.RING_SIZES, ringSizes[i]);
+                setProperty(atom, CDKConstants.SMALLEST_RINGS, smallestRings[i]);
+                setProperty(atom, MoleculeInitializer.SMALLEST_RING_SIZE, smallestRingSize[i]);
+                setProperty(atom, CDKConstants.RING_CONNECTIONS, ringConnections[i]);
+                setProperty(atom, CDKConstants.TOTAL_CONNECTIONS, totalConnections[i]);
+                setProperty(atom, CDKConstants.TOTAL_H_COUNT, totalHCount[i]);
+            }
+            for (int i = 0; i < bondInRing.length; i++) {
+                IBond bond = container.getBond(i);
+                bond.setFlag(CDKConstants.ISINRING, bondInRing[i]);
+                bond.setFlag(CDKConstants.ISALIPHATIC, bondAliphatic[i]);
+                bond.setFlag(CDKConstants.ISAROMATIC, bondAromatic[i]);
+            }
+        }
+
+        private static void setProperty(IAtom atom, Object key, Object value) {
+            if (value == null) {
+                atom.removeProperty(key);
+            } else {
+                atom.setProperty(key, value);
+            }
+        }
+    }
+}
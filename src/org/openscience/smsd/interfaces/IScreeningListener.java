@@ -0,0 +1,47 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.interfaces;
+
+import org.openscience.smsd.ScreeningHit;
+
+/**
+ * Receives the hits of a {@link org.openscience.smsd.ScreeningEngine} run. The
+ * engine never calls a listener from two threads at the same time. A listener
+ * may block (for example on a full queue), this throttles the screen.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+public interface IScreeningListener {
+
+    /**
+     * Called once for every target that matched the query.
+     *
+     * @param hit matched target and its mappings
+     * @throws InterruptedException if the listener was interrupted while waiting
+     */
+    public abstract void hit(ScreeningHit hit) throws InterruptedException;
+}
@@ -8,7 +8,10 @@ package org.openscience.smsd.interfaces;
 /**
  *
  * @author Asad
+ * @deprecated nothing reads these minute values, limit a search with a
+ * {@link org.openscience.smsd.tools.SearchBudget} instead
  */
+@Deprecated
 public interface ITimeOut {
 
     /**
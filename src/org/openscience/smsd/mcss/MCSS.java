@@ -19,12 +19,13 @@
 package org.openscience.smsd.mcss;
 
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
@@ -47,6 +48,8 @@ final public class MCSS {
     private final boolean matchBonds;
     private final boolean matchRings;
     private final boolean matchAtomType;
+    private final int minimumFragmentSize;
+    private final AtomicBoolean abort;
 
     /**
      *
@@ -76,6 +79,33 @@ final public class MCSS {
             boolean matchBonds,
             boolean matchRings,
             boolean matchAtomType) {
+        this(jobList, jobType, numberOfThreads, updater, matchBonds, matchRings, matchAtomType, 0);
+    }
+
+    /**
+     * MCSS which gives up as soon as the common fragment of any branch has
+     * fewer atoms than the minimum fragment size, the result is then empty
+     * and {@link #isAborted()} returns true. This saves most of the time
+     * spent on sets of dissimilar molecules.
+     *
+     * @param jobList
+     * @param jobType
+     * @param numberOfThreads
+     * @param updater
+     * @param matchBonds
+     * @param matchRings
+     * @param matchAtomType
+     * @param minimumFragmentSize smallest MCSS (in atoms) of interest, 0 to never give up
+     */
+    public MCSS(
+            List<IAtomContainer> jobList,
+            JobType jobType,
+            int numberOfThreads,
+            TaskUpdater updater,
+            boolean matchBonds,
+            boolean matchRings,
+            boolean matchAtomType,
+            int minimumFragmentSize) {
         int threadsAvailable = Runtime.getRuntime().availableProcessors() - 1;
         this.updater = updater;
 
@@ -106,6 +136,8 @@ final public class MCSS {
         this.matchBonds = matchBonds;
         this.matchRings = matchRings;
         this.matchAtomType = matchAtomType;
+        this.minimumFragmentSize = minimumFragmentSize;
+        this.abort = new AtomicBoolean(false);
         /*
          * Call the MCS
          */
@@ -120,19 +152,16 @@ final public class MCSS {
         }
         List<IAtomContainer> newMCSSList;
         if (nThreads == 1) {
-            newMCSSList = new LinkedList<IAtomContainer>(submitSingleThreadedJob(mcssList, jobType, updater, nThreads));
+            newMCSSList = new LinkedList<IAtomContainer>(submitSingleThreadedJob(mcssList, jobType, updater));
         } else {
             /*
-             * Calling recursive MCS
+             * Pairwise reduction tree, a SINGLE merge screens the larger
+             * fragment with the compiled smaller one before running MCS
              */
             newMCSSList = new LinkedList<IAtomContainer>(submitMultiThreadedJob(mcssList, jobType, updater, nThreads));
-            while (newMCSSList.size() > 1) {
-                if (newMCSSList.size() > 2) {
-                    newMCSSList = new LinkedList<IAtomContainer>(submitMultiThreadedJob(newMCSSList, jobType, updater, nThreads));
-                } else {
-                    newMCSSList = new LinkedList<IAtomContainer>(submitMultiThreadedJob(newMCSSList, jobType, updater, 1));
-                }
-            }
+        }
+        if (abort.get()) {
+            return new LinkedBlockingQueue<IAtomContainer>();
         }
         if (!mcssList.isEmpty() && !newMCSSList.isEmpty()) {
             IAtomContainer inTheList = mcssList.get(mcssList.size() - 1);
@@ -150,9 +179,10 @@ final public class MCSS {
         return Collections.unmodifiableCollection(calculateMCSS);
     }
 
-    private synchronized LinkedBlockingQueue<IAtomContainer> submitSingleThreadedJob(List<IAtomContainer> mcssList, JobType jobType, TaskUpdater updater, int nThreads) {
+    private synchronized LinkedBlockingQueue<IAtomContainer> submitSingleThreadedJob(List<IAtomContainer> mcssList, JobType jobType, TaskUpdater updater) {
         LinkedBlockingQueue<IAtomContainer> solutions = new LinkedBlockingQueue<IAtomContainer>();
-        MCSSThread task = new MCSSThread(mcssList, jobType, updater, 1);
+        MCSSThread task = new MCSSThread(mcssList, jobType, 1, updater, matchBonds, matchRings, matchAtomType,
+                minimumFragmentSize, abort);
         LinkedBlockingQueue<IAtomContainer> results = task.call();
         if (results != null) {
             solutions.addAll(results);
@@ -160,66 +190,77 @@ final public class MCSS {
         return solutions;
     }
 
+    /*
+     * Reduces the list by pairwise MCS merges. The two smallest pending
+     * fragments are merged as soon as a worker is free and the merged
+     * fragments go back to the pending queue, so there is no barrier between
+     * the levels of the reduction tree and small fragments collapse first.
+     */
     private synchronized LinkedBlockingQueue<IAtomContainer> submitMultiThreadedJob(List<IAtomContainer> mcssList, JobType jobType, TaskUpdater updater, int nThreads) {
-        int taskNumber = 1;
         LinkedBlockingQueue<IAtomContainer> solutions = new LinkedBlockingQueue<IAtomContainer>();
-        LinkedBlockingQueue<Callable<LinkedBlockingQueue<IAtomContainer>>> callablesQueue = 
-					new LinkedBlockingQueue<Callable<LinkedBlockingQueue<IAtomContainer>>>();
-        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
-        int step = (int) Math.ceil((double) mcssList.size() / (double) nThreads);
-        if (step < 2) {
-            step = 2; // Can't have a step size of less than 2
-        }
-        for (int i = 0; i < mcssList.size(); i += step) {
-            int endPoint = i + step;
-            if (endPoint > mcssList.size()) {
-                endPoint = mcssList.size();
-            }
-            List<IAtomContainer> subList = new ArrayList<IAtomContainer>(mcssList.subList(i, endPoint));
-            if (subList.size() > 1) {
-                MCSSThread mcssJobThread = new MCSSThread(subList, jobType, taskNumber, updater, matchBonds, matchRings,
-                        matchAtomType);
-                callablesQueue.add(mcssJobThread);
-                taskNumber++;
-            } else {
-                solutions.add(subList.get(0));
-            }
+        if (mcssList.isEmpty()) {
+            return solutions;
         }
+        PriorityQueue<IAtomContainer> pending
+                = new PriorityQueue<IAtomContainer>(mcssList.size(), new AtomContainerComparator());
+        pending.addAll(mcssList);
+        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        CompletionService<LinkedBlockingQueue<IAtomContainer>> merges
+                = new ExecutorCompletionService<LinkedBlockingQueue<IAtomContainer>>(threadPool);
+        int taskNumber = 1;
+        int running = 0;
         try {
-            /*
-             * Wait all the threads to finish
-             */
-            List<Future<LinkedBlockingQueue<IAtomContainer>>> futureList = threadPool.invokeAll(callablesQueue);
-            /*
-             * Collect the results
-             */
-            for (Iterator<Future<LinkedBlockingQueue<IAtomContainer>>> it = futureList.iterator(); it.hasNext();) {
-                Future<LinkedBlockingQueue<IAtomContainer>> callable = it.next();
-                LinkedBlockingQueue<IAtomContainer> mapping = callable.get();
-                if (callable.isDone() && mapping != null) {
-                    solutions.addAll(mapping);
-                } else {
-                    logger.warn("WARNING: InComplete job in AtomMappingTool: ");
+            while (true) {
+                while (pending.size() > 1 && running < nThreads) {
+                    List<IAtomContainer> pair = new ArrayList<IAtomContainer>(2);
+                    pair.add(pending.poll());
+                    pair.add(pending.poll());
+                    merges.submit(new MCSSThread(pair, jobType, taskNumber++, updater, matchBonds, matchRings,
+                            matchAtomType, minimumFragmentSize, abort));
+                    running++;
+                }
+                if (running == 0) {
+                    break;
+                }
+                LinkedBlockingQueue<IAtomContainer> merged = merges.take().get();
+                running--;
+                if (abort.get() || merged == null || merged.isEmpty()) {
+                    /*
+                     * two fragments without a common substructure, the MCSS is empty
+                     */
+                    pending.clear();
+                    break;
+                }
+                pending.addAll(merged);
+                /*
+                 * a SINGLE merge counts its own comparison
+                 */
+                if (updater != null && jobType.equals(JobType.MULTIPLE)) {
+                    updater.incrementCount();
                 }
             }
-            threadPool.shutdown();
-            // Wait until all threads are finish
-            while (!threadPool.isTerminated()) {
-            }
-            System.gc();
+            solutions.addAll(pending);
         } catch (InterruptedException e) {
             logger.debug("ERROR: in AtomMappingTool: " + e.getMessage());
             logger.error(e);
-				} catch (ExecutionException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
             logger.debug("ERROR: in AtomMappingTool: " + e.getMessage());
             logger.error(e);
         } finally {
-            threadPool.shutdown();
+            threadPool.shutdownNow();
         }
-
         return solutions;
     }
 
+    /**
+     * @return true if the MCSS was given up because a common fragment fell
+     * below the minimum fragment size
+     */
+    public synchronized boolean isAborted() {
+        return abort.get();
+    }
+
     public synchronized String getTitle() {
         return "Calculating Maximum Commmon Substrutures (MCSS) using SMSD";
     }
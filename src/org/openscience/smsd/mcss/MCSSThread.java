@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.smiles.SmilesGenerator;
@@ -32,7 +33,11 @@ import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 import org.openscience.smsd.AtomAtomMapping;
 import org.openscience.smsd.BaseMapping;
 import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.helper.MoleculeInitializer;
 import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * @cdk.module smsd
@@ -51,6 +56,9 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
     private final boolean matchBonds;
     private final boolean matchRings;
     private final boolean matchAtomType;
+    private final int minimumFragmentSize;
+    private final AtomicBoolean abort;
+    private CompiledQuery compiledSeed = null;
 
     /**
      *
@@ -75,6 +83,27 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
      */
     public MCSSThread(List<IAtomContainer> mcssList, JobType jobType, int taskNumber, 
 		        TaskUpdater updater, boolean matchBonds, boolean matchRings, boolean matchAtomType) {
+        this(mcssList, jobType, taskNumber, updater, matchBonds, matchRings, matchAtomType, 0, new AtomicBoolean(false));
+    }
+
+    /**
+     * Task which gives up as soon as the common fragment has fewer atoms than
+     * the minimum fragment size. A task that gives up sets the abort token and
+     * returns no MCSS, the other tasks sharing the token stop as well.
+     *
+     * @param mcssList
+     * @param jobType
+     * @param taskNumber
+     * @param updater
+     * @param matchBonds
+     * @param matchRings
+     * @param matchAtomType
+     * @param minimumFragmentSize smallest MCSS (in atoms) of interest, 0 to never give up
+     * @param abort abort token shared by the tasks of one MCSS job
+     */
+    public MCSSThread(List<IAtomContainer> mcssList, JobType jobType, int taskNumber,
+            TaskUpdater updater, boolean matchBonds, boolean matchRings, boolean matchAtomType,
+            int minimumFragmentSize, AtomicBoolean abort) {
         this.mcssList = mcssList;
         this.jobType = jobType;
         this.taskNumber = taskNumber;
@@ -82,7 +111,8 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
         this.matchBonds = matchBonds;
         this.matchRings = matchRings;
         this.matchAtomType = matchAtomType;
-
+        this.minimumFragmentSize = minimumFragmentSize;
+        this.abort = abort;
     }
 
     @Override
@@ -117,19 +147,20 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
             Set<Fragment> localSeeds = new TreeSet<Fragment>();
             int minSeedSize = querySeed.getAtomCount();
 
+            if (isBelowMinimum(querySeed.getAtomCount())) {
+                return mcss;
+            }
             for (int index = 1; index < mcssList.size(); index++) {
                 IAtomContainer target = mcssList.get(index);
-                Collection<Fragment> fragmentsFromMCS;
-                BaseMapping comparison;
-
-                comparison = new Isomorphism(querySeed, target, Algorithm.DEFAULT, matchBonds, matchRings, matchAtomType);
-                comparison.setChemFilters(true, true, true);
-                fragmentsFromMCS = getMCSS(comparison);
+                Collection<Fragment> fragmentsFromMCS = compare(querySeed, target);
+                if (abort.get()) {
+                    return mcss;
+                }
 
                 logger.debug("comparison for task " + taskNumber + " has " + fragmentsFromMCS.size()
-                        + " unique matches of size " + comparison.getFirstAtomMapping().getCount());
+                        + " unique matches of size " + getSize(fragmentsFromMCS));
                 System.out.println("comparison for task " + taskNumber + " has " + fragmentsFromMCS.size()
-                        + " unique matches of size " + comparison.getFirstAtomMapping().getCount());
+                        + " unique matches of size " + getSize(fragmentsFromMCS));
                 logger.debug("MCSS for task " + taskNumber + " has " + querySeed.getAtomCount() + " atoms, and " + querySeed.getBondCount() + " bonds");
                 System.out.println("MCSS for task " + taskNumber + " has " + querySeed.getAtomCount() + " atoms, and " + querySeed.getBondCount() + " bonds");
                 logger.debug("Target for task " + taskNumber + " has " + target.getAtomCount() + " atoms, and " + target.getBondCount() + " bonds");
@@ -157,6 +188,9 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
                         localSeeds.add(fragment);
                     }
                 }
+                if (isBelowMinimum(minSeedSize)) {
+                    return mcss;
+                }
             }
             /*
              * Add all the Maximum Unique Substructures
@@ -182,9 +216,11 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
                 Collection<Fragment> fragmentsFromMCS;
                 for (int index = 0; index < mcssList.size(); index++) {
                     IAtomContainer target = mcssList.get(index);
-                    Isomorphism comparison = new Isomorphism(fragmentMCS, target, Algorithm.DEFAULT, matchBonds, matchRings, matchAtomType);
-                    comparison.setChemFilters(true, true, true);
-                    fragmentsFromMCS = getMCSS(comparison);
+                    fragmentsFromMCS = compare(fragmentMCS, target);
+                    if (abort.get()) {
+                        mcss.clear();
+                        return mcss;
+                    }
 
                     /*
                      * Only true MCSS is added
@@ -207,6 +243,10 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
                             localSeeds.add(fragment);
                         }
                     }
+                    if (isBelowMinimum(minSeedSize)) {
+                        mcss.clear();
+                        return mcss;
+                    }
                     /*
                      * Top solution
                      */
@@ -248,21 +288,42 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
         long calcTime = startTime;
 
         try {
+            if (isBelowMinimum(querySeed.getAtomCount())) {
+                return mcss;
+            }
+            List<IAtomContainer> targets = new ArrayList<IAtomContainer>(mcssList.size());
             for (int index = 1; index < mcssList.size(); index++) {
                 IAtomContainer target = AtomContainerManipulator.removeHydrogens(mcssList.get(index));
-                Collection<Fragment> fragmentsFomMCS;
-                BaseMapping comparison;
-
-                comparison = new Isomorphism(querySeed, target, Algorithm.DEFAULT, matchBonds, matchRings, matchAtomType);
-                comparison.setChemFilters(true, true, true);
-                fragmentsFomMCS = getMCSS(comparison);
+                if (matchRings) {
+                    MoleculeInitializer.initializeMolecule(target);
+                }
+                targets.add(target);
+            }
+            int index = 0;
+            while (!targets.isEmpty()) {
+                /*
+                 * only the targets which do not contain the seed need a full MCS
+                 */
+                targets = screen(querySeed, targets);
+                if (abort.get()) {
+                    return mcss;
+                }
+                if (targets.isEmpty()) {
+                    break;
+                }
+                IAtomContainer target = targets.remove(0);
+                index++;
+                Collection<Fragment> fragmentsFomMCS = mcs(querySeed, target);
+                if (abort.get()) {
+                    return mcss;
+                }
 
                 logger.debug("comparison for task " + taskNumber + " has " + fragmentsFomMCS.size()
-                        + " unique matches of size " + comparison.getFirstAtomMapping().getCount());
+                        + " unique matches of size " + getSize(fragmentsFomMCS));
                 logger.debug("MCSS for task " + taskNumber + " has " + querySeed.getAtomCount() + " atoms, and " + querySeed.getBondCount() + " bonds");
                 logger.debug("Target for task " + taskNumber + " has " + target.getAtomCount() + " atoms, and " + target.getBondCount() + " bonds");
                 System.out.println("comparison for task " + taskNumber + " has " + fragmentsFomMCS.size()
-                        + " unique matches of size " + comparison.getFirstAtomMapping().getCount());
+                        + " unique matches of size " + getSize(fragmentsFomMCS));
                 System.out.println("MCSS for task " + taskNumber + " has " + querySeed.getAtomCount() + " atoms, and " + querySeed.getBondCount() + " bonds");
                 System.out.println("Target for task " + taskNumber + " has " + target.getAtomCount() + " atoms, and " + target.getBondCount() + " bonds");
                 long endCalcTime = Calendar.getInstance().getTimeInMillis();
@@ -274,6 +335,9 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
                     break;
                 }
                 querySeed = fragmentsFomMCS.iterator().next().getContainer();
+                if (isBelowMinimum(querySeed.getAtomCount())) {
+                    return mcss;
+                }
                 if (updater != null) updater.incrementCount();
             }
 
@@ -296,6 +360,108 @@ final public class MCSSThread implements Callable<LinkedBlockingQueue<IAtomConta
         return mcss;
     }
 
+    /*
+     * Common fragments of the query and the target. A query which is a
+     * substructure of the target is its own MCS, the cheap substructure check
+     * saves the MCS search and the chemical filters.
+     */
+    private synchronized Collection<Fragment> compare(IAtomContainer query, IAtomContainer target)
+            throws CDKException, CloneNotSupportedException {
+        if (matchRings) {
+            MoleculeInitializer.initializeMolecule(target);
+        }
+        if (contains(compile(query), target)) {
+            Set<Fragment> matchList = new HashSet<Fragment>();
+            matchList.add(new Fragment(query.clone()));
+            return matchList;
+        }
+        return mcs(query, target);
+    }
+
+    /*
+     * Full MCS of the query and the target with the chemical filters
+     */
+    private synchronized Collection<Fragment> mcs(IAtomContainer query, IAtomContainer target) {
+        BaseMapping comparison = new Isomorphism(query, target, Algorithm.DEFAULT, matchBonds, matchRings, matchAtomType,
+                SearchBudget.withIterationCaps(abort));
+        comparison.setChemFilters(true, true, true);
+        return getMCSS(comparison);
+    }
+
+    /*
+     * The compiled seed is kept until the seed changes
+     */
+    private synchronized CompiledQuery compile(IAtomContainer query) throws CDKException {
+        if (compiledSeed == null || compiledSeed.getQuery() != query) {
+            if (matchRings) {
+                MoleculeInitializer.initializeMolecule(query);
+            }
+            compiledSeed = new CompiledQuery(query, matchBonds, matchRings, matchAtomType);
+        }
+        return compiledSeed;
+    }
+
+    private boolean contains(CompiledQuery query, IAtomContainer target) {
+        return query.getQuery().getAtomCount() <= target.getAtomCount()
+                && query.findFirst(target, SearchBudget.withIterationCaps(abort)) != null;
+    }
+
+    /*
+     * Targets which do not contain the seed, the others can not shrink it.
+     * The misses are sorted so that the likely shrinkers come first: most
+     * seed fingerprint bits missing in the target, then fewest atoms.
+     */
+    private List<IAtomContainer> screen(IAtomContainer seed, List<IAtomContainer> targets) throws CDKException {
+        CompiledQuery query = compile(seed);
+        boolean[] hits = new boolean[targets.size()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = contains(query, targets.get(i));
+        }
+        final long[] seedBits = FingerprintScreen.getFingerprint(seed);
+        final Map<IAtomContainer, Integer> missingBits = new IdentityHashMap<IAtomContainer, Integer>();
+        List<IAtomContainer> misses = new ArrayList<IAtomContainer>();
+        for (int i = 0; i < hits.length; i++) {
+            IAtomContainer target = targets.get(i);
+            if (hits[i]) {
+                if (updater != null) {
+                    updater.incrementCount();
+                }
+                continue;
+            }
+            long[] targetBits = FingerprintScreen.getFingerprint(target);
+            int missing = 0;
+            if (seedBits != null && targetBits != null) {
+                for (int w = 0; w < seedBits.length; w++) {
+                    missing += Long.bitCount(seedBits[w] & ~targetBits[w]);
+                }
+            }
+            missingBits.put(target, missing);
+            misses.add(target);
+        }
+        Collections.sort(misses, new Comparator<IAtomContainer>() {
+            @Override
+            public int compare(IAtomContainer o1, IAtomContainer o2) {
+                int missing = missingBits.get(o2).compareTo(missingBits.get(o1));
+                return missing != 0 ? missing : o1.getAtomCount() - o2.getAtomCount();
+            }
+        });
+        return misses;
+    }
+
+    /*
+     * Sets the abort token if the common fragment is too small to be of interest
+     */
+    private boolean isBelowMinimum(int atomCount) {
+        if (atomCount < minimumFragmentSize) {
+            abort.set(true);
+        }
+        return abort.get();
+    }
+
+    private static int getSize(Collection<Fragment> fragments) {
+        return fragments.isEmpty() ? 0 : fragments.iterator().next().getContainer().getAtomCount();
+    }
+
     private synchronized Collection<Fragment> getMCSS(BaseMapping comparison) {
         Set<Fragment> matchList = new HashSet<Fragment>();
         for (AtomAtomMapping mapping : comparison.getAllAtomMapping()) {
@@ -60,6 +60,7 @@ import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IRing;
 import org.openscience.cdk.interfaces.IRingSet;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * Finds the Set of all Rings. This is an implementation of the algorithm
@@ -101,6 +102,35 @@ final public class HanserRingFinder {
         return Collections.synchronizedList(new ArrayList<List<IAtom>>(rings));
     }
 
+    /**
+     * Returns the rings of at most maxRingSize atoms based on Hanser Ring
+     * Finding method. The number of paths grows exponentially on fused ring
+     * systems, the size limit and the budget keep the search bounded.
+     *
+     * @param molecule
+     * @param maxRingSize largest ring size to report
+     * @param budget search budget or null
+     * @return report collected the rings
+     * @throws CDKException if the budget ran out before all the rings were found
+     */
+    public static Collection<List<IAtom>> findRings(IAtomContainer molecule, int maxRingSize, SearchBudget budget)
+            throws CDKException {
+        List<List<IAtom>> rings = new ArrayList<List<IAtom>>();
+        PathGraph graph = new PathGraph(molecule, maxRingSize, budget);
+
+        for (int i = 0; i < molecule.getAtomCount(); i++) {
+            List<PathEdge> edges = graph.remove(molecule.getAtom(i));
+            if (graph.isTimeout()) {
+                throw new CDKException("Ring perception stopped by the search budget: " + budget.getReason());
+            }
+
+            for (PathEdge edge : edges) {
+                rings.add(edge.getAtoms());
+            }
+        }
+        return rings;
+    }
+
     /**
      * Returns CDK object Ring set based on Hanser Ring Finding method
      * @param molecule
@@ -108,8 +138,25 @@ final public class HanserRingFinder {
      * @throws CDKException 
      */
     public static IRingSet getRingSet(IAtomContainer molecule) throws CDKException {
+        return toRingSet(molecule, findRings(molecule));
+    }
+
+    /**
+     * Returns CDK object Ring set of the rings of at most maxRingSize atoms
+     * based on Hanser Ring Finding method
+     *
+     * @param molecule
+     * @param maxRingSize largest ring size to report
+     * @param budget search budget or null
+     * @return report collected the rings
+     * @throws CDKException if the budget ran out before all the rings were found
+     */
+    public static IRingSet getRingSet(IAtomContainer molecule, int maxRingSize, SearchBudget budget) throws CDKException {
+        return toRingSet(molecule, findRings(molecule, maxRingSize, budget));
+    }
+
+    private static IRingSet toRingSet(IAtomContainer molecule, Collection<List<IAtom>> cycles) {
         IRingSet ringSet = DefaultChemObjectBuilder.getInstance().newInstance(IRingSet.class);
-        Collection<List<IAtom>> cycles = findRings(molecule);
         for (List<IAtom> ringAtoms : cycles) {
             IRing ring = molecule.getBuilder().newInstance(IRing.class);
             for (IAtom atom : ringAtoms) {
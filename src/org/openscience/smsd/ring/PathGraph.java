@@ -54,6 +54,7 @@ import java.util.List;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  *
@@ -67,11 +68,30 @@ public class PathGraph {
     private List<PathEdge> edges;
     private List<IAtom> atoms;
     private IAtomContainer mol;
+    private final int maxRingSize;
+    private final SearchBudget budget;
+    private boolean timeout = false;
 
     public PathGraph(IAtomContainer molecule) {
+        this(molecule, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Path graph which only keeps the paths that can still close a ring of at
+     * most maxRingSize atoms. Longer paths can only form larger rings, so the
+     * rings up to that size are all found while the number of paths stays
+     * bounded on fused ring systems.
+     *
+     * @param molecule
+     * @param maxRingSize largest ring size of interest
+     * @param budget search budget or null
+     */
+    public PathGraph(IAtomContainer molecule, int maxRingSize, SearchBudget budget) {
         edges = new ArrayList<PathEdge>();
         atoms = new ArrayList<IAtom>();
         this.mol = molecule;
+        this.maxRingSize = maxRingSize;
+        this.budget = budget;
 
         loadEdges(molecule);
         loadNodes(molecule);
@@ -118,9 +138,13 @@ public class PathGraph {
 
         for (int i = 0; i < edges.size(); i++) {
             for (int j = i + 1; j < edges.size(); j++) {
+                if (budget != null && budget.tick()) {
+                    timeout = true;
+                    return result;
+                }
                 PathEdge splice = edges.get(j).splice(edges.get(i));
 
-                if (splice != null) {
+                if (splice != null && isWithinRingSize(splice)) {
                     result.add(splice);
                 }
             }
@@ -129,6 +153,22 @@ public class PathGraph {
         return result;
     }
 
+    /*
+     * a cycle lists its first atom twice, an open path needs at least one more
+     * bond to close
+     */
+    private boolean isWithinRingSize(PathEdge edge) {
+        int size = edge.getAtoms().size();
+        return (edge.isCycle() ? size - 1 : size) <= maxRingSize;
+    }
+
+    /**
+     * @return true if the search budget ran out while splicing the paths
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
     private List<PathEdge> getEdges(IAtom atom) {
         List<PathEdge> result = new ArrayList<PathEdge>();
 
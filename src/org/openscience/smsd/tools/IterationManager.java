@@ -38,6 +38,8 @@ public class IterationManager implements Serializable {
     private int max;
     private int counter;
     private int coverage;
+    private final transient SearchBudget budget;
+    private final String name;
 
     /**
      * Constructor for storing execution time
@@ -52,9 +54,36 @@ public class IterationManager implements Serializable {
      * @param maxIteration
      */
     public IterationManager(int maxIteration) {
+        this(maxIteration, null);
+    }
+
+    /**
+     * Constructor for storing execution time. If a budget is given every
+     * iteration is counted against it and it replaces the iteration cap,
+     * unless it keeps the caps (see {@link SearchBudget#keepsIterationCaps()}).
+     *
+     * @param maxIteration
+     * @param budget search budget or null
+     */
+    public IterationManager(int maxIteration, SearchBudget budget) {
+        this(maxIteration, budget, "IterationManager");
+    }
+
+    /**
+     * Constructor for storing execution time. The counter is reported under
+     * the given name in the {@link SearchStats} of the running search.
+     *
+     * @param maxIteration
+     * @param budget search budget or null
+     * @param name name of the algorithm using the manager
+     */
+    public IterationManager(int maxIteration, SearchBudget budget, String name) {
         this.counter = 0;
         this.coverage = 1000;
         this.max = maxIteration;
+        this.budget = budget;
+        this.name = name;
+        SearchStats.register(this);
     }
 
     /**
@@ -62,7 +91,7 @@ public class IterationManager implements Serializable {
      *
      * @return Number of iterations
      */
-    public synchronized int getCounter() {
+    public int getCounter() {
         return counter;
     }
 
@@ -71,8 +100,11 @@ public class IterationManager implements Serializable {
      *
      *
      */
-    public synchronized void increment() {
+    public void increment() {
         counter++;
+        if (budget != null) {
+            budget.tick();
+        }
     }
 
     /**
@@ -80,25 +112,40 @@ public class IterationManager implements Serializable {
      *
      *
      */
-    public synchronized void decrement() {
+    public void decrement() {
         counter--;
     }
 
-    public synchronized boolean isMaxIteration() {
+    public boolean isMaxIteration() {
+        if (budget != null) {
+            if (budget.isExhausted()) {
+                return true;
+            }
+            if (!budget.keepsIterationCaps()) {
+                return false;
+            }
+        }
         return getCounter() > (this.max * this.coverage);
     }
 
+    /**
+     * @return the name reported in the search statistics
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * @return the coverage
      */
-    public synchronized int getCoverage() {
+    public int getCoverage() {
         return coverage;
     }
 
     /**
      * @param coverage the coverage to set
      */
-    public synchronized void setCoverage(int coverage) {
+    public void setCoverage(int coverage) {
         this.coverage = coverage;
     }
 }
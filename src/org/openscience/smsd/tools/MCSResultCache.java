@@ -0,0 +1,659 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IDoubleBondStereochemistry;
+import org.openscience.cdk.interfaces.IStereoElement;
+import org.openscience.cdk.interfaces.ITetrahedralChirality;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.helper.CompiledGraph;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import org.openscience.smsd.interfaces.Algorithm;
+
+/**
+ * Size bounded cache of MCS results in front of {@link Isomorphism}. The
+ * results are keyed on a canonical form of both molecules plus the match
+ * flags and the algorithm, so a pair asked for again (even as new container
+ * objects or in another atom order) is answered without a search.
+ *
+ * <pre>
+ *  MCSResultCache cache = new MCSResultCache(10000, new File("mcs.cache"));
+ *  double similarity = cache.getTanimotoSimilarity(query, target, Algorithm.DEFAULT, true, true, true);
+ *  ...
+ *  cache.close(); // writes the spill file
+ * </pre>
+ *
+ * A miss runs the search and the chemical filters
+ * ({@link Isomorphism#setChemFilters(boolean, boolean, boolean)} with all
+ * filters on); results of searches which ran out of time, or which saw only
+ * the fallback ring perception of {@link MoleculeInitializer}, are not stored.
+ * Hits and misses both return an unmodifiable list. The mappings are stored as index arrays in canonical atom order, least recently
+ * used entries are evicted first. If a spill file is given the cache is
+ * loaded from it on construction and written to it by {@link #flush()} and
+ * {@link #close()}.
+ *
+ * The canonical form refines atom invariants (element, charge, hydrogens,
+ * aromaticity, mass number, stereo parity, bond order) and breaks the
+ * remaining ties one atom at a time. The stereo bonds and stereo elements are
+ * part of the form, so pairs which the stereo filter may rank differently do
+ * not share a key. For the rare molecules where this depends on the input order the
+ * same molecule may get two keys, which only costs a miss.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.MCSResultCacheTest")
+public final class MCSResultCache implements Closeable {
+
+    private static final ILoggingTool logger =
+            LoggingToolFactory.createLoggingTool(MCSResultCache.class);
+    private static final long MAGIC = 0x534d53444d435331L; // "SMSDMCS1"
+    private static final int VERSION = 2;
+    private static final int[][] NO_MAPPINGS = new int[0][];
+    private final int maximumSize;
+    private final File spillFile;
+    private final LinkedHashMap<String, int[][]> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates an in-memory cache.
+     *
+     * @param maximumSize number of pairs kept
+     */
+    @TestMethod("testHit,testEviction")
+    public MCSResultCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.spillFile = null;
+        this.entries = newEntries();
+    }
+
+    /**
+     * Creates a cache backed by a spill file. The entries stored in the file
+     * (if it exists) are loaded.
+     *
+     * @param maximumSize number of pairs kept
+     * @param spillFile file the cache is written to and loaded from
+     * @throws IOException if the spill file can not be read or is not a cache
+     */
+    @TestMethod("testSpill")
+    public MCSResultCache(int maximumSize, File spillFile) throws IOException {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.spillFile = spillFile;
+        this.entries = newEntries();
+        if (spillFile.exists()) {
+            load();
+        }
+    }
+
+    private LinkedHashMap<String, int[][]> newEntries() {
+        return new LinkedHashMap<String, int[][]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 8761393461297113L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[][]> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the MCS mappings of the pair, sorted by the chemical filters.
+     *
+     * @param query query molecule
+     * @param target target molecule
+     * @param algorithm MCS algorithm
+     * @param matchBonds match bond types
+     * @param matchRings match ring atoms and ring sizes
+     * @param matchAtomType match atom types
+     * @return unmodifiable list of the mappings, best first
+     */
+    @TestMethod("testHit,testAtomOrder,testStereo,testUnmodifiable")
+    public List<AtomAtomMapping> getAllAtomMapping(IAtomContainer query, IAtomContainer target,
+            Algorithm algorithm, boolean matchBonds, boolean matchRings, boolean matchAtomType) {
+        if (matchRings) {
+            /*
+             * the search perceives the molecules, do it first so that the key
+             * sees the same aromaticity before and after the search
+             */
+            try {
+                MoleculeInitializer.initializeMolecule(query);
+                MoleculeInitializer.initializeMolecule(target);
+            } catch (CDKException e) {
+                logger.warn("Perception failed: " + e.getMessage());
+            }
+        }
+        Canonical canonicalQuery = new Canonical(query);
+        Canonical canonicalTarget = new Canonical(target);
+        String key = key(canonicalQuery, canonicalTarget, algorithm, matchBonds, matchRings, matchAtomType);
+        int[][] mappings;
+        synchronized (this) {
+            mappings = entries.get(key);
+            if (mappings != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (mappings == null) {
+            Isomorphism comparison = new Isomorphism(query, target, algorithm, matchBonds, matchRings, matchAtomType);
+            comparison.setChemFilters(true, true, true);
+            List<AtomAtomMapping> result = comparison.getAllAtomMapping();
+            if (comparison.isExhaustive() && (!matchRings || isPerceived(query, target))) {
+                mappings = new int[result.size()][];
+                for (int i = 0; i < mappings.length; i++) {
+                    mappings[i] = encode(result.get(i), canonicalQuery, canonicalTarget);
+                }
+                synchronized (this) {
+                    entries.put(key, mappings.length == 0 ? NO_MAPPINGS : mappings);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+        List<AtomAtomMapping> result = new ArrayList<AtomAtomMapping>(mappings.length);
+        for (int[] mapping : mappings) {
+            result.add(decode(mapping, canonicalQuery, canonicalTarget));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @param query query molecule
+     * @param target target molecule
+     * @param algorithm MCS algorithm
+     * @param matchBonds match bond types
+     * @param matchRings match ring atoms and ring sizes
+     * @param matchAtomType match atom types
+     * @return best MCS mapping, empty if the molecules have nothing in common
+     */
+    @TestMethod("testHit")
+    public AtomAtomMapping getFirstAtomMapping(IAtomContainer query, IAtomContainer target,
+            Algorithm algorithm, boolean matchBonds, boolean matchRings, boolean matchAtomType) {
+        List<AtomAtomMapping> mappings = getAllAtomMapping(query, target, algorithm, matchBonds, matchRings, matchAtomType);
+        return mappings.isEmpty() ? new AtomAtomMapping(query, target) : mappings.get(0);
+    }
+
+    /**
+     * Atom based Tanimoto similarity of the pair, see
+     * {@link org.openscience.smsd.BaseMapping#getTanimotoSimilarity()}.
+     *
+     * @param query query molecule
+     * @param target target molecule
+     * @param algorithm MCS algorithm
+     * @param matchBonds match bond types
+     * @param matchRings match ring atoms and ring sizes
+     * @param matchAtomType match atom types
+     * @return Tanimoto similarity rounded to 4 decimal places
+     */
+    @TestMethod("testHit")
+    public double getTanimotoSimilarity(IAtomContainer query, IAtomContainer target,
+            Algorithm algorithm, boolean matchBonds, boolean matchRings, boolean matchAtomType) {
+        AtomAtomMapping mapping = getFirstAtomMapping(query, target, algorithm, matchBonds, matchRings, matchAtomType);
+        if (mapping.isEmpty()) {
+            return 0.0;
+        }
+        double common = mapping.getCount();
+        double tanimoto = common / (query.getAtomCount() + target.getAtomCount() - common);
+        return Math.round(tanimoto * 10000.0) / 10000.0;
+    }
+
+    /**
+     * @return number of pairs in the cache
+     */
+    @TestMethod("testEviction")
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    @TestMethod("testHit")
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which ran a search
+     */
+    @TestMethod("testHit")
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Removes all pairs, the spill file is left as it is.
+     */
+    @TestMethod("testEviction")
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Writes the cache to the spill file, does nothing for an in-memory cache.
+     * The file is replaced only once the new content is complete.
+     *
+     * @throws IOException
+     */
+    @TestMethod("testSpill")
+    public synchronized void flush() throws IOException {
+        if (spillFile == null) {
+            return;
+        }
+        File temporary = new File(spillFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            /*
+             * least recently used first, loading restores the order
+             */
+            for (Map.Entry<String, int[][]> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                int[][] mappings = entry.getValue();
+                out.writeInt(mappings.length);
+                for (int[] mapping : mappings) {
+                    out.writeInt(mapping.length);
+                    for (int index : mapping) {
+                        out.writeInt(index);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(spillFile)) {
+            if (!spillFile.delete() || !temporary.renameTo(spillFile)) {
+                throw new IOException("Can not replace the MCS cache file " + spillFile);
+            }
+        }
+    }
+
+    /**
+     * Writes the spill file, see {@link #flush()}.
+     *
+     * @throws IOException
+     */
+    @Override
+    @TestMethod("testSpill")
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+        try {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not an SMSD MCS cache: " + spillFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported MCS cache version " + version + ": " + spillFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int[][] mappings = new int[in.readInt()][];
+                for (int j = 0; j < mappings.length; j++) {
+                    mappings[j] = new int[in.readInt()];
+                    for (int k = 0; k < mappings[j].length; k++) {
+                        mappings[j][k] = in.readInt();
+                    }
+                }
+                entries.put(key, mappings.length == 0 ? NO_MAPPINGS : mappings);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * a perception which fell back to the SSSR matched other ring sizes than
+     * a complete one would, the result is not stored under the key
+     */
+    private static boolean isPerceived(IAtomContainer query, IAtomContainer target) {
+        return MoleculeInitializer.isInitialized(query) && !MoleculeInitializer.isDegraded(query)
+                && MoleculeInitializer.isInitialized(target) && !MoleculeInitializer.isDegraded(target);
+    }
+
+    private static String key(Canonical query, Canonical target, Algorithm algorithm,
+            boolean matchBonds, boolean matchRings, boolean matchAtomType) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.form).append('|').append(target.form).append('|').append(algorithm);
+        sb.append(matchBonds ? 'B' : 'b').append(matchRings ? 'R' : 'r').append(matchAtomType ? 'T' : 't');
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return sb.toString();
+        } catch (UnsupportedEncodingException e) {
+            return sb.toString();
+        }
+    }
+
+    /*
+     * target canonical position per query canonical position, -1 if unmapped
+     */
+    private static int[] encode(AtomAtomMapping mapping, Canonical query, Canonical target) {
+        int[] encoded = new int[query.order.length];
+        Arrays.fill(encoded, -1);
+        for (int i = 0; i < encoded.length; i++) {
+            int j = mapping.getMappedTargetIndex(i);
+            if (j != -1) {
+                encoded[query.rank[i]] = target.rank[j];
+            }
+        }
+        return encoded;
+    }
+
+    private static AtomAtomMapping decode(int[] encoded, Canonical query, Canonical target) {
+        AtomAtomMapping mapping = new AtomAtomMapping(query.container, target.container);
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] != -1) {
+                mapping.put(query.order[i], target.order[encoded[i]]);
+            }
+        }
+        return mapping;
+    }
+
+    /*
+     * Canonical atom order and form of a molecule. The atom classes are
+     * refined by their neighbourhoods until stable; while classes with more
+     * than one atom are left, the first atom of the first such class is
+     * split off and the classes are refined again.
+     */
+    private static final class Canonical {
+
+        private final IAtomContainer container;
+        private final int[] order;
+        private final int[] rank;
+        private final String form;
+
+        Canonical(IAtomContainer container) {
+            this.container = container;
+            int atomCount = container.getAtomCount();
+            CompiledGraph graph = new CompiledGraph(container);
+            String[] invariants = new String[atomCount];
+            for (int i = 0; i < atomCount; i++) {
+                invariants[i] = invariant(container.getAtom(i), graph.getDegree(i));
+            }
+            int[] classes = initialClasses(invariants);
+            int classCount = refine(graph, classes);
+            while (classCount < atomCount) {
+                classCount = refine(graph, split(classes));
+            }
+            this.order = new int[atomCount];
+            this.rank = classes;
+            for (int i = 0; i < atomCount; i++) {
+                order[classes[i]] = i;
+            }
+            List<String> bonds = new ArrayList<String>(graph.getBondCount());
+            for (int b = 0; b < graph.getBondCount(); b++) {
+                int i = graph.getBondBegin(b);
+                int j = graph.getBondEnd(b);
+                if (i == -1 || j == -1) {
+                    continue;
+                }
+                int first = Math.min(rank[i], rank[j]);
+                int second = Math.max(rank[i], rank[j]);
+                bonds.add(first + "-" + second + ":" + bondLabel(container.getBond(b)));
+            }
+            Collections.sort(bonds);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < atomCount; i++) {
+                sb.append(invariants[order[i]]).append(';');
+            }
+            for (String bond : bonds) {
+                sb.append(bond).append(';');
+            }
+            for (String stereo : stereo(container, graph, rank)) {
+                sb.append(stereo).append(';');
+            }
+            this.form = sb.toString();
+        }
+
+        private static String invariant(IAtom atom, int degree) {
+            Integer charge = atom.getFormalCharge();
+            Integer hydrogens = atom.getImplicitHydrogenCount();
+            Integer massNumber = atom.getMassNumber();
+            Integer parity = atom.getStereoParity();
+            return atom.getSymbol()
+                    + ',' + (charge == null ? 0 : charge)
+                    + ',' + (hydrogens == null ? 0 : hydrogens)
+                    + ',' + (atom.getFlag(CDKConstants.ISAROMATIC) ? 'a' : 'A')
+                    + ',' + (massNumber == null ? 0 : massNumber)
+                    + ',' + (parity == null ? 0 : parity)
+                    + ',' + degree;
+        }
+
+        /*
+         * wedges in their drawn direction, then the tetrahedral and double bond
+         * stereo elements, all in canonical positions
+         */
+        private static List<String> stereo(IAtomContainer container, CompiledGraph graph, int[] rank) {
+            List<String> stereo = new ArrayList<String>();
+            for (int b = 0; b < graph.getBondCount(); b++) {
+                IBond bond = container.getBond(b);
+                if (bond.getStereo() != null && bond.getStereo() != IBond.Stereo.NONE) {
+                    stereo.add("/" + position(bond, graph, rank) + ":" + bond.getStereo());
+                }
+            }
+            for (IStereoElement element : container.stereoElements()) {
+                if (element instanceof ITetrahedralChirality) {
+                    ITetrahedralChirality chirality = (ITetrahedralChirality) element;
+                    StringBuilder sb = new StringBuilder("@");
+                    sb.append(position(chirality.getChiralAtom(), graph, rank));
+                    for (IAtom ligand : chirality.getLigands()) {
+                        sb.append(',').append(position(ligand, graph, rank));
+                    }
+                    stereo.add(sb.append(':').append(chirality.getStereo()).toString());
+                } else if (element instanceof IDoubleBondStereochemistry) {
+                    IDoubleBondStereochemistry doubleBond = (IDoubleBondStereochemistry) element;
+                    StringBuilder sb = new StringBuilder("=");
+                    sb.append(position(doubleBond.getStereoBond(), graph, rank));
+                    for (IBond bond : doubleBond.getBonds()) {
+                        sb.append(',').append(position(bond, graph, rank));
+                    }
+                    stereo.add(sb.append(':').append(doubleBond.getStereo()).toString());
+                }
+            }
+            Collections.sort(stereo);
+            return stereo;
+        }
+
+        private static String position(IBond bond, CompiledGraph graph, int[] rank) {
+            return position(bond.getAtom(0), graph, rank) + ">" + position(bond.getAtom(1), graph, rank);
+        }
+
+        private static int position(IAtom atom, CompiledGraph graph, int[] rank) {
+            int index = graph.indexOf(atom);
+            return index == -1 ? -1 : rank[index];
+        }
+
+        /*
+         * bond order, aromatic bonds match whatever their Kekule order so it
+         * is left out for them; the ring flag depends on the perception and is
+         * left out as well
+         */
+        private static int bondLabel(IBond bond) {
+            if (bond.getFlag(CDKConstants.ISAROMATIC)) {
+                return 0x10;
+            }
+            return bond.getOrder() == null ? 0 : bond.getOrder().ordinal() + 1;
+        }
+
+        private static int[] initialClasses(final String[] invariants) {
+            Integer[] atoms = new Integer[invariants.length];
+            for (int i = 0; i < atoms.length; i++) {
+                atoms[i] = i;
+            }
+            Arrays.sort(atoms, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return invariants[a].compareTo(invariants[b]);
+                }
+            });
+            int[] classes = new int[invariants.length];
+            for (int k = 1; k < atoms.length; k++) {
+                boolean same = invariants[atoms[k]].equals(invariants[atoms[k - 1]]);
+                classes[atoms[k]] = same ? classes[atoms[k - 1]] : k;
+            }
+            return classes;
+        }
+
+        /*
+         * classes are the index of the first atom of the class in the sorted
+         * order, refinement keeps the relative order of the classes
+         */
+        private static int refine(CompiledGraph graph, int[] classes) {
+            int atomCount = classes.length;
+            int classCount = countClasses(classes);
+            while (true) {
+                final long[][] signatures = new long[atomCount][];
+                for (int i = 0; i < atomCount; i++) {
+                    int[] neighbours = graph.getNeighbours(i);
+                    int[] neighbourBonds = graph.getNeighbourBonds(i);
+                    long[] signature = new long[neighbours.length + 1];
+                    for (int k = 0; k < neighbours.length; k++) {
+                        int label = bondLabel(graph.getContainer().getBond(neighbourBonds[k]));
+                        signature[k + 1] = ((long) classes[neighbours[k]] << 8) | label;
+                    }
+                    Arrays.sort(signature, 1, signature.length);
+                    signature[0] = classes[i];
+                    signatures[i] = signature;
+                }
+                Integer[] atoms = new Integer[atomCount];
+                for (int i = 0; i < atomCount; i++) {
+                    atoms[i] = i;
+                }
+                Arrays.sort(atoms, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return compareSignatures(signatures[a], signatures[b]);
+                    }
+                });
+                for (int k = 0; k < atomCount; k++) {
+                    boolean same = k > 0 && compareSignatures(signatures[atoms[k]], signatures[atoms[k - 1]]) == 0;
+                    classes[atoms[k]] = same ? classes[atoms[k - 1]] : k;
+                }
+                int refined = countClasses(classes);
+                if (refined == classCount) {
+                    return refined;
+                }
+                classCount = refined;
+            }
+        }
+
+        /*
+         * splits the lowest atom of the first class with more than one atom
+         */
+        private static int[] split(int[] classes) {
+            int atomCount = classes.length;
+            int[] size = new int[atomCount];
+            for (int i = 0; i < atomCount; i++) {
+                size[classes[i]]++;
+            }
+            int tied = -1;
+            for (int c = 0; c < atomCount; c++) {
+                if (size[c] > 1) {
+                    tied = c;
+                    break;
+                }
+            }
+            for (int i = 0; i < atomCount; i++) {
+                if (classes[i] == tied) {
+                    for (int j = i + 1; j < atomCount; j++) {
+                        if (classes[j] == tied) {
+                            classes[j] = tied + 1;
+                        }
+                    }
+                    break;
+                }
+            }
+            return classes;
+        }
+
+        private static int countClasses(int[] classes) {
+            boolean[] seen = new boolean[classes.length];
+            int count = 0;
+            for (int c : classes) {
+                if (!seen[c]) {
+                    seen[c] = true;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int compareSignatures(long[] a, long[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int k = 0; k < length; k++) {
+                if (a[k] != b[k]) {
+                    return a[k] < b[k] ? -1 : 1;
+                }
+            }
+            return a.length - b.length;
+        }
+    }
+}
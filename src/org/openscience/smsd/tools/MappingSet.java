@@ -0,0 +1,355 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.smsd.AtomAtomMapping;
+
+/**
+ * Set of atom-atom mappings used to drop duplicate solutions in O(1) instead
+ * of comparing a new mapping with every stored one.
+ *
+ * A mapping is reduced to its (query index, target index) pairs sorted by
+ * query index, the pairs are hashed into a 64 bit fingerprint and kept in an
+ * open addressing table. Mappings with the same fingerprint are compared pair
+ * by pair, so a fingerprint collision never drops a distinct mapping.
+ *
+ * An optional minimum size turns the set into a "keep only size &ge; k"
+ * filter: smaller mappings are not admitted and raising the minimum evicts
+ * the stored mappings below it.
+ *
+ * The set only stores the pairs, the caller keeps its own list of solutions.
+ * It is not thread safe.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.MappingSetTest")
+public final class MappingSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long[] EMPTY = new long[0];
+    private long[] fingerprints;
+    private long[][] entries;
+    private int count;
+    private int minimumSize;
+    private int largestSize;
+    private long[] scratch;
+    private int scratchLength;
+
+    /**
+     * Creates an empty set which admits mappings of any size.
+     */
+    public MappingSet() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty set which only admits mappings of at least minimumSize
+     * pairs.
+     *
+     * @param minimumSize smallest mapping size admitted
+     */
+    public MappingSet(int minimumSize) {
+        this.minimumSize = Math.max(0, minimumSize);
+        this.fingerprints = new long[INITIAL_CAPACITY];
+        this.entries = new long[INITIAL_CAPACITY][];
+        this.scratch = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds an index mapping (query index to target index).
+     *
+     * @param mapping index mapping
+     * @return true if the mapping was admitted, false if it is stored already
+     * or smaller than the minimum size
+     */
+    @TestMethod("testAddMap")
+    public boolean add(Map<Integer, Integer> mapping) {
+        load(mapping);
+        return admit();
+    }
+
+    /**
+     * @param mapping index mapping (query index to target index)
+     * @return true if the mapping is stored
+     */
+    @TestMethod("testAddMap")
+    public boolean contains(Map<Integer, Integer> mapping) {
+        load(mapping);
+        return find(fingerprint()) != -1;
+    }
+
+    /**
+     * Adds an atom-atom mapping.
+     *
+     * @param mapping atom-atom mapping
+     * @return true if the mapping was admitted, false if it is stored already
+     * or smaller than the minimum size
+     */
+    @TestMethod("testAddAtomAtomMapping")
+    public boolean add(AtomAtomMapping mapping) {
+        load(mapping);
+        return admit();
+    }
+
+    /**
+     * @param mapping atom-atom mapping
+     * @return true if the mapping is stored
+     */
+    @TestMethod("testAddAtomAtomMapping")
+    public boolean contains(AtomAtomMapping mapping) {
+        load(mapping);
+        return find(fingerprint()) != -1;
+    }
+
+    /**
+     * Adds a mapping given as the target index of each query index, -1 for an
+     * unmapped query atom.
+     *
+     * @param core target index per query index
+     * @return true if the mapping was admitted, false if it is stored already
+     * or smaller than the minimum size
+     */
+    @TestMethod("testAddCore")
+    public boolean add(int[] core) {
+        load(core);
+        return admit();
+    }
+
+    /**
+     * @param core target index per query index, -1 for an unmapped query atom
+     * @return true if the mapping is stored
+     */
+    @TestMethod("testAddCore")
+    public boolean contains(int[] core) {
+        load(core);
+        return find(fingerprint()) != -1;
+    }
+
+    /**
+     * @return number of stored mappings
+     */
+    @TestMethod("testAddMap")
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return true if no mapping is stored
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return size of the largest mapping admitted since the last
+     * {@link #clear()}
+     */
+    @TestMethod("testLargestSize")
+    public int getLargestSize() {
+        return largestSize;
+    }
+
+    /**
+     * @return smallest mapping size admitted
+     */
+    public int getMinimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * Sets the smallest mapping size admitted. Stored mappings below the new
+     * minimum are evicted.
+     *
+     * @param minimumSize smallest mapping size admitted
+     */
+    @TestMethod("testMinimumSize")
+    public void setMinimumSize(int minimumSize) {
+        minimumSize = Math.max(0, minimumSize);
+        boolean raised = minimumSize > this.minimumSize;
+        this.minimumSize = minimumSize;
+        if (raised && count > 0) {
+            long[] oldFingerprints = fingerprints;
+            long[][] oldEntries = entries;
+            fingerprints = new long[oldFingerprints.length];
+            entries = new long[oldEntries.length][];
+            count = 0;
+            for (int i = 0; i < oldEntries.length; i++) {
+                if (oldEntries[i] != null && oldEntries[i].length >= minimumSize) {
+                    insert(oldFingerprints[i], oldEntries[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all mappings, the minimum size is kept.
+     */
+    @TestMethod("testLargestSize")
+    public void clear() {
+        if (count > 0) {
+            Arrays.fill(fingerprints, 0L);
+            Arrays.fill(entries, null);
+        }
+        count = 0;
+        largestSize = 0;
+    }
+
+    private boolean admit() {
+        if (scratchLength < minimumSize) {
+            return false;
+        }
+        long fingerprint = fingerprint();
+        if (find(fingerprint) != -1) {
+            SearchStats.solutions(1, 0);
+            return false;
+        }
+        if ((count + 1) * 2 > entries.length) {
+            rehash(entries.length * 2);
+        }
+        insert(fingerprint, scratchLength == 0 ? EMPTY : Arrays.copyOf(scratch, scratchLength));
+        largestSize = Math.max(largestSize, scratchLength);
+        SearchStats.solutions(1, 1);
+        return true;
+    }
+
+    private void insert(long fingerprint, long[] pairs) {
+        int mask = entries.length - 1;
+        int slot = slot(fingerprint, mask);
+        while (entries[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        entries[slot] = pairs;
+        fingerprints[slot] = fingerprint;
+        count++;
+    }
+
+    private int find(long fingerprint) {
+        int mask = entries.length - 1;
+        int slot = slot(fingerprint, mask);
+        while (entries[slot] != null) {
+            if (fingerprints[slot] == fingerprint && samePairs(entries[slot])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldFingerprints = fingerprints;
+        long[][] oldEntries = entries;
+        fingerprints = new long[capacity];
+        entries = new long[capacity][];
+        count = 0;
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] != null) {
+                insert(oldFingerprints[i], oldEntries[i]);
+            }
+        }
+    }
+
+    private boolean samePairs(long[] pairs) {
+        if (pairs.length != scratchLength) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (pairs[i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    /*
+     * 64 bit hash of the sorted pairs in the scratch buffer
+     */
+    private long fingerprint() {
+        long h = 0x9E3779B97F4A7C15L ^ scratchLength;
+        for (int i = 0; i < scratchLength; i++) {
+            h = mix(h ^ scratch[i]);
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static long pair(int queryIndex, int targetIndex) {
+        return ((long) queryIndex << 32) | (targetIndex & 0xFFFFFFFFL);
+    }
+
+    private void reserve(int length) {
+        if (scratch.length < length) {
+            scratch = new long[Math.max(length, scratch.length * 2)];
+        }
+        scratchLength = 0;
+    }
+
+    private void load(Map<Integer, Integer> mapping) {
+        reserve(mapping.size());
+        boolean sorted = true;
+        for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+            long p = pair(entry.getKey(), entry.getValue());
+            if (scratchLength > 0 && scratch[scratchLength - 1] > p) {
+                sorted = false;
+            }
+            scratch[scratchLength++] = p;
+        }
+        if (!sorted) {
+            Arrays.sort(scratch, 0, scratchLength);
+        }
+    }
+
+    private void load(AtomAtomMapping mapping) {
+        int queryCount = mapping.getQuery().getAtomCount();
+        reserve(mapping.getCount());
+        for (int q = 0; q < queryCount && scratchLength < mapping.getCount(); q++) {
+            int t = mapping.getMappedTargetIndex(q);
+            if (t != -1) {
+                scratch[scratchLength++] = pair(q, t);
+            }
+        }
+    }
+
+    private void load(int[] core) {
+        reserve(core.length);
+        for (int q = 0; q < core.length; q++) {
+            if (core[q] != -1) {
+                scratch[scratchLength++] = pair(q, core[q]);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+
+/**
+ * Time and work budget of a search. A budget combines a wall clock deadline, an
+ * iteration cap, the interrupt status of the thread which created it and a
+ * cancel token; the first of them to run out stops the search. The algorithms
+ * then return the best mappings found so far and report a timeout, see
+ * {@link org.openscience.smsd.BaseMapping#isExhaustive()}.
+ *
+ * A budget replaces the iteration caps the algorithms use by default, except
+ * a budget made by {@link #withIterationCaps(AtomicBoolean)}, which only adds
+ * its cancel token to them. A budget is safe to share between the threads of
+ * one search and it can be cancelled from any thread. Once run out a budget stays exhausted, use a fresh budget for
+ * every call.
+ *
+ * <pre>
+ *  SearchBudget budget = new SearchBudget(TimeUnit.MILLISECONDS.toNanos(200), 0);
+ *  Isomorphism comparison = new Isomorphism(query, target, Algorithm.DEFAULT, true, true, true, budget);
+ *  if (!comparison.isExhaustive()) {
+ *      // best partial MCS, the search ran out of time
+ *  }
+ * </pre>
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.SearchBudgetTest")
+public final class SearchBudget {
+
+    /**
+     * Why a search was stopped.
+     */
+    public enum Reason {
+
+        /**
+         * The budget is not exhausted.
+         */
+        NONE,
+        /**
+         * The deadline has passed.
+         */
+        DEADLINE,
+        /**
+         * The iteration cap has been reached.
+         */
+        ITERATIONS,
+        /**
+         * The thread running the search was interrupted.
+         */
+        INTERRUPTED,
+        /**
+         * The budget or its cancel token was cancelled.
+         */
+        CANCELLED
+    }
+    /*
+     * the clock and the interrupt status are read once every CLOCK_INTERVAL
+     * iterations (a power of two)
+     */
+    private static final int CLOCK_INTERVAL = 256;
+    private final long start;
+    private final long timeoutNanos;
+    private final long maxIterations;
+    private final AtomicBoolean cancelToken;
+    private final AtomicLong iterations;
+    private final Thread owner;
+    private final boolean iterationCaps;
+    private volatile Reason reason;
+
+    /**
+     * Creates a budget without deadline and iteration cap, the search can only
+     * be stopped by cancelling or interrupting it.
+     */
+    @TestMethod("testUnlimited")
+    public SearchBudget() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a budget which starts now.
+     *
+     * @param timeoutNanos wall clock time allowed, 0 or less for no deadline
+     * @param maxIterations iterations allowed, 0 or less for no cap
+     */
+    @TestMethod("testDeadline,testIterations")
+    public SearchBudget(long timeoutNanos, long maxIterations) {
+        this(timeoutNanos, maxIterations, new AtomicBoolean(false));
+    }
+
+    /**
+     * Creates a budget which starts now and is cancelled when the token is set,
+     * one token can be shared by several budgets.
+     *
+     * @param timeoutNanos wall clock time allowed, 0 or less for no deadline
+     * @param maxIterations iterations allowed, 0 or less for no cap
+     * @param cancelToken cancel token
+     */
+    @TestMethod("testCancelToken")
+    public SearchBudget(long timeoutNanos, long maxIterations, AtomicBoolean cancelToken) {
+        this(timeoutNanos, maxIterations, cancelToken, false);
+    }
+
+    private SearchBudget(long timeoutNanos, long maxIterations, AtomicBoolean cancelToken, boolean iterationCaps) {
+        if (cancelToken == null) {
+            throw new IllegalArgumentException("Cancel token is null");
+        }
+        this.start = System.nanoTime();
+        this.timeoutNanos = timeoutNanos;
+        this.maxIterations = maxIterations;
+        this.cancelToken = cancelToken;
+        this.iterations = new AtomicLong();
+        this.owner = Thread.currentThread();
+        this.iterationCaps = iterationCaps;
+        this.reason = Reason.NONE;
+    }
+
+    /**
+     * Creates a budget without deadline and iteration cap which keeps the
+     * iteration caps of the algorithms: a search stops at its usual cap, or
+     * earlier when the token is set or the thread is interrupted.
+     *
+     * @param cancelToken cancel token
+     * @return budget keeping the iteration caps
+     */
+    @TestMethod("testIterationCaps")
+    public static SearchBudget withIterationCaps(AtomicBoolean cancelToken) {
+        return new SearchBudget(0, 0, cancelToken, true);
+    }
+
+    /**
+     * @return true if the algorithms keep their iteration caps under this
+     * budget, false if the budget replaces them
+     */
+    @TestMethod("testIterationCaps")
+    public boolean keepsIterationCaps() {
+        return iterationCaps;
+    }
+
+    /**
+     * Counts one iteration of a search and tells whether the search has to
+     * stop. The iteration cap and the cancel token are checked every time, the
+     * clock and the interrupt status periodically.
+     *
+     * @return true if the budget is exhausted
+     */
+    @TestMethod("testIterations")
+    public boolean tick() {
+        if (reason != Reason.NONE) {
+            return true;
+        }
+        long count = iterations.incrementAndGet();
+        if (maxIterations > 0 && count > maxIterations) {
+            return stop(Reason.ITERATIONS);
+        }
+        if (cancelToken.get()) {
+            return stop(Reason.CANCELLED);
+        }
+        if ((count & (CLOCK_INTERVAL - 1)) == 1) {
+            return check();
+        }
+        return false;
+    }
+
+    /**
+     * Checks the deadline, the interrupt status and the cancel token now
+     * without counting an iteration.
+     *
+     * @return true if the budget is exhausted
+     */
+    @TestMethod("testDeadline")
+    public boolean check() {
+        if (reason != Reason.NONE) {
+            return true;
+        }
+        if (cancelToken.get()) {
+            return stop(Reason.CANCELLED);
+        }
+        if (owner.isInterrupted() || Thread.currentThread().isInterrupted()) {
+            return stop(Reason.INTERRUPTED);
+        }
+        if (timeoutNanos > 0 && System.nanoTime() - start >= timeoutNanos) {
+            return stop(Reason.DEADLINE);
+        }
+        return false;
+    }
+
+    private boolean stop(Reason stopReason) {
+        synchronized (this) {
+            if (reason == Reason.NONE) {
+                reason = stopReason;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the searches using this budget. May be called from any thread.
+     */
+    @TestMethod("testCancel")
+    public void cancel() {
+        cancelToken.set(true);
+    }
+
+    /**
+     * Returns true if a search using this budget was stopped by it. Unlike
+     * {@link #check()} this does not read the clock: a budget whose deadline
+     * passed after the search completed is not exhausted.
+     *
+     * @return true if the budget is exhausted
+     */
+    @TestMethod("testUnlimited")
+    public boolean isExhausted() {
+        return reason != Reason.NONE;
+    }
+
+    /**
+     * @return why the budget is exhausted, {@link Reason#NONE} if it is not
+     */
+    @TestMethod("testCancel")
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the number of iterations counted so far
+     */
+    @TestMethod("testIterations")
+    public long getIterations() {
+        return iterations.get();
+    }
+
+    /**
+     * @return the time elapsed since the budget was created, in nanoseconds
+     */
+    @TestMethod("testDeadline")
+    public long getElapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the time left before the deadline in nanoseconds, 0 once it has
+     * passed and Long.MAX_VALUE if there is no deadline
+     */
+    @TestMethod("testDeadline")
+    public long getRemainingNanos() {
+        if (timeoutNanos <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, timeoutNanos - getElapsedNanos());
+    }
+}
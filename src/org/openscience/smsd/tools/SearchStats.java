@@ -0,0 +1,406 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.interfaces.ISearchStatsListener;
+
+/**
+ * Timings and counters of one search. Statistics are only collected while a
+ * listener is installed, without one every hook is a single volatile read.
+ *
+ * <pre>
+ *  SearchStats.setListener(new ISearchStatsListener() {
+ *      public void searchCompleted(SearchStats stats) {
+ *          System.out.println(stats);
+ *      }
+ *  });
+ *  Isomorphism comparison = new Isomorphism(query, target, Algorithm.DEFAULT, true, true, true);
+ *  comparison.setChemFilters(true, true, true);
+ * </pre>
+ *
+ * An {@link org.openscience.smsd.Isomorphism} or
+ * {@link org.openscience.smsd.Substructure} run reports one record, the
+ * chemical filters of {@link org.openscience.smsd.BaseMapping} report a
+ * second one. Searches started inside another search (for example the
+ * substructure search of a MCS seed) are merged into the outer record. Stage
+ * times are inclusive, the clique search is part of the VF seed stage when
+ * both run.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.SearchStatsTest")
+public final class SearchStats {
+
+    /**
+     * Timed stages of a search.
+     */
+    public enum Stage {
+
+        /**
+         * Ring, aromaticity and atom type perception of the input molecules.
+         */
+        PERCEPTION,
+        /**
+         * Substructure screens (atom counts, fingerprints).
+         */
+        SCREEN,
+        /**
+         * VF2 substructure matching.
+         */
+        SUBSTRUCTURE,
+        /**
+         * Construction of the compatibility graph.
+         */
+        COMPATIBILITY_GRAPH,
+        /**
+         * Clique search on the compatibility graph.
+         */
+        CLIQUE_SEARCH,
+        /**
+         * Seed generation of the VF MCS.
+         */
+        VF_SEEDS,
+        /**
+         * McGregor extension of partial mappings.
+         */
+        MCGREGOR,
+        /**
+         * CDK MCS (RGraph) search.
+         */
+        CDK_MCS,
+        /**
+         * Stereo filter.
+         */
+        STEREO_FILTER,
+        /**
+         * Fragment filter.
+         */
+        FRAGMENT_FILTER,
+        /**
+         * Energy filter.
+         */
+        ENERGY_FILTER
+    }
+    private static final ILoggingTool logger =
+            LoggingToolFactory.createLoggingTool(SearchStats.class);
+    private static final ISearchStatsListener NO_OP = new ISearchStatsListener() {
+        @Override
+        public void searchCompleted(SearchStats stats) {
+        }
+    };
+    private static final ThreadLocal<SearchStats> CURRENT = new ThreadLocal<SearchStats>();
+    private static volatile ISearchStatsListener listener = NO_OP;
+    private static volatile boolean enabled = false;
+    private final String operation;
+    private final int queryAtomCount;
+    private final int targetAtomCount;
+    private final long start;
+    private final AtomicLongArray times;
+    private final AtomicLongArray calls;
+    private final AtomicLong solutionsFound;
+    private final AtomicLong solutionsKept;
+    private final List<IterationManager> iterationManagers;
+    private volatile long totalTime;
+    private volatile boolean timeout;
+
+    private SearchStats(String operation, IAtomContainer query, IAtomContainer target) {
+        this.operation = operation;
+        this.queryAtomCount = query == null ? 0 : query.getAtomCount();
+        this.targetAtomCount = target == null ? 0 : target.getAtomCount();
+        this.start = System.nanoTime();
+        this.times = new AtomicLongArray(Stage.values().length);
+        this.calls = new AtomicLongArray(Stage.values().length);
+        this.solutionsFound = new AtomicLong();
+        this.solutionsKept = new AtomicLong();
+        this.iterationManagers = Collections.synchronizedList(new ArrayList<IterationManager>());
+        this.totalTime = -1;
+    }
+
+    /**
+     * Installs the listener which receives the statistics of every search,
+     * null switches the collection off.
+     *
+     * @param searchListener listener or null
+     */
+    @TestMethod("testListener")
+    public static void setListener(ISearchStatsListener searchListener) {
+        listener = searchListener == null ? NO_OP : searchListener;
+        enabled = searchListener != null;
+    }
+
+    /**
+     * @return the installed listener, a no-op listener if none is installed
+     */
+    @TestMethod("testListener")
+    public static ISearchStatsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return true if a listener is installed
+     */
+    @TestMethod("testListener")
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a record on the current thread. Returns null if no listener is
+     * installed or if the thread is already inside a search, in which case
+     * the hooks report to the outer record.
+     *
+     * @param operation name of the search
+     * @param query query molecule or null
+     * @param target target molecule or null
+     * @return the new record or null
+     */
+    @TestMethod("testNested")
+    public static SearchStats begin(String operation, IAtomContainer query, IAtomContainer target) {
+        if (!enabled || CURRENT.get() != null) {
+            return null;
+        }
+        SearchStats stats = new SearchStats(operation, query, target);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * Ends a record started by {@link #begin(String, IAtomContainer, IAtomContainer)}
+     * and hands it to the listener, a null record is ignored.
+     *
+     * @param stats record or null
+     * @param timeout true if the search ran out of its budget
+     */
+    @TestMethod("testNested")
+    public static void finish(SearchStats stats, boolean timeout) {
+        if (stats == null) {
+            return;
+        }
+        if (CURRENT.get() == stats) {
+            CURRENT.remove();
+        }
+        stats.timeout = timeout;
+        stats.totalTime = System.nanoTime() - stats.start;
+        try {
+            listener.searchCompleted(stats);
+        } catch (RuntimeException e) {
+            logger.warn("Search statistics listener failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the record of the search running on this thread or null
+     */
+    @TestMethod("testNested")
+    public static SearchStats current() {
+        return enabled ? CURRENT.get() : null;
+    }
+
+    /**
+     * Makes a record the current one of this thread, used to report the work
+     * a search hands to a worker thread. Restore the returned record when the
+     * work is done.
+     *
+     * @param stats record or null
+     * @return the record which was current before
+     */
+    @TestMethod("testAttach")
+    public static SearchStats attach(SearchStats stats) {
+        SearchStats previous = CURRENT.get();
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stats);
+        }
+        return previous;
+    }
+
+    /**
+     * Adds the time since start (from {@link System#nanoTime()}) to a stage,
+     * a null record is ignored.
+     *
+     * @param stats record or null
+     * @param stage stage
+     * @param start start time in nanoseconds
+     */
+    @TestMethod("testRecord")
+    public static void record(SearchStats stats, Stage stage, long start) {
+        if (stats != null) {
+            stats.times.addAndGet(stage.ordinal(), System.nanoTime() - start);
+            stats.calls.incrementAndGet(stage.ordinal());
+        }
+    }
+
+    /**
+     * Counts solutions of the current search.
+     *
+     * @param found solutions found
+     * @param kept solutions kept after removing duplicates and filtering
+     */
+    @TestMethod("testRecord")
+    public static void solutions(long found, long kept) {
+        SearchStats stats = current();
+        if (stats != null) {
+            stats.solutionsFound.addAndGet(found);
+            stats.solutionsKept.addAndGet(kept);
+        }
+    }
+
+    /**
+     * Registers an iteration manager with the current search, its counter is
+     * reported under its name.
+     *
+     * @param manager iteration manager
+     */
+    static void register(IterationManager manager) {
+        SearchStats stats = current();
+        if (stats != null) {
+            stats.iterationManagers.add(manager);
+        }
+    }
+
+    /**
+     * @return name of the search
+     */
+    @TestMethod("testRecord")
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return atom count of the query
+     */
+    @TestMethod("testRecord")
+    public int getQueryAtomCount() {
+        return queryAtomCount;
+    }
+
+    /**
+     * @return atom count of the target
+     */
+    @TestMethod("testRecord")
+    public int getTargetAtomCount() {
+        return targetAtomCount;
+    }
+
+    /**
+     * @return wall clock time of the search in nanoseconds, -1 while it runs
+     */
+    @TestMethod("testRecord")
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @param stage
+     * @return time spent in the stage in nanoseconds
+     */
+    @TestMethod("testRecord")
+    public long getTime(Stage stage) {
+        return times.get(stage.ordinal());
+    }
+
+    /**
+     * @param stage
+     * @return number of times the stage was run
+     */
+    @TestMethod("testRecord")
+    public long getCalls(Stage stage) {
+        return calls.get(stage.ordinal());
+    }
+
+    /**
+     * @return iterations counted by the iteration managers, summed per name
+     */
+    @TestMethod("testIterations")
+    public Map<String, Long> getIterations() {
+        Map<String, Long> iterations = new TreeMap<String, Long>();
+        synchronized (iterationManagers) {
+            for (IterationManager manager : iterationManagers) {
+                Long count = iterations.get(manager.getName());
+                long sum = (count == null ? 0L : count) + manager.getCounter();
+                iterations.put(manager.getName(), sum);
+            }
+        }
+        return Collections.unmodifiableMap(iterations);
+    }
+
+    /**
+     * @return solutions offered to the duplicate checks of the search,
+     * duplicates included
+     */
+    @TestMethod("testRecord")
+    public long getSolutionsFound() {
+        return solutionsFound.get();
+    }
+
+    /**
+     * @return solutions kept after removing duplicates and filtering
+     */
+    @TestMethod("testRecord")
+    public long getSolutionsKept() {
+        return solutionsKept.get();
+    }
+
+    /**
+     * @return true if the search ran out of its budget
+     */
+    @TestMethod("testRecord")
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(operation).append(" query=").append(queryAtomCount);
+        sb.append(" target=").append(targetAtomCount);
+        sb.append(" total=").append(totalTime / 1000).append("us");
+        for (Stage stage : Stage.values()) {
+            if (getCalls(stage) > 0) {
+                sb.append(' ').append(stage.name().toLowerCase()).append('=');
+                sb.append(getTime(stage) / 1000).append("us/").append(getCalls(stage));
+            }
+        }
+        for (Map.Entry<String, Long> e : getIterations().entrySet()) {
+            sb.append(" iterations.").append(e.getKey()).append('=').append(e.getValue());
+        }
+        sb.append(" solutions=").append(getSolutionsFound()).append('/').append(getSolutionsKept());
+        sb.append(" timeout=").append(timeout);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,523 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.helper.MoleculeInitializer;
+
+/**
+ * Read only, memory mapped library of target molecules written by
+ * {@link TargetLibraryWriter}. Each record holds the graph of a molecule, its
+ * perceived properties (ring flags and sizes, aromaticity, atom types) and its
+ * {@link FingerprintScreen} fingerprint, so a screen neither parses nor
+ * perceives the targets again.
+ *
+ * The fingerprints are also stored bit sliced: for every fingerprint bit the
+ * set of molecules having it. The candidates of a query are the AND of the
+ * slices of its bits, computed 64 molecules at a time without touching the
+ * records; only the candidates are read back as atom containers.
+ *
+ * <pre>
+ *  TargetLibrary library = new TargetLibrary(file);
+ *  try {
+ *      CompiledQuery query = new CompiledQuery(queryContainer, true, false, true);
+ *      for (int index : library.search(query)) {
+ *          IAtomContainer hit = library.getMolecule(index);
+ *          ...
+ *      }
+ *  } finally {
+ *      library.close();
+ *  }
+ * </pre>
+ *
+ * The smallest rings (SSSR) and bond stereo are not stored. A library is safe
+ * to share between threads.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.TargetLibraryTest")
+public final class TargetLibrary implements Closeable {
+
+    /**
+     * Property holding the library index of the molecules returned by
+     * {@link #getMolecule(int)}.
+     */
+    public static final String INDEX = "smsd.library.index";
+    static final long MAGIC = 0x534D53444C494231L;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int WORDS = FingerprintScreen.SIZE / 64;
+    /*
+     * Records never straddle a segment boundary, so that each record is
+     * read from a single mapping.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+    static final int ATOM_SIZE = 20;
+    static final int BOND_SIZE = 12;
+    static final int RECORD_HEADER_SIZE = WORDS * 8 + 12;
+    static final int IN_RING = 1;
+    static final int AROMATIC = 2;
+    static final int ALIPHATIC = 4;
+    static final int HAS_RING_SIZES = 8;
+    static final byte UNSET_CHARGE = Byte.MIN_VALUE;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final IChemObjectBuilder builder;
+    private final int count;
+    private final int blocks;
+    private final long recordsEnd;
+    private final String[] strings;
+    private final ByteBuffer offsets;
+    private final ByteBuffer atomCounts;
+    private final int[] populations;
+    private final ByteBuffer[] slices;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Opens a library, the molecules are built with the default builder.
+     *
+     * @param file library written by {@link TargetLibraryWriter}
+     * @throws IOException if the file can not be read or is not a library
+     */
+    public TargetLibrary(File file) throws IOException {
+        this(file, DefaultChemObjectBuilder.getInstance());
+    }
+
+    /**
+     * Opens a library.
+     *
+     * @param file library written by {@link TargetLibraryWriter}
+     * @param builder builder of the molecules read back
+     * @throws IOException if the file can not be read or is not a library
+     */
+    public TargetLibrary(File file, IChemObjectBuilder builder) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.builder = builder;
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not an SMSD target library: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(0) != MAGIC) {
+                throw new IOException("Not an SMSD target library: " + file);
+            }
+            if (header.getInt(8) != VERSION) {
+                throw new IOException("Unsupported target library version " + header.getInt(8) + ": " + file);
+            }
+            this.count = header.getInt(12);
+            int stringCount = header.getInt(16);
+            long stringsOffset = header.getLong(24);
+            long offsetsOffset = header.getLong(32);
+            long atomCountsOffset = header.getLong(40);
+            long populationsOffset = header.getLong(48);
+            long slicesOffset = header.getLong(56);
+            this.blocks = (count + 63) / 64;
+            this.recordsEnd = stringsOffset;
+
+            this.strings = new String[stringCount];
+            ByteBuffer stringTable = channel.map(FileChannel.MapMode.READ_ONLY,
+                    stringsOffset, offsetsOffset - stringsOffset);
+            int position = 0;
+            for (int i = 0; i < stringCount; i++) {
+                int length = stringTable.getInt(position);
+                position += 4;
+                char[] chars = new char[length];
+                for (int c = 0; c < length; c++) {
+                    chars[c] = stringTable.getChar(position);
+                    position += 2;
+                }
+                strings[i] = new String(chars);
+            }
+            this.offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsOffset, 8L * count);
+            this.atomCounts = channel.map(FileChannel.MapMode.READ_ONLY, atomCountsOffset, 4L * count);
+            ByteBuffer population = channel.map(FileChannel.MapMode.READ_ONLY,
+                    populationsOffset, 4L * FingerprintScreen.SIZE);
+            this.populations = new int[FingerprintScreen.SIZE];
+            for (int bit = 0; bit < populations.length; bit++) {
+                populations[bit] = population.getInt(4 * bit);
+            }
+            this.slices = new ByteBuffer[WORDS];
+            long sliceGroupSize = 64L * blocks * 8;
+            for (int w = 0; w < WORDS; w++) {
+                slices[w] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        slicesOffset + w * sliceGroupSize, sliceGroupSize);
+            }
+            this.segments = new MappedByteBuffer[(int) ((recordsEnd + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        } catch (IOException ex) {
+            this.file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the number of molecules in the library
+     */
+    @TestMethod("testWriteAndRead")
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index molecule index
+     * @return the number of atoms of the molecule
+     */
+    @TestMethod("testWriteAndRead")
+    public int getAtomCount(int index) {
+        checkIndex(index);
+        return atomCounts.getInt(4 * index);
+    }
+
+    /**
+     * @param index molecule index
+     * @return the ID (or title) the molecule had when it was written, or null
+     */
+    @TestMethod("testWriteAndRead")
+    public String getId(int index) {
+        ByteBuffer record = record(index);
+        int offset = recordOffset(index);
+        int atomCount = record.getInt(offset + WORDS * 8);
+        int bondCount = record.getInt(offset + WORDS * 8 + 4);
+        int idLength = record.getInt(offset + WORDS * 8 + 8);
+        if (idLength < 0) {
+            return null;
+        }
+        int position = offset + RECORD_HEADER_SIZE + atomCount * ATOM_SIZE + bondCount * BOND_SIZE
+                + 2 * ringSizeCount(record, offset, atomCount);
+        char[] chars = new char[idLength];
+        for (int c = 0; c < idLength; c++) {
+            chars[c] = record.getChar(position + 2 * c);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param index molecule index
+     * @return a copy of the fingerprint of the molecule
+     */
+    @TestMethod("testWriteAndRead")
+    public long[] getFingerprint(int index) {
+        ByteBuffer record = record(index);
+        int offset = recordOffset(index);
+        long[] bits = new long[WORDS];
+        for (int w = 0; w < WORDS; w++) {
+            bits[w] = record.getLong(offset + 8 * w);
+        }
+        return bits;
+    }
+
+    /**
+     * Reads a molecule back. The molecule comes with its stored perception
+     * and fingerprint registered, {@link MoleculeInitializer} and
+     * {@link FingerprintScreen} do not compute them again, and with its index
+     * in the {@link #INDEX} property. Every call returns a new container.
+     *
+     * @param index molecule index
+     * @return the molecule
+     */
+    @TestMethod("testWriteAndRead")
+    public IAtomContainer getMolecule(int index) {
+        ByteBuffer record = record(index);
+        int offset = recordOffset(index);
+        int atomCount = record.getInt(offset + WORDS * 8);
+        int bondCount = record.getInt(offset + WORDS * 8 + 4);
+        IAtomContainer container = builder.newInstance(IAtomContainer.class);
+        IAtom[] atoms = new IAtom[atomCount];
+        int position = offset + RECORD_HEADER_SIZE;
+        int ringSizes = offset + RECORD_HEADER_SIZE + atomCount * ATOM_SIZE + bondCount * BOND_SIZE;
+        for (int i = 0; i < atomCount; i++) {
+            IAtom atom = builder.newInstance(IAtom.class, strings[record.getShort(position)]);
+            short atomType = record.getShort(position + 2);
+            byte charge = record.get(position + 4);
+            byte hydrogens = record.get(position + 5);
+            int flags = record.getShort(position + 6);
+            int ringSizeCount = record.getInt(position + 16);
+            atom.setAtomTypeName(atomType < 0 ? null : strings[atomType]);
+            atom.setFormalCharge(charge == UNSET_CHARGE ? null : Integer.valueOf(charge));
+            atom.setImplicitHydrogenCount(hydrogens < 0 ? null : Integer.valueOf(hydrogens));
+            atom.setFlag(CDKConstants.ISINRING, (flags & IN_RING) != 0);
+            atom.setFlag(CDKConstants.ISAROMATIC, (flags & AROMATIC) != 0);
+            atom.setFlag(CDKConstants.ISALIPHATIC, (flags & ALIPHATIC) != 0);
+            if ((flags & HAS_RING_SIZES) != 0) {
+                List<Integer> sizes = new ArrayList<Integer>(ringSizeCount);
+                for (int r = 0; r < ringSizeCount; r++) {
+                    sizes.add(Integer.valueOf(record.getShort(ringSizes)));
+                    ringSizes += 2;
+                }
+                atom.setProperty(CDKConstants.RING_SIZES, sizes);
+            }
+            setProperty(atom, MoleculeInitializer.SMALLEST_RING_SIZE, record.getShort(position + 8));
+            setProperty(atom, CDKConstants.RING_CONNECTIONS, record.getShort(position + 10));
+            setProperty(atom, CDKConstants.TOTAL_CONNECTIONS, record.getShort(position + 12));
+            setProperty(atom, CDKConstants.TOTAL_H_COUNT, record.getShort(position + 14));
+            atoms[i] = atom;
+            container.addAtom(atom);
+            position += ATOM_SIZE;
+        }
+        IBond.Order[] orders = IBond.Order.values();
+        for (int b = 0; b < bondCount; b++) {
+            int order = record.get(position + 8);
+            IBond bond = builder.newInstance(IBond.class, atoms[record.getInt(position)], atoms[record.getInt(position + 4)]);
+            bond.setOrder(order == 0 ? null : orders[order - 1]);
+            int flags = record.get(position + 9);
+            bond.setFlag(CDKConstants.ISINRING, (flags & IN_RING) != 0);
+            bond.setFlag(CDKConstants.ISAROMATIC, (flags & AROMATIC) != 0);
+            bond.setFlag(CDKConstants.ISALIPHATIC, (flags & ALIPHATIC) != 0);
+            container.addBond(bond);
+            position += BOND_SIZE;
+        }
+        container.setID(getId(index));
+        container.setProperty(INDEX, index);
+        MoleculeInitializer.setInitialized(container);
+        FingerprintScreen.setFingerprint(container, getFingerprint(index));
+        return container;
+    }
+
+    /**
+     * Returns the molecules which may contain the query: those having all the
+     * fingerprint bits of the query and at least as many atoms. Only the
+     * index is read, not the records.
+     *
+     * @param query query molecule
+     * @return candidate indices, in increasing order
+     */
+    @TestMethod("testCandidates")
+    public int[] candidates(IAtomContainer query) {
+        return candidates(FingerprintScreen.fingerprint(query), query.getAtomCount());
+    }
+
+    /**
+     * Returns the molecules having all the bits of a fingerprint and at least
+     * a number of atoms.
+     *
+     * @param fingerprint query fingerprint, null to select every molecule
+     * @param minAtomCount smallest number of atoms of a candidate
+     * @return candidate indices, in increasing order
+     */
+    @TestMethod("testCandidates")
+    public int[] candidates(long[] fingerprint, int minAtomCount) {
+        int[] bits = rarestFirst(fingerprint);
+        int[] result = new int[64];
+        int size = 0;
+        for (int block = 0; block < blocks; block++) {
+            long word = block == blocks - 1 && count % 64 != 0 ? (1L << (count % 64)) - 1 : -1L;
+            for (int k = 0; k < bits.length && word != 0; k++) {
+                word &= slice(bits[k], block);
+            }
+            while (word != 0) {
+                int index = block * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (atomCounts.getInt(4 * index) < minAtomCount) {
+                    continue;
+                }
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size++] = index;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Substructure search of the library: screens the candidates of the query
+     * and matches each of them.
+     *
+     * @param query compiled query
+     * @return indices of the molecules containing the query, in increasing
+     * order
+     */
+    @TestMethod("testSearch")
+    public int[] search(CompiledQuery query) {
+        int[] candidates = candidates(query.getQuery());
+        int[] hits = new int[candidates.length];
+        int size = 0;
+        for (int index : candidates) {
+            if (query.matches(getMolecule(index))) {
+                hits[size++] = index;
+            }
+        }
+        return Arrays.copyOf(hits, size);
+    }
+
+    /**
+     * Lazily reads a set of molecules, e.g. the candidates of a query to be
+     * screened by a {@link org.openscience.smsd.ScreeningEngine}. The library
+     * index of each molecule is in its {@link #INDEX} property.
+     *
+     * @param indices molecule indices
+     * @return the molecules, read while iterating
+     */
+    @TestMethod("testCandidates")
+    public Iterable<IAtomContainer> getMolecules(final int[] indices) {
+        return new Iterable<IAtomContainer>() {
+            @Override
+            public Iterator<IAtomContainer> iterator() {
+                return new Iterator<IAtomContainer>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < indices.length;
+                    }
+
+                    @Override
+                    public IAtomContainer next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return getMolecule(indices[next++]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the library index of a molecule read from a library.
+     *
+     * @param molecule molecule returned by {@link #getMolecule(int)}
+     * @return its index or -1 if it does not come from a library
+     */
+    public static int indexOf(IAtomContainer molecule) {
+        Integer index = molecule.getProperty(INDEX);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Closes the file. The mappings are released by the garbage collector.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /*
+     * Query bits, rarest first, so that the AND of a block usually drops to
+     * zero after a few slices.
+     */
+    private int[] rarestFirst(long[] fingerprint) {
+        if (fingerprint == null) {
+            return new int[0];
+        }
+        int size = 0;
+        for (long word : fingerprint) {
+            size += Long.bitCount(word);
+        }
+        long[] keyed = new long[size];
+        size = 0;
+        for (int w = 0; w < fingerprint.length; w++) {
+            long word = fingerprint[w];
+            while (word != 0) {
+                int bit = w * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                keyed[size++] = ((long) populations[bit] << 32) | bit;
+            }
+        }
+        Arrays.sort(keyed);
+        int[] bits = new int[size];
+        for (int i = 0; i < size; i++) {
+            bits[i] = (int) keyed[i];
+        }
+        return bits;
+    }
+
+    private long slice(int bit, int block) {
+        return slices[bit >>> 6].getLong(8 * ((bit & 63) * blocks + block));
+    }
+
+    private int recordOffset(int index) {
+        return (int) (offsets.getLong(8 * index) % SEGMENT_SIZE);
+    }
+
+    private ByteBuffer record(int index) {
+        checkIndex(index);
+        return segment((int) (offsets.getLong(8 * index) / SEGMENT_SIZE));
+    }
+
+    private synchronized ByteBuffer segment(int segment) {
+        MappedByteBuffer buffer = segments[segment];
+        if (buffer == null) {
+            long start = segment * SEGMENT_SIZE;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, recordsEnd - start));
+            } catch (IOException ex) {
+                throw new IllegalStateException("Target library can not be read", ex);
+            }
+            segments[segment] = buffer;
+        }
+        return buffer;
+    }
+
+    private static int ringSizeCount(ByteBuffer record, int offset, int atomCount) {
+        int total = 0;
+        int position = offset + RECORD_HEADER_SIZE;
+        for (int i = 0; i < atomCount; i++) {
+            total += record.getInt(position + 16);
+            position += ATOM_SIZE;
+        }
+        return total;
+    }
+
+    private static void setProperty(IAtom atom, Object key, short value) {
+        if (value >= 0) {
+            atom.setProperty(key, Integer.valueOf(value));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Molecule " + index + " of " + count);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import static org.openscience.smsd.tools.TargetLibrary.*;
+
+/**
+ * Writes a {@link TargetLibrary}. The molecules are perceived with
+ * {@link MoleculeInitializer} and written one record at a time, the index is
+ * written by {@link #close()}. Only the index (8 bytes per molecule for the
+ * record offsets and 4 for the atom counts) is kept in memory, so a library of
+ * millions of molecules can be written from a streaming reader.
+ *
+ * File layout (big endian):
+ * <pre>
+ *  header     magic, version, counts and the offsets of the sections below
+ *  records    per molecule: fingerprint, atom and bond counts, atoms, bonds,
+ *             ring sizes and ID; a record never crosses a 1 GB boundary
+ *  strings    element symbols and atom type names used by the records
+ *  offsets    long[count], file offset of each record
+ *  atoms      int[count], atom count of each molecule
+ *  population int[1024], number of molecules having each fingerprint bit
+ *  slices     for each fingerprint bit, the bit set of the molecules having it
+ * </pre>
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ */
+@TestClass("org.openscience.smsd.tools.TargetLibraryTest")
+public final class TargetLibraryWriter implements Closeable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+    private final int[] populations = new int[FingerprintScreen.SIZE];
+    private long[] offsets = new long[1024];
+    private int[] atomCounts = new int[1024];
+    private int count = 0;
+    private long position = HEADER_SIZE;
+    private boolean closed = false;
+
+    /**
+     * Creates (or overwrites) a library file.
+     *
+     * @param file library file
+     * @throws IOException
+     */
+    public TargetLibraryWriter(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.file.setLength(0);
+    }
+
+    /**
+     * Perceives a molecule and appends it to the library.
+     *
+     * @param molecule molecule to store, it must not be a query container
+     * @return the index of the molecule in the library
+     * @throws CDKException if the molecule can not be perceived or stored
+     * @throws IOException if the file can not be written
+     */
+    @TestMethod("testWriteAndRead")
+    public synchronized int add(IAtomContainer molecule) throws CDKException, IOException {
+        if (closed) {
+            throw new IOException("Target library writer is closed");
+        }
+        MoleculeInitializer.initializeMolecule(molecule);
+        long[] fingerprint = FingerprintScreen.getFingerprint(molecule);
+        if (fingerprint == null) {
+            throw new CDKException("Query molecules can not be stored in a target library");
+        }
+        ByteBuffer record = encode(molecule, fingerprint);
+        int size = record.remaining();
+        if (size > SEGMENT_SIZE) {
+            throw new CDKException("Molecule too large for a target library record");
+        }
+        if (position / SEGMENT_SIZE != (position + size - 1) / SEGMENT_SIZE) {
+            position = (position / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+        }
+        write(record, position);
+
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            atomCounts = Arrays.copyOf(atomCounts, count * 2);
+        }
+        offsets[count] = position;
+        atomCounts[count] = molecule.getAtomCount();
+        for (int w = 0; w < fingerprint.length; w++) {
+            long word = fingerprint[w];
+            while (word != 0) {
+                populations[w * 64 + Long.numberOfTrailingZeros(word)]++;
+                word &= word - 1;
+            }
+        }
+        position += size;
+        return count++;
+    }
+
+    /**
+     * @return the number of molecules written so far
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Writes the index and closes the file. The library can not be read
+     * before it is closed.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long recordsEnd = position;
+            long stringsOffset = recordsEnd;
+            int stringBytes = 0;
+            for (String string : strings) {
+                stringBytes += 4 + 2 * string.length();
+            }
+            ByteBuffer stringTable = ByteBuffer.allocate(stringBytes);
+            for (String string : strings) {
+                stringTable.putInt(string.length());
+                for (int c = 0; c < string.length(); c++) {
+                    stringTable.putChar(string.charAt(c));
+                }
+            }
+            stringTable.flip();
+            write(stringTable, stringsOffset);
+
+            long offsetsOffset = align(stringsOffset + stringBytes);
+            ByteBuffer buffer = ByteBuffer.allocate(8 * count);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(offsets[i]);
+            }
+            buffer.flip();
+            write(buffer, offsetsOffset);
+
+            long atomCountsOffset = offsetsOffset + 8L * count;
+            buffer = ByteBuffer.allocate(4 * count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(atomCounts[i]);
+            }
+            buffer.flip();
+            write(buffer, atomCountsOffset);
+
+            long populationsOffset = align(atomCountsOffset + 4L * count);
+            buffer = ByteBuffer.allocate(4 * populations.length);
+            for (int population : populations) {
+                buffer.putInt(population);
+            }
+            buffer.flip();
+            write(buffer, populationsOffset);
+
+            long slicesOffset = populationsOffset + 4L * populations.length;
+            writeSlices(recordsEnd, slicesOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(count);
+            header.putInt(strings.size());
+            header.putInt(0);
+            header.putLong(stringsOffset);
+            header.putLong(offsetsOffset);
+            header.putLong(atomCountsOffset);
+            header.putLong(populationsOffset);
+            header.putLong(slicesOffset);
+            header.flip();
+            write(header, 0);
+            channel.force(false);
+        } finally {
+            file.close();
+        }
+    }
+
+    /*
+     * Transposes the fingerprints one word (64 bits) at a time, reading the
+     * word from every record, so that only 64 slices are held in memory.
+     */
+    private void writeSlices(long recordsEnd, long slicesOffset) throws IOException {
+        int blocks = (count + 63) / 64;
+        ByteBuffer[] segments = new ByteBuffer[(int) ((recordsEnd + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int s = 0; s < segments.length; s++) {
+            long start = s * SEGMENT_SIZE;
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, recordsEnd - start));
+        }
+        long[] group = new long[64 * blocks];
+        ByteBuffer buffer = ByteBuffer.allocate(8 * group.length);
+        for (int w = 0; w < WORDS; w++) {
+            Arrays.fill(group, 0L);
+            for (int i = 0; i < count; i++) {
+                long word = segments[(int) (offsets[i] / SEGMENT_SIZE)].getLong((int) (offsets[i] % SEGMENT_SIZE) + 8 * w);
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    group[bit * blocks + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+            buffer.clear();
+            for (long slice : group) {
+                buffer.putLong(slice);
+            }
+            buffer.flip();
+            write(buffer, slicesOffset + (long) w * 8 * group.length);
+        }
+    }
+
+    private ByteBuffer encode(IAtomContainer molecule, long[] fingerprint) throws CDKException {
+        int atomCount = molecule.getAtomCount();
+        int bondCount = molecule.getBondCount();
+        String id = molecule.getID();
+        if (id == null && molecule.getProperty(CDKConstants.TITLE) != null) {
+            id = molecule.getProperty(CDKConstants.TITLE).toString();
+        }
+        int ringSizeCount = 0;
+        for (IAtom atom : molecule.atoms()) {
+            List<Integer> sizes = atom.getProperty(CDKConstants.RING_SIZES);
+            if (sizes != null) {
+                ringSizeCount += sizes.size();
+            }
+        }
+        int size = RECORD_HEADER_SIZE + atomCount * ATOM_SIZE + bondCount * BOND_SIZE
+                + 2 * ringSizeCount + (id == null ? 0 : 2 * id.length());
+        ByteBuffer record = ByteBuffer.allocate(size);
+        for (long word : fingerprint) {
+            record.putLong(word);
+        }
+        record.putInt(atomCount);
+        record.putInt(bondCount);
+        record.putInt(id == null ? -1 : id.length());
+
+        for (IAtom atom : molecule.atoms()) {
+            List<Integer> sizes = atom.getProperty(CDKConstants.RING_SIZES);
+            int flags = (atom.getFlag(CDKConstants.ISINRING) ? IN_RING : 0)
+                    | (atom.getFlag(CDKConstants.ISAROMATIC) ? AROMATIC : 0)
+                    | (atom.getFlag(CDKConstants.ISALIPHATIC) ? ALIPHATIC : 0)
+                    | (sizes != null ? HAS_RING_SIZES : 0);
+            Integer charge = atom.getFormalCharge();
+            Integer hydrogens = atom.getImplicitHydrogenCount();
+            record.putShort(string(atom.getSymbol()));
+            record.putShort(atom.getAtomTypeName() == null ? (short) -1 : string(atom.getAtomTypeName()));
+            record.put(charge == null ? UNSET_CHARGE : toByte(charge, "charge"));
+            record.put(hydrogens == null ? -1 : toByte(hydrogens, "implicit hydrogen count"));
+            record.putShort((short) flags);
+            record.putShort(property(atom, MoleculeInitializer.SMALLEST_RING_SIZE));
+            record.putShort(property(atom, CDKConstants.RING_CONNECTIONS));
+            record.putShort(property(atom, CDKConstants.TOTAL_CONNECTIONS));
+            record.putShort(property(atom, CDKConstants.TOTAL_H_COUNT));
+            record.putInt(sizes == null ? 0 : sizes.size());
+        }
+        for (IBond bond : molecule.bonds()) {
+            int flags = (bond.getFlag(CDKConstants.ISINRING) ? IN_RING : 0)
+                    | (bond.getFlag(CDKConstants.ISAROMATIC) ? AROMATIC : 0)
+                    | (bond.getFlag(CDKConstants.ISALIPHATIC) ? ALIPHATIC : 0);
+            record.putInt(molecule.getAtomNumber(bond.getAtom(0)));
+            record.putInt(molecule.getAtomNumber(bond.getAtom(1)));
+            record.put((byte) (bond.getOrder() == null ? 0 : bond.getOrder().ordinal() + 1));
+            record.put((byte) flags);
+            record.putShort((short) 0);
+        }
+        for (IAtom atom : molecule.atoms()) {
+            List<Integer> sizes = atom.getProperty(CDKConstants.RING_SIZES);
+            if (sizes != null) {
+                for (Integer ringSize : sizes) {
+                    record.putShort(toShort(ringSize, "ring size"));
+                }
+            }
+        }
+        if (id != null) {
+            for (int c = 0; c < id.length(); c++) {
+                record.putChar(id.charAt(c));
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    private short string(String value) throws CDKException {
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            if (strings.size() > Short.MAX_VALUE) {
+                throw new CDKException("Too many distinct atom symbols and types for a target library");
+            }
+            index = strings.size();
+            strings.add(value);
+            stringIndex.put(value, index);
+        }
+        return index.shortValue();
+    }
+
+    private static short property(IAtom atom, Object key) throws CDKException {
+        Integer value = atom.getProperty(key);
+        return value == null ? -1 : toShort(value, key.toString());
+    }
+
+    private static short toShort(int value, String what) throws CDKException {
+        if (value < 0 || value > Short.MAX_VALUE) {
+            throw new CDKException("Atom " + what + " out of range for a target library: " + value);
+        }
+        return (short) value;
+    }
+
+    private static byte toByte(int value, String what) throws CDKException {
+        if (value <= Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new CDKException("Atom " + what + " out of range for a target library: " + value);
+        }
+        return (byte) value;
+    }
+
+    private void write(ByteBuffer buffer, long at) throws IOException {
+        long target = at;
+        while (buffer.hasRemaining()) {
+            target += channel.write(buffer, target);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link AtomAtomMapping} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class AtomAtomMappingTest {
+
+    /**
+     * Test of put and getCount methods, of class AtomAtomMapping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPut() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CO");
+        IAtomContainer target = sp.parseSmiles("CCO");
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(query.getAtom(0), target.getAtom(1));
+        mapping.put(query.getAtom(1), target.getAtom(2));
+        Assert.assertEquals(2, mapping.getCount());
+        Assert.assertEquals(Integer.valueOf(2), mapping.getMappingsByIndex().get(1));
+        Assert.assertFalse(mapping.isSnapshot());
+        try {
+            mapping.put(target.getAtom(0), target.getAtom(0));
+            Assert.fail("only atoms of the query can be mapped");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Test of snapshot method, of class AtomAtomMapping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CO");
+        IAtomContainer target = sp.parseSmiles("CCO");
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(query.getAtom(0), target.getAtom(1));
+        AtomAtomMapping snapshot = mapping.snapshot();
+        mapping.put(query.getAtom(1), target.getAtom(2));
+
+        Assert.assertTrue(snapshot.isSnapshot());
+        Assert.assertSame(snapshot, snapshot.snapshot());
+        Assert.assertEquals(1, snapshot.getCount());
+        Assert.assertEquals(2, mapping.getCount());
+        try {
+            snapshot.put(query.getAtom(1), target.getAtom(2));
+            Assert.fail("a snapshot must not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    /**
+     * Test of getMappingsByIndex and getMappedTargetIndex methods, of class
+     * AtomAtomMapping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexLookups() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CO");
+        IAtomContainer target = sp.parseSmiles("CCO");
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        Map<Integer, Integer> view = mapping.getMappingsByIndexView();
+        Map<Integer, Integer> copy = mapping.getMappingsByIndex();
+        Assert.assertTrue(view.isEmpty());
+
+        mapping.put(1, 2);
+        mapping.put(0, 1);
+        Assert.assertEquals(2, view.size());
+        Assert.assertEquals("{0=1, 1=2}", view.toString());
+        Assert.assertTrue(copy.isEmpty());
+        Assert.assertEquals(view, mapping.getMappingsByIndex());
+        Assert.assertEquals(1, mapping.getMappedTargetIndex(0));
+        Assert.assertEquals(-1, mapping.getMappedQueryIndex(0));
+        Assert.assertSame(target.getAtom(2), mapping.getMappingsByAtoms().get(query.getAtom(1)));
+        Assert.assertSame(target.getAtom(2), mapping.getMappingsByAtomsView().get(query.getAtom(1)));
+
+        mapping.put(0, 0);
+        Assert.assertEquals(2, mapping.getCount());
+        Assert.assertEquals(-1, mapping.getMappedQueryIndex(1));
+    }
+
+    /**
+     * Test of equals and hashCode methods, of class AtomAtomMapping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEquals() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CO");
+        IAtomContainer target = sp.parseSmiles("CCO");
+        AtomAtomMapping first = new AtomAtomMapping(query, target);
+        AtomAtomMapping second = new AtomAtomMapping(query, target);
+        first.put(query.getAtom(0), target.getAtom(1));
+        second.put(0, 1);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(first.hashCode(), second.hashCode());
+        Assert.assertEquals(first, second.snapshot());
+        second.put(1, 2);
+        Assert.assertFalse(first.equals(second));
+    }
+}
@@ -43,7 +43,9 @@ import org.openscience.cdk.isomorphism.matchers.QueryAtomContainerCreator;
 import org.openscience.cdk.normalize.SMSDNormalizer;
 import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.algorithm.mcsplus.MCSPlusHandler;
 import org.openscience.smsd.algorithm.mcsplus.MCSPlusHandlerTest;
+import org.openscience.smsd.algorithm.rgraph.CDKMCSHandler;
 import org.openscience.smsd.interfaces.Algorithm;
 
 /**
@@ -705,4 +707,69 @@ public class IsomorphismTest {
 //        //0.162
 //        Assert.assertEquals(0.2542, comparison.getTanimotoSimilarity(), 0.001);
 //    }
+
+    /**
+     * Test of reduceSymmetricMappings method, of class Isomorphism.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testReduceSymmetricMappings() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("c1ccccc1");
+        IAtomContainer target = sp.parseSmiles("c1ccccc1");
+
+        Isomorphism smsd1 = new Isomorphism(query, target, Algorithm.VFLibMCS, true, false, false);
+        int count = smsd1.getMappingCount();
+        Assert.assertEquals(count - 1, smsd1.reduceSymmetricMappings());
+        Assert.assertEquals(1, smsd1.getAllAtomMapping().size());
+        smsd1.setChemFilters(true, true, true);
+
+        int equivalents = 0;
+        for (AtomAtomMapping mapping : smsd1.getEquivalentMappings(smsd1.getFirstAtomMapping())) {
+            Assert.assertEquals(6, mapping.getCount());
+            equivalents++;
+        }
+        Assert.assertEquals(12, equivalents);
+    }
+
+    /**
+     * Test of isExhaustive method, of class Isomorphism. Without a budget the
+     * flag follows the iteration cap of the algorithm.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testIsExhaustive() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        String querySmiles = "c1ccc2cc3ccccc3cc2c1";
+        String targetSmiles = "c1ccc2c(c1)ccc1ccccc21";
+
+        Isomorphism cdkMCS = new Isomorphism(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                Algorithm.CDKMCS, false, false, false);
+        CDKMCSHandler cdkMCSHandler = new CDKMCSHandler(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                false, false, false);
+        Assert.assertEquals(!cdkMCSHandler.isTimeout(), cdkMCS.isExhaustive());
+
+        Isomorphism mcsPlus = new Isomorphism(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                Algorithm.MCSPlus, false, false, false);
+        MCSPlusHandler mcsPlusHandler = new MCSPlusHandler(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                false, false, false);
+        Assert.assertEquals(!mcsPlusHandler.isTimeout(), mcsPlus.isExhaustive());
+    }
+
+    /**
+     * A search which fails with an exception is not reported as exhaustive.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testSearchFailedIsNotExhaustive() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        Isomorphism comparison = new Isomorphism(sp.parseSmiles("c1ccccc1"), sp.parseSmiles("Cc1ccccc1"),
+                Algorithm.DEFAULT, true, false, false);
+        Assert.assertTrue(comparison.isExhaustive());
+        Assert.assertTrue(comparison.searchFailed(new CDKException("Search failed")));
+        Assert.assertFalse(comparison.isExhaustive());
+    }
 }
@@ -0,0 +1,146 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.interfaces.Algorithm;
+
+/**
+ * Unit testing for the {@link MCSSimilarityMatrix} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class MCSSimilarityMatrixTest {
+
+    private static final String[] SMILES = {"CCCO", "CCCN", "c1ccccc1O", "CC(=O)O", "O=O"};
+
+    private List<IAtomContainer> molecules() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (String smiles : SMILES) {
+            molecules.add(sp.parseSmiles(smiles));
+        }
+        return molecules;
+    }
+
+    /**
+     * Every pair matches the similarity of a single comparison, the matrix is
+     * symmetric and the tiles cover the whole triangle.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompute() throws Exception {
+        List<IAtomContainer> molecules = molecules();
+        File file = File.createTempFile("smsd", ".sim");
+        file.deleteOnExit();
+        MCSSimilarityMatrix matrix = new MCSSimilarityMatrix(molecules, file, Algorithm.DEFAULT, true, false, false);
+        try {
+            matrix.setTileSize(2);
+            long searched = matrix.compute(3);
+            Assert.assertEquals(5, matrix.size());
+            Assert.assertEquals(10, searched);
+            Assert.assertEquals(0, matrix.getSkippedCount());
+            List<IAtomContainer> reference = molecules();
+            for (int i = 0; i < SMILES.length; i++) {
+                Assert.assertEquals(1.0f, matrix.getSimilarity(i, i), 0.0f);
+                for (int j = i + 1; j < SMILES.length; j++) {
+                    Isomorphism comparison = new Isomorphism(reference.get(i), reference.get(j),
+                            Algorithm.DEFAULT, true, false, false);
+                    Assert.assertEquals(comparison.getTanimotoSimilarity(), matrix.getSimilarity(i, j), 0.0001);
+                    Assert.assertEquals(matrix.getSimilarity(i, j), matrix.getSimilarity(j, i), 0.0f);
+                    Assert.assertEquals(comparison.getFirstAtomMapping().getCount(), matrix.getCommonAtomCount(i, j));
+                }
+            }
+            Assert.assertEquals(Math.sqrt(2), matrix.getEuclideanDistance(0, 1), 0.0001);
+        } finally {
+            matrix.close();
+        }
+        Assert.assertEquals(10 * 4, file.length());
+    }
+
+    /**
+     * Pairs which can not reach the threshold are skipped and left as NaN.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testThreshold() throws Exception {
+        File file = File.createTempFile("smsd", ".sim");
+        file.deleteOnExit();
+        MCSSimilarityMatrix matrix = new MCSSimilarityMatrix(molecules(), file, Algorithm.DEFAULT, true, false, false);
+        try {
+            matrix.setThreshold(0.5);
+            Assert.assertEquals(0.5, matrix.getThreshold(), 0.0);
+            matrix.compute(2);
+            Assert.assertTrue(matrix.getSkippedCount() > 0);
+            Assert.assertEquals(10, matrix.getSearchedCount() + matrix.getSkippedCount());
+            /*
+             * CCCO and O=O share a single oxygen, 1 / (4 + 2 - 1) < 0.5
+             */
+            Assert.assertTrue(Float.isNaN(matrix.getSimilarity(0, 4)));
+            Assert.assertEquals(-1, matrix.getCommonAtomCount(0, 4));
+            Assert.assertFalse(Float.isNaN(matrix.getSimilarity(0, 1)));
+        } finally {
+            matrix.close();
+        }
+    }
+
+    /**
+     * Pairs not computed read as NaN, also in a file left by an earlier
+     * matrix of the same size.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNotComputed() throws Exception {
+        File file = File.createTempFile("smsd", ".sim");
+        file.deleteOnExit();
+        MCSSimilarityMatrix matrix = new MCSSimilarityMatrix(molecules(), file, Algorithm.DEFAULT, true, false, false);
+        try {
+            Assert.assertTrue(Float.isNaN(matrix.getSimilarity(0, 1)));
+            matrix.compute(2);
+            Assert.assertFalse(Float.isNaN(matrix.getSimilarity(0, 1)));
+        } finally {
+            matrix.close();
+        }
+        MCSSimilarityMatrix reused = new MCSSimilarityMatrix(molecules(), file, Algorithm.DEFAULT, true, false, false);
+        try {
+            Assert.assertTrue(Float.isNaN(reused.getSimilarity(0, 1)));
+            Assert.assertEquals(-1, reused.getCommonAtomCount(0, 1));
+        } finally {
+            reused.close();
+        }
+    }
+}
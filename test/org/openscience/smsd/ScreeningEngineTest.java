@@ -0,0 +1,201 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.interfaces.IScreeningListener;
+import org.openscience.smsd.interfaces.ISubstructureScreen;
+
+/**
+ * Unit testing for the {@link ScreeningEngine} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class ScreeningEngineTest {
+
+    private List<IAtomContainer> library() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> targets = new ArrayList<IAtomContainer>();
+        for (int i = 0; i < 50; i++) {
+            targets.add(sp.parseSmiles("CCCO"));
+            targets.add(sp.parseSmiles("CCCN"));
+        }
+        return targets;
+    }
+
+    private CompiledQuery query() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return new CompiledQuery(sp.parseSmiles("CO"), true, false, false);
+    }
+
+    /**
+     * Hits are reported in input order.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScreen() throws Exception {
+        ScreeningEngine engine = new ScreeningEngine(query(), 4);
+        final List<Integer> indices = new ArrayList<Integer>();
+        try {
+            int hits = engine.screen(library(), new IScreeningListener() {
+                @Override
+                public void hit(ScreeningHit hit) {
+                    indices.add(hit.getIndex());
+                }
+            });
+            Assert.assertEquals(50, hits);
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(50, indices.size());
+        for (int i = 0; i < indices.size(); i++) {
+            Assert.assertEquals(2 * i, indices.get(i).intValue());
+        }
+    }
+
+    /**
+     * Hits are put on a queue.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScreenToQueue() throws Exception {
+        ScreeningEngine engine = new ScreeningEngine(query(), 2);
+        engine.setOrdered(false);
+        LinkedBlockingQueue<ScreeningHit> queue = new LinkedBlockingQueue<ScreeningHit>();
+        try {
+            Assert.assertEquals(50, engine.screen(library(), queue));
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(50, queue.size());
+        for (ScreeningHit hit : queue) {
+            Assert.assertEquals(0, hit.getIndex() % 2);
+            Assert.assertEquals("O", hit.getTarget().getAtom(3).getSymbol());
+            Assert.assertEquals(2, hit.getFirstAtomMapping().getCount());
+        }
+    }
+
+    /**
+     * No hits are reported after cancel.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCancel() throws Exception {
+        final ScreeningEngine engine = new ScreeningEngine(query(), 2);
+        final List<ScreeningHit> hits = new ArrayList<ScreeningHit>();
+        try {
+            engine.screen(library(), new IScreeningListener() {
+                @Override
+                public void hit(ScreeningHit hit) {
+                    hits.add(hit);
+                    engine.cancel();
+                }
+            });
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertTrue(engine.isCancelled());
+        Assert.assertEquals(1, hits.size());
+    }
+
+    /**
+     * MCS screening through Isomorphism.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScreenMCS() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        ScreeningEngine engine = new ScreeningEngine(sp.parseSmiles("CCO"), Algorithm.DEFAULT, true, false, false, 2);
+        final List<ScreeningHit> hits = new ArrayList<ScreeningHit>();
+        try {
+            engine.screen(library(), new IScreeningListener() {
+                @Override
+                public void hit(ScreeningHit hit) {
+                    hits.add(hit);
+                }
+            });
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(100, hits.size());
+        Assert.assertEquals(3, hits.get(0).getFirstAtomMapping().getCount());
+        Assert.assertEquals(2, hits.get(1).getFirstAtomMapping().getCount());
+    }
+
+    /**
+     * A blocked listener does not hold up the searches of the other workers.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSlowListener() throws Exception {
+        final List<IAtomContainer> targets = library();
+        final CountDownLatch searched = new CountDownLatch(targets.size());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ScreeningEngine engine = new ScreeningEngine(query(), executor, targets.size());
+        engine.setOrdered(false);
+        engine.setScreen(new ISubstructureScreen() {
+            @Override
+            public boolean mayMatch(IAtomContainer query, IAtomContainer target) {
+                searched.countDown();
+                return true;
+            }
+        });
+        final boolean[] released = new boolean[1];
+        try {
+            int hits = engine.screen(targets, new IScreeningListener() {
+                @Override
+                public void hit(ScreeningHit hit) throws InterruptedException {
+                    if (!released[0]) {
+                        released[0] = searched.await(10, TimeUnit.SECONDS);
+                    }
+                }
+            });
+            Assert.assertEquals(50, hits);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(released[0]);
+    }
+}
@@ -42,6 +42,10 @@ import org.junit.runners.Suite;
     //        org.openscience.cdk.smsd.interfaces.InterfacesSuite.class,
     org.openscience.smsd.filters.FiltersSuite.class,
     org.openscience.smsd.SubstructureTest.class,
+    org.openscience.smsd.AtomAtomMappingTest.class,
+    org.openscience.smsd.ScreeningEngineTest.class,
+    org.openscience.smsd.MCSSimilarityMatrixTest.class,
+    org.openscience.smsd.mcss.MCSSTest.class,
     org.openscience.smsd.algorithm.AlgorithmSuite.class,
     org.openscience.smsd.tools.ToolsSuite.class})
 public class SmsdSuite {
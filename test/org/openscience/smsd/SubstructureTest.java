@@ -39,6 +39,7 @@ import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.QueryAtomContainerCreator;
 import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.interfaces.ISubstructureScreen;
 
 /**
  * Unit testing for the {@link Substructure} class.
@@ -632,4 +633,29 @@ public class SubstructureTest {
         Substructure smsd2 = new Substructure(queryContainer, target, false);
         Assert.assertTrue(smsd2.isSubgraph());
     }
+
+    /**
+     * The default fingerprint screen keeps the hits, a custom screen can
+     * reject a pair before the search.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testScreen() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CCO");
+        IAtomContainer target = sp.parseSmiles("OCCc1ccccc1");
+        Assert.assertTrue(new Substructure(query, target, true, false, true, false).isSubgraph());
+        Assert.assertFalse(new Substructure(sp.parseSmiles("CCN"), target, true, false, true, false).isSubgraph());
+        Assert.assertTrue(new Substructure(query, target, true, false, true, true, null, null).isSubgraph());
+
+        ISubstructureScreen rejectAll = new ISubstructureScreen() {
+            @Override
+            public boolean mayMatch(IAtomContainer query, IAtomContainer target) {
+                return false;
+            }
+        };
+        Substructure smsd = new Substructure(query, target, true, false, true, true, null, rejectAll);
+        Assert.assertFalse(smsd.isSubgraph());
+    }
 }
@@ -0,0 +1,189 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.mcgregor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+
+/**
+ * Extension of seed mappings by the {@link McGregor} class. The expected
+ * mappings were produced by the String based implementation the class
+ * replaced, except where noted.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class McGregorExtensionTest {
+
+    private static final String[] SUBSTITUENTS = {"N", "O", "F", "Na", "Mg", "Al", "Si", "P", "S", "Cl",
+        "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As", "Se", "Br",
+        "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In", "Sn", "Sb", "Te", "I",
+        "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm", "Yb"};
+
+    /*
+     * bonds are {atom, atom, order} with order 1 or 2
+     */
+    private static IAtomContainer molecule(String[] symbols, int[][] bonds) {
+        IChemObjectBuilder builder = DefaultChemObjectBuilder.getInstance();
+        IAtomContainer molecule = builder.newInstance(IAtomContainer.class);
+        for (String symbol : symbols) {
+            molecule.addAtom(builder.newInstance(IAtom.class, symbol));
+        }
+        for (int[] bond : bonds) {
+            molecule.addBond(bond[0], bond[1], bond[2] == 2 ? IBond.Order.DOUBLE : IBond.Order.SINGLE);
+        }
+        return molecule;
+    }
+
+    /*
+     * carbon chain, every carbon carries a different substituent
+     */
+    private static IAtomContainer comb(int length) {
+        String[] symbols = new String[length * 2];
+        int[][] bonds = new int[length * 2 - 1][];
+        for (int i = 0; i < length; i++) {
+            symbols[i] = "C";
+            symbols[length + i] = SUBSTITUENTS[i];
+            bonds[length - 1 + i] = new int[]{i, length + i, 1};
+            if (i > 0) {
+                bonds[i - 1] = new int[]{i - 1, i, 1};
+            }
+        }
+        return molecule(symbols, bonds);
+    }
+
+    private static IAtomContainer chain(int length) {
+        String[] symbols = new String[length];
+        int[][] bonds = new int[length - 1][];
+        for (int i = 0; i < length; i++) {
+            symbols[i] = "C";
+            if (i > 0) {
+                bonds[i - 1] = new int[]{i - 1, i, 1};
+            }
+        }
+        return molecule(symbols, bonds);
+    }
+
+    private static Map<Integer, Integer> identity(int from, int to) {
+        Map<Integer, Integer> seed = new TreeMap<Integer, Integer>();
+        for (int i = from; i < to; i++) {
+            seed.put(i, i);
+        }
+        return seed;
+    }
+
+    private static McGregor extend(IAtomContainer source, IAtomContainer target, Map<Integer, Integer> seed)
+            throws Exception {
+        McGregor mcGregor = new McGregor(source, target, new ArrayList<List<Integer>>(), true, false, false);
+        mcGregor.startMcGregorIteration(mcGregor.getMCSSize(), seed);
+        return mcGregor;
+    }
+
+    /*
+     * every atom of the molecule mapped on itself
+     */
+    private static void assertIdentity(int atomCount, List<Integer> mapping) {
+        Assert.assertEquals(atomCount * 2, mapping.size());
+        boolean[] seen = new boolean[atomCount];
+        for (int i = 0; i < mapping.size(); i += 2) {
+            Assert.assertEquals(mapping.get(i), mapping.get(i + 1));
+            Assert.assertFalse(seen[mapping.get(i)]);
+            seen[mapping.get(i)] = true;
+        }
+    }
+
+    /**
+     * A seed with several equally large extensions keeps all of them, in the
+     * order the legacy implementation reported them.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGoldenMappings() throws Exception {
+        IAtomContainer source = molecule(new String[]{"N", "O", "N", "N", "C", "O", "C", "O", "O"},
+                new int[][]{{0, 4, 1}, {5, 7, 1}, {6, 1, 1}, {1, 2, 1}, {0, 1, 1}, {2, 6, 1}, {1, 8, 1},
+                    {2, 3, 1}, {0, 5, 1}});
+        IAtomContainer target = molecule(new String[]{"O", "N", "C", "C", "N", "O", "O", "C", "N", "C", "O", "N"},
+                new int[][]{{0, 1, 1}, {5, 7, 1}, {0, 6, 1}, {9, 11, 1}, {1, 10, 1}, {1, 5, 1}, {0, 2, 1},
+                    {8, 9, 2}, {1, 7, 1}, {1, 3, 2}, {1, 4, 2}, {2, 8, 1}});
+        Map<Integer, Integer> seed = new TreeMap<Integer, Integer>();
+        seed.put(0, 1);
+        seed.put(4, 7);
+
+        McGregor mcGregor = extend(source, target, seed);
+        Assert.assertFalse(mcGregor.isTimeout());
+        Assert.assertEquals(7, mcGregor.getMCSSize());
+        Assert.assertEquals(2, mcGregor.getMappings().size());
+        Assert.assertEquals(Arrays.asList(0, 1, 4, 7, 1, 0, 5, 5, 6, 2, 8, 6, 2, 8), mcGregor.getMappings().get(0));
+        Assert.assertEquals(Arrays.asList(0, 1, 4, 7, 1, 0, 5, 10, 6, 2, 8, 6, 2, 8), mcGregor.getMappings().get(1));
+    }
+
+    /**
+     * More mapped atoms with unmapped neighbours than the 55 placeholder
+     * symbols the String based implementation had.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testManyUnmappedNeighbours() throws Exception {
+        int length = 60;
+        McGregor mcGregor = extend(comb(length), comb(length), identity(0, length));
+        Assert.assertFalse(mcGregor.isTimeout());
+        Assert.assertEquals(length * 2, mcGregor.getMCSSize());
+        Assert.assertEquals(1, mcGregor.getMappings().size());
+        List<Integer> mapping = mcGregor.getMappings().get(0);
+        Assert.assertEquals(Arrays.asList(0, 0, 1, 1), mapping.subList(0, 4));
+        assertIdentity(length * 2, mapping);
+    }
+
+    /**
+     * Atom indices above 127, the seed leaves an unmapped neighbour at index
+     * 140. The legacy implementation compared the boxed indices with == and
+     * missed that neighbour, stopping at 140 atoms; all 150 are mapped now.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLargeMolecule() throws Exception {
+        McGregor mcGregor = extend(chain(150), chain(200), identity(60, 140));
+        Assert.assertFalse(mcGregor.isTimeout());
+        Assert.assertEquals(150, mcGregor.getMCSSize());
+        Assert.assertEquals(1, mcGregor.getMappings().size());
+        List<Integer> mapping = mcGregor.getMappings().get(0);
+        Assert.assertEquals(Arrays.asList(139, 139, 59, 59, 140, 140), mapping.subList(158, 164));
+        Assert.assertEquals(Arrays.asList(0, 0), mapping.subList(298, 300));
+        assertIdentity(150, mapping);
+    }
+}
@@ -40,6 +40,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({org.openscience.smsd.algorithm.mcgregor.McgregorHelperTest.class,
     org.openscience.smsd.algorithm.mcgregor.McGregorChecksTest.class,
     org.openscience.smsd.algorithm.mcgregor.McGregorTest.class,
+    org.openscience.smsd.algorithm.mcgregor.McGregorExtensionTest.class,
     org.openscience.smsd.algorithm.mcgregor.QueryProcessorTest.class,
     org.openscience.smsd.algorithm.mcgregor.TargetProcessorTest.class})
 public class McgregorSuite {
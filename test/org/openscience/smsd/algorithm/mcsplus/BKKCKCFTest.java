@@ -0,0 +1,185 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.mcsplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit testing for the {@link BKKCKCF} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class BKKCKCFTest {
+
+    private static List<Integer> nodes(int n) {
+        List<Integer> nodes = new ArrayList<Integer>();
+        for (int i = 1; i <= n; i++) {
+            nodes.add(i);
+            nodes.add(i);
+            nodes.add(i);
+        }
+        return nodes;
+    }
+
+    /**
+     * A triangle of c-edges is one clique.
+     */
+    @Test
+    public void testTriangle() {
+        BKKCKCF finder = new BKKCKCF(nodes(3), Arrays.asList(1, 2, 2, 3, 1, 3), new ArrayList<Integer>());
+        Assert.assertEquals(3, finder.getBestCliqueSize());
+        Assert.assertEquals(1, finder.getMaxCliqueSet().size());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), finder.getMaxCliqueSet().iterator().next());
+    }
+
+    /**
+     * A vertex joined by d-edges only is not c-connected to the clique.
+     */
+    @Test
+    public void testDEdgesOnly() {
+        BKKCKCF finder = new BKKCKCF(nodes(3), Arrays.asList(1, 2), Arrays.asList(1, 3, 2, 3));
+        Assert.assertEquals(2, finder.getBestCliqueSize());
+        Assert.assertEquals(Arrays.asList(1, 2), finder.getMaxCliqueSet().iterator().next());
+    }
+
+    /**
+     * A d-edge inside a c-connected clique is allowed.
+     */
+    @Test
+    public void testCConnected() {
+        BKKCKCF finder = new BKKCKCF(nodes(3), Arrays.asList(1, 2, 2, 3), Arrays.asList(1, 3));
+        Assert.assertEquals(3, finder.getBestCliqueSize());
+        Assert.assertEquals(1, finder.getMaxCliqueSet().size());
+    }
+
+    /**
+     * The packed row constructor reports the same cliques as the edge lists,
+     * and a pair carrying both edges counts as a c-edge.
+     */
+    @Test
+    public void testPackedRows() {
+        long[][] cRows = new long[3][1];
+        long[][] dRows = new long[3][1];
+        cRows[0][0] = 2L;
+        cRows[1][0] = 1L | 4L;
+        cRows[2][0] = 2L;
+        dRows[0][0] = 4L | 2L;
+        dRows[1][0] = 1L;
+        dRows[2][0] = 1L;
+        BKKCKCF finder = new BKKCKCF(3, cRows, dRows);
+        Assert.assertEquals(3, finder.getBestCliqueSize());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), finder.getMaxCliqueSet().iterator().next());
+        Assert.assertEquals(6L, dRows[0][0]);
+    }
+
+    /**
+     * Compares the maximum c-cliques with a brute force enumeration on random graphs.
+     */
+    @Test
+    public void testRandomGraphs() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(12);
+            int[][] edge = new int[n][n];
+            List<Integer> cEdges = new ArrayList<Integer>();
+            List<Integer> dEdges = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    int type = random.nextInt(4);
+                    if (type == 1) {
+                        cEdges.add(i + 1);
+                        cEdges.add(j + 1);
+                    } else if (type == 2) {
+                        dEdges.add(i + 1);
+                        dEdges.add(j + 1);
+                    }
+                    edge[i][j] = type == 3 ? 0 : type;
+                    edge[j][i] = edge[i][j];
+                }
+            }
+            BKKCKCF finder = new BKKCKCF(nodes(n), cEdges, dEdges);
+            Set<List<Integer>> expected = bruteForce(n, edge);
+            Assert.assertEquals(expected.iterator().next().size(), finder.getBestCliqueSize());
+            Assert.assertEquals(expected, new HashSet<List<Integer>>(finder.getMaxCliqueSet()));
+        }
+    }
+
+    private static Set<List<Integer>> bruteForce(int n, int[][] edge) {
+        Set<List<Integer>> best = new HashSet<List<Integer>>();
+        int bestSize = 0;
+        for (int subset = 1; subset < (1 << n); subset++) {
+            int size = Integer.bitCount(subset);
+            if (size < bestSize || !isCClique(subset, n, edge)) {
+                continue;
+            }
+            if (size > bestSize) {
+                best.clear();
+                bestSize = size;
+            }
+            List<Integer> clique = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                if ((subset & (1 << i)) != 0) {
+                    clique.add(i + 1);
+                }
+            }
+            best.add(clique);
+        }
+        return best;
+    }
+
+    private static boolean isCClique(int subset, int n, int[][] edge) {
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if ((subset & (1 << i)) != 0 && (subset & (1 << j)) != 0 && edge[i][j] == 0) {
+                    return false;
+                }
+            }
+        }
+        int first = Integer.numberOfTrailingZeros(subset);
+        int reached = 1 << first;
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if ((reached & (1 << i)) != 0 && (subset & (1 << j)) != 0
+                            && (reached & (1 << j)) == 0 && edge[i][j] == 1) {
+                        reached |= 1 << j;
+                        grown = true;
+                    }
+                }
+            }
+        }
+        return reached == subset;
+    }
+}
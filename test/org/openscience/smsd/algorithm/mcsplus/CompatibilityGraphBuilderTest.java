@@ -0,0 +1,184 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.mcsplus;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link CompatibilityGraphBuilder} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class CompatibilityGraphBuilderTest {
+
+    private final SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+
+    /*
+     * edges as "qi:tj-qk:tl" strings with the smaller node first, so that
+     * graphs with different node ids can be compared
+     */
+    private static Set<String> edges(List<Integer> nodes, List<Integer> edges) {
+        Set<String> result = new HashSet<String>();
+        for (int e = 0; e + 1 < edges.size(); e += 2) {
+            String a = node(nodes, edges.get(e));
+            String b = node(nodes, edges.get(e + 1));
+            result.add(a.compareTo(b) < 0 ? a + "-" + b : b + "-" + a);
+        }
+        return result;
+    }
+
+    private static String node(List<Integer> nodes, int id) {
+        for (int i = 0; i < nodes.size(); i += 3) {
+            if (nodes.get(i + 2) == id) {
+                return nodes.get(i) + ":" + nodes.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> cEdges(CompatibilityGraph graph) {
+        return edges(graph, true);
+    }
+
+    private static Set<String> dEdges(CompatibilityGraph graph) {
+        return edges(graph, false);
+    }
+
+    private static Set<String> edges(CompatibilityGraph graph, boolean c) {
+        Set<String> result = new HashSet<String>();
+        for (int n = 0; n < graph.getNodeCount(); n++) {
+            for (int m = n + 1; m < graph.getNodeCount(); m++) {
+                if (c ? graph.isCEdge(n, m) : graph.isDEdge(n, m)) {
+                    String a = graph.getQueryIndex(n) + ":" + graph.getTargetIndex(n);
+                    String b = graph.getQueryIndex(m) + ":" + graph.getTargetIndex(m);
+                    result.add(a.compareTo(b) < 0 ? a + "-" + b : b + "-" + a);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void assertSameGraph(String query, String target, boolean bonds) throws Exception {
+        IAtomContainer ac1 = sp.parseSmiles(query);
+        IAtomContainer ac2 = sp.parseSmiles(target);
+        GenerateCompatibilityGraph expected = new GenerateCompatibilityGraph(ac1, ac2, bonds, false, false);
+        CompatibilityGraph actual = new CompatibilityGraphBuilder(ac1, ac2, bonds, false, false).build();
+        Assert.assertEquals(expected.getCompGraphNodes().size() / 3, actual.getNodeCount());
+        Assert.assertEquals(edges(expected.getCompGraphNodes(), expected.getCEgdes()), cEdges(actual));
+        Assert.assertEquals(edges(expected.getCompGraphNodes(), expected.getDEgdes()), dEdges(actual));
+    }
+
+    /**
+     * Same graph as {@link GenerateCompatibilityGraph}, bond sensitive and
+     * insensitive.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBenzeneToluene() throws Exception {
+        assertSameGraph("c1ccccc1", "Cc1ccccc1", true);
+        assertSameGraph("c1ccccc1", "Cc1ccccc1", false);
+    }
+
+    /**
+     * Same graph as {@link GenerateCompatibilityGraph} for hetero atoms and
+     * mixed bond orders.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHeteroAtoms() throws Exception {
+        assertSameGraph("OC(=O)C(N)CS", "OC(=O)C(N)CCSC", true);
+        assertSameGraph("OC(=O)C(N)CS", "OC(=O)C(N)CCSC", false);
+        assertSameGraph("C=CC=O", "OCC#N", false);
+    }
+
+    /**
+     * The graph without c-edges falls back to element nodes, as
+     * {@link GenerateCompatibilityGraph} does.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testElementFallback() throws Exception {
+        assertSameGraph("CO", "OC=O", true);
+    }
+
+    /**
+     * A graph above the parallel threshold built on an executor has the
+     * expected c- and d-edges.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParallelBuild() throws Exception {
+        StringBuilder chain = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            chain.append('C');
+        }
+        IAtomContainer ac1 = sp.parseSmiles(chain.toString());
+        IAtomContainer ac2 = sp.parseSmiles(chain.toString());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CompatibilityGraph graph;
+        try {
+            graph = new CompatibilityGraphBuilder(ac1, ac2, false, false, false, executor).build();
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(graph.getNodeCount() >= CompatibilityGraphBuilder.PARALLEL_THRESHOLD);
+
+        Random random = new Random(7);
+        for (int k = 0; k < 5000; k++) {
+            int n = random.nextInt(graph.getNodeCount());
+            int m = random.nextInt(graph.getNodeCount());
+            Assert.assertEquals(graph.isCEdge(n, m), graph.isCEdge(m, n));
+            Assert.assertEquals(graph.isDEdge(n, m), graph.isDEdge(m, n));
+            int i = graph.getQueryIndex(n);
+            int j = graph.getTargetIndex(n);
+            int k1 = graph.getQueryIndex(m);
+            int l = graph.getTargetIndex(m);
+            if (i == k1 || j == l) {
+                Assert.assertFalse(graph.isCEdge(n, m) || graph.isDEdge(n, m));
+                continue;
+            }
+            IBond b1 = ac1.getBond(ac1.getAtom(i), ac1.getAtom(k1));
+            IBond b2 = ac2.getBond(ac2.getAtom(j), ac2.getAtom(l));
+            Assert.assertEquals(b1 != null && b2 != null, graph.isCEdge(n, m));
+            Assert.assertEquals(b1 == null && b2 == null, graph.isDEdge(n, m));
+        }
+    }
+}
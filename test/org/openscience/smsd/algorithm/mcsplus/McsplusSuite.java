@@ -19,6 +19,8 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({org.openscience.smsd.algorithm.mcsplus.MCSPlusHandlerTest.class,
+    org.openscience.smsd.algorithm.mcsplus.BKKCKCFTest.class,
+    org.openscience.smsd.algorithm.mcsplus.CompatibilityGraphBuilderTest.class,
     org.openscience.smsd.algorithm.mcsplus.IsomorphismMCSPlusTest.class})
 public class McsplusSuite {
 
@@ -0,0 +1,153 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.rgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * Runs the CDKMCS searches on many threads at once and checks that every
+ * thread sees the same result as a sequential run.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * @cdk.module test-smsd
+ * @cdk.require java1.6+
+ */
+public class CDKMCSConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 8;
+    private static final String[][] PAIRS = {
+        {"Nc1ccccc1", "C\\C=C/Nc1cccc(c1)N(O)\\C=C\\C\\C=C\\C=C/C"},
+        {"C1CCCCC1", "CC1=CCC2CC1C2(C)C"},
+        {"c1ccc2[nH]ccc2c1", "CC(=O)Nc1ccc(O)cc1"},
+        {"OC(=O)C(N)CC1=CC=CC=C1", "OC(=O)C(N)CCC(N)=O"},
+        {"CC(=O)OC(=O)C", "CCOC(=O)C"},
+        {"C1CC1(CC1CC1)", "C1CCC1CC1CCC1"}
+    };
+
+    private static String handlerResult(String query, String target) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        CDKMCSHandler handler = new CDKMCSHandler(sp.parseSmiles(query), sp.parseSmiles(target), true, false, false);
+        return handler.isTimeout() + " " + toString(handler.getAllAtomMapping());
+    }
+
+    private static String isomorphismResult(String query, String target) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        Isomorphism comparison = new Isomorphism(sp.parseSmiles(query), sp.parseSmiles(target),
+                Algorithm.CDKMCS, true, false, false);
+        return toString(comparison.getAllAtomMapping());
+    }
+
+    private static String toString(List<AtomAtomMapping> mappings) {
+        List<String> result = new ArrayList<String>();
+        for (AtomAtomMapping mapping : mappings) {
+            result.add(mapping.getMappingsByIndex().toString());
+        }
+        return result.toString();
+    }
+
+    private static void runConcurrently(final boolean useHandler) throws Exception {
+        List<String> expected = new ArrayList<String>();
+        for (String[] pair : PAIRS) {
+            expected.add(useHandler ? handlerResult(pair[0], pair[1]) : isomorphismResult(pair[0], pair[1]));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int round = 0; round < THREADS * ROUNDS; round++) {
+                final String[] pair = PAIRS[round % PAIRS.length];
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return useHandler ? handlerResult(pair[0], pair[1]) : isomorphismResult(pair[0], pair[1]);
+                    }
+                }));
+            }
+            for (int round = 0; round < futures.size(); round++) {
+                Assert.assertEquals(expected.get(round % PAIRS.length), futures.get(round).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Concurrent {@link CDKMCSHandler} searches do not share an iteration budget or timeout flag.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentHandlers() throws Exception {
+        runConcurrently(true);
+    }
+
+    /**
+     * Concurrent {@link Isomorphism} searches with {@link Algorithm#CDKMCS}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentIsomorphism() throws Exception {
+        runConcurrently(false);
+    }
+
+    /**
+     * Each search context keeps its own timeout flag: a search which runs out
+     * of iterations on one context does not mark the other one as timed out.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTimeoutIsPerInstance() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer pinene = sp.parseSmiles("CC1=CCC2CC1C2(C)C");
+        IAtomContainer cyclohexene = sp.parseSmiles("C1=CCCCC1");
+        CDKMCS capped = new CDKMCS(new SearchBudget(0, 1));
+        CDKMCS second = new CDKMCS();
+        capped.getOverlaps(pinene, cyclohexene, true, false, false);
+        Assert.assertTrue(capped.isTimeout());
+        Assert.assertFalse(second.isTimeout());
+        Assert.assertTrue(second.isSubgraph(pinene, cyclohexene, true, false, false));
+        Assert.assertFalse(second.isTimeout());
+        Assert.assertTrue(capped.isTimeout());
+    }
+}
@@ -73,9 +73,9 @@ public class CDKMCSTest {
         CDKHueckelAromaticityDetector.detectAromaticity(frag1);
 
         if (standAlone) {
-            //System.out.println("Cyclohexene is a subgraph of alpha-Pinen: " + CDKMCS.isSubgraph(mol, frag1, true, false,false));
+            //System.out.println("Cyclohexene is a subgraph of alpha-Pinen: " + new CDKMCS().isSubgraph(mol, frag1, true, false,false));
         } else {
-            Assert.assertTrue(CDKMCS.isSubgraph(mol, frag1, true, false, false));
+            Assert.assertTrue(new CDKMCS().isSubgraph(mol, frag1, true, false, false));
         }
 
     }
@@ -112,7 +112,7 @@ public class CDKMCSTest {
         query.addBond(b1);
         query.addBond(b2);
 
-        List<List<CDKRMap>> list = CDKMCS.getSubgraphMaps(atomContainer, query, true, true, false);
+        List<List<CDKRMap>> list = new CDKMCS().getSubgraphMaps(atomContainer, query, true, true, false);
 
         Assert.assertTrue(list.isEmpty());
     }
@@ -127,9 +127,9 @@ public class CDKMCSTest {
         CDKHueckelAromaticityDetector.detectAromaticity(frag1);
 
         if (standAlone) {
-            //System.out.println("Cyclohexane is a subgraph of alpha-Pinen: " + CDKMCS.isSubgraph(mol, frag1, true, true,true));
+            //System.out.println("Cyclohexane is a subgraph of alpha-Pinen: " + new CDKMCS().isSubgraph(mol, frag1, true, true,true));
         } else {
-            Assert.assertTrue(!CDKMCS.isSubgraph(mol, frag1, true, true, true));
+            Assert.assertTrue(!new CDKMCS().isSubgraph(mol, frag1, true, true, true));
         }
     }
 
@@ -147,9 +147,9 @@ public class CDKMCSTest {
         CDKHueckelAromaticityDetector.detectAromaticity(frag1);
 
         if (standAlone) {
-            //System.out.println("Pyrrole is a subgraph of Indole: " + CDKMCS.isSubgraph(mol, frag1, true, false,false));
+            //System.out.println("Pyrrole is a subgraph of Indole: " + new CDKMCS().isSubgraph(mol, frag1, true, false,false));
         } else {
-            Assert.assertTrue(CDKMCS.isSubgraph(mol, frag1, true, false, false));
+            Assert.assertTrue(new CDKMCS().isSubgraph(mol, frag1, true, false, false));
         }
     }
 
@@ -160,7 +160,7 @@ public class CDKMCSTest {
         IAtomContainer SMILESquery = sp.parseSmiles("CC"); // acetic acid anhydride
         QueryAtomContainer query = QueryAtomContainerCreator.createBasicQueryContainer(SMILESquery);
 
-        Assert.assertTrue(CDKMCS.isSubgraph(atomContainer, query, true, true, true));
+        Assert.assertTrue(new CDKMCS().isSubgraph(atomContainer, query, true, true, true));
     }
 
     @Test
@@ -179,7 +179,7 @@ public class CDKMCSTest {
         CDKHueckelAromaticityDetector.detectAromaticity(mol);
         CDKHueckelAromaticityDetector.detectAromaticity(frag1);
 
-        List<List<CDKRMap>> list = CDKMCS.getSubgraphAtomsMaps(mol, frag1, true, false, false);
+        List<List<CDKRMap>> list = new CDKMCS().getSubgraphAtomsMaps(mol, frag1, true, false, false);
         List<CDKRMap> first = list.get(0);
         for (int i = 0; i < first.size(); i++) {
             CDKRMap rmap = first.get(i);
@@ -209,10 +209,10 @@ public class CDKMCSTest {
         IAtomContainer atomContainer = sp.parseSmiles("C1CCCCC1");
         query2 = QueryAtomContainerCreator.createBasicQueryContainer(atomContainer);
 
-        List<CDKRMap> list = CDKMCS.getSubgraphMap(mol, query1, true, true, false);
+        List<CDKRMap> list = new CDKMCS().getSubgraphMap(mol, query1, true, true, false);
         Assert.assertEquals(11, list.size());
 
-        list = CDKMCS.getSubgraphMap(mol, query2, true, true, false);
+        list = new CDKMCS().getSubgraphMap(mol, query2, true, true, false);
         Assert.assertEquals(6, list.size());
 
     }
@@ -243,11 +243,11 @@ public class CDKMCSTest {
         adder.addImplicitHydrogens(mol2);
         CDKHueckelAromaticityDetector.detectAromaticity(mol2);
 
-        List<IAtomContainer> list = CDKMCS.getOverlaps(mol1, mol2, true, true, false);
+        List<IAtomContainer> list = new CDKMCS().getOverlaps(mol1, mol2, true, true, false);
         Assert.assertEquals(1, list.size());
         Assert.assertEquals(11, ((AtomContainer) list.get(0)).getAtomCount());
 
-        list = CDKMCS.getOverlaps(mol2, mol1, true, true, false);
+        list = new CDKMCS().getOverlaps(mol2, mol1, true, true, false);
         Assert.assertEquals(1, list.size());
         Assert.assertEquals(11, ((AtomContainer) list.get(0)).getAtomCount());
     }
@@ -268,9 +268,9 @@ public class CDKMCSTest {
         InputStream ins2 = this.getClass().getClassLoader().getResourceAsStream(file2);
         new MDLV2000Reader(ins2, Mode.STRICT).read(mol2);
 
-        List<IAtomContainer> list = CDKMCS.getOverlaps(mol1, mol2, true, true, false);
+        List<IAtomContainer> list = new CDKMCS().getOverlaps(mol1, mol2, true, true, false);
         Assert.assertEquals(7, list.size());
-        list = CDKMCS.getOverlaps(mol2, mol1, true, true, false);
+        list = new CDKMCS().getOverlaps(mol2, mol1, true, true, false);
         Assert.assertEquals(10, list.size());
 
         // now apply aromaticity detection, then 8 overlaps should be found
@@ -303,10 +303,10 @@ public class CDKMCSTest {
         adder.addImplicitHydrogens(mol2);
         CDKHueckelAromaticityDetector.detectAromaticity(mol2);
 
-        list = CDKMCS.getOverlaps(mol1, mol2, true, true, false);
+        list = new CDKMCS().getOverlaps(mol1, mol2, true, true, false);
         //Fix me should return 8 hits
         Assert.assertEquals(8, list.size());
-        list = CDKMCS.getOverlaps(mol2, mol1, true, true, false);
+        list = new CDKMCS().getOverlaps(mol2, mol1, true, true, false);
         Assert.assertEquals(8, list.size());
 
     }
@@ -339,8 +339,8 @@ public class CDKMCSTest {
         adder.addImplicitHydrogens(mol2);
         CDKHueckelAromaticityDetector.detectAromaticity(mol2);
 
-        List<IAtomContainer> list1 = CDKMCS.getOverlaps(mol1, mol2, true, true, false);
-        List<IAtomContainer> list2 = CDKMCS.getOverlaps(mol2, mol1, true, true, false);
+        List<IAtomContainer> list1 = new CDKMCS().getOverlaps(mol1, mol2, true, true, false);
+        List<IAtomContainer> list2 = new CDKMCS().getOverlaps(mol2, mol1, true, true, false);
         Assert.assertEquals(1, list1.size());
         Assert.assertEquals(1, list2.size());
         Assert.assertEquals(((AtomContainer) list1.get(0)).getAtomCount(),
@@ -357,7 +357,7 @@ public class CDKMCSTest {
             //System.out.println("AtomCount of target: " + ac.getAtomCount());
         }
 
-        boolean matched = CDKMCS.isSubgraph(ac, query, true, false, false);
+        boolean matched = new CDKMCS().isSubgraph(ac, query, true, false, false);
         if (standAlone) {
             //System.out.println("QueryAtomContainer matched: " + matched);
         }
@@ -372,8 +372,8 @@ public class CDKMCSTest {
         ac1.addAtom(new Atom("C"));
         AtomContainer ac2 = new AtomContainer();
         ac2.addAtom(new Atom("C"));
-        Assert.assertTrue(CDKMCS.isIsomorph(ac1, ac2, true, true, true));
-        Assert.assertTrue(CDKMCS.isSubgraph(ac1, ac2, true, true, true));
+        Assert.assertTrue(new CDKMCS().isIsomorph(ac1, ac2, true, true, true));
+        Assert.assertTrue(new CDKMCS().isSubgraph(ac1, ac2, true, true, true));
     }
 
     @Test
@@ -383,8 +383,8 @@ public class CDKMCSTest {
         IAtomContainer queryac = sp.parseSmiles("C1CCCC1");
         QueryAtomContainer query = QueryAtomContainerCreator.createAnyAtomAnyBondContainer(queryac, false);
 
-        Assert.assertFalse("C1CCCC1 should be a subgraph of O1C=CC=C1", CDKMCS.isSubgraph(target, query, true, true, true));
-        Assert.assertFalse("C1CCCC1 should be a isomorph of O1C=CC=C1", CDKMCS.isIsomorph(target, query, true, true, true));
+        Assert.assertFalse("C1CCCC1 should be a subgraph of O1C=CC=C1", new CDKMCS().isSubgraph(target, query, true, true, true));
+        Assert.assertFalse("C1CCCC1 should be a isomorph of O1C=CC=C1", new CDKMCS().isIsomorph(target, query, true, true, true));
     }
 
     /**
@@ -399,7 +399,7 @@ public class CDKMCSTest {
         QueryAtomContainer query = QueryAtomContainerCreator.createAnyAtomAnyBondContainer(queryac, false);
 
         try {
-            CDKMCS.isSubgraph(query, target, true, true, false);
+            new CDKMCS().isSubgraph(query, target, true, true, false);
             Assert.fail("The UniversalIsomorphism should check when the first arguments is a QueryAtomContainer");
         } catch (Exception e) {
             // OK, it must Assert.fail!
@@ -417,7 +417,7 @@ public class CDKMCSTest {
         IAtomContainer queryac = sp.parseSmiles("[H]");
         QueryAtomContainer query = QueryAtomContainerCreator.createSymbolAndBondOrderQueryContainer(queryac);
 
-        List<List<CDKRMap>> matches = CDKMCS.getIsomorphMaps(target, query, true, true, false);
+        List<List<CDKRMap>> matches = new CDKMCS().getIsomorphMaps(target, query, true, true, false);
         Assert.assertEquals(1, matches.size());
         Assert.assertEquals(1, matches.get(0).size());
         CDKRMap mapping = matches.get(0).get(0);
@@ -438,7 +438,7 @@ public class CDKMCSTest {
         IAtomContainer queryac = sp.parseSmiles("C");
         QueryAtomContainer query = QueryAtomContainerCreator.createSymbolAndBondOrderQueryContainer(queryac);
 
-        List<List<CDKRMap>> matches = CDKMCS.getIsomorphMaps(target, query, true, true, false);
+        List<List<CDKRMap>> matches = new CDKMCS().getIsomorphMaps(target, query, true, true, false);
         Assert.assertEquals(2, matches.size());
         Assert.assertEquals(1, matches.get(0).size());
         Assert.assertEquals(1, matches.get(1).size());
@@ -43,7 +43,8 @@ import org.junit.runners.Suite;
     org.openscience.smsd.algorithm.rgraph.CDKRMapTest.class,
     org.openscience.smsd.algorithm.rgraph.CDKRGraphTest.class,
     org.openscience.smsd.algorithm.rgraph.CDKRNodeTest.class,
-    org.openscience.smsd.algorithm.rgraph.CDKMCSTest.class})
+    org.openscience.smsd.algorithm.rgraph.CDKMCSTest.class,
+    org.openscience.smsd.algorithm.rgraph.CDKMCSConcurrencyTest.class})
 public class CdkSuite {
 
     @BeforeClass
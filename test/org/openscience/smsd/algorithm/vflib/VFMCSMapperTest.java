@@ -0,0 +1,212 @@
+/*
+ * MX - Essential Cheminformatics
+ * 
+ * Copyright (c) 2007-2009 Metamolecular, LLC
+ * 
+ * http://metamolecular.com/mx
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+
+ *Copyright (C) 2009-2011 Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.vflib;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.smsd.algorithm.vflib.interfaces.IQuery;
+import org.openscience.smsd.algorithm.vflib.interfaces.IState;
+import org.openscience.smsd.algorithm.vflib.interfaces.INode;
+import org.openscience.smsd.algorithm.vflib.map.Match;
+import org.openscience.smsd.algorithm.vflib.map.VFMCSMapper;
+import org.openscience.smsd.algorithm.vflib.map.VFMCSState;
+import org.openscience.smsd.algorithm.vflib.query.QueryCompiler;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import org.openscience.smsd.tools.SearchBudget;
+
+/**
+ * Unit testing for the {@link VFMCSMapper} and {@link VFMCSState} classes.
+ * The expected mappings are the ones found by the chained states the
+ * current state replaced.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * @cdk.module test-smsd
+ * @cdk.require java1.6+
+ */
+public class VFMCSMapperTest {
+
+    private IAtomContainer benzene;
+    private IAtomContainer naphthalene;
+    private IAtomContainer phenol;
+    private IAtomContainer cubane;
+
+    @Before
+    public void setUp() throws Exception {
+        benzene = Molecules.createBenzene();
+        naphthalene = Molecules.createNaphthalene();
+        phenol = Molecules.createPhenol();
+        cubane = Molecules.createCubane();
+        MoleculeInitializer.initializeMolecule(benzene);
+        MoleculeInitializer.initializeMolecule(naphthalene);
+        MoleculeInitializer.initializeMolecule(phenol);
+        MoleculeInitializer.initializeMolecule(cubane);
+    }
+
+    private IQuery compile(IAtomContainer molecule) {
+        return new QueryCompiler(molecule, false, false, false).compile();
+    }
+
+    /*
+     * query atom index to target atom index
+     */
+    private String toIndices(IQuery query, IAtomContainer target, Map<INode, IAtom> map) {
+        Map<Integer, Integer> indices = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < query.countNodes(); i++) {
+            IAtom atom = map.get(query.getNode(i));
+            if (atom != null) {
+                indices.put(i, target.getAtomNumber(atom));
+            }
+        }
+        return indices.toString();
+    }
+
+    @Test
+    public void testGetMaps() {
+        IQuery query = compile(benzene);
+        VFMCSMapper mapper = new VFMCSMapper(query);
+        List<Map<INode, IAtom>> maps = mapper.getMaps(naphthalene);
+
+        Assert.assertFalse(mapper.isTimeout());
+        Assert.assertEquals(8, maps.size());
+        Assert.assertEquals("{5=9}", toIndices(query, naphthalene, maps.get(1)));
+        Assert.assertEquals("{0=5, 1=0, 2=1, 3=2, 5=9}", toIndices(query, naphthalene, maps.get(5)));
+        Assert.assertEquals("{0=5, 1=4, 2=6, 3=7, 4=8, 5=9}", toIndices(query, naphthalene, maps.get(7)));
+    }
+
+    @Test
+    public void testCountMaps() {
+        IQuery query = compile(benzene);
+        VFMCSMapper mapper = new VFMCSMapper(query);
+
+        Assert.assertEquals(8, mapper.countMaps(naphthalene));
+        Assert.assertEquals(8, mapper.countMaps(naphthalene));
+        Assert.assertEquals(7, mapper.countMaps(phenol));
+        Assert.assertEquals(0, new VFMCSMapper(compile(phenol)).countMaps(benzene));
+    }
+
+    @Test
+    public void testGetFirstMap() {
+        IQuery query = compile(benzene);
+        VFMCSMapper mapper = new VFMCSMapper(query);
+
+        Assert.assertEquals("{0=5, 1=4, 2=6, 3=7, 4=8, 5=9}",
+                toIndices(query, naphthalene, mapper.getFirstMap(naphthalene)));
+        Assert.assertEquals("{0=0, 1=1, 2=2, 3=3, 4=4, 5=5}",
+                toIndices(query, phenol, mapper.getFirstMap(phenol)));
+        Assert.assertTrue(mapper.hasMap(phenol));
+
+        VFMCSMapper larger = new VFMCSMapper(compile(phenol));
+        Assert.assertTrue(larger.getFirstMap(benzene).isEmpty());
+        Assert.assertFalse(larger.hasMap(benzene));
+    }
+
+    /**
+     * The iteration cap stops the search on the same pairs as before, and a
+     * cancelled budget stops it at once.
+     */
+    @Test
+    public void testTimeout() {
+        IQuery query = compile(cubane);
+        VFMCSMapper mapper = new VFMCSMapper(query);
+        List<Map<INode, IAtom>> maps = mapper.getMaps(cubane);
+
+        Assert.assertTrue(mapper.isTimeout());
+        Assert.assertEquals(9, maps.size());
+        Assert.assertEquals("{0=0, 1=1, 2=2, 3=3, 4=4, 5=5, 6=6, 7=7}", toIndices(query, cubane, maps.get(8)));
+        Assert.assertEquals(9, mapper.countMaps(cubane));
+
+        mapper = new VFMCSMapper(compile(benzene));
+        mapper.getMaps(cubane);
+        Assert.assertTrue(mapper.isTimeout());
+
+        SearchBudget budget = new SearchBudget();
+        budget.cancel();
+        mapper = new VFMCSMapper(compile(benzene), budget);
+        mapper.getMaps(naphthalene);
+        Assert.assertTrue(mapper.isTimeout());
+    }
+
+    /**
+     * The state can still be walked through the {@link IState} interface, the
+     * next states share the mapping and backtrack it depth by depth.
+     */
+    @Test
+    public void testStateView() {
+        IQuery query = compile(benzene);
+        VFMCSState state = new VFMCSState(query, naphthalene);
+        Assert.assertFalse(state.isDead());
+        Assert.assertTrue(state.hasNextCandidate());
+
+        Match first = state.nextCandidate();
+        Assert.assertTrue(state.isMatchFeasible(first));
+        IState next = state.nextState(first);
+        Assert.assertEquals(1, next.getMap().size());
+        Assert.assertSame(first.getTargetAtom(), state.getMap().get(first.getQueryNode()));
+
+        Match second = next.nextCandidate();
+        Assert.assertTrue(next.isMatchFeasible(second));
+        Assert.assertFalse(next.isMatchFeasible(first));
+        IState last = next.nextState(second);
+        Assert.assertEquals(2, last.getMap().size());
+
+        last.backTrack();
+        Assert.assertEquals(1, next.getMap().size());
+        next.backTrack();
+        Assert.assertTrue(state.getMap().isEmpty());
+        Assert.assertTrue(state.hasNextCandidate());
+
+        Assert.assertTrue(new VFMCSState(compile(phenol), benzene).isDead());
+    }
+}
@@ -40,7 +40,9 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
     org.openscience.smsd.algorithm.vflib.VF2MCSTest.class,
     org.openscience.smsd.algorithm.vflib.VFMatcherTest.class,
-    org.openscience.smsd.algorithm.vflib.VFMapperTest.class})
+    org.openscience.smsd.algorithm.vflib.VFMapperTest.class,
+    org.openscience.smsd.algorithm.vflib.VFMCSMapperTest.class,
+    org.openscience.smsd.algorithm.vflib.substructure.CompiledQueryTest.class})
 public class VFSuite {
 
     @BeforeClass
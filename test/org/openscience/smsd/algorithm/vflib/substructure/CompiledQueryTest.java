@@ -0,0 +1,149 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.algorithm.vflib.substructure;
+
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.AtomAtomMapping;
+
+/**
+ * Unit testing for the {@link CompiledQuery} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class CompiledQueryTest {
+
+    private IAtomContainer parse(String smiles) throws InvalidSmilesException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    /**
+     * One compiled query is reused against several targets.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testMatches() throws InvalidSmilesException {
+        CompiledQuery query = new CompiledQuery(parse("CCO"), true, false, false);
+        Assert.assertTrue(query.matches(parse("CCCO")));
+        Assert.assertTrue(query.matches(parse("OCC(C)C")));
+        Assert.assertFalse(query.matches(parse("CCN")));
+        Assert.assertFalse(query.matches(parse("CO")));
+        Assert.assertTrue(query.matches(parse("CCCO")));
+    }
+
+    /**
+     * Test of findFirst method, of class CompiledQuery.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testFindFirst() throws InvalidSmilesException {
+        CompiledQuery query = new CompiledQuery(parse("C=O"), true, false, false);
+        AtomAtomMapping mapping = query.findFirst(parse("CC(=O)O"));
+        Assert.assertNotNull(mapping);
+        Assert.assertEquals(2, mapping.getCount());
+        Assert.assertNull(query.findFirst(parse("CCO")));
+    }
+
+    /**
+     * Test of findAll method, of class CompiledQuery.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testFindAll() throws InvalidSmilesException {
+        CompiledQuery query = new CompiledQuery(parse("CO"), true, false, false);
+        List<AtomAtomMapping> mappings = query.findAll(parse("OCCO"));
+        Assert.assertEquals(2, mappings.size());
+        Assert.assertTrue(query.findAll(parse("CCC")).isEmpty());
+    }
+
+    /**
+     * Test of iterate method, of class CompiledQuery.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testIterate() throws InvalidSmilesException {
+        CompiledQuery query = new CompiledQuery(parse("c1ccccc1"), true, false, false);
+        IAtomContainer target = parse("c1ccc2ccccc2c1");
+        List<AtomAtomMapping> all = query.findAll(target);
+
+        int count = 0;
+        for (AtomAtomMapping mapping : query.iterate(target)) {
+            Assert.assertEquals(all.get(count).toString(), mapping.toString());
+            count++;
+        }
+        Assert.assertEquals(all.size(), count);
+
+        Iterator<AtomAtomMapping> limited = query.iterate(target, 3, null).iterator();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limited.hasNext());
+            Assert.assertEquals(all.get(i).toString(), limited.next().toString());
+        }
+        Assert.assertFalse(limited.hasNext());
+        Assert.assertFalse(query.iterate(parse("CCCCCC")).iterator().hasNext());
+    }
+
+    /**
+     * Test of isSubgraphHeuristicsMatch method, of class CompiledQuery.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testIsSubgraphHeuristicsMatch() throws InvalidSmilesException {
+        CompiledQuery query = new CompiledQuery(parse("NCC=O"), true, false, false);
+        Assert.assertTrue(query.isSubgraphHeuristicsMatch(parse("NCCC=O")));
+        Assert.assertFalse(query.isSubgraphHeuristicsMatch(parse("CCCC=O")));
+        Assert.assertFalse(query.isSubgraphHeuristicsMatch(parse("NCCCO")));
+    }
+
+    /**
+     * Results through a compiled query are the same as through VF2.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testSameAsVF2() throws InvalidSmilesException {
+        IAtomContainer queryContainer = parse("c1ccccc1");
+        CompiledQuery query = new CompiledQuery(queryContainer, true, false, false);
+        String[] targets = {"c1ccccc1C", "C1CCCCC1", "c1ccc2ccccc2c1", "CCCCCC"};
+        for (String smiles : targets) {
+            IAtomContainer target = parse(smiles);
+            VF2 vf2 = new VF2(queryContainer, target, true, false, false);
+            Assert.assertEquals(vf2.isSubgraph(), query.matches(target));
+            Assert.assertEquals(vf2.isSubgraph(), new VF2(query, target).isSubgraph());
+        }
+    }
+}
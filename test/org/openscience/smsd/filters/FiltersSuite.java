@@ -38,7 +38,8 @@ import org.junit.runners.Suite;
  * @cdk.require java1.6+
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({org.openscience.smsd.filters.PostFilterTest.class,org.openscience.smsd.filters.ChemicalFiltersTest.class})
+@Suite.SuiteClasses({org.openscience.smsd.filters.PostFilterTest.class,org.openscience.smsd.filters.ChemicalFiltersTest.class,
+    org.openscience.smsd.filters.SymmetryFilterTest.class})
 public class FiltersSuite {
 
     @BeforeClass
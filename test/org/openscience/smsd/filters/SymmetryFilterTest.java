@@ -0,0 +1,91 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.tools.MappingSet;
+
+/**
+ * Unit testing for the {@link SymmetryFilter} class.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class SymmetryFilterTest {
+
+    /*
+     * benzene ring atom i on toluene ring atom 1 + (i + shift) % 6
+     */
+    private static AtomAtomMapping rotation(IAtomContainer benzene, IAtomContainer toluene, int shift) {
+        AtomAtomMapping mapping = new AtomAtomMapping(benzene, toluene);
+        for (int i = 0; i < 6; i++) {
+            mapping.put(i, 1 + (i + shift) % 6);
+        }
+        return mapping;
+    }
+
+    @Test
+    public void testFilterBenzene() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer benzene = sp.parseSmiles("c1ccccc1");
+        IAtomContainer toluene = sp.parseSmiles("Cc1ccccc1");
+        List<AtomAtomMapping> mappings = new ArrayList<AtomAtomMapping>();
+        for (int shift = 0; shift < 6; shift++) {
+            mappings.add(rotation(benzene, toluene, shift));
+        }
+        SymmetryFilter filter = new SymmetryFilter(benzene, toluene, true, false);
+        List<AtomAtomMapping> representatives = filter.filter(mappings);
+        Assert.assertEquals(1, representatives.size());
+        Assert.assertSame(mappings.get(0), representatives.get(0));
+    }
+
+    @Test
+    public void testExpand() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer benzene = sp.parseSmiles("c1ccccc1");
+        IAtomContainer toluene = sp.parseSmiles("Cc1ccccc1");
+        AtomAtomMapping mapping = rotation(benzene, toluene, 0);
+        SymmetryFilter filter = new SymmetryFilter(benzene, toluene, true, false);
+
+        MappingSet seen = new MappingSet();
+        int count = 0;
+        for (AtomAtomMapping equivalent : filter.expand(mapping)) {
+            Assert.assertEquals(6, equivalent.getCount());
+            Assert.assertTrue(seen.add(equivalent));
+            count++;
+        }
+        /*
+         * the 6 rotations and 6 reflections of the ring
+         */
+        Assert.assertEquals(12, count);
+        Assert.assertSame(mapping, filter.expand(mapping).iterator().next());
+    }
+}
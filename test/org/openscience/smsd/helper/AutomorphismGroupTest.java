@@ -0,0 +1,123 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link AutomorphismGroup} class.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class AutomorphismGroupTest {
+
+    private IAtomContainer parse(String smiles) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    @Test
+    public void testBenzene() throws CDKException {
+        AutomorphismGroup group = new AutomorphismGroup(parse("c1ccccc1"), true, false);
+        Assert.assertTrue(group.isComplete());
+        Assert.assertEquals(12, group.size());
+        Assert.assertEquals(1, group.countOrbits());
+        for (int[] permutation : group.getPermutations()) {
+            Assert.assertEquals(6, permutation.length);
+        }
+    }
+
+    @Test
+    public void testToluene() throws CDKException {
+        AutomorphismGroup group = new AutomorphismGroup(parse("Cc1ccccc1"), true, false);
+        Assert.assertEquals(2, group.size());
+        /*
+         * methyl, ipso, ortho, meta and para carbons
+         */
+        Assert.assertEquals(5, group.countOrbits());
+        Assert.assertEquals(group.getOrbit(2), group.getOrbit(6));
+        Assert.assertEquals(group.getOrbit(3), group.getOrbit(5));
+        Assert.assertFalse(group.getOrbit(2) == group.getOrbit(3));
+    }
+
+    @Test
+    public void testAsymmetric() throws CDKException {
+        AutomorphismGroup group = new AutomorphismGroup(parse("CCO"), true, false);
+        Assert.assertTrue(group.isTrivial());
+        Assert.assertEquals(3, group.countOrbits());
+    }
+
+    /**
+     * A group larger than the cap is not enumerated, only the identity is
+     * kept.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testIncomplete() throws CDKException {
+        AutomorphismGroup group = new AutomorphismGroup(parse("CC(C)(C)C"), true, false,
+                AutomorphismGroup.DEFAULT_MAX_ITERATIONS, 4);
+        Assert.assertFalse(group.isComplete());
+        Assert.assertTrue(group.isTrivial());
+        Assert.assertEquals(5, group.countOrbits());
+    }
+
+    /**
+     * A stereo bond keeps its atoms in place, the methyl groups of
+     * isopropanol are no longer equivalent once one of them is wedged.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testStereoBond() throws CDKException {
+        IAtomContainer container = parse("CC(C)O");
+        Assert.assertEquals(2, new AutomorphismGroup(container, true, false).size());
+
+        container.getBond(0).setStereo(IBond.Stereo.UP);
+        AutomorphismGroup group = new AutomorphismGroup(container, true, false);
+        Assert.assertTrue(group.isComplete());
+        Assert.assertTrue(group.isTrivial());
+        Assert.assertEquals(4, group.countOrbits());
+    }
+
+    /**
+     * A stereo centre only fixes itself and its ligands, the methyl groups
+     * beyond the ligand stay equivalent.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testStereoCentre() throws CDKException {
+        AutomorphismGroup group = new AutomorphismGroup(parse("CC(C)[C@@H](N)O"), true, false);
+        Assert.assertEquals(2, group.size());
+        Assert.assertEquals(group.getOrbit(0), group.getOrbit(2));
+        Assert.assertEquals(3, group.getOrbit(3));
+    }
+}
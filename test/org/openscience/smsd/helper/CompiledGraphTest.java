@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link CompiledGraph} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class CompiledGraphTest {
+
+    private IAtomContainer parse(String smiles) throws InvalidSmilesException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    /**
+     * Test of getNeighbours method, of class CompiledGraph.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testGetNeighbours() throws InvalidSmilesException {
+        IAtomContainer container = parse("CC(O)N");
+        CompiledGraph graph = new CompiledGraph(container);
+        Assert.assertEquals(4, graph.getAtomCount());
+        Assert.assertEquals(3, graph.getBondCount());
+        for (int i = 0; i < container.getAtomCount(); i++) {
+            int[] neighbours = graph.getNeighbours(i);
+            Assert.assertEquals(container.getConnectedAtomsCount(container.getAtom(i)), neighbours.length);
+            for (int j : neighbours) {
+                Assert.assertNotNull(container.getBond(container.getAtom(i), container.getAtom(j)));
+            }
+        }
+        Assert.assertEquals(3, graph.getDegree(1));
+    }
+
+    /**
+     * Test of getBondIndex method, of class CompiledGraph.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testGetBondIndex() throws InvalidSmilesException {
+        IAtomContainer container = parse("C1CCCCC1");
+        CompiledGraph graph = new CompiledGraph(container);
+        for (int b = 0; b < container.getBondCount(); b++) {
+            IBond bond = container.getBond(b);
+            int i = container.getAtomNumber(bond.getAtom(0));
+            int j = container.getAtomNumber(bond.getAtom(1));
+            Assert.assertEquals(b, graph.getBondIndex(i, j));
+            Assert.assertEquals(b, graph.getBondIndex(j, i));
+        }
+        Assert.assertEquals(-1, graph.getBondIndex(0, 3));
+    }
+
+    /**
+     * Test of indexOf method, of class CompiledGraph.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testIndexOf() throws InvalidSmilesException {
+        IAtomContainer container = parse("CCOC(=O)N");
+        CompiledGraph graph = new CompiledGraph(container);
+        for (int i = 0; i < container.getAtomCount(); i++) {
+            Assert.assertEquals(i, graph.indexOf(container.getAtom(i)));
+        }
+        Assert.assertEquals(-1, graph.indexOf(parse("C").getAtom(0)));
+    }
+
+    /**
+     * Test of bondLabel and bondLabelsMatch methods, of class CompiledGraph.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testBondLabelsMatch() throws InvalidSmilesException {
+        IAtomContainer container = parse("C=CC");
+        int doubleBond = CompiledGraph.bondLabel(container.getBond(0));
+        int singleBond = CompiledGraph.bondLabel(container.getBond(1));
+        Assert.assertTrue(CompiledGraph.bondLabelsMatch(singleBond, singleBond, true));
+        Assert.assertFalse(CompiledGraph.bondLabelsMatch(singleBond, doubleBond, true));
+        Assert.assertTrue(CompiledGraph.bondLabelsMatch(singleBond, doubleBond, false));
+    }
+
+    /**
+     * Test of sameBondLabels method, aromatic bonds are equivalent whatever
+     * their Kekule order.
+     *
+     * @throws InvalidSmilesException
+     */
+    @Test
+    public void testSameBondLabels() throws InvalidSmilesException {
+        IAtomContainer container = parse("C=CC");
+        int doubleBond = CompiledGraph.bondLabel(container.getBond(0));
+        int singleBond = CompiledGraph.bondLabel(container.getBond(1));
+        Assert.assertTrue(CompiledGraph.sameBondLabels(singleBond, singleBond));
+        Assert.assertFalse(CompiledGraph.sameBondLabels(singleBond, doubleBond));
+        container.getBond(0).setFlag(CDKConstants.ISAROMATIC, true);
+        container.getBond(1).setFlag(CDKConstants.ISAROMATIC, true);
+        Assert.assertTrue(CompiledGraph.sameBondLabels(CompiledGraph.bondLabel(container.getBond(0)),
+                CompiledGraph.bondLabel(container.getBond(1))));
+        Assert.assertFalse(CompiledGraph.sameBondLabels(CompiledGraph.bondLabel(container.getBond(0)), singleBond));
+    }
+}
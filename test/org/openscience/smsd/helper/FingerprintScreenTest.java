@@ -0,0 +1,109 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.QueryAtomContainerCreator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link FingerprintScreen} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class FingerprintScreenTest {
+
+    private IAtomContainer parse(String smiles) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    /**
+     * A substructure always passes, a query with a path the target lacks is
+     * rejected.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testMayMatch() throws CDKException {
+        FingerprintScreen screen = new FingerprintScreen();
+        IAtomContainer phenol = parse("Oc1ccccc1");
+        Assert.assertTrue(screen.mayMatch(parse("c1ccccc1"), phenol));
+        Assert.assertTrue(screen.mayMatch(parse("CCO"), parse("OCCCCN")));
+        Assert.assertTrue(screen.mayMatch(phenol, phenol));
+        Assert.assertFalse(screen.mayMatch(parse("CN"), phenol));
+        Assert.assertFalse(screen.mayMatch(parse("OCO"), parse("OCCO")));
+
+        long[] query = FingerprintScreen.fingerprint(parse("CC(=O)O"));
+        long[] target = FingerprintScreen.fingerprint(parse("CC(=O)OCC"));
+        Assert.assertEquals(FingerprintScreen.SIZE / 64, query.length);
+        Assert.assertTrue(FingerprintScreen.isSubset(query, target));
+        Assert.assertFalse(FingerprintScreen.isSubset(target, query));
+    }
+
+    /**
+     * The fingerprint is computed once and computed again after a change.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testCache() throws CDKException {
+        IAtomContainer container = parse("CCO");
+        long[] bits = FingerprintScreen.getFingerprint(container);
+        Assert.assertNotNull(bits);
+        Assert.assertSame(bits, FingerprintScreen.getFingerprint(container));
+
+        IAtom nitrogen = container.getBuilder().newInstance(IAtom.class, "N");
+        container.addAtom(nitrogen);
+        container.addBond(container.getBuilder().newInstance(IBond.class, container.getAtom(2), nitrogen));
+        long[] modified = FingerprintScreen.getFingerprint(container);
+        Assert.assertNotSame(bits, modified);
+        Assert.assertTrue(FingerprintScreen.isSubset(bits, modified));
+
+        IAtomContainer copy = parse("CCO");
+        FingerprintScreen.setFingerprint(copy, bits);
+        Assert.assertSame(bits, FingerprintScreen.getFingerprint(copy));
+    }
+
+    /**
+     * Query containers have no fingerprint and are never rejected.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testQueryContainer() throws CDKException {
+        IQueryAtomContainer query = QueryAtomContainerCreator.createSymbolAndBondOrderQueryContainer(parse("CN"));
+        Assert.assertNull(FingerprintScreen.getFingerprint(query));
+        Assert.assertTrue(new FingerprintScreen().mayMatch(query, parse("CCO")));
+    }
+}
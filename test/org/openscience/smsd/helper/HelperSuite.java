@@ -39,7 +39,11 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({org.openscience.smsd.helper.LabelContainerTest.class,
     org.openscience.smsd.helper.BondEnergyTest.class,
-    org.openscience.smsd.helper.BinaryTreeTest.class})
+    org.openscience.smsd.helper.BinaryTreeTest.class,
+    org.openscience.smsd.helper.CompiledGraphTest.class,
+    org.openscience.smsd.helper.PerceptionCacheTest.class,
+    org.openscience.smsd.helper.AutomorphismGroupTest.class,
+    org.openscience.smsd.helper.FingerprintScreenTest.class})
 public class HelperSuite {
 
     @BeforeClass
@@ -0,0 +1,198 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link PerceptionCache} class.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class PerceptionCacheTest {
+
+    private IAtomContainer parse(String smiles) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    /**
+     * A prepared molecule gets its ring properties back without being
+     * perceived again.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testRestore() throws CDKException {
+        IAtomContainer container = parse("c1ccccc1CC");
+        Assert.assertFalse(MoleculeInitializer.isInitialized(container));
+        MoleculeInitializer.initializeMolecule(container);
+        Assert.assertTrue(MoleculeInitializer.isInitialized(container));
+
+        IAtom ringAtom = container.getAtom(0);
+        List<Integer> ringSizes = ringAtom.getProperty(CDKConstants.RING_SIZES);
+        Assert.assertNotNull(ringSizes);
+        Assert.assertEquals(6, ringSizes.get(0).intValue());
+        Assert.assertTrue(ringAtom.getFlag(CDKConstants.ISAROMATIC));
+
+        ringAtom.removeProperty(CDKConstants.RING_SIZES);
+        ringAtom.setFlag(CDKConstants.ISAROMATIC, false);
+        Assert.assertTrue(PerceptionCache.restore(container));
+        Assert.assertSame(ringSizes, ringAtom.getProperty(CDKConstants.RING_SIZES));
+        Assert.assertTrue(ringAtom.getFlag(CDKConstants.ISAROMATIC));
+        Assert.assertFalse(container.getAtom(7).getFlag(CDKConstants.ISINRING));
+    }
+
+    /**
+     * A structural change is detected and the molecule is perceived again.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testModified() throws CDKException {
+        IAtomContainer container = parse("CCCCCC");
+        MoleculeInitializer.initializeMolecule(container);
+        long stamp = PerceptionCache.stamp(container);
+        Assert.assertTrue(PerceptionCache.isPrepared(container));
+
+        IBond bond = container.getBuilder().newInstance(IBond.class, container.getAtom(0), container.getAtom(5));
+        container.addBond(bond);
+        Assert.assertTrue(stamp != PerceptionCache.stamp(container));
+        Assert.assertFalse(PerceptionCache.isPrepared(container));
+        Assert.assertFalse(PerceptionCache.restore(container));
+
+        MoleculeInitializer.initializeMolecule(container);
+        Assert.assertTrue(container.getAtom(0).getFlag(CDKConstants.ISINRING));
+        Assert.assertTrue(bond.getFlag(CDKConstants.ISINRING));
+        Assert.assertTrue(MoleculeInitializer.isInitialized(container));
+    }
+
+    /**
+     * @throws CDKException
+     */
+    @Test
+    public void testInvalidate() throws CDKException {
+        IAtomContainer container = parse("C1CC1O");
+        MoleculeInitializer.initializeMolecule(container);
+        Assert.assertTrue(MoleculeInitializer.isInitialized(container));
+        MoleculeInitializer.invalidate(container);
+        Assert.assertFalse(MoleculeInitializer.isInitialized(container));
+    }
+
+    /**
+     * A fingerprint is only returned for the stamp it was stored with and is
+     * dropped on invalidation.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testFingerprint() throws CDKException {
+        IAtomContainer container = parse("CCO");
+        long stamp = PerceptionCache.stamp(container);
+        long[] bits = new long[]{1L};
+        PerceptionCache.storeFingerprint(container, stamp, bits);
+        Assert.assertSame(bits, PerceptionCache.getFingerprint(container, stamp));
+        Assert.assertNull(PerceptionCache.getFingerprint(container, stamp + 1));
+        Assert.assertNull(PerceptionCache.getFingerprint(container, stamp));
+
+        PerceptionCache.storeFingerprint(container, stamp, bits);
+        PerceptionCache.invalidate(container);
+        Assert.assertNull(PerceptionCache.getFingerprint(container, stamp));
+    }
+
+    /**
+     * A prepared molecule is restored without waiting for the lock that
+     * serializes perception.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreWithoutLock() throws Exception {
+        final IAtomContainer container = parse("c1ccccc1CC");
+        MoleculeInitializer.initializeMolecule(container);
+        Thread restorer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    MoleculeInitializer.initializeMolecule(container);
+                } catch (CDKException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+        synchronized (MoleculeInitializer.class) {
+            restorer.start();
+            restorer.join(5000);
+            Assert.assertFalse(restorer.isAlive());
+        }
+    }
+
+    /**
+     * The SSSR fallback of an interrupted bounded perception sets the ring
+     * flags and is cached with a degraded marker, the molecule is only
+     * perceived again once invalidated.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testFallbackCached() throws CDKException {
+        IAtomContainer container = parse("c1ccccc1CC");
+        MoleculeInitializer.setRingPerception(MoleculeInitializer.RingPerception.BOUNDED);
+        try {
+            Thread.currentThread().interrupt();
+            try {
+                MoleculeInitializer.initializeMolecule(container);
+            } finally {
+                Thread.interrupted();
+            }
+            Assert.assertTrue(container.getAtom(0).getFlag(CDKConstants.ISINRING));
+            Assert.assertTrue(MoleculeInitializer.isInitialized(container));
+            Assert.assertTrue(MoleculeInitializer.isDegraded(container));
+
+            container.getAtom(0).setFlag(CDKConstants.ISINRING, false);
+            Assert.assertTrue(PerceptionCache.restore(container));
+            Assert.assertTrue(container.getAtom(0).getFlag(CDKConstants.ISINRING));
+            Assert.assertTrue(MoleculeInitializer.isDegraded(container));
+
+            MoleculeInitializer.invalidate(container);
+            MoleculeInitializer.initializeMolecule(container);
+            Assert.assertTrue(MoleculeInitializer.isInitialized(container));
+            Assert.assertFalse(MoleculeInitializer.isDegraded(container));
+        } finally {
+            MoleculeInitializer.setRingPerception(MoleculeInitializer.RingPerception.ALL_RINGS);
+        }
+    }
+}
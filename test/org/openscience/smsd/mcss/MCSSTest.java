@@ -0,0 +1,208 @@
+/**
+ *
+ * Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.mcss;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Unit testing for the {@link MCSS} class. The pairwise reduction of the
+ * multi-threaded path is compared with the one-thread path; on a machine with
+ * fewer than three processors both runs take the one-thread path.
+ *
+ * @author Syed Asad Rahman
+ * @cdk.module test-smsd
+ */
+public class MCSSTest {
+
+    /**
+     * phenethylamines, the MCSS is phenethylamine itself (9 atoms)
+     */
+    private static final String[] CONGENERIC = {"Oc1ccccc1CCN", "NCCc1ccccc1", "Clc1ccccc1CCN", "Cc1cccc(CCN)c1"};
+
+    private static List<IAtomContainer> parse(String... smiles) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (String s : smiles) {
+            molecules.add(sp.parseSmiles(s));
+        }
+        return molecules;
+    }
+
+    private static List<Integer> atomCounts(Collection<IAtomContainer> fragments) {
+        List<Integer> counts = new ArrayList<Integer>();
+        for (IAtomContainer fragment : fragments) {
+            counts.add(fragment.getAtomCount());
+        }
+        Collections.sort(counts);
+        return counts;
+    }
+
+    /**
+     * A SINGLE job gives one fragment, with one thread and with the pairwise
+     * reduction.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testSingleReduction() throws CDKException {
+        MCSS oneThread = new MCSS(parse(CONGENERIC), JobType.SINGLE, 1, null, true, true, true);
+        MCSS threads = new MCSS(parse(CONGENERIC), JobType.SINGLE, 2, null, true, true, true);
+        Assert.assertEquals(Collections.singletonList(9), atomCounts(oneThread.getCalculateMCSS()));
+        Assert.assertEquals(atomCounts(oneThread.getCalculateMCSS()), atomCounts(threads.getCalculateMCSS()));
+    }
+
+    /**
+     * The fragments of a MULTIPLE job have the size of the MCSS, with one
+     * thread and with the pairwise reduction.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testMultipleReduction() throws CDKException {
+        MCSS oneThread = new MCSS(parse(CONGENERIC), JobType.MULTIPLE, 1, null, true, true, true);
+        MCSS threads = new MCSS(parse(CONGENERIC), JobType.MULTIPLE, 2, null, true, true, true);
+        Assert.assertFalse(oneThread.getCalculateMCSS().isEmpty());
+        Assert.assertFalse(threads.getCalculateMCSS().isEmpty());
+        for (IAtomContainer fragment : oneThread.getCalculateMCSS()) {
+            Assert.assertEquals(9, fragment.getAtomCount());
+        }
+        for (IAtomContainer fragment : threads.getCalculateMCSS()) {
+            Assert.assertEquals(9, fragment.getAtomCount());
+        }
+    }
+
+    /**
+     * Two molecules without a common atom leave no common fragment, a merge
+     * without a common fragment ends the reduction.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testEmptyMerge() throws CDKException {
+        String[] smiles = {"CCO", "NN", "CCN"};
+        MCSS oneThread = new MCSS(parse(smiles), JobType.MULTIPLE, 1, null, true, true, true);
+        MCSS threads = new MCSS(parse(smiles), JobType.MULTIPLE, 2, null, true, true, true);
+        for (IAtomContainer fragment : oneThread.getCalculateMCSS()) {
+            Assert.assertEquals(0, fragment.getAtomCount());
+        }
+        for (IAtomContainer fragment : threads.getCalculateMCSS()) {
+            Assert.assertEquals(0, fragment.getAtomCount());
+        }
+    }
+
+    /**
+     * A fragment below the minimum size aborts the whole MCSS, SINGLE and
+     * MULTIPLE, with one thread and with the pairwise reduction.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testMinimumFragmentSize() throws CDKException {
+        for (JobType jobType : JobType.values()) {
+            for (int threads = 1; threads <= 2; threads++) {
+                MCSS aborted = new MCSS(parse(CONGENERIC), jobType, threads, null, true, true, true, 10);
+                Assert.assertTrue(aborted.isAborted());
+                Assert.assertTrue(aborted.getCalculateMCSS().isEmpty());
+
+                MCSS kept = new MCSS(parse(CONGENERIC), jobType, threads, null, true, true, true, 9);
+                Assert.assertFalse(kept.isAborted());
+                Assert.assertFalse(kept.getCalculateMCSS().isEmpty());
+            }
+        }
+    }
+
+    /**
+     * A task gives up when the abort token is set by another task, and sets
+     * the token itself when its fragment gets too small.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testAbortToken() throws CDKException {
+        for (JobType jobType : JobType.values()) {
+            AtomicBoolean abort = new AtomicBoolean(true);
+            MCSSThread stopped = new MCSSThread(parse(CONGENERIC), jobType, 1, null, true, true, true, 0, abort);
+            Assert.assertTrue(stopped.call().isEmpty());
+
+            abort = new AtomicBoolean(false);
+            MCSSThread small = new MCSSThread(parse(CONGENERIC), jobType, 1, null, true, true, true, 20, abort);
+            Assert.assertTrue(small.call().isEmpty());
+            Assert.assertTrue(abort.get());
+        }
+    }
+
+    /**
+     * The seed chain of a SINGLE task does not run an MCS against targets
+     * which already contain the seed: the seed itself is the result and each
+     * skipped target is counted once.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testSeedChainSkipsContainingTargets() throws CDKException {
+        final int[] count = new int[1];
+        TaskUpdater updater = new TaskUpdater() {
+            @Override
+            public void setTotalCount(int nIterations) {
+            }
+
+            @Override
+            public void incrementCount() {
+                count[0]++;
+            }
+
+            @Override
+            public void updateStatus(String status) {
+            }
+
+            @Override
+            public void logException(String className, Level level, String message, Exception exception) {
+            }
+        };
+        List<IAtomContainer> molecules = parse("NCCc1ccccc1", "Oc1ccccc1CCN", "Clc1ccccc1CCN", "Cc1cccc(CCN)c1");
+        MCSSThread task = new MCSSThread(molecules, JobType.SINGLE, 1, updater, true, true, true);
+        Collection<IAtomContainer> mcss = task.call();
+        Assert.assertEquals(1, mcss.size());
+        Assert.assertSame(molecules.get(0), mcss.iterator().next());
+        Assert.assertEquals(3, count[0]);
+
+        task = new MCSSThread(parse("NCCc1ccccc1", "Oc1ccccc1CCN", "OCCc1ccccc1"), JobType.SINGLE, 1, null,
+                true, true, true);
+        mcss = task.call();
+        Assert.assertEquals(1, mcss.size());
+        Assert.assertEquals(8, mcss.iterator().next().getAtomCount());
+    }
+}
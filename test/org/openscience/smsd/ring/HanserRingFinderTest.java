@@ -35,7 +35,7 @@ import org.junit.Before;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.smsd.algorithm.vflib.Molecules;
-import org.openscience.cdk.smsd.ring.HanserRingFinder;
+import org.openscience.smsd.tools.SearchBudget;
 
 /**
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
@@ -99,4 +99,29 @@ public class HanserRingFinderTest {
 
         assertEquals(28, rings.size());
     }
+
+    @Test
+    public void testBoundedRingSizeInNaphthalene() throws CDKException {
+        IAtomContainer naphthalene = Molecules.createNaphthalene();
+        assertEquals(2, HanserRingFinder.findRings(naphthalene, 6, null).size());
+        assertEquals(3, HanserRingFinder.findRings(naphthalene, 10, null).size());
+    }
+
+    @Test
+    public void testBoundedRingSizeInCubane() throws CDKException {
+        IAtomContainer cubane = Molecules.createCubane();
+        Collection<List<IAtom>> rings = HanserRingFinder.findRings(cubane, 4, new SearchBudget());
+        assertEquals(6, rings.size());
+        for (List<IAtom> ring : rings) {
+            assertEquals(5, ring.size());
+        }
+    }
+
+    @Test(expected = CDKException.class)
+    public void testBudgetStopsRingSearch() throws CDKException {
+        IAtomContainer cubane = Molecules.createCubane();
+        SearchBudget budget = new SearchBudget();
+        budget.cancel();
+        HanserRingFinder.findRings(cubane, 8, budget);
+    }
 }
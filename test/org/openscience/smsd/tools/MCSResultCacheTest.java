@@ -0,0 +1,191 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.AtomAtomMapping;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import org.openscience.smsd.interfaces.Algorithm;
+
+/**
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class MCSResultCacheTest {
+
+    private final SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+
+    @Test
+    public void testHit() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(10);
+        IAtomContainer query = sp.parseSmiles("Nc1ccccc1");
+        IAtomContainer target = sp.parseSmiles("Oc1ccccc1C(=O)O");
+        Isomorphism comparison = new Isomorphism(query, target, Algorithm.DEFAULT, true, true, true);
+        comparison.setChemFilters(true, true, true);
+
+        List<AtomAtomMapping> first = cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        List<AtomAtomMapping> second = cache.getAllAtomMapping(sp.parseSmiles("Nc1ccccc1"),
+                sp.parseSmiles("Oc1ccccc1C(=O)O"), Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(first.size(), second.size());
+        Assert.assertEquals(first.get(0).getCount(), second.get(0).getCount());
+        Assert.assertEquals(comparison.getTanimotoSimilarity(),
+                cache.getTanimotoSimilarity(query, target, Algorithm.DEFAULT, true, true, true), 0.0001);
+        Assert.assertEquals(comparison.getFirstAtomMapping().getCount(),
+                cache.getFirstAtomMapping(query, target, Algorithm.DEFAULT, true, true, true).getCount());
+        /*
+         * the similarity and first mapping lookups above are hits, other flags
+         * give another key
+         */
+        Assert.assertEquals(3, cache.getHitCount());
+        cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, false, true, true);
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testAtomOrder() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(10);
+        IAtomContainer query = sp.parseSmiles("CCc1ccccc1");
+        IAtomContainer target = sp.parseSmiles("CCCc1ccccc1O");
+        int expected = cache.getFirstAtomMapping(query, target, Algorithm.DEFAULT, true, true, true).getCount();
+
+        IAtomContainer reorderedQuery = sp.parseSmiles("c1ccc(CC)cc1");
+        IAtomContainer reorderedTarget = sp.parseSmiles("Oc1ccccc1CCC");
+        AtomAtomMapping mapping = cache.getFirstAtomMapping(reorderedQuery, reorderedTarget,
+                Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(expected, mapping.getCount());
+        Assert.assertSame(reorderedQuery, mapping.getQuery());
+        for (int i = 0; i < reorderedQuery.getAtomCount(); i++) {
+            int j = mapping.getMappedTargetIndex(i);
+            if (j != -1) {
+                Assert.assertEquals(reorderedQuery.getAtom(i).getSymbol(), reorderedTarget.getAtom(j).getSymbol());
+            }
+        }
+    }
+
+    @Test
+    public void testStereo() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(10);
+        IAtomContainer target = sp.parseSmiles("C[C@@H](N)C(=O)O");
+        cache.getAllAtomMapping(sp.parseSmiles("C[C@H](N)O"), target, Algorithm.DEFAULT, true, true, true);
+        cache.getAllAtomMapping(sp.parseSmiles("C[C@@H](N)O"), target, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(2, cache.size());
+        cache.getAllAtomMapping(sp.parseSmiles("C[C@@H](N)O"), target, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testUnmodifiable() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(10);
+        IAtomContainer query = sp.parseSmiles("CCO");
+        IAtomContainer target = sp.parseSmiles("CCCO");
+        List<AtomAtomMapping> miss = cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, true, true, true);
+        List<AtomAtomMapping> hit = cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(1, cache.getHitCount());
+        assertReadOnly(miss);
+        assertReadOnly(hit);
+    }
+
+    private static void assertReadOnly(List<AtomAtomMapping> mappings) {
+        try {
+            mappings.clear();
+            Assert.fail("Mappings should be read only");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void testDegradedPerception() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(10);
+        IAtomContainer query = sp.parseSmiles("c1ccccc1CN");
+        IAtomContainer target = sp.parseSmiles("c1ccccc1CO");
+        MoleculeInitializer.setRingPerception(MoleculeInitializer.RingPerception.BOUNDED);
+        try {
+            Thread.currentThread().interrupt();
+            try {
+                MoleculeInitializer.initializeMolecule(query);
+            } finally {
+                Thread.interrupted();
+            }
+            Assert.assertTrue(MoleculeInitializer.isDegraded(query));
+            cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, true, true, true);
+            Assert.assertEquals(0, cache.size());
+            cache.getAllAtomMapping(query, target, Algorithm.DEFAULT, true, false, true);
+            Assert.assertEquals(1, cache.size());
+        } finally {
+            MoleculeInitializer.setRingPerception(MoleculeInitializer.RingPerception.ALL_RINGS);
+        }
+    }
+
+    @Test
+    public void testEviction() throws CDKException {
+        MCSResultCache cache = new MCSResultCache(1);
+        IAtomContainer a = sp.parseSmiles("CCO");
+        IAtomContainer b = sp.parseSmiles("CCN");
+        IAtomContainer c = sp.parseSmiles("CCC");
+        cache.getAllAtomMapping(a, b, Algorithm.DEFAULT, true, true, true);
+        cache.getAllAtomMapping(a, c, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(1, cache.size());
+        cache.getAllAtomMapping(a, b, Algorithm.DEFAULT, true, true, true);
+        Assert.assertEquals(0, cache.getHitCount());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSpill() throws CDKException, IOException {
+        File file = File.createTempFile("smsd", ".mcs");
+        file.delete();
+        try {
+            MCSResultCache cache = new MCSResultCache(10, file);
+            IAtomContainer query = sp.parseSmiles("c1ccccc1CN");
+            IAtomContainer target = sp.parseSmiles("c1ccccc1CO");
+            int expected = cache.getFirstAtomMapping(query, target, Algorithm.DEFAULT, true, true, true).getCount();
+            cache.close();
+            Assert.assertTrue(file.exists());
+
+            MCSResultCache restarted = new MCSResultCache(10, file);
+            Assert.assertEquals(1, restarted.size());
+            AtomAtomMapping mapping = restarted.getFirstAtomMapping(sp.parseSmiles("c1ccccc1CN"),
+                    sp.parseSmiles("c1ccccc1CO"), Algorithm.DEFAULT, true, true, true);
+            Assert.assertEquals(1, restarted.getHitCount());
+            Assert.assertEquals(expected, mapping.getCount());
+        } finally {
+            file.delete();
+        }
+    }
+}
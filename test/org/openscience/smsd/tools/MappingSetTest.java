@@ -0,0 +1,163 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.AtomAtomMapping;
+
+/**
+ * Unit testing for the {@link MappingSet} class.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class MappingSetTest {
+
+    private static Map<Integer, Integer> map(int... pairs) {
+        Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+        return map;
+    }
+
+    @Test
+    public void testAddMap() {
+        MappingSet set = new MappingSet();
+        Assert.assertTrue(set.add(map(0, 1, 1, 2, 2, 3)));
+        Assert.assertFalse(set.add(map(0, 1, 1, 2, 2, 3)));
+        Assert.assertTrue(set.add(map(0, 2, 1, 1, 2, 3)));
+        Assert.assertEquals(2, set.size());
+
+        /*
+         * the iteration order of the map does not matter
+         */
+        Map<Integer, Integer> unordered = new HashMap<Integer, Integer>();
+        unordered.put(2, 3);
+        unordered.put(0, 2);
+        unordered.put(1, 1);
+        Assert.assertTrue(set.contains(unordered));
+        Assert.assertFalse(set.contains(map(0, 2, 1, 1)));
+    }
+
+    @Test
+    public void testAddCore() {
+        MappingSet set = new MappingSet();
+        Assert.assertTrue(set.add(new int[]{3, -1, 0}));
+        Assert.assertFalse(set.add(new int[]{3, -1, 0}));
+        Assert.assertTrue(set.contains(map(0, 3, 2, 0)));
+        Assert.assertFalse(set.contains(new int[]{3, 0, -1}));
+
+        /*
+         * the empty mapping is a mapping as well
+         */
+        Assert.assertTrue(set.add(new int[]{-1, -1, -1}));
+        Assert.assertFalse(set.add(new int[0]));
+    }
+
+    @Test
+    public void testAddAtomAtomMapping() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CCO");
+        IAtomContainer target = sp.parseSmiles("OCCC");
+        AtomAtomMapping first = new AtomAtomMapping(query, target);
+        first.put(0, 2);
+        first.put(1, 1);
+        first.put(2, 0);
+        AtomAtomMapping second = new AtomAtomMapping(query, target);
+        second.put(2, 0);
+        second.put(1, 1);
+        second.put(0, 2);
+
+        MappingSet set = new MappingSet();
+        Assert.assertTrue(set.add(first));
+        Assert.assertTrue(set.contains(second));
+        Assert.assertFalse(set.add(second));
+        Assert.assertTrue(set.contains(map(0, 2, 1, 1, 2, 0)));
+    }
+
+    @Test
+    public void testLargestSize() {
+        MappingSet set = new MappingSet();
+        set.add(map(0, 0));
+        set.add(map(0, 0, 1, 1, 2, 2));
+        set.add(map(0, 1, 1, 0));
+        Assert.assertEquals(3, set.getLargestSize());
+        set.clear();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.getLargestSize());
+        Assert.assertTrue(set.add(map(0, 0)));
+    }
+
+    @Test
+    public void testMinimumSize() {
+        MappingSet set = new MappingSet(2);
+        Assert.assertFalse(set.add(map(0, 0)));
+        Assert.assertTrue(set.add(map(0, 0, 1, 1)));
+        Assert.assertTrue(set.add(map(0, 0, 1, 1, 2, 2)));
+        Assert.assertEquals(2, set.size());
+
+        /*
+         * raising the minimum evicts the smaller mappings
+         */
+        set.setMinimumSize(3);
+        Assert.assertEquals(1, set.size());
+        Assert.assertFalse(set.contains(map(0, 0, 1, 1)));
+        Assert.assertTrue(set.contains(map(0, 0, 1, 1, 2, 2)));
+        Assert.assertEquals(3, set.getMinimumSize());
+    }
+
+    /**
+     * Every distinct mapping of a large random sample is admitted once.
+     */
+    @Test
+    public void testManyMappings() {
+        Random random = new Random(42);
+        MappingSet set = new MappingSet();
+        Map<Map<Integer, Integer>, Boolean> reference = new HashMap<Map<Integer, Integer>, Boolean>();
+        for (int i = 0; i < 20000; i++) {
+            int[] core = new int[6];
+            for (int q = 0; q < core.length; q++) {
+                core[q] = random.nextInt(5) - 1;
+            }
+            Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
+            for (int q = 0; q < core.length; q++) {
+                if (core[q] != -1) {
+                    map.put(q, core[q]);
+                }
+            }
+            boolean isNew = reference.put(map, Boolean.TRUE) == null;
+            Assert.assertEquals(isNew, set.add(core));
+        }
+        Assert.assertEquals(reference.size(), set.size());
+    }
+}
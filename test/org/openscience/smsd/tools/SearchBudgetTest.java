@@ -0,0 +1,142 @@
+/* Copyright (C) 2009  Egon Willighagen <egonw@users.sf.net>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class SearchBudgetTest {
+
+    @Test
+    public void testUnlimited() {
+        SearchBudget budget = new SearchBudget();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertFalse(budget.tick());
+        }
+        Assert.assertFalse(budget.isExhausted());
+        Assert.assertEquals(SearchBudget.Reason.NONE, budget.getReason());
+        Assert.assertEquals(Long.MAX_VALUE, budget.getRemainingNanos());
+    }
+
+    @Test
+    public void testIterations() {
+        SearchBudget budget = new SearchBudget(0, 100);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(budget.tick());
+        }
+        Assert.assertTrue(budget.tick());
+        Assert.assertTrue(budget.isExhausted());
+        Assert.assertEquals(SearchBudget.Reason.ITERATIONS, budget.getReason());
+        Assert.assertEquals(101, budget.getIterations());
+        /*
+         * an exhausted budget stays exhausted
+         */
+        Assert.assertTrue(budget.tick());
+        Assert.assertEquals(101, budget.getIterations());
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        SearchBudget budget = new SearchBudget(TimeUnit.MILLISECONDS.toNanos(20), 0);
+        Assert.assertFalse(budget.check());
+        Assert.assertTrue(budget.getRemainingNanos() > 0);
+        Thread.sleep(40);
+        Assert.assertFalse(budget.isExhausted());
+        Assert.assertTrue(budget.check());
+        Assert.assertTrue(budget.isExhausted());
+        Assert.assertEquals(SearchBudget.Reason.DEADLINE, budget.getReason());
+        Assert.assertEquals(0, budget.getRemainingNanos());
+        Assert.assertTrue(budget.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testCancel() {
+        SearchBudget budget = new SearchBudget();
+        Assert.assertFalse(budget.tick());
+        budget.cancel();
+        Assert.assertTrue(budget.tick());
+        Assert.assertEquals(SearchBudget.Reason.CANCELLED, budget.getReason());
+    }
+
+    @Test
+    public void testCancelToken() {
+        AtomicBoolean token = new AtomicBoolean(false);
+        SearchBudget first = new SearchBudget(0, 0, token);
+        SearchBudget second = new SearchBudget(0, 0, token);
+        Assert.assertFalse(first.tick());
+        Assert.assertFalse(second.tick());
+        token.set(true);
+        Assert.assertTrue(first.tick());
+        Assert.assertTrue(second.check());
+        Assert.assertEquals(SearchBudget.Reason.CANCELLED, second.getReason());
+    }
+
+    @Test
+    public void testInterrupt() {
+        SearchBudget budget = new SearchBudget();
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertTrue(budget.check());
+            Assert.assertEquals(SearchBudget.Reason.INTERRUPTED, budget.getReason());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * A budget made with withIterationCaps leaves the iteration cap of the
+     * manager in force and still stops the search when cancelled, a plain
+     * budget replaces the cap.
+     */
+    @Test
+    public void testIterationCaps() {
+        AtomicBoolean abort = new AtomicBoolean(false);
+        SearchBudget budget = SearchBudget.withIterationCaps(abort);
+        Assert.assertTrue(budget.keepsIterationCaps());
+        Assert.assertFalse(new SearchBudget().keepsIterationCaps());
+
+        IterationManager capped = new IterationManager(1, budget);
+        IterationManager replaced = new IterationManager(1, new SearchBudget());
+        for (int i = 0; i <= capped.getCoverage(); i++) {
+            Assert.assertFalse(capped.isMaxIteration());
+            capped.increment();
+            replaced.increment();
+        }
+        Assert.assertTrue(capped.isMaxIteration());
+        Assert.assertFalse(replaced.isMaxIteration());
+        Assert.assertFalse(budget.isExhausted());
+
+        IterationManager cancelled = new IterationManager(1, budget);
+        Assert.assertFalse(cancelled.isMaxIteration());
+        abort.set(true);
+        cancelled.increment();
+        Assert.assertTrue(cancelled.isMaxIteration());
+        Assert.assertEquals(SearchBudget.Reason.CANCELLED, budget.getReason());
+    }
+}
@@ -0,0 +1,218 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.Substructure;
+import org.openscience.smsd.algorithm.rgraph.CDKMCSHandler;
+import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.interfaces.ISearchStatsListener;
+import org.openscience.smsd.tools.SearchStats.Stage;
+
+/**
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class SearchStatsTest {
+
+    private static class Recorder implements ISearchStatsListener {
+
+        private final List<SearchStats> completed = new ArrayList<SearchStats>();
+
+        @Override
+        public synchronized void searchCompleted(SearchStats stats) {
+            completed.add(stats);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        SearchStats.setListener(null);
+    }
+
+    @Test
+    public void testListener() {
+        Assert.assertFalse(SearchStats.isEnabled());
+        Assert.assertNotNull(SearchStats.getListener());
+        Assert.assertNull(SearchStats.begin("test", null, null));
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        Assert.assertTrue(SearchStats.isEnabled());
+        Assert.assertSame(recorder, SearchStats.getListener());
+        SearchStats.setListener(null);
+        Assert.assertFalse(SearchStats.isEnabled());
+    }
+
+    @Test
+    public void testNested() {
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        SearchStats outer = SearchStats.begin("outer", null, null);
+        Assert.assertNotNull(outer);
+        Assert.assertSame(outer, SearchStats.current());
+        SearchStats inner = SearchStats.begin("inner", null, null);
+        Assert.assertNull(inner);
+        SearchStats.finish(inner, false);
+        Assert.assertTrue(recorder.completed.isEmpty());
+        SearchStats.finish(outer, true);
+        Assert.assertNull(SearchStats.current());
+        Assert.assertEquals(1, recorder.completed.size());
+        Assert.assertTrue(outer.isTimeout());
+        Assert.assertTrue(outer.getTotalTime() >= 0);
+    }
+
+    @Test
+    public void testAttach() throws InterruptedException {
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        final SearchStats stats = SearchStats.begin("attach", null, null);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SearchStats previous = SearchStats.attach(stats);
+                SearchStats.record(SearchStats.current(), Stage.MCGREGOR, System.nanoTime());
+                SearchStats.attach(previous);
+            }
+        });
+        worker.start();
+        worker.join();
+        SearchStats.finish(stats, false);
+        Assert.assertEquals(1, stats.getCalls(Stage.MCGREGOR));
+    }
+
+    @Test
+    public void testRecord() {
+        SearchStats.setListener(new Recorder());
+        SearchStats stats = SearchStats.begin("record", null, null);
+        Assert.assertEquals(-1, stats.getTotalTime());
+        SearchStats.record(stats, Stage.SCREEN, System.nanoTime());
+        SearchStats.record(stats, Stage.SCREEN, System.nanoTime());
+        SearchStats.record(null, Stage.SCREEN, System.nanoTime());
+        SearchStats.solutions(3, 1);
+        SearchStats.finish(stats, false);
+        Assert.assertEquals("record", stats.getOperation());
+        Assert.assertEquals(0, stats.getQueryAtomCount());
+        Assert.assertEquals(0, stats.getTargetAtomCount());
+        Assert.assertEquals(2, stats.getCalls(Stage.SCREEN));
+        Assert.assertTrue(stats.getTime(Stage.SCREEN) >= 0);
+        Assert.assertEquals(0, stats.getCalls(Stage.MCGREGOR));
+        Assert.assertEquals(3, stats.getSolutionsFound());
+        Assert.assertEquals(1, stats.getSolutionsKept());
+        Assert.assertFalse(stats.isTimeout());
+    }
+
+    @Test
+    public void testIterations() {
+        SearchStats.setListener(new Recorder());
+        SearchStats stats = SearchStats.begin("iterations", null, null);
+        IterationManager first = new IterationManager(10, null, "A");
+        IterationManager second = new IterationManager(10, null, "A");
+        IterationManager third = new IterationManager(10, null, "B");
+        first.increment();
+        second.increment();
+        second.increment();
+        third.increment();
+        SearchStats.finish(stats, false);
+        Assert.assertEquals(Long.valueOf(3), stats.getIterations().get("A"));
+        Assert.assertEquals(Long.valueOf(1), stats.getIterations().get("B"));
+    }
+
+    @Test
+    public void testIsomorphism() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CC1=CC=CC=C1");
+        IAtomContainer target = sp.parseSmiles("OC1=CC=CC=C1C(=O)O");
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        Isomorphism comparison = new Isomorphism(query, target, Algorithm.DEFAULT, true, false, false);
+        comparison.setChemFilters(true, true, true);
+        Assert.assertEquals(2, recorder.completed.size());
+
+        SearchStats search = recorder.completed.get(0);
+        Assert.assertEquals("Isomorphism.DEFAULT", search.getOperation());
+        Assert.assertEquals(7, search.getQueryAtomCount());
+        Assert.assertEquals(10, search.getTargetAtomCount());
+        Assert.assertEquals(1, search.getCalls(Stage.SUBSTRUCTURE));
+        Assert.assertTrue(search.getSolutionsKept() > 0);
+        Assert.assertFalse(search.isTimeout());
+
+        SearchStats filters = recorder.completed.get(1);
+        Assert.assertEquals("ChemicalFilters", filters.getOperation());
+        Assert.assertEquals(1, filters.getCalls(Stage.STEREO_FILTER));
+        Assert.assertEquals(1, filters.getCalls(Stage.FRAGMENT_FILTER));
+        Assert.assertEquals(1, filters.getCalls(Stage.ENERGY_FILTER));
+        Assert.assertEquals(filters.getSolutionsKept(), comparison.getMappingCount());
+    }
+
+    @Test
+    public void testSubstructure() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CCO");
+        IAtomContainer target = sp.parseSmiles("CCCCO");
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        Substructure substructure = new Substructure(query, target, true, false, false, true);
+        Assert.assertTrue(substructure.isSubgraph());
+        Assert.assertEquals(1, recorder.completed.size());
+        SearchStats stats = recorder.completed.get(0);
+        Assert.assertEquals("Substructure", stats.getOperation());
+        Assert.assertEquals(1, stats.getCalls(Stage.SUBSTRUCTURE));
+        Assert.assertTrue(stats.getIterations().containsKey("VFSubstructure"));
+        Assert.assertNull(SearchStats.current());
+    }
+
+    /**
+     * The timeout of the record is the one reported by the algorithm which
+     * produced the mappings.
+     *
+     * @throws CDKException
+     */
+    @Test
+    public void testIsomorphismTimeout() throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        String querySmiles = "c1ccc2cc3ccccc3cc2c1";
+        String targetSmiles = "c1ccc2c(c1)ccc1ccccc21";
+        CDKMCSHandler handler = new CDKMCSHandler(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                false, false, false);
+        Recorder recorder = new Recorder();
+        SearchStats.setListener(recorder);
+        Isomorphism comparison = new Isomorphism(sp.parseSmiles(querySmiles), sp.parseSmiles(targetSmiles),
+                Algorithm.CDKMCS, false, false, false);
+        Assert.assertEquals(1, recorder.completed.size());
+        Assert.assertEquals(handler.isTimeout(), recorder.completed.get(0).isTimeout());
+        Assert.assertEquals(!comparison.isExhaustive(), recorder.completed.get(0).isTimeout());
+
+        new Isomorphism(sp.parseSmiles("C"), sp.parseSmiles("CC"), Algorithm.CDKMCS, false, false, false);
+        Assert.assertEquals(2, recorder.completed.size());
+        Assert.assertFalse(recorder.completed.get(1).isTimeout());
+    }
+}
@@ -0,0 +1,184 @@
+/* Copyright (C) 2009-2013  Syed Asad Rahman <asad@ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.smsd.algorithm.vflib.substructure.CompiledQuery;
+import org.openscience.smsd.helper.FingerprintScreen;
+import org.openscience.smsd.helper.MoleculeInitializer;
+
+/**
+ * Unit testing for the {@link TargetLibrary} and {@link TargetLibraryWriter}
+ * classes.
+ *
+ * @author Syed Asad Rahman <asad@ebi.ac.uk>
+ * @cdk.module test-smsd
+ */
+public class TargetLibraryTest {
+
+    private static final String[] SMILES = {
+        "c1ccccc1O", "CCO", "CC(=O)O", "c1ccncc1", "CCN(CC)CC", "OCCc1ccccc1", "C1CCCCC1", "ClCCl"
+    };
+    private static File file;
+    private static IAtomContainer[] molecules;
+
+    private static IAtomContainer parse(String smiles) throws CDKException {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        return sp.parseSmiles(smiles);
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        file = File.createTempFile("smsd", ".lib");
+        molecules = new IAtomContainer[SMILES.length];
+        TargetLibraryWriter writer = new TargetLibraryWriter(file);
+        try {
+            for (int i = 0; i < SMILES.length; i++) {
+                molecules[i] = parse(SMILES[i]);
+                molecules[i].setID("mol" + i);
+                Assert.assertEquals(i, writer.add(molecules[i]));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Molecules come back with their perception, fingerprint and ID.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        TargetLibrary library = new TargetLibrary(file);
+        try {
+            Assert.assertEquals(SMILES.length, library.size());
+            for (int i = 0; i < SMILES.length; i++) {
+                IAtomContainer molecule = library.getMolecule(i);
+                Assert.assertEquals("mol" + i, library.getId(i));
+                Assert.assertEquals("mol" + i, molecule.getID());
+                Assert.assertEquals(i, TargetLibrary.indexOf(molecule));
+                Assert.assertEquals(molecules[i].getAtomCount(), library.getAtomCount(i));
+                Assert.assertEquals(molecules[i].getBondCount(), molecule.getBondCount());
+                Assert.assertArrayEquals(FingerprintScreen.fingerprint(molecules[i]), library.getFingerprint(i));
+                Assert.assertTrue(MoleculeInitializer.isInitialized(molecule));
+                for (int a = 0; a < molecule.getAtomCount(); a++) {
+                    IAtom expected = molecules[i].getAtom(a);
+                    IAtom actual = molecule.getAtom(a);
+                    Assert.assertEquals(expected.getSymbol(), actual.getSymbol());
+                    Assert.assertEquals(expected.getAtomTypeName(), actual.getAtomTypeName());
+                    Assert.assertEquals(expected.getImplicitHydrogenCount(), actual.getImplicitHydrogenCount());
+                    Assert.assertEquals(expected.getFlag(CDKConstants.ISAROMATIC), actual.getFlag(CDKConstants.ISAROMATIC));
+                    Assert.assertEquals(expected.getFlag(CDKConstants.ISINRING), actual.getFlag(CDKConstants.ISINRING));
+                    List<Integer> ringSizes = expected.getProperty(CDKConstants.RING_SIZES);
+                    Assert.assertEquals(ringSizes, actual.getProperty(CDKConstants.RING_SIZES));
+                }
+            }
+        } finally {
+            library.close();
+        }
+    }
+
+    /**
+     * The candidates are the molecules whose fingerprint contains the query
+     * fingerprint.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCandidates() throws Exception {
+        TargetLibrary library = new TargetLibrary(file);
+        try {
+            IAtomContainer query = parse("CCO");
+            long[] fingerprint = FingerprintScreen.fingerprint(query);
+            int[] candidates = library.candidates(query);
+            int expected = 0;
+            for (int i = 0; i < SMILES.length; i++) {
+                if (FingerprintScreen.isSubset(fingerprint, FingerprintScreen.fingerprint(molecules[i]))) {
+                    Assert.assertEquals(i, candidates[expected++]);
+                }
+            }
+            Assert.assertEquals(expected, candidates.length);
+            Assert.assertEquals(SMILES.length, library.candidates(null, 0).length);
+
+            int count = 0;
+            for (IAtomContainer molecule : library.getMolecules(candidates)) {
+                Assert.assertEquals(candidates[count++], TargetLibrary.indexOf(molecule));
+            }
+            Assert.assertEquals(candidates.length, count);
+        } finally {
+            library.close();
+        }
+    }
+
+    /**
+     * A library search finds the same hits as matching every molecule.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSearch() throws Exception {
+        TargetLibrary library = new TargetLibrary(file);
+        try {
+            CompiledQuery query = new CompiledQuery(parse("CCO"), true, false, true);
+            int[] hits = library.search(query);
+            int expected = 0;
+            for (int i = 0; i < SMILES.length; i++) {
+                if (query.matches(molecules[i])) {
+                    Assert.assertEquals(i, hits[expected++]);
+                }
+            }
+            Assert.assertEquals(expected, hits.length);
+            Assert.assertTrue(hits.length >= 2);
+        } finally {
+            library.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotALibrary() throws IOException {
+        File other = File.createTempFile("smsd", ".txt");
+        try {
+            new TargetLibrary(other);
+        } finally {
+            other.delete();
+        }
+    }
+}
@@ -36,7 +36,12 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({org.openscience.smsd.tools.BondEnergiesTest.class,
+    org.openscience.smsd.tools.MappingSetTest.class,
+    org.openscience.smsd.tools.MCSResultCacheTest.class,
     org.openscience.smsd.tools.MoleculeSanityCheckTest.class,
+    org.openscience.smsd.tools.SearchBudgetTest.class,
+    org.openscience.smsd.tools.SearchStatsTest.class,
+    org.openscience.smsd.tools.TargetLibraryTest.class,
     org.openscience.smsd.tools.TimeManagerTest.class})
 public class ToolsSuite {
 